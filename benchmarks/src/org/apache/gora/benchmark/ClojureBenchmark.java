@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gora.jython.binding.SimpleBinding;
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clojure.java.api.Clojure;
+import clojure.lang.IFn;
+
+/**
+ * SimpleBinding driven from Clojure functions written like gora_clj.clj,
+ * without type hints, so interop goes through reflection as it does there.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClojureBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ClojureState {
+    SimpleBinding<String, PersistentBase> binding;
+    IFn get;
+    IFn put;
+    IFn flush;
+    IFn scan;
+
+    @Setup(Level.Trial)
+    public void setUp(StoreState state) {
+      binding = new SimpleBinding<String, PersistentBase>(state.store);
+      IFn loadString = Clojure.var("clojure.core", "load-string");
+      loadString.invoke("(import '(org.apache.gora.utils GoraUtils))");
+      get = (IFn) loadString.invoke("(fn [h k] (. h get k))");
+      put = (IFn) loadString.invoke("(fn [h k v] (. h put k v))");
+      flush = (IFn) loadString.invoke("(fn [h k v] (. h put k v) (. h flush))");
+      scan = (IFn) loadString.invoke(
+          "(fn [h s e] (let [r (GoraUtils/queryRequests (. h getDatastore) s e)]"
+          + " (loop [n 0] (if (. r next) (recur (inc n)) (do (. r close) n)))))");
+    }
+  }
+
+  @Benchmark
+  public Object get(StoreState state, ClojureState clj, Cursor cursor) {
+    return clj.get.invoke(clj.binding, state.keys[state.index(cursor.next())]);
+  }
+
+  @Benchmark
+  public Object put(StoreState state, ClojureState clj, Cursor cursor) {
+    int i = state.index(cursor.next());
+    return clj.put.invoke(clj.binding, state.keys[i], state.values[i]);
+  }
+
+  @Benchmark
+  public Object flush(StoreState state, ClojureState clj, Cursor cursor) {
+    int i = state.index(cursor.next());
+    return clj.flush.invoke(clj.binding, state.keys[i], state.values[i]);
+  }
+
+  @Benchmark
+  public Object scan(StoreState state, ClojureState clj, Cursor cursor) {
+    int i = state.index(cursor.next());
+    return clj.scan.invoke(clj.binding, state.keys[i], state.scanEnd(i));
+  }
+}
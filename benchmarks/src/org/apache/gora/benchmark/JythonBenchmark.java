@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gora.jython.binding.SimpleBinding;
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.python.core.Py;
+import org.python.core.PyCode;
+import org.python.core.PyObject;
+import org.python.util.PythonInterpreter;
+
+/**
+ * SimpleBinding driven from embedded Jython, as gora_jython.py does. The
+ * snippets are compiled once; each operation executes one of them.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JythonBenchmark {
+
+  @State(Scope.Thread)
+  public static class JythonState {
+    PythonInterpreter interpreter;
+    PyCode get;
+    PyCode put;
+    PyCode flush;
+    PyCode scan;
+
+    @Setup(Level.Trial)
+    public void setUp(StoreState state) {
+      interpreter = new PythonInterpreter();
+      interpreter.set("h", new SimpleBinding<String, PersistentBase>(state.store));
+      interpreter.exec("from org.apache.gora.utils import GoraUtils");
+      get = interpreter.compile("result = h.get(key)");
+      put = interpreter.compile("h.put(key, value)");
+      flush = interpreter.compile("h.put(key, value)\nh.flush()");
+      scan = interpreter.compile("r = GoraUtils.queryRequests(h.getDatastore(), key, end)\n"
+          + "result = 0\n"
+          + "while r.next():\n"
+          + "    result += 1\n"
+          + "r.close()");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      interpreter.cleanup();
+    }
+
+    PyObject run(PyCode code, StoreState state, int i) {
+      interpreter.set("key", state.keys[i]);
+      interpreter.set("value", state.values[i]);
+      interpreter.set("end", state.scanEnd(i));
+      interpreter.exec(code);
+      PyObject result = interpreter.get("result");
+      return result == null ? Py.None : result;
+    }
+  }
+
+  @Benchmark
+  public Object get(StoreState state, JythonState jython, Cursor cursor) {
+    return jython.run(jython.get, state, state.index(cursor.next()));
+  }
+
+  @Benchmark
+  public Object put(StoreState state, JythonState jython, Cursor cursor) {
+    return jython.run(jython.put, state, state.index(cursor.next()));
+  }
+
+  @Benchmark
+  public Object flush(StoreState state, JythonState jython, Cursor cursor) {
+    return jython.run(jython.flush, state, state.index(cursor.next()));
+  }
+
+  @Benchmark
+  public Object scan(StoreState state, JythonState jython, Cursor cursor) {
+    return jython.run(jython.scan, state, state.index(cursor.next()));
+  }
+}
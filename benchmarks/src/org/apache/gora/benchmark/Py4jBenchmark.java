@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.apache.gora.py4j.binding.Py4jDataStoreEntryPoint;
+import org.apache.gora.store.DataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import py4j.GatewayServer;
+
+/**
+ * Py4jDataStoreEntryPoint behind an in-process gateway, called through a
+ * socket client issuing the same commands as gora_py4j.py, including the
+ * reference releases Python sends when proxies are collected.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Py4jBenchmark {
+
+  private static final String GORA_UTILS = "z:org.apache.gora.utils.GoraUtils";
+
+  /** Records made reachable from the client for the put benchmarks */
+  private static final int RECORD_REFS = 64;
+
+  /**
+   * Entry point that also hands out the preloaded records.
+   */
+  public static class BenchmarkEntryPoint extends
+      Py4jDataStoreEntryPoint<String, PersistentBase> {
+
+    private final PersistentBase[] values;
+
+    public BenchmarkEntryPoint(DataStore<String, PersistentBase> datastore,
+        PersistentBase[] values) {
+      super(datastore);
+      this.values = values;
+    }
+
+    public PersistentBase getRecord(int i) {
+      return values[i];
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class GatewayState {
+    GatewayServer server;
+
+    @Setup(Level.Trial)
+    public void setUp(StoreState state) {
+      server = new GatewayServer(new BenchmarkEntryPoint(state.store,
+          state.values), 0);
+      server.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      server.shutdown();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ClientState {
+    Py4jClient client;
+    Py4jClient.Ref datastore;
+    Py4jClient.Ref[] records = new Py4jClient.Ref[RECORD_REFS];
+
+    @Setup(Level.Trial)
+    public void setUp(GatewayState gateway) throws IOException {
+      client = new Py4jClient(gateway.server.getListeningPort());
+      datastore = client.callForRef(Py4jClient.ENTRY_POINT, "getDatastore");
+      for (int i = 0; i < RECORD_REFS; i++) {
+        records[i] = client.callForRef(Py4jClient.ENTRY_POINT, "getRecord", i);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @Benchmark
+  public Object get(StoreState state, ClientState c, Cursor cursor)
+      throws IOException {
+    Py4jClient.Ref record = c.client.callForRef(c.datastore, "get",
+        state.keys[state.index(cursor.next())]);
+    c.client.release(record);
+    return record;
+  }
+
+  @Benchmark
+  public String put(StoreState state, ClientState c, Cursor cursor)
+      throws IOException {
+    int i = state.index(cursor.next());
+    return c.client.call(c.datastore, "put", state.keys[i],
+        c.records[i % RECORD_REFS]);
+  }
+
+  @Benchmark
+  public String flush(StoreState state, ClientState c, Cursor cursor)
+      throws IOException {
+    int i = state.index(cursor.next());
+    c.client.call(c.datastore, "put", state.keys[i], c.records[i % RECORD_REFS]);
+    return c.client.call(c.datastore, "flush");
+  }
+
+  @Benchmark
+  public int scan(StoreState state, ClientState c, Cursor cursor)
+      throws IOException {
+    int i = state.index(cursor.next());
+    Py4jClient.Ref result = c.client.callForRef(GORA_UTILS, "queryRequests",
+        c.datastore, state.keys[i], state.scanEnd(i));
+    int n = 0;
+    while ("btrue".equals(c.client.call(result, "next"))) {
+      n++;
+    }
+    c.client.call(result, "close");
+    c.client.release(result);
+    return n;
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal Java client for the Py4j gateway text protocol, so the gateway can
+ * be measured in process with the same round trips a Python client makes.
+ * Java objects stay on the gateway and are passed around as references.
+ */
+public class Py4jClient implements Closeable {
+
+  /** Target id of the gateway entry point */
+  public static final String ENTRY_POINT = "t";
+
+  private final Socket socket;
+  private final BufferedReader reader;
+  private final Writer writer;
+
+  public Py4jClient(int port) throws IOException {
+    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    socket.setTcpNoDelay(true);
+    reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+        StandardCharsets.UTF_8));
+    writer = new OutputStreamWriter(socket.getOutputStream(),
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reference to an object living on the gateway.
+   */
+  public static final class Ref {
+    final String id;
+
+    Ref(String id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Calls a method and returns the encoded answer without the success flag,
+   * e.g. "ro12" for a reference or "btrue" for a boolean.
+   * @param target object id, ENTRY_POINT or "z:" and a class name for statics
+   * @param method
+   * @param args Strings, Integers or Refs
+   * @return
+   * @throws IOException
+   */
+  public String call(String target, String method, Object... args)
+      throws IOException {
+    StringBuilder command = new StringBuilder("c\n").append(target)
+        .append('\n').append(method).append('\n');
+    for (Object arg : args) {
+      if (arg instanceof Ref) {
+        command.append('r').append(((Ref) arg).id);
+      } else if (arg instanceof Integer) {
+        command.append('i').append(arg);
+      } else {
+        command.append('s').append(escape(arg.toString()));
+      }
+      command.append('\n');
+    }
+    command.append("e\n");
+    return send(command.toString());
+  }
+
+  /**
+   * Calls a method returning an object.
+   * @return the reference, or null for a null result
+   */
+  public Ref callForRef(String target, String method, Object... args)
+      throws IOException {
+    String answer = call(target, method, args);
+    if (answer.charAt(0) == 'n') {
+      return null;
+    }
+    if (answer.charAt(0) != 'r') {
+      throw new IOException("Expected a reference, got " + answer);
+    }
+    return new Ref(answer.substring(1));
+  }
+
+  public Ref callForRef(Ref target, String method, Object... args)
+      throws IOException {
+    return callForRef(target.id, method, args);
+  }
+
+  public String call(Ref target, String method, Object... args)
+      throws IOException {
+    return call(target.id, method, args);
+  }
+
+  /**
+   * Lets the gateway forget an object, as Python does once a proxy is
+   * garbage collected.
+   * @param ref
+   * @throws IOException
+   */
+  public void release(Ref ref) throws IOException {
+    if (ref != null) {
+      send("m\nd\n" + ref.id + "\ne\n");
+    }
+  }
+
+  private String send(String command) throws IOException {
+    writer.write(command);
+    writer.flush();
+    String answer = reader.readLine();
+    if (answer == null || answer.isEmpty() || answer.charAt(0) != 'y') {
+      throw new IOException("Gateway error: " + answer);
+    }
+    return answer.substring(1);
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\r", "\\r").replace("\n", "\\n");
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gora.jython.binding.SimpleBinding;
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.apache.gora.query.Result;
+import org.apache.gora.utils.GoraUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataStore calls through SimpleBinding, called from Java.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleBindingBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class BindingState {
+    SimpleBinding<String, PersistentBase> binding;
+
+    @Setup(Level.Trial)
+    public void setUp(StoreState state) {
+      binding = new SimpleBinding<String, PersistentBase>(state.store);
+    }
+  }
+
+  @Benchmark
+  public Object get(StoreState state, BindingState b, Cursor cursor) {
+    return b.binding.get(state.keys[state.index(cursor.next())]);
+  }
+
+  @Benchmark
+  public void put(StoreState state, BindingState b, Cursor cursor) {
+    int i = state.index(cursor.next());
+    b.binding.put(state.keys[i], state.values[i]);
+  }
+
+  @Benchmark
+  public void flush(StoreState state, BindingState b, Cursor cursor) {
+    int i = state.index(cursor.next());
+    b.binding.put(state.keys[i], state.values[i]);
+    b.binding.flush();
+  }
+
+  @Benchmark
+  public int scan(StoreState state, BindingState b, Cursor cursor)
+      throws Exception {
+    int i = state.index(cursor.next());
+    Result<String, PersistentBase> result = GoraUtils.queryRequests(
+        b.binding.getDatastore(), state.keys[i], state.scanEnd(i));
+    int n = 0;
+    while (result.next()) {
+      n++;
+    }
+    result.close();
+    return n;
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.memory.store.MemStore;
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GeneratedUtils;
+import org.apache.gora.utils.GoraUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * MemStore preloaded with Employee or WebPage records, shared by all the
+ * access path benchmarks so they measure the binding and not the backend.
+ */
+@State(Scope.Benchmark)
+public class StoreState {
+
+  /** Rows scanned by the scan benchmarks */
+  public static final int SCAN_LENGTH = 100;
+
+  @Param({ "employee", "webpage" })
+  public String record;
+
+  @Param({ "10000" })
+  public int records;
+
+  public DataStore<String, PersistentBase> store;
+  public String[] keys;
+  public PersistentBase[] values;
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Class persistentClass = "webpage".equals(record) ? WebPage.class : Employee.class;
+    store = GoraUtils.createDataStore(String.class, persistentClass, MemStore.class);
+    Random random = new Random(42);
+    keys = new String[records];
+    values = new PersistentBase[records];
+    for (int i = 0; i < records; i++) {
+      keys[i] = String.format("%010d", i);
+      values[i] = "webpage".equals(record) ? newWebPage(keys[i], random)
+          : GeneratedUtils.createEmployee(keys[i], "Employee " + i, 1000 + i);
+      store.put(keys[i], values[i]);
+    }
+    store.flush();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    store.close();
+  }
+
+  /**
+   * Index of the i-th operation, spread over the preloaded keys.
+   * @param i
+   * @return
+   */
+  public int index(long i) {
+    return (int) ((i * 7919) % records);
+  }
+
+  /**
+   * Last key of a scan starting at index.
+   * @param index
+   * @return
+   */
+  public String scanEnd(int index) {
+    return keys[Math.min(index + SCAN_LENGTH - 1, records - 1)];
+  }
+
+  private static WebPage newWebPage(String key, Random random) {
+    WebPage page = WebPage.newBuilder().build();
+    page.setUrl(new Utf8("http://example.org/" + key));
+    byte[] content = new byte[4096];
+    random.nextBytes(content);
+    page.setContent(ByteBuffer.wrap(content));
+    for (int i = 0; i < 10; i++) {
+      page.getOutlinks().put(new Utf8("http://example.org/" + random.nextInt()),
+          new Utf8("anchor " + i));
+    }
+    return page;
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.persistency.impl.PersistentBase;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+
+public class StoreStateTest extends TestCase {
+
+  private StoreState state(String record, int records) throws Exception {
+    StoreState state = new StoreState();
+    state.record = record;
+    state.records = records;
+    state.setUp();
+    return state;
+  }
+
+  public void testPreloadsTheRecords() throws Exception {
+    StoreState state = state("webpage", 500);
+    try {
+      assertEquals(500, state.keys.length);
+      WebPage page = (WebPage) state.store.get(state.keys[42]);
+      assertNotNull(page);
+      assertEquals(4096, page.getContent().remaining());
+      assertEquals(10, page.getOutlinks().size());
+    } finally {
+      state.tearDown();
+    }
+  }
+
+  public void testOperationsVisitEveryKey() throws Exception {
+    StoreState state = state("employee", 1000);
+    try {
+      Set<Integer> visited = new HashSet<Integer>();
+      for (long i = 0; i < 1000; i++) {
+        int index = state.index(i);
+        assertTrue(index >= 0 && index < 1000);
+        visited.add(index);
+      }
+      assertEquals(1000, visited.size());
+    } finally {
+      state.tearDown();
+    }
+  }
+
+  public void testScansReadScanLengthRows() throws Exception {
+    StoreState state = state("employee", 1000);
+    try {
+      Query<String, PersistentBase> query = state.store.newQuery();
+      query.setStartKey(state.keys[10]);
+      query.setEndKey(state.scanEnd(10));
+      Result<String, PersistentBase> result = state.store.execute(query);
+      int rows = 0;
+      while (result.next()) {
+        rows++;
+      }
+      result.close();
+      assertEquals(StoreState.SCAN_LENGTH, rows);
+      assertEquals(state.keys[999], state.scanEnd(990));
+    } finally {
+      state.tearDown();
+    }
+  }
+}
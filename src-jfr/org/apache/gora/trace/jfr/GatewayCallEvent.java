@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A method call handled by the Py4j gateway, from reading the command to
+ * writing the answer.
+ */
+@Name("org.apache.gora.GatewayCall")
+@Label("Gateway Call")
+@Category({ "Gora" })
+@Description("Method call from Python through the Py4j gateway")
+@StackTrace(false)
+@Threshold("0 ms")
+public class GatewayCallEvent extends Event {
+
+  @Label("Target")
+  @Description("Gateway id of the object called, t for the entry point")
+  String target;
+
+  @Label("Method")
+  String method;
+
+  @Label("Failed")
+  boolean failed;
+}
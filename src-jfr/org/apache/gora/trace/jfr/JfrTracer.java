@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace.jfr;
+
+import jdk.jfr.EventType;
+
+import org.apache.gora.trace.GatewaySpan;
+import org.apache.gora.trace.StoreSpan;
+import org.apache.gora.trace.Tracer;
+import org.apache.gora.trace.Tracing;
+
+/**
+ * Tracer emitting Java Flight Recorder events, so store calls show up next
+ * to GC pauses and thread states in a recording. Spans are only created
+ * while a recording has the events enabled.
+ */
+public class JfrTracer implements Tracer {
+
+  private static final EventType STORE_EVENT = EventType.getEventType(StoreOperationEvent.class);
+  private static final EventType GATEWAY_EVENT = EventType.getEventType(GatewayCallEvent.class);
+
+  private final long thresholdNanos = Tracing.getThresholdNanos();
+
+  @Override
+  public StoreSpan startStoreOperation(String group, String operation) {
+    if (!STORE_EVENT.isEnabled()) {
+      return null;
+    }
+    return new JfrStoreSpan(group, operation);
+  }
+
+  @Override
+  public GatewaySpan startGatewayCall() {
+    if (!GATEWAY_EVENT.isEnabled()) {
+      return null;
+    }
+    return new JfrGatewaySpan();
+  }
+
+  private final class JfrStoreSpan implements StoreSpan {
+    private final StoreOperationEvent event = new StoreOperationEvent();
+    private final long start = System.nanoTime();
+
+    JfrStoreSpan(String group, String operation) {
+      event.store = group;
+      event.operation = operation;
+      event.begin();
+    }
+
+    @Override
+    public void setKeys(Object startKey, Object endKey) {
+      event.startKey = startKey == null ? null : startKey.toString();
+      event.endKey = endKey == null ? null : endKey.toString();
+    }
+
+    @Override
+    public void setFields(String[] fields) {
+      event.fields = fields == null ? "" : String.join(",", fields);
+    }
+
+    @Override
+    public void addRecord(long bytes) {
+      event.records++;
+      event.bytes += bytes;
+    }
+
+    @Override
+    public void end(boolean failed) {
+      event.end();
+      if (System.nanoTime() - start >= thresholdNanos && event.shouldCommit()) {
+        event.failed = failed;
+        event.commit();
+      }
+    }
+  }
+
+  private final class JfrGatewaySpan implements GatewaySpan {
+    private final GatewayCallEvent event = new GatewayCallEvent();
+    private final long start = System.nanoTime();
+
+    JfrGatewaySpan() {
+      event.begin();
+    }
+
+    @Override
+    public void end(String target, String method, boolean failed) {
+      event.end();
+      if (System.nanoTime() - start >= thresholdNanos && event.shouldCommit()) {
+        event.target = target;
+        event.method = method;
+        event.failed = failed;
+        event.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A store call made through a traced Gora store. The gora.trace.threshold.ms
+ * filter applies before JFR's own threshold, which recordings can raise.
+ */
+@Name("org.apache.gora.StoreOperation")
+@Label("Store Operation")
+@Category({ "Gora" })
+@Description("Get, put, delete, flush or query of a Gora data store")
+@StackTrace(false)
+@Threshold("0 ms")
+public class StoreOperationEvent extends Event {
+
+  @Label("Store")
+  @Description("Store type and persistent class")
+  String store;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Start Key")
+  @Description("Key of a single key call or start of a query range")
+  String startKey;
+
+  @Label("End Key")
+  String endKey;
+
+  @Label("Fields")
+  @Description("Projected fields, empty for all")
+  String fields;
+
+  @Label("Records")
+  long records;
+
+  @Label("Bytes")
+  @Description("Estimated serialized size of the records")
+  @DataAmount
+  long bytes;
+
+  @Label("Failed")
+  boolean failed;
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Keeps the {@link RecordAggregates} of a store up to date with the puts
+ * and deletes made through it, whoever makes them: a Jython binding, or a
+ * Py4j client writing through the store it was handed.
+ *
+ * A put that changes an aggregated field, and every delete, first reads
+ * the aggregated fields of the stored version, whose values it takes out
+ * of the aggregates: one get per write, in place of keeping every value on
+ * the heap. The writes of a key are serialized over the read and the write.
+ * A range delete does not know the values it removes, and rebuilds the
+ * aggregates with a scan; writes wait for the rebuild, which would
+ * otherwise reset the aggregates over the values they took in. The
+ * aggregates are saved after each flush.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class AggregatingDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private static final int STRIPES = 64;
+
+  private final RecordAggregates<K, T> aggregates;
+  private final String[] fields;
+  private final Object[] stripes = new Object[STRIPES];
+  private final ReadWriteLock rebuilding;
+
+  public AggregatingDataStore(DataStore<K, T> delegate,
+      RecordAggregates<K, T> aggregates) {
+    super(delegate);
+    this.aggregates = aggregates;
+    this.fields = aggregates.getFields();
+    this.rebuilding = aggregates.getRebuildLock();
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Object();
+    }
+  }
+
+  /**
+   * Aggregates the fields of a store configured in the properties, unless
+   * none is or the store is aggregated already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> aggregate(
+      DataStore<K, T> store, Properties properties) {
+    if (isWrappedBy(store, AggregatingDataStore.class)) {
+      return store;
+    }
+    RecordAggregates<K, T> aggregates;
+    try {
+      aggregates = new RecordAggregates<K, T>(store, properties);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot open the aggregates of "
+          + Metrics.group(store), e);
+    }
+    return aggregates.isEmpty() ? store
+        : new AggregatingDataStore<K, T>(store, aggregates);
+  }
+
+  public RecordAggregates<K, T> getAggregates() {
+    return aggregates;
+  }
+
+  /**
+   * Maintains the aggregates of this store through the writes made to
+   * another one next to it, such as a store of another consistency level.
+   * @param store
+   * @return the store, aggregating its puts and deletes
+   */
+  public DataStore<K, T> aggregating(DataStore<K, T> store) {
+    return new ForwardingDataStore<K, T>(store) {
+      @Override
+      public void put(K key, T obj) {
+        AggregatingDataStore.this.put(delegate, key, obj);
+      }
+
+      @Override
+      public boolean delete(K key) {
+        return AggregatingDataStore.this.delete(delegate, key);
+      }
+
+      @Override
+      public long deleteByQuery(Query<K, T> query) {
+        return AggregatingDataStore.this.deleteByQuery(delegate, query);
+      }
+    };
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    put(delegate, key, obj);
+  }
+
+  @Override
+  public boolean delete(K key) {
+    return delete(delegate, key);
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    return deleteByQuery(delegate, query);
+  }
+
+  private void put(DataStore<K, T> store, K key, T obj) {
+    if (!aggregates.isAffectedBy(obj)) {
+      store.put(key, obj);
+      return;
+    }
+    rebuilding.readLock().lock();
+    try {
+      synchronized (stripe(key)) {
+        T old = store.get(key, fields);
+        store.put(key, obj);
+        aggregates.update(old, obj);
+      }
+    } finally {
+      rebuilding.readLock().unlock();
+    }
+  }
+
+  private boolean delete(DataStore<K, T> store, K key) {
+    rebuilding.readLock().lock();
+    try {
+      synchronized (stripe(key)) {
+        T old = store.get(key, fields);
+        boolean deleted = store.delete(key);
+        if (old != null) {
+          aggregates.remove(old);
+        }
+        return deleted;
+      }
+    } finally {
+      rebuilding.readLock().unlock();
+    }
+  }
+
+  private long deleteByQuery(DataStore<K, T> store, Query<K, T> query) {
+    rebuilding.writeLock().lock();
+    try {
+      long deleted = store.deleteByQuery(query);
+      aggregates.rebuild();
+      return deleted;
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot rebuild the aggregates of "
+          + Metrics.group(this), e);
+    } finally {
+      rebuilding.writeLock().unlock();
+    }
+  }
+
+  private Object stripe(K key) {
+    return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+  }
+
+  @Override
+  public void truncateSchema() {
+    rebuilding.writeLock().lock();
+    try {
+      delegate.truncateSchema();
+      aggregates.clear();
+    } finally {
+      rebuilding.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteSchema() {
+    rebuilding.writeLock().lock();
+    try {
+      delegate.deleteSchema();
+      aggregates.clear();
+    } finally {
+      rebuilding.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Flushes the store, then saves the aggregates, so saved files never
+   * count writes the store may have lost.
+   */
+  @Override
+  public void flush() {
+    delegate.flush();
+    try {
+      aggregates.save();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot save the aggregates of "
+          + Metrics.group(this), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      delegate.close();
+    } finally {
+      try {
+        aggregates.close();
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot save the aggregates of "
+            + Metrics.group(this), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Approximate number of distinct values of a field, in a
+ * {@link HyperLogLog} of fixed size per partition, merged register by
+ * register. Null values are not counted.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class DistinctCount<K, T extends Persistent> implements
+    ScanOperator<K, T, HyperLogLog> {
+
+  private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 1099511628211L;
+
+  private final String field;
+
+  public DistinctCount(String field) {
+    this.field = field;
+  }
+
+  @Override
+  public String[] getFields() {
+    return new String[] { field };
+  }
+
+  @Override
+  public HyperLogLog newPartial() {
+    return new HyperLogLog();
+  }
+
+  @Override
+  public void add(HyperLogLog partial, K key, T record) {
+    Object value = ScanAggregations.comparable(
+        record.get(record.getSchema().getField(field).pos()));
+    if (value != null) {
+      partial.addHash(hash(value));
+    }
+  }
+
+  @Override
+  public HyperLogLog merge(HyperLogLog partial, HyperLogLog other) {
+    partial.merge(other);
+    return partial;
+  }
+
+  /**
+   * Numbers hash by their double value, like the distinct counts of
+   * {@link FieldAggregate}, anything else by its text.
+   */
+  private static long hash(Object value) {
+    if (value instanceof Number) {
+      return HyperLogLog.hash(Double.doubleToLongBits(
+          ((Number) value).doubleValue()));
+    }
+    long hash = FNV_OFFSET;
+    for (byte b : value.toString().getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xFF;
+      hash *= FNV_PRIME;
+    }
+    return HyperLogLog.hash(hash);
+  }
+}
@@ -0,0 +1,402 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Count, sum, mean, min, max, quantiles and distinct values of a numeric
+ * field, kept up to date as records are written and deleted, so reading
+ * them costs nothing like a scan.
+ *
+ * Only summaries are kept, whatever the number of records: an update is
+ * given the previous version of the record, whose value it takes out of
+ * the count, sum and {@link QuantileSketch}. The min and max are exact as
+ * values are added; once the value of one of them is taken out, they are
+ * read from the quantile sketch, within its error, until the aggregate is
+ * rebuilt. The distinct count is a {@link HyperLogLog}, which cannot forget
+ * values: between rebuilds it counts every value written since. Null values
+ * are not aggregated.
+ *
+ * The summaries are saved to a local file, rewritten atomically by
+ * {@link #save()}, in a size that does not grow with the records.
+ */
+public class FieldAggregate implements FieldAggregateMBean {
+
+  private static final int MAGIC = 0x47414702;
+
+  private final String field;
+  private final int position;
+  private final File file;
+  private final Object saveLock = new Object();
+  private QuantileSketch quantiles = new QuantileSketch();
+  private HyperLogLog distinct = new HyperLogLog();
+  private long count;
+  private double sum;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  private boolean exactExtremes = true;
+  private long version;
+  private long savedVersion;
+
+  /**
+   * @param field an int, long, float or double field, or a nullable one
+   * @param file aggregate file, loaded by {@link #load()}, or null for an
+   *          aggregate that is not saved
+   */
+  public FieldAggregate(Schema.Field field, File file) {
+    if (!isNumeric(field.schema())) {
+      throw new IllegalArgumentException("Cannot aggregate fields of type "
+          + field.schema());
+    }
+    this.field = field.name();
+    this.position = field.pos();
+    this.file = file;
+  }
+
+  private static boolean isNumeric(Schema schema) {
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      case UNION:
+        // nullable fields: a union of null and one numeric type
+        List<Schema> branches = new ArrayList<Schema>();
+        for (Schema branch : schema.getTypes()) {
+          if (branch.getType() != Schema.Type.NULL) {
+            branches.add(branch);
+          }
+        }
+        return branches.size() == 1 && isNumeric(branches.get(0));
+      default:
+        return false;
+    }
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  int getPosition() {
+    return position;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Whether a write of the record can change the aggregated value, i.e. the
+   * field is dirty.
+   * @param record
+   * @return
+   */
+  public boolean isAffectedBy(Persistent record) {
+    return record.isDirty(position);
+  }
+
+  /**
+   * Takes the value of the field of a record written in place of the value
+   * of its previous version.
+   * @param old the previous version, null if there was none
+   * @param record
+   */
+  public synchronized void update(Persistent old, Persistent record) {
+    Double previous = old == null ? null : valueOf(old.get(position));
+    Double value = valueOf(record.get(position));
+    if (previous == null ? value == null : previous.equals(value)) {
+      return;
+    }
+    if (previous != null) {
+      retract(previous);
+    }
+    if (value != null) {
+      add(value);
+    }
+    version++;
+  }
+
+  /**
+   * Takes out the value of a deleted record.
+   * @param old
+   */
+  public synchronized void remove(Persistent old) {
+    Double previous = valueOf(old.get(position));
+    if (previous != null) {
+      retract(previous);
+      version++;
+    }
+  }
+
+  /**
+   * Adds a value, e.g. of a record scanned to rebuild the aggregate.
+   * @param value
+   */
+  synchronized void add(double value) {
+    count++;
+    sum += value;
+    quantiles.add(value);
+    distinct.addHash(HyperLogLog.hash(Double.doubleToLongBits(value)));
+    min = Double.isNaN(min) ? value : Math.min(min, value);
+    max = Double.isNaN(max) ? value : Math.max(max, value);
+  }
+
+  private void retract(double value) {
+    count--;
+    sum -= value;
+    quantiles.remove(value);
+    if (count == 0) {
+      clearValues();
+    } else if (!exactExtremes || value <= min || value >= max) {
+      exactExtremes = false;
+      min = quantiles.getMin();
+      max = quantiles.getMax();
+    }
+  }
+
+  static Double valueOf(Object value) {
+    return value == null ? null : ((Number) value).doubleValue();
+  }
+
+  private void clearValues() {
+    count = 0;
+    sum = 0;
+    min = Double.NaN;
+    max = Double.NaN;
+    exactExtremes = true;
+    quantiles.clear();
+    distinct.clear();
+  }
+
+  /**
+   * Adds the values of an aggregate of other records, e.g. of another
+   * partition.
+   * @param other
+   */
+  synchronized void merge(FieldAggregate other) {
+    synchronized (other) {
+      count += other.count;
+      sum += other.sum;
+      quantiles.merge(other.quantiles);
+      distinct.merge(other.distinct);
+      if (!Double.isNaN(other.min)) {
+        min = Double.isNaN(min) ? other.min : Math.min(min, other.min);
+        max = Double.isNaN(max) ? other.max : Math.max(max, other.max);
+      }
+      exactExtremes &= other.exactExtremes;
+    }
+  }
+
+  /**
+   * Replaces the values, e.g. with those of a scan.
+   * @param values
+   */
+  public synchronized void reset(FieldAggregate values) {
+    clearValues();
+    merge(values);
+    version++;
+  }
+
+  /**
+   * Drops every value.
+   */
+  public synchronized void clear() {
+    clearValues();
+    version++;
+  }
+
+  @Override
+  public synchronized long getCount() {
+    return count;
+  }
+
+  @Override
+  public synchronized double getSum() {
+    return sum;
+  }
+
+  /**
+   * @return NaN without values
+   */
+  @Override
+  public synchronized double getMean() {
+    return count == 0 ? Double.NaN : sum / count;
+  }
+
+  /**
+   * @return NaN without values
+   * @see #isExactExtremes()
+   */
+  @Override
+  public synchronized double getMin() {
+    return min;
+  }
+
+  /**
+   * @return NaN without values
+   * @see #isExactExtremes()
+   */
+  @Override
+  public synchronized double getMax() {
+    return max;
+  }
+
+  /**
+   * @return false once the min or max comes from the quantile sketch
+   */
+  public synchronized boolean isExactExtremes() {
+    return exactExtremes;
+  }
+
+  /**
+   * @param quantile between 0 and 1
+   * @return within {@link QuantileSketch#DEFAULT_ERROR} of the true value,
+   *         NaN without values
+   */
+  public synchronized double getQuantile(double quantile) {
+    return quantiles.getQuantile(quantile);
+  }
+
+  @Override
+  public double getMedian() {
+    return getQuantile(0.5);
+  }
+
+  @Override
+  public double getP95() {
+    return getQuantile(0.95);
+  }
+
+  @Override
+  public double getP99() {
+    return getQuantile(0.99);
+  }
+
+  @Override
+  public synchronized long getDistinct() {
+    return count == 0 ? 0 : distinct.cardinality();
+  }
+
+  /**
+   * Loads the aggregate file.
+   * @return false if there is no file yet
+   * @throws IOException
+   */
+  public boolean load() throws IOException {
+    if (!file.exists()) {
+      return false;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || !field.equals(in.readUTF())) {
+        throw new IOException(file + " is not an aggregate of " + field);
+      }
+      synchronized (this) {
+        count = in.readLong();
+        sum = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+        exactExtremes = in.readBoolean();
+        quantiles = QuantileSketch.read(in);
+        distinct = HyperLogLog.read(in);
+        version++;
+        savedVersion = version;
+      }
+      return true;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Saves the summaries if they changed since the last save. They are
+   * written to memory under the lock and to the file outside it.
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    synchronized (saveLock) {
+      saveValues();
+    }
+  }
+
+  private void saveValues() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    long saving;
+    synchronized (this) {
+      if (version == savedVersion) {
+        return;
+      }
+      saving = version;
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeUTF(field);
+      out.writeLong(count);
+      out.writeDouble(sum);
+      out.writeDouble(min);
+      out.writeDouble(max);
+      out.writeBoolean(exactExtremes);
+      quantiles.write(out);
+      distinct.write(out);
+      out.flush();
+    }
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    File tmp = new File(dir, file.getName() + ".tmp");
+    FileOutputStream out = new FileOutputStream(tmp);
+    try {
+      bytes.writeTo(out);
+      out.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    // updates made since the summaries were written keep the aggregate
+    // modified
+    synchronized (this) {
+      savedVersion = Math.max(savedVersion, saving);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s: count %d, sum %.2f, mean %.2f, min %.2f,"
+        + " max %.2f, median %.2f, p95 %.2f, distinct %d", field, count,
+        sum, getMean(), min, max, getMedian(), getP95(), getDistinct());
+  }
+}
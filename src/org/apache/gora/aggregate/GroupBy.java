@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Count, and sum of a numeric field, of the records of each value of a
+ * group field, in a map bounded by the number of groups. Strings are
+ * grouped by their text and numbers by their value; records without a
+ * group value are grouped under null.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class GroupBy<K, T extends Persistent> implements
+    ScanOperator<K, T, Map<Object, GroupBy.Group>> {
+
+  /**
+   * Count and sum of one group.
+   */
+  public static class Group {
+
+    private long count;
+    private double sum;
+
+    public long getCount() {
+      return count;
+    }
+
+    /** Sum of the non null values of the summed field */
+    public double getSum() {
+      return sum;
+    }
+
+    public double getMean() {
+      return count == 0 ? Double.NaN : sum / count;
+    }
+
+    @Override
+    public String toString() {
+      return "count " + count + ", sum " + sum;
+    }
+  }
+
+  private final String groupField;
+  private final String sumField;
+
+  /**
+   * @param groupField
+   * @param sumField a numeric field, or null to only count
+   */
+  public GroupBy(String groupField, String sumField) {
+    this.groupField = groupField;
+    this.sumField = sumField;
+  }
+
+  @Override
+  public String[] getFields() {
+    return sumField == null ? new String[] { groupField }
+        : new String[] { groupField, sumField };
+  }
+
+  @Override
+  public Map<Object, Group> newPartial() {
+    return new HashMap<Object, Group>();
+  }
+
+  @Override
+  public void add(Map<Object, Group> partial, K key, T record) {
+    Object group = ScanAggregations.comparable(
+        record.get(record.getSchema().getField(groupField).pos()));
+    Group totals = partial.get(group);
+    if (totals == null) {
+      totals = new Group();
+      partial.put(group, totals);
+    }
+    totals.count++;
+    if (sumField != null) {
+      Object value = record.get(record.getSchema().getField(sumField).pos());
+      if (value != null) {
+        totals.sum += ((Number) value).doubleValue();
+      }
+    }
+  }
+
+  @Override
+  public Map<Object, Group> merge(Map<Object, Group> partial,
+      Map<Object, Group> other) {
+    for (Map.Entry<Object, Group> entry : other.entrySet()) {
+      Group totals = partial.get(entry.getKey());
+      if (totals == null) {
+        partial.put(entry.getKey(), entry.getValue());
+      } else {
+        totals.count += entry.getValue().count;
+        totals.sum += entry.getValue().sum;
+      }
+    }
+    return partial;
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Quantiles of a multiset of numbers within a relative error, from
+ * logarithmic buckets in the manner of DDSketch: a value v is counted in
+ * bucket ceil(log(|v|) / log(gamma)) with gamma = (1 + error) / (1 - error),
+ * so any quantile is returned within the error of the true value. Unlike
+ * most sketches values can be removed as well as added, which is what an
+ * aggregate maintained over puts and deletes needs. The number of buckets
+ * grows with the log of the range of the values, not with their number.
+ * Not thread safe.
+ */
+public class QuantileSketch {
+
+  public static final double DEFAULT_ERROR = 0.01;
+
+  /** Values closer to zero than this are counted as zero */
+  private static final double MIN_MAGNITUDE = 1e-9;
+
+  private final double error;
+  private final double logGamma;
+  private final TreeMap<Integer, Long> positive = new TreeMap<Integer, Long>();
+  private final TreeMap<Integer, Long> negative = new TreeMap<Integer, Long>();
+  private long zeros;
+  private long count;
+
+  public QuantileSketch() {
+    this(DEFAULT_ERROR);
+  }
+
+  /**
+   * @param error relative error of the quantiles, e.g. 0.01
+   */
+  public QuantileSketch(double error) {
+    if (error <= 0 || error >= 1) {
+      throw new IllegalArgumentException("Error must be between 0 and 1");
+    }
+    this.error = error;
+    this.logGamma = Math.log((1 + error) / (1 - error));
+  }
+
+  public void add(double value) {
+    update(value, 1);
+  }
+
+  /**
+   * Removes a value added before.
+   * @param value
+   */
+  public void remove(double value) {
+    update(value, -1);
+  }
+
+  private void update(double value, long delta) {
+    count += delta;
+    if (Math.abs(value) < MIN_MAGNITUDE) {
+      zeros += delta;
+      return;
+    }
+    TreeMap<Integer, Long> buckets = value > 0 ? positive : negative;
+    int bucket = (int) Math.ceil(Math.log(Math.abs(value)) / logGamma);
+    Long n = buckets.get(bucket);
+    long updated = (n == null ? 0 : n) + delta;
+    if (updated <= 0) {
+      buckets.remove(bucket);
+    } else {
+      buckets.put(bucket, updated);
+    }
+  }
+
+  /**
+   * Adds the values of another sketch with the same error.
+   * @param other
+   */
+  public void merge(QuantileSketch other) {
+    if (other.error != error) {
+      throw new IllegalArgumentException("Cannot merge sketches of error "
+          + other.error + " into " + error);
+    }
+    merge(other.positive, positive);
+    merge(other.negative, negative);
+    zeros += other.zeros;
+    count += other.count;
+  }
+
+  private static void merge(TreeMap<Integer, Long> from, TreeMap<Integer, Long> to) {
+    for (Map.Entry<Integer, Long> entry : from.entrySet()) {
+      Long n = to.get(entry.getKey());
+      to.put(entry.getKey(), (n == null ? 0 : n) + entry.getValue());
+    }
+  }
+
+  /**
+   * @param quantile between 0 and 1, e.g. 0.5 for the median
+   * @return NaN if the sketch is empty
+   */
+  public double getQuantile(double quantile) {
+    if (count <= 0) {
+      return Double.NaN;
+    }
+    long rank = (long) Math.floor(Math.max(0, Math.min(1, quantile)) * (count - 1));
+    long seen = 0;
+    // negative values from the largest magnitude down
+    for (Map.Entry<Integer, Long> entry : negative.descendingMap().entrySet()) {
+      seen += entry.getValue();
+      if (seen > rank) {
+        return -value(entry.getKey());
+      }
+    }
+    seen += zeros;
+    if (seen > rank) {
+      return 0;
+    }
+    for (Map.Entry<Integer, Long> entry : positive.entrySet()) {
+      seen += entry.getValue();
+      if (seen > rank) {
+        return value(entry.getKey());
+      }
+    }
+    return value(positive.lastKey());
+  }
+
+  /**
+   * The value of a bucket: equally far, relatively, from both its bounds.
+   */
+  private double value(int bucket) {
+    double gamma = Math.exp(logGamma);
+    return 2 * Math.exp(bucket * logGamma) / (gamma + 1);
+  }
+
+  /**
+   * Lowest value, within the error.
+   * @return NaN if the sketch is empty
+   */
+  public double getMin() {
+    return getQuantile(0);
+  }
+
+  /**
+   * Highest value, within the error.
+   * @return NaN if the sketch is empty
+   */
+  public double getMax() {
+    return getQuantile(1);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getError() {
+    return error;
+  }
+
+  public void clear() {
+    positive.clear();
+    negative.clear();
+    zeros = 0;
+    count = 0;
+  }
+
+  /**
+   * Writes the buckets, read back by {@link #read(DataInput)}.
+   * @param out
+   * @throws IOException
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeDouble(error);
+    out.writeLong(zeros);
+    write(positive, out);
+    write(negative, out);
+  }
+
+  private static void write(TreeMap<Integer, Long> buckets, DataOutput out)
+      throws IOException {
+    out.writeInt(buckets.size());
+    for (Map.Entry<Integer, Long> entry : buckets.entrySet()) {
+      out.writeInt(entry.getKey());
+      out.writeLong(entry.getValue());
+    }
+  }
+
+  /**
+   * @param in
+   * @return the sketch written by {@link #write(DataOutput)}
+   * @throws IOException
+   */
+  public static QuantileSketch read(DataInput in) throws IOException {
+    QuantileSketch sketch = new QuantileSketch(in.readDouble());
+    sketch.zeros = in.readLong();
+    sketch.count = sketch.zeros + read(sketch.positive, in)
+        + read(sketch.negative, in);
+    return sketch;
+  }
+
+  private static long read(TreeMap<Integer, Long> buckets, DataInput in)
+      throws IOException {
+    long count = 0;
+    for (int n = in.readInt(); n > 0; n--) {
+      int bucket = in.readInt();
+      long values = in.readLong();
+      buckets.put(bucket, values);
+      count += values;
+    }
+    return count;
+  }
+}
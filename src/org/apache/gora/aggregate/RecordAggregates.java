@@ -0,0 +1,382 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.avro.Schema;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.PartitionQuery;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates of the numeric fields configured for one persistent class.
+ *
+ * Aggregates are enabled in gora.properties with the simple class name and
+ * a list of fields, and saved under an aggregate directory:
+ * <pre>
+ * gora.aggregate.Employee=salary,dateOfBirth
+ * gora.aggregate.dir=gora-aggregate
+ * gora.aggregate.save.interval.ms=60000
+ * gora.aggregate.rebuild.threads=4
+ * </pre>
+ * The file of a field is &lt;dir&gt;/&lt;store&gt;.&lt;class&gt;.&lt;field&gt;.agg,
+ * e.g. gora-aggregate/CassandraStore.Employee.salary.agg. The aggregates
+ * are kept up to date by an {@link AggregatingDataStore}, saved after each
+ * flush of the store, and in the background every save interval (0 to
+ * only save on flush). Missing files
+ * are rebuilt when the aggregates are opened, with one scan of every
+ * partition of the store, run in parallel. Each aggregate is registered as
+ * the MBean org.apache.gora:type=Aggregates,group=&lt;group&gt;,field=&lt;field&gt;.
+ * Background saves can include writes the store has not flushed yet; after
+ * a crash, {@link #rebuild()} brings the aggregates back in line with it.
+ * The files are local: only one process should write through a binding
+ * with aggregates.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class RecordAggregates<K, T extends Persistent> {
+
+  public static final String PROPERTY_PREFIX = "gora.aggregate.";
+  public static final String DIR_KEY = "gora.aggregate.dir";
+  public static final String DEFAULT_DIR = "gora-aggregate";
+  public static final String SAVE_INTERVAL_KEY = "gora.aggregate.save.interval.ms";
+  public static final String REBUILD_THREADS_KEY = "gora.aggregate.rebuild.threads";
+
+  private static final Logger LOG = LoggerFactory.getLogger(RecordAggregates.class);
+
+  private final DataStore<K, T> store;
+  private final List<FieldAggregate> aggregates = new ArrayList<FieldAggregate>();
+  private final int rebuildThreads;
+  private final ReadWriteLock rebuilding = new ReentrantReadWriteLock();
+  private ScheduledExecutorService saver;
+
+  /**
+   * Opens the aggregates configured for the persistent class of the store.
+   * @param store
+   * @param properties usually DataStoreFactory.createProps()
+   * @throws IOException if an aggregate file cannot be read or rebuilt
+   */
+  public RecordAggregates(DataStore<K, T> store, Properties properties)
+      throws IOException {
+    this.store = store;
+    this.rebuildThreads = Integer.parseInt(properties.getProperty(
+        REBUILD_THREADS_KEY, String.valueOf(Runtime.getRuntime().availableProcessors())));
+    Class<T> persistentClass = store.getPersistentClass();
+    String fields = properties.getProperty(PROPERTY_PREFIX
+        + persistentClass.getSimpleName());
+    if (fields == null || fields.trim().isEmpty()) {
+      return;
+    }
+    Schema schema = schemaOf(persistentClass);
+    File dir = new File(properties.getProperty(DIR_KEY, DEFAULT_DIR));
+    List<FieldAggregate> missing = new ArrayList<FieldAggregate>();
+    for (String name : fields.split(",")) {
+      Schema.Field field = schema.getField(name.trim());
+      if (field == null) {
+        throw new IllegalArgumentException("Unknown field " + name.trim()
+            + " in " + PROPERTY_PREFIX + persistentClass.getSimpleName());
+      }
+      FieldAggregate aggregate = new FieldAggregate(field, new File(dir,
+          Metrics.group(store) + "." + field.name() + ".agg"));
+      if (!aggregate.load()) {
+        missing.add(aggregate);
+      }
+      aggregates.add(aggregate);
+      if (Metrics.isEnabled()) {
+        Metrics.register(aggregate, "Aggregates", Metrics.group(store),
+            "field", field.name());
+      }
+    }
+    if (!missing.isEmpty()) {
+      rebuild(missing);
+    }
+    long interval = Long.parseLong(properties.getProperty(SAVE_INTERVAL_KEY, "60000"));
+    if (interval > 0) {
+      startSaver(interval);
+    }
+  }
+
+  private static Schema schemaOf(Class<?> persistentClass) {
+    try {
+      return (Schema) ReflectionUtils.getStaticField(persistentClass, "SCHEMA$");
+    } catch (Exception e) {
+      throw new IllegalArgumentException("No schema found for "
+          + persistentClass.getName(), e);
+    }
+  }
+
+  private void startSaver(long interval) {
+    saver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "gora-aggregate-save");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    saver.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          save();
+        } catch (IOException e) {
+          LOG.warn("Cannot save the aggregates of "
+              + store.getPersistentClass().getSimpleName(), e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public boolean isEmpty() {
+    return aggregates.isEmpty();
+  }
+
+  public List<FieldAggregate> getAggregates() {
+    return aggregates;
+  }
+
+  /**
+   * @return the aggregated fields, to read the previous version of a record
+   */
+  public String[] getFields() {
+    String[] fields = new String[aggregates.size()];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = aggregates.get(i).getField();
+    }
+    return fields;
+  }
+
+  /**
+   * @param field
+   * @return the aggregate of the field
+   * @throws IllegalArgumentException if the field is not aggregated
+   */
+  public FieldAggregate get(String field) {
+    for (FieldAggregate aggregate : aggregates) {
+      if (aggregate.getField().equals(field)) {
+        return aggregate;
+      }
+    }
+    throw new IllegalArgumentException("Field " + field + " is not aggregated");
+  }
+
+  /**
+   * @param record
+   * @return whether a write of the record changes an aggregated field
+   */
+  public boolean isAffectedBy(T record) {
+    for (FieldAggregate aggregate : aggregates) {
+      if (aggregate.isAffectedBy(record)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Updates the aggregates whose field the written record changes.
+   * @param old the previous version of the record, null if there was none
+   * @param record
+   */
+  public void update(T old, T record) {
+    for (FieldAggregate aggregate : aggregates) {
+      if (aggregate.isAffectedBy(record)) {
+        aggregate.update(old, record);
+      }
+    }
+  }
+
+  /**
+   * @param old the deleted record
+   */
+  public void remove(T old) {
+    for (FieldAggregate aggregate : aggregates) {
+      aggregate.remove(old);
+    }
+  }
+
+  /**
+   * Empties every aggregate, e.g. once the schema is truncated.
+   */
+  public void clear() {
+    for (FieldAggregate aggregate : aggregates) {
+      aggregate.clear();
+    }
+  }
+
+  /**
+   * Saves the changed aggregates.
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    for (FieldAggregate aggregate : aggregates) {
+      aggregate.save();
+    }
+  }
+
+  /**
+   * Rebuilds every aggregate from a scan of the store and saves it. The
+   * writes of {@link AggregatingDataStore} wait until it ends, as the reset
+   * that ends it would drop what they took in during the scan.
+   * @throws IOException
+   */
+  public void rebuild() throws IOException {
+    rebuilding.writeLock().lock();
+    try {
+      rebuild(aggregates);
+    } finally {
+      rebuilding.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Held for reading by each write over its read of the stored version and
+   * its update, and for writing by a rebuild.
+   */
+  ReadWriteLock getRebuildLock() {
+    return rebuilding;
+  }
+
+  /**
+   * Scans the partitions of the store in parallel, each into aggregates of
+   * its own, and resets the aggregates with their merge.
+   */
+  private void rebuild(List<FieldAggregate> rebuilt) throws IOException {
+    if (rebuilt.isEmpty()) {
+      return;
+    }
+    String[] fields = new String[rebuilt.size()];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = rebuilt.get(i).getField();
+    }
+    Query<K, T> query = store.newQuery();
+    query.setFields(fields);
+    List<PartitionQuery<K, T>> partitions = store.getPartitions(query);
+    List<FieldAggregate> merged = newAggregates(rebuilt);
+    ExecutorService pool = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(rebuildThreads, partitions.size())));
+    try {
+      List<Future<List<FieldAggregate>>> scans =
+          new ArrayList<Future<List<FieldAggregate>>>();
+      for (final PartitionQuery<K, T> partition : partitions) {
+        final List<FieldAggregate> scanned = rebuilt;
+        scans.add(pool.submit(new Callable<List<FieldAggregate>>() {
+          @Override
+          public List<FieldAggregate> call() throws Exception {
+            return scan(partition, scanned);
+          }
+        }));
+      }
+      for (Future<List<FieldAggregate>> scan : scans) {
+        List<FieldAggregate> partial = scan.get();
+        for (int i = 0; i < partial.size(); i++) {
+          merged.get(i).merge(partial.get(i));
+        }
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Cannot scan " + store.getSchemaName()
+          + " to rebuild its aggregates", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted rebuilding the aggregates of "
+          + store.getSchemaName(), e);
+    } finally {
+      pool.shutdownNow();
+    }
+    for (int i = 0; i < rebuilt.size(); i++) {
+      rebuilt.get(i).reset(merged.get(i));
+      rebuilt.get(i).save();
+    }
+  }
+
+  /**
+   * Empty aggregates of the same fields, not saved.
+   */
+  private List<FieldAggregate> newAggregates(List<FieldAggregate> of) {
+    Schema schema = schemaOf(store.getPersistentClass());
+    List<FieldAggregate> aggregates = new ArrayList<FieldAggregate>();
+    for (FieldAggregate aggregate : of) {
+      aggregates.add(new FieldAggregate(schema.getField(aggregate.getField()), null));
+    }
+    return aggregates;
+  }
+
+  private List<FieldAggregate> scan(Query<K, T> query,
+      List<FieldAggregate> scanned) throws Exception {
+    List<FieldAggregate> values = newAggregates(scanned);
+    Result<K, T> result;
+    try {
+      result = store.execute(query);
+    } catch (NoSuchElementException e) {
+      // MemStore cannot run an unbounded query over an empty map
+      return values;
+    }
+    if (result == null) {
+      return values;
+    }
+    try {
+      while (result.next()) {
+        T record = result.get();
+        for (int i = 0; i < scanned.size(); i++) {
+          Double value = FieldAggregate.valueOf(record.get(
+              scanned.get(i).getPosition()));
+          if (value != null) {
+            values.get(i).add(value);
+          }
+        }
+      }
+    } finally {
+      result.close();
+    }
+    return values;
+  }
+
+  /**
+   * Stops the background saves and saves the aggregates.
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (saver != null) {
+      saver.shutdownNow();
+    }
+    save();
+  }
+}
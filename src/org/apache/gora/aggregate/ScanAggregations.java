@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.PartitionQuery;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.trace.Tracing;
+import org.apache.gora.utils.GoraUtils;
+
+/**
+ * Runs {@link ScanOperator}s over a key range, as
+ * {@link GoraUtils#queryRequests} does, but without bringing the records
+ * together: the range is cut into the partitions of the store, each scanned
+ * by a thread of its own with only the fields the operator reads, and
+ * folded into a partial result. The partials are merged as the scans end,
+ * so memory is bounded by the partials, not by the records scanned.
+ */
+public class ScanAggregations {
+
+  private ScanAggregations() {
+  }
+
+  /**
+   * @param store
+   * @param startKey null for unbounded
+   * @param endKey null for unbounded
+   * @param operator
+   * @return the merged result of all partitions
+   * @throws IOException
+   */
+  public static <K, T extends Persistent, A> A run(DataStore<K, T> store,
+      K startKey, K endKey, ScanOperator<K, T, A> operator) throws IOException {
+    return run(store, startKey, endKey, operator,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param store
+   * @param startKey null for unbounded
+   * @param endKey null for unbounded
+   * @param operator
+   * @param threads partitions scanned at once
+   * @return the merged result of all partitions
+   * @throws IOException
+   */
+  public static <K, T extends Persistent, A> A run(final DataStore<K, T> store,
+      K startKey, K endKey, final ScanOperator<K, T, A> operator, int threads)
+      throws IOException {
+    Query<K, T> query = GoraUtils.newRangeQuery(store, startKey, endKey);
+    query.setFields(operator.getFields());
+    List<PartitionQuery<K, T>> partitions = store.getPartitions(query);
+    ExecutorService pool = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, partitions.size())));
+    try {
+      List<Future<A>> partials = new ArrayList<Future<A>>();
+      for (final PartitionQuery<K, T> partition : partitions) {
+        // some stores (MemStore) return partitions without the requested
+        // bounds; clamp them so the range is honored
+        if (partition.getStartKey() == null) {
+          partition.setStartKey(startKey);
+        }
+        if (partition.getEndKey() == null) {
+          partition.setEndKey(endKey);
+        }
+        partials.add(pool.submit(new Callable<A>() {
+          @Override
+          public A call() throws Exception {
+            return scan(store, partition, operator);
+          }
+        }));
+      }
+      A merged = operator.newPartial();
+      for (Future<A> partial : partials) {
+        merged = operator.merge(merged, partial.get());
+      }
+      return merged;
+    } catch (ExecutionException e) {
+      throw new IOException("Cannot scan " + store.getSchemaName(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted scanning " + store.getSchemaName(), e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static <K, T extends Persistent, A> A scan(DataStore<K, T> store,
+      Query<K, T> query, ScanOperator<K, T, A> operator) throws Exception {
+    A partial = operator.newPartial();
+    Result<K, T> result;
+    try {
+      result = Tracing.trace(store).execute(query);
+    } catch (NoSuchElementException e) {
+      // MemStore cannot run an unbounded query over an empty map
+      return partial;
+    }
+    if (result == null) {
+      return partial;
+    }
+    try {
+      while (result.next()) {
+        operator.add(partial, result.getKey(), result.get());
+      }
+    } finally {
+      result.close();
+    }
+    return partial;
+  }
+
+  /**
+   * The K records with the largest values of a field, e.g. the top earners.
+   * @param store
+   * @param startKey null for unbounded
+   * @param endKey null for unbounded
+   * @param field
+   * @param k
+   * @return largest first
+   * @throws IOException
+   */
+  public static <K, T extends Persistent> List<TopK.Entry<K>> topK(
+      DataStore<K, T> store, K startKey, K endKey, String field, int k)
+      throws IOException {
+    TopK<K, T> topK = new TopK<K, T>(field, k, true);
+    return topK.sorted(run(store, startKey, endKey, topK));
+  }
+
+  /**
+   * Count and sum of each value of a field.
+   * @param store
+   * @param startKey null for unbounded
+   * @param endKey null for unbounded
+   * @param groupField
+   * @param sumField null to only count
+   * @return
+   * @throws IOException
+   */
+  public static <K, T extends Persistent> Map<Object, GroupBy.Group> groupBy(
+      DataStore<K, T> store, K startKey, K endKey, String groupField,
+      String sumField) throws IOException {
+    return run(store, startKey, endKey, new GroupBy<K, T>(groupField, sumField));
+  }
+
+  /**
+   * Approximate number of distinct values of a field.
+   * @param store
+   * @param startKey null for unbounded
+   * @param endKey null for unbounded
+   * @param field
+   * @return
+   * @throws IOException
+   */
+  public static <K, T extends Persistent> long distinctCount(
+      DataStore<K, T> store, K startKey, K endKey, String field)
+      throws IOException {
+    return run(store, startKey, endKey, new DistinctCount<K, T>(field))
+        .cardinality();
+  }
+
+  /**
+   * A field value in a form that compares and hashes by value: text for
+   * strings and enums, Long or Double for numbers, the size for maps and
+   * arrays.
+   * @param value
+   * @return null for null
+   */
+  @SuppressWarnings("unchecked")
+  static Comparable<Object> comparable(Object value) {
+    Comparable<?> comparable;
+    if (value == null) {
+      return null;
+    } else if (value instanceof CharSequence || value instanceof Enum) {
+      comparable = value.toString();
+    } else if (value instanceof Float || value instanceof Double) {
+      comparable = ((Number) value).doubleValue();
+    } else if (value instanceof Number) {
+      comparable = ((Number) value).longValue();
+    } else if (value instanceof Map) {
+      comparable = (long) ((Map<?, ?>) value).size();
+    } else if (value instanceof Collection) {
+      comparable = (long) ((Collection<?>) value).size();
+    } else if (value instanceof Comparable) {
+      comparable = (Comparable<?>) value;
+    } else {
+      throw new IllegalArgumentException("Cannot compare values of "
+          + value.getClass().getName());
+    }
+    return (Comparable<Object>) comparable;
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Streaming aggregation over the records of a scan, run by
+ * {@link ScanAggregations} on every partition of the store in parallel:
+ * each partition folds its records into a partial result of its own, and
+ * the partials are merged at the end. A partial should stay bounded by the
+ * size of the answer (K, the groups), not by the number of records.
+ *
+ * @param <K>
+ * @param <T>
+ * @param <A> the partial, and final, result
+ */
+public interface ScanOperator<K, T extends Persistent, A> {
+
+  /**
+   * @return the fields the operator reads, so the scan only fetches them
+   */
+  String[] getFields();
+
+  A newPartial();
+
+  /**
+   * Folds a record into a partial.
+   * @param partial
+   * @param key
+   * @param record
+   */
+  void add(A partial, K key, T record);
+
+  /**
+   * @param partial
+   * @param other a partial of another partition
+   * @return partial with other merged in
+   */
+  A merge(A partial, A other);
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * The K records with the largest (or smallest) value of a field, in a
+ * bounded heap of K entries per partition. Numbers compare as numbers,
+ * strings as strings, and maps and arrays by their size, so the most linked
+ * WebPages are the top K by outlinks. Records without a value are skipped.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class TopK<K, T extends Persistent> implements
+    ScanOperator<K, T, PriorityQueue<TopK.Entry<K>>> {
+
+  /**
+   * A key and the value of the field in its record.
+   *
+   * @param <K>
+   */
+  public static class Entry<K> {
+
+    private final K key;
+    private final Comparable<Object> value;
+
+    Entry(K key, Comparable<Object> value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  private final String field;
+  private final int k;
+  private final boolean largest;
+  /** Orders entries from the first to leave the heap to the last */
+  private final Comparator<Entry<K>> eviction;
+
+  /**
+   * @param field
+   * @param k
+   * @param largest true for the largest values, false for the smallest
+   */
+  public TopK(String field, int k, final boolean largest) {
+    if (k < 1) {
+      throw new IllegalArgumentException("K must be positive");
+    }
+    this.field = field;
+    this.k = k;
+    this.largest = largest;
+    this.eviction = new Comparator<Entry<K>>() {
+      @Override
+      public int compare(Entry<K> a, Entry<K> b) {
+        int order = a.value.compareTo(b.value);
+        return largest ? order : -order;
+      }
+    };
+  }
+
+  @Override
+  public String[] getFields() {
+    return new String[] { field };
+  }
+
+  @Override
+  public PriorityQueue<Entry<K>> newPartial() {
+    return new PriorityQueue<Entry<K>>(k + 1, eviction);
+  }
+
+  @Override
+  public void add(PriorityQueue<Entry<K>> partial, K key, T record) {
+    Comparable<Object> value = ScanAggregations.comparable(
+        record.get(record.getSchema().getField(field).pos()));
+    if (value != null) {
+      offer(partial, new Entry<K>(key, value));
+    }
+  }
+
+  private void offer(PriorityQueue<Entry<K>> heap, Entry<K> entry) {
+    if (heap.size() < k) {
+      heap.add(entry);
+    } else if (eviction.compare(entry, heap.peek()) > 0) {
+      heap.poll();
+      heap.add(entry);
+    }
+  }
+
+  @Override
+  public PriorityQueue<Entry<K>> merge(PriorityQueue<Entry<K>> partial,
+      PriorityQueue<Entry<K>> other) {
+    for (Entry<K> entry : other) {
+      offer(partial, entry);
+    }
+    return partial;
+  }
+
+  /**
+   * @param heap a merged partial
+   * @return the entries, best first
+   */
+  public List<Entry<K>> sorted(PriorityQueue<Entry<K>> heap) {
+    List<Entry<K>> entries = new ArrayList<Entry<K>>(heap);
+    Collections.sort(entries, Collections.reverseOrder(eviction));
+    return entries;
+  }
+
+  public boolean isLargest() {
+    return largest;
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the batch size and flush interval of a {@link WriteBufferDataStore}
+ * from the latency and outcome of its flushes, AIMD style: a flush within
+ * the target latency adds a step to the batch size and shortens the
+ * interval by a step, a slower or failed flush halves the batch size and
+ * doubles the interval. Both stay within their bounds, so throughput
+ * settles just under the point where the store starts to slow down, and
+ * backs off quickly when it does.
+ */
+public class AdaptiveFlushController implements AdaptiveFlushControllerMBean {
+
+  /** Weight of the last flush in the moving averages */
+  private static final double SMOOTHING = 0.2;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int batchStep;
+  private final long minIntervalMs;
+  private final long maxIntervalMs;
+  private final long intervalStepMs;
+  private final long targetLatencyNanos;
+  private volatile int batchSize;
+  private volatile long intervalMs;
+  private long lastLatencyNanos;
+  private double averageLatencyNanos;
+  private double errorRate;
+  private long flushes;
+  private long failures;
+  private long recordsFlushed;
+  private long increases;
+  private long decreases;
+
+  /**
+   * Starts from the smallest batch and the longest interval, and grows
+   * from there.
+   * @param minBatchSize
+   * @param maxBatchSize
+   * @param minIntervalMs
+   * @param maxIntervalMs
+   * @param targetLatencyMs flushes slower than this are taken as congestion
+   */
+  public AdaptiveFlushController(int minBatchSize, int maxBatchSize,
+      long minIntervalMs, long maxIntervalMs, long targetLatencyMs) {
+    if (minBatchSize < 1 || maxBatchSize < minBatchSize
+        || minIntervalMs < 1 || maxIntervalMs < minIntervalMs) {
+      throw new IllegalArgumentException("Bad bounds: batch size "
+          + minBatchSize + " to " + maxBatchSize + ", interval "
+          + minIntervalMs + " to " + maxIntervalMs + " ms");
+    }
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.minIntervalMs = minIntervalMs;
+    this.maxIntervalMs = maxIntervalMs;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+    // a hundred steps from one bound to the other
+    this.batchStep = Math.max(1, (maxBatchSize - minBatchSize) / 100);
+    this.intervalStepMs = Math.max(1, (maxIntervalMs - minIntervalMs) / 100);
+    this.batchSize = minBatchSize;
+    this.intervalMs = maxIntervalMs;
+  }
+
+  /**
+   * Records a flush and adjusts the batch size and interval.
+   * @param records written by the flush
+   * @param nanos
+   * @param failed
+   */
+  public synchronized void onFlush(int records, long nanos, boolean failed) {
+    flushes++;
+    recordsFlushed += records;
+    lastLatencyNanos = nanos;
+    averageLatencyNanos = flushes == 1 ? nanos
+        : averageLatencyNanos + SMOOTHING * (nanos - averageLatencyNanos);
+    errorRate += SMOOTHING * ((failed ? 1 : 0) - errorRate);
+    if (failed) {
+      failures++;
+    }
+    if (failed || nanos > targetLatencyNanos) {
+      decreases++;
+      batchSize = Math.max(minBatchSize, batchSize / 2);
+      intervalMs = Math.min(maxIntervalMs, intervalMs * 2);
+    } else if (records * 2 >= batchSize) {
+      // only grow on flushes that filled most of the batch, or a quiet
+      // store would drift to the largest batch without being tested at it
+      increases++;
+      batchSize = Math.min(maxBatchSize, batchSize + batchStep);
+      intervalMs = Math.max(minIntervalMs, intervalMs - intervalStepMs);
+    }
+  }
+
+  @Override
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @Override
+  public long getFlushIntervalMs() {
+    return intervalMs;
+  }
+
+  @Override
+  public double getTargetLatencyMs() {
+    return targetLatencyNanos / 1e6;
+  }
+
+  @Override
+  public synchronized double getLastLatencyMs() {
+    return lastLatencyNanos / 1e6;
+  }
+
+  @Override
+  public synchronized double getAverageLatencyMs() {
+    return averageLatencyNanos / 1e6;
+  }
+
+  @Override
+  public synchronized double getErrorRate() {
+    return errorRate;
+  }
+
+  @Override
+  public synchronized long getFlushes() {
+    return flushes;
+  }
+
+  @Override
+  public synchronized long getFailures() {
+    return failures;
+  }
+
+  @Override
+  public synchronized long getRecordsFlushed() {
+    return recordsFlushed;
+  }
+
+  @Override
+  public synchronized long getIncreases() {
+    return increases;
+  }
+
+  @Override
+  public synchronized long getDecreases() {
+    return decreases;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("batch %d, interval %d ms, latency %.1f ms (target"
+        + " %.1f), error rate %.3f", batchSize, intervalMs,
+        averageLatencyNanos / 1e6, targetLatencyNanos / 1e6, errorRate);
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+/**
+ * JMX view of the current decisions of an {@link AdaptiveFlushController}
+ * and of the flushes they were made from.
+ */
+public interface AdaptiveFlushControllerMBean {
+
+  /** Buffered keys that trigger a flush */
+  int getBatchSize();
+
+  /** Longest time a write waits in the buffer */
+  long getFlushIntervalMs();
+
+  double getTargetLatencyMs();
+
+  double getLastLatencyMs();
+
+  /** Moving average of the flush latencies */
+  double getAverageLatencyMs();
+
+  /** Moving average of the failed flushes over all flushes */
+  double getErrorRate();
+
+  long getFlushes();
+
+  long getFailures();
+
+  long getRecordsFlushed();
+
+  long getIncreases();
+
+  long getDecreases();
+}
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.metrics.OperationMetrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Collapses concurrent gets of the same key and fields into one call to the
+ * store (single flight). The first caller gets from the store while callers
+ * arriving before it returns wait for its answer; once it returns the key is
+ * fetched afresh by the next caller, so nothing is cached. A put or delete
+ * detaches the gets of its key in flight once it returns, so a get that
+ * follows a write never joins a call started before it.
+ *
+ * Waiters get a deep copy of the record, as callers may modify what they
+ * get: when a call has waiters, the record is copied once before the first
+ * caller has it, and each waiter copies that snapshot. A failed get fails
+ * all its waiters. Flights are indexed by key, so a write detaches the gets
+ * of its own key only.
+ *
+ * Saved calls are counted in the {@link Metrics} operation get.coalesced of
+ * the store group, timing how long each waiter waited.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class CoalescingDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> implements StatefulDecorator<K> {
+
+  /** Whether the bindings coalesce their gets, true by default */
+  public static final String ENABLED_KEY = "gora.coalesce.gets";
+
+  /** Gets in flight by key, then by fields */
+  private final ConcurrentMap<K, ConcurrentMap<List<Object>, Flight>> inFlight =
+      new ConcurrentHashMap<K, ConcurrentMap<List<Object>, Flight>>();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong storeCalls = new AtomicLong();
+  private final OperationMetrics coalesced;
+
+  public CoalescingDataStore(DataStore<K, T> delegate) {
+    super(delegate);
+    coalesced = Metrics.isEnabled()
+        ? Metrics.get(Metrics.group(delegate), "get.coalesced") : null;
+  }
+
+  /**
+   * Wraps a store unless coalescing is disabled in the properties or the
+   * store coalesces already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> coalesce(
+      DataStore<K, T> store, Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, "true"))
+        || isWrappedBy(store, CoalescingDataStore.class)) {
+      return store;
+    }
+    return new CoalescingDataStore<K, T>(store);
+  }
+
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    calls.incrementAndGet();
+    Flight flight = new Flight(key, fields);
+    ConcurrentMap<List<Object>, Flight> flights;
+    while (true) {
+      flights = flightsOf(key);
+      Flight leader = flights.putIfAbsent(flight.fields, flight);
+      if (leader == null) {
+        break;
+      }
+      if (leader.join()) {
+        return leader.await();
+      }
+      // the leader returned meanwhile; make a call of our own
+      flights.remove(leader.fields, leader);
+    }
+    storeCalls.incrementAndGet();
+    try {
+      T value = fields == null ? delegate.get(key) : delegate.get(key, fields);
+      flight.complete(value, null);
+      return value;
+    } catch (RuntimeException e) {
+      flight.complete(null, e);
+      throw e;
+    } catch (Error e) {
+      flight.complete(null, e);
+      throw e;
+    } finally {
+      flights.remove(flight.fields, flight);
+      if (flights.isEmpty()) {
+        inFlight.remove(key, flights);
+      }
+    }
+  }
+
+  private ConcurrentMap<List<Object>, Flight> flightsOf(K key) {
+    ConcurrentMap<List<Object>, Flight> flights = inFlight.get(key);
+    if (flights == null) {
+      flights = new ConcurrentHashMap<List<Object>, Flight>(2);
+      ConcurrentMap<List<Object>, Flight> raced = inFlight.putIfAbsent(key, flights);
+      if (raced != null) {
+        flights = raced;
+      }
+    }
+    return flights;
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    try {
+      delegate.put(key, obj);
+    } finally {
+      detach(key);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    try {
+      return delegate.delete(key);
+    } finally {
+      detach(key);
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    try {
+      return delegate.deleteByQuery(query);
+    } finally {
+      inFlight.clear();
+    }
+  }
+
+  /**
+   * Lets the gets of a key in flight finish without new callers joining
+   * them, as they may have read the key before a write.
+   */
+  private void detach(K key) {
+    inFlight.remove(key);
+  }
+
+  /** Nothing is held back */
+  @Override
+  public void writeOut(K key) {
+  }
+
+  @Override
+  public void writeOutAll() {
+  }
+
+  @Override
+  public void invalidate(K key) {
+    detach(key);
+  }
+
+  @Override
+  public void invalidateAll() {
+    inFlight.clear();
+  }
+
+  /** Gets asked for */
+  public long getCalls() {
+    return calls.get();
+  }
+
+  /** Gets sent to the store */
+  public long getStoreCalls() {
+    return storeCalls.get();
+  }
+
+  /** Gets answered by a call in flight */
+  public long getSavedCalls() {
+    return calls.get() - storeCalls.get();
+  }
+
+  /** Gets being sent to the store right now */
+  public int getInFlight() {
+    int size = 0;
+    for (Map<List<Object>, Flight> flights : inFlight.values()) {
+      size += flights.size();
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d gets, %d sent to the store, %d saved",
+        getCalls(), getStoreCalls(), getSavedCalls());
+  }
+
+  private final class Flight {
+    /** The fields asked for, as a key: null for all */
+    private final List<Object> fields;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private int waiters;
+    private boolean closed;
+    private T value;
+    private Throwable failure;
+
+    Flight(K key, String[] fields) {
+      this.fields = Arrays.<Object>asList(
+          fields == null ? null : Arrays.asList(fields));
+    }
+
+    /**
+     * Waits on this call, unless it has returned already.
+     * @return false if the call returned and takes no more waiters
+     */
+    synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      waiters++;
+      return true;
+    }
+
+    /**
+     * Hands the answer to the waiters. The first caller keeps the record it
+     * got and may modify it, so the waiters share a snapshot taken before.
+     */
+    void complete(T value, Throwable failure) {
+      boolean waited;
+      synchronized (this) {
+        closed = true;
+        waited = waiters > 0;
+      }
+      this.value = waited ? copy(value) : null;
+      this.failure = failure;
+      done.countDown();
+    }
+
+    T await() {
+      long start = coalesced == null ? 0 : coalesced.start();
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            done.await();
+            break;
+          } catch (InterruptedException e) {
+            // the store call is not ours to abandon; keep waiting
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (coalesced != null) {
+          coalesced.stop(start, failure != null);
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure != null) {
+        throw (Error) failure;
+      }
+      return copy(value);
+    }
+  }
+
+  private T copy(T value) {
+    if (value == null) {
+      return null;
+    }
+    T copy = SpecificData.get().deepCopy(value.getSchema(), value);
+    if (!value.isDirty()) {
+      copy.clearDirty();
+    }
+    return copy;
+  }
+}
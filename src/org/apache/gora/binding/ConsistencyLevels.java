@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.gora.cassandra.store.CassandraStore;
+import org.apache.gora.codec.CodecDataStore;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
+import org.apache.gora.trace.Tracing;
+import org.apache.gora.util.GoraException;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * One store per consistency level, next to the store of a binding. Cassandra
+ * reads its read and write consistency levels from the properties a store
+ * is initialized with, so a level other than the one of gora.properties
+ * needs a store of its own: it is created on first use with
+ * gora.cassandrastore.read.consistency.level and
+ * gora.cassandrastore.write.consistency.level both set to the level, and
+ * kept for the next calls.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class ConsistencyLevels<K, T extends Persistent> {
+
+  /** The levels of Cassandra, weakest first */
+  public static final List<String> LEVELS = Arrays.asList("ANY", "ONE", "TWO",
+      "THREE", "LOCAL_QUORUM", "EACH_QUORUM", "QUORUM", "ALL");
+  public static final String READ_KEY = "read.consistency.level";
+  public static final String WRITE_KEY = "write.consistency.level";
+
+  private final DataStore<K, T> binding;
+  private final Class<?> storeClass;
+  private final Class<K> keyClass;
+  private final Class<T> persistentClass;
+  private final Properties properties;
+  private final Map<String, DataStore<K, T>> stores =
+      new ConcurrentHashMap<String, DataStore<K, T>>();
+
+  /**
+   * @param store the decorated store of the binding, whose class and
+   *          classes the stores of each level share
+   * @param properties the properties the levels override
+   */
+  public ConsistencyLevels(DataStore<K, T> store, Properties properties) {
+    this.binding = store;
+    this.storeClass = ForwardingDataStore.unwrap(store).getClass();
+    this.keyClass = store.getKeyClass();
+    this.persistentClass = store.getPersistentClass();
+    this.properties = properties;
+  }
+
+  public boolean isSupported() {
+    return CassandraStore.class.isAssignableFrom(storeClass);
+  }
+
+  /**
+   * The levels the store accepts.
+   * @return {@link #LEVELS}, or none if the store has no levels
+   */
+  public List<String> getSupportedLevels() {
+    return isSupported() ? LEVELS : Collections.<String> emptyList();
+  }
+
+  /**
+   * The store reading and writing at a level, kept consistent with the
+   * binding store as a {@link LevelDataStore}.
+   * @param level one of {@link #LEVELS}, in any case
+   * @return
+   * @throws IllegalArgumentException if the level is unknown
+   * @throws UnsupportedOperationException if the store has no levels
+   * @throws IllegalStateException if the store cannot be created
+   */
+  public DataStore<K, T> get(String level) {
+    String name = level.trim().toUpperCase(Locale.ROOT);
+    DataStore<K, T> store = stores.get(name);
+    if (store == null) {
+      store = create(name);
+    }
+    return store;
+  }
+
+  private synchronized DataStore<K, T> create(String level) {
+    DataStore<K, T> store = stores.get(level);
+    if (store != null) {
+      return store;
+    }
+    if (!LEVELS.contains(level)) {
+      throw new IllegalArgumentException("Unknown consistency level " + level
+          + ", use one of " + LEVELS);
+    }
+    if (!isSupported()) {
+      throw new UnsupportedOperationException(storeClass.getSimpleName()
+          + " has no consistency levels");
+    }
+    Properties overridden = new Properties();
+    overridden.putAll(properties);
+    String prefix = "gora." + storeClass.getSimpleName().toLowerCase(Locale.ROOT) + ".";
+    overridden.setProperty(prefix + READ_KEY, level);
+    overridden.setProperty(prefix + WRITE_KEY, level);
+    try {
+      @SuppressWarnings("unchecked")
+      DataStore<K, T> created = DataStoreFactory.createDataStore(
+          (Class<DataStore<K, T>>) storeClass, keyClass, persistentClass,
+          new Configuration(), overridden);
+      store = new LevelDataStore<K, T>(CodecDataStore.encode(
+          Metrics.instrument(Tracing.trace(created)), properties), binding);
+    } catch (GoraException e) {
+      throw new IllegalStateException("Cannot create a " + storeClass.getSimpleName()
+          + " at consistency level " + level, e);
+    }
+    stores.put(level, store);
+    return store;
+  }
+
+  /**
+   * The levels used so far.
+   * @return
+   */
+  public List<String> getLevels() {
+    return new ArrayList<String>(stores.keySet());
+  }
+
+  /**
+   * Flushes the stores of the levels, not the binding store.
+   */
+  public void flush() {
+    for (DataStore<K, T> store : stores.values()) {
+      ((LevelDataStore<K, T>) store).getLevel().flush();
+    }
+  }
+
+  public synchronized void close() {
+    for (DataStore<K, T> store : stores.values()) {
+      store.close();
+    }
+    stores.clear();
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.gora.persistency.BeanFactory;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.PartitionQuery;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * DataStore forwarding every call to another store. Decorators extend it and
+ * override the calls they add behaviour to.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class ForwardingDataStore<K, T extends Persistent> implements DataStore<K, T> {
+
+  protected final DataStore<K, T> delegate;
+
+  public ForwardingDataStore(DataStore<K, T> delegate) {
+    this.delegate = delegate;
+  }
+
+  public DataStore<K, T> getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * The store at the bottom of a chain of forwarding stores.
+   * @param store
+   * @return
+   */
+  public static DataStore<?, ?> unwrap(DataStore<?, ?> store) {
+    while (store instanceof ForwardingDataStore) {
+      store = ((ForwardingDataStore<?, ?>) store).getDelegate();
+    }
+    return store;
+  }
+
+  /**
+   * Whether a store or any store it forwards to is of the given class.
+   * @param store
+   * @param decorator
+   * @return
+   */
+  public static boolean isWrappedBy(DataStore<?, ?> store, Class<?> decorator) {
+    while (true) {
+      if (decorator.isInstance(store)) {
+        return true;
+      }
+      if (!(store instanceof ForwardingDataStore)) {
+        return false;
+      }
+      store = ((ForwardingDataStore<?, ?>) store).getDelegate();
+    }
+  }
+
+  /**
+   * The first store of the given class in a chain of forwarding stores.
+   * @param store
+   * @param decorator
+   * @return null if there is none
+   */
+  public static <D> D find(DataStore<?, ?> store, Class<D> decorator) {
+    while (!decorator.isInstance(store)) {
+      if (!(store instanceof ForwardingDataStore)) {
+        return null;
+      }
+      store = ((ForwardingDataStore<?, ?>) store).getDelegate();
+    }
+    return decorator.cast(store);
+  }
+
+  @Override
+  public void initialize(Class<K> keyClass, Class<T> persistentClass,
+      Properties properties) {
+    delegate.initialize(keyClass, persistentClass, properties);
+  }
+
+  @Override
+  public void setKeyClass(Class<K> keyClass) {
+    delegate.setKeyClass(keyClass);
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return delegate.getKeyClass();
+  }
+
+  @Override
+  public void setPersistentClass(Class<T> persistentClass) {
+    delegate.setPersistentClass(persistentClass);
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return delegate.getPersistentClass();
+  }
+
+  @Override
+  public String getSchemaName() {
+    return delegate.getSchemaName();
+  }
+
+  @Override
+  public void createSchema() {
+    delegate.createSchema();
+  }
+
+  @Override
+  public void deleteSchema() {
+    delegate.deleteSchema();
+  }
+
+  @Override
+  public void truncateSchema() {
+    delegate.truncateSchema();
+  }
+
+  @Override
+  public boolean schemaExists() {
+    return delegate.schemaExists();
+  }
+
+  @Override
+  public K newKey() {
+    return delegate.newKey();
+  }
+
+  @Override
+  public T newPersistent() {
+    return delegate.newPersistent();
+  }
+
+  @Override
+  public T get(K key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    return delegate.get(key, fields);
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    delegate.put(key, obj);
+  }
+
+  @Override
+  public boolean delete(K key) {
+    return delegate.delete(key);
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    return delegate.deleteByQuery(query);
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    return delegate.execute(query);
+  }
+
+  @Override
+  public Query<K, T> newQuery() {
+    return delegate.newQuery();
+  }
+
+  @Override
+  public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
+      throws IOException {
+    return delegate.getPartitions(query);
+  }
+
+  @Override
+  public void flush() {
+    delegate.flush();
+  }
+
+  @Override
+  public void setBeanFactory(BeanFactory<K, T> beanFactory) {
+    delegate.setBeanFactory(beanFactory);
+  }
+
+  @Override
+  public BeanFactory<K, T> getBeanFactory() {
+    return delegate.getBeanFactory();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+}
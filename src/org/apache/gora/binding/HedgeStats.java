@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.gora.metrics.LatencyHistogram;
+
+/**
+ * Counters and adaptive delay of a {@link HedgedDataStore}. The delay is
+ * the given percentile of the latencies of the first store over the last
+ * window of gets, kept between a floor and a ceiling.
+ */
+public class HedgeStats implements HedgeStatsMBean {
+
+  private final double percentile;
+  private final int window;
+  private final long minDelayNanos;
+  private final long maxDelayNanos;
+  private LatencyHistogram latencies = new LatencyHistogram();
+  private volatile long delayNanos;
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong savedNanos = new AtomicLong();
+
+  /**
+   * @param percentile of the latencies to wait before hedging, e.g. 95
+   * @param window gets per recomputation of the delay
+   * @param minDelayNanos
+   * @param maxDelayNanos also the delay until the first window is full
+   */
+  public HedgeStats(double percentile, int window, long minDelayNanos,
+      long maxDelayNanos) {
+    this.percentile = percentile;
+    this.window = window;
+    this.minDelayNanos = minDelayNanos;
+    this.maxDelayNanos = maxDelayNanos;
+    this.delayNanos = maxDelayNanos;
+  }
+
+  /**
+   * Records a latency of the first store, recomputing the delay at the end
+   * of each window.
+   * @param nanos
+   */
+  synchronized void record(long nanos) {
+    latencies.record(nanos);
+    if (latencies.getCount() >= window) {
+      delayNanos = Math.max(minDelayNanos,
+          Math.min(maxDelayNanos, latencies.getPercentile(percentile)));
+      latencies = new LatencyHistogram();
+    }
+  }
+
+  long getDelayNanos() {
+    return delayNanos;
+  }
+
+  void call() {
+    calls.incrementAndGet();
+  }
+
+  void hedge() {
+    hedges.incrementAndGet();
+  }
+
+  void hedgeWin() {
+    hedgeWins.incrementAndGet();
+  }
+
+  void failure() {
+    failures.incrementAndGet();
+  }
+
+  void saved(long nanos) {
+    savedNanos.addAndGet(nanos);
+  }
+
+  @Override
+  public long getCalls() {
+    return calls.get();
+  }
+
+  @Override
+  public long getHedges() {
+    return hedges.get();
+  }
+
+  @Override
+  public long getHedgeWins() {
+    return hedgeWins.get();
+  }
+
+  @Override
+  public long getFailures() {
+    return failures.get();
+  }
+
+  @Override
+  public double getSavedMillis() {
+    return savedNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public double getDelayMillis() {
+    return delayNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d gets, %d hedged, %d won by a hedge saving %.1f ms,"
+        + " %d failed, delay %.2f ms", getCalls(), getHedges(), getHedgeWins(),
+        getSavedMillis(), getFailures(), getDelayMillis());
+  }
+}
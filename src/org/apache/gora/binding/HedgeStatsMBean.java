@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+/**
+ * JMX view of the gets of a {@link HedgedDataStore}, since it was created.
+ */
+public interface HedgeStatsMBean {
+
+  long getCalls();
+
+  /** Second (or later) requests sent because the first was slow */
+  long getHedges();
+
+  /** Gets answered first by a hedged request */
+  long getHedgeWins();
+
+  /** Gets that failed on every store */
+  long getFailures();
+
+  /** Sum over the hedge wins of how much later the first store answered */
+  double getSavedMillis();
+
+  /** Delay before hedging, from the recent latencies of the first store */
+  double getDelayMillis();
+}
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.gora.codec.CodecDataStore;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.trace.Tracing;
+import org.apache.gora.util.GoraException;
+import org.apache.gora.utils.GoraUtils;
+
+/**
+ * Hedged gets over replicas of the wrapped store. A get goes to the wrapped
+ * store first; if it has not answered after the hedging delay, the same get
+ * goes to the next replica, and so on, and the first answer wins. A failed
+ * request hedges at once. Slow requests are left to finish, not cancelled,
+ * so their latency keeps feeding the delay and the time saved.
+ *
+ * Replicas are other stores holding the same records: another cluster, or
+ * the same one read with a weaker consistency level. They are traced,
+ * timed and decoded like the wrapped store. Only gets are hedged;
+ * everything else goes to the wrapped store alone.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.hedge.replicas: names of the replicas, none by default</li>
+ * <li>gora.hedge.&lt;name&gt;.type and gora.hedge.&lt;name&gt;.&lt;property&gt;:
+ * type and overridden properties of a replica, as for
+ * {@link GoraUtils#createPrefixedDataStore}</li>
+ * <li>gora.hedge.percentile: latency percentile of the wrapped store to
+ * wait before hedging, 95 by default</li>
+ * <li>gora.hedge.window: gets between updates of the delay, 1000 by
+ * default</li>
+ * <li>gora.hedge.min.delay.ms and gora.hedge.max.delay.ms: bounds of the
+ * delay, 1 and 100 by default</li>
+ * </ul>
+ * The counters are registered as the MBean
+ * org.apache.gora:type=Hedging,group=&lt;group&gt;,replicas=&lt;names&gt;.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class HedgedDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  public static final String REPLICAS_KEY = "gora.hedge.replicas";
+  public static final String PREFIX = "gora.hedge.";
+  public static final String PERCENTILE_KEY = "gora.hedge.percentile";
+  public static final String WINDOW_KEY = "gora.hedge.window";
+  public static final String MIN_DELAY_KEY = "gora.hedge.min.delay.ms";
+  public static final String MAX_DELAY_KEY = "gora.hedge.max.delay.ms";
+
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  private final List<DataStore<K, T>> stores = new ArrayList<DataStore<K, T>>();
+  private final HedgeStats stats;
+  private final ExecutorService executor;
+
+  /**
+   * @param delegate asked first
+   * @param replicas asked in turn when the previous store is slow
+   * @param stats
+   */
+  public HedgedDataStore(DataStore<K, T> delegate, List<DataStore<K, T>> replicas,
+      HedgeStats stats) {
+    super(delegate);
+    stores.add(delegate);
+    stores.addAll(replicas);
+    this.stats = stats;
+    final String pool = "gora-hedge-" + POOLS.incrementAndGet() + "-";
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threads = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, pool + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Hedges the gets of a store over the replicas configured in the
+   * properties, unless there are none or the store is hedged already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> hedge(
+      DataStore<K, T> store, Properties properties) {
+    String names = properties.getProperty(REPLICAS_KEY, "").trim();
+    if (names.isEmpty() || isWrappedBy(store, HedgedDataStore.class)) {
+      return store;
+    }
+    List<DataStore<K, T>> replicas = new ArrayList<DataStore<K, T>>();
+    try {
+      for (String name : names.split("\\s*,\\s*")) {
+        DataStore<K, T> replica = GoraUtils.createPrefixedDataStore(
+            PREFIX + name + ".", store.getKeyClass(), store.getPersistentClass(),
+            properties);
+        // as the wrapped store, which sits above the codecs
+        replicas.add(CodecDataStore.encode(
+            Metrics.instrument(Tracing.trace(replica)), properties));
+      }
+    } catch (GoraException e) {
+      for (DataStore<K, T> replica : replicas) {
+        replica.close();
+      }
+      throw new IllegalStateException("Cannot create the replicas " + names, e);
+    }
+    HedgeStats stats = new HedgeStats(
+        Double.parseDouble(properties.getProperty(PERCENTILE_KEY, "95")),
+        Integer.parseInt(properties.getProperty(WINDOW_KEY, "1000")),
+        TimeUnit.MILLISECONDS.toNanos(Long.parseLong(properties.getProperty(MIN_DELAY_KEY, "1"))),
+        TimeUnit.MILLISECONDS.toNanos(Long.parseLong(properties.getProperty(MAX_DELAY_KEY, "100"))));
+    if (Metrics.isEnabled()) {
+      Metrics.register(stats, "Hedging", Metrics.group(store), "replicas", names);
+    }
+    return new HedgedDataStore<K, T>(store, replicas, stats);
+  }
+
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    stats.call();
+    Race race = new Race();
+    CompletionService<T> answers = new ExecutorCompletionService<T>(executor);
+    answers.submit(new Request(stores.get(0), 0, key, fields, race));
+    int sent = 1;
+    int received = 0;
+    Throwable failure = null;
+    try {
+      while (received < sent || sent < stores.size()) {
+        Future<T> answer;
+        if (received == sent) {
+          // every request sent failed, try the next store right away
+          answer = null;
+        } else if (sent < stores.size()) {
+          answer = answers.poll(stats.getDelayNanos(), TimeUnit.NANOSECONDS);
+        } else {
+          answer = answers.take();
+        }
+        if (answer == null) {
+          stats.hedge();
+          answers.submit(new Request(stores.get(sent), sent, key, fields, race));
+          sent++;
+          continue;
+        }
+        received++;
+        try {
+          return answer.get();
+        } catch (ExecutionException e) {
+          failure = e.getCause();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while getting " + key, e);
+    }
+    stats.failure();
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IllegalStateException("Cannot get " + key, failure);
+  }
+
+  /**
+   * Closes the replicas and the wrapped store.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    try {
+      for (DataStore<K, T> replica : stores.subList(1, stores.size())) {
+        replica.close();
+      }
+    } finally {
+      delegate.close();
+    }
+  }
+
+  public List<DataStore<K, T>> getReplicas() {
+    return Collections.unmodifiableList(stores.subList(1, stores.size()));
+  }
+
+  public HedgeStats getStats() {
+    return stats;
+  }
+
+  /**
+   * The requests of one get, to tell who answered first and by how much.
+   */
+  private final class Race {
+    private final long start = System.nanoTime();
+    private int winner = -1;
+    private long winnerNanos;
+
+    synchronized void finished(int store, long nanos) {
+      if (winner < 0) {
+        winner = store;
+        winnerNanos = nanos;
+        if (store > 0) {
+          stats.hedgeWin();
+        }
+      }
+      if (store == 0 && winner > 0) {
+        stats.saved(nanos - winnerNanos);
+      }
+    }
+  }
+
+  private final class Request implements Callable<T> {
+    private final DataStore<K, T> store;
+    private final int index;
+    private final K key;
+    private final String[] fields;
+    private final Race race;
+
+    Request(DataStore<K, T> store, int index, K key, String[] fields, Race race) {
+      this.store = store;
+      this.index = index;
+      this.key = key;
+      this.fields = fields;
+      this.race = race;
+    }
+
+    @Override
+    public T call() throws Exception {
+      T value = fields == null ? store.get(key) : store.get(key, fields);
+      long nanos = System.nanoTime() - race.start;
+      if (index == 0) {
+        stats.record(nanos);
+      }
+      race.finished(index, nanos);
+      return value;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.gora.aggregate.AggregatingDataStore;
+import org.apache.gora.cdc.ChangeCaptureDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * The store of a consistency level, kept consistent with the decorators of
+ * the binding store next to it. Before a call on a key the binding's write
+ * buffer and near tier write the key out, so the level sees it and an
+ * older version cannot overwrite a level write later; after a write the
+ * caches and the gets in flight drop the key, the change is aggregated
+ * with the writes of the binding store, and published with its changes
+ * when they are captured. Range
+ * deletes and queries write out every key first; truncating and deleting
+ * the schema are left to the binding store. Level calls are not throttled.
+ *
+ * Flushing a level store flushes the binding store after it, which
+ * publishes the changes captured.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class LevelDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private final DataStore<K, T> binding;
+  private final List<StatefulDecorator<K>> decorators =
+      new ArrayList<StatefulDecorator<K>>();
+
+  /**
+   * @param level the store at the level
+   * @param binding the decorated store of the binding
+   */
+  @SuppressWarnings("unchecked")
+  public LevelDataStore(DataStore<K, T> level, DataStore<K, T> binding) {
+    super(around(level, binding));
+    this.binding = binding;
+    // outermost first, so that what a decorator writes out reaches the
+    // decorators below it
+    DataStore<?, ?> store = binding;
+    while (store instanceof ForwardingDataStore) {
+      if (store instanceof StatefulDecorator) {
+        decorators.add((StatefulDecorator<K>) store);
+      }
+      store = ((ForwardingDataStore<?, ?>) store).getDelegate();
+    }
+  }
+
+  /**
+   * The level store, captured and aggregated along with the binding store.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K, T extends Persistent> DataStore<K, T> around(
+      DataStore<K, T> level, DataStore<K, T> binding) {
+    ChangeCaptureDataStore<K, T> capture = find(binding, ChangeCaptureDataStore.class);
+    if (capture != null) {
+      level = capture.recording(level);
+    }
+    AggregatingDataStore<K, T> aggregates = find(binding, AggregatingDataStore.class);
+    if (aggregates != null) {
+      level = aggregates.aggregating(level);
+    }
+    return level;
+  }
+
+  private void writeOut(K key) {
+    for (StatefulDecorator<K> decorator : decorators) {
+      decorator.writeOut(key);
+    }
+  }
+
+  private void writeOutAll() {
+    for (StatefulDecorator<K> decorator : decorators) {
+      decorator.writeOutAll();
+    }
+  }
+
+  private void invalidate(K key) {
+    for (StatefulDecorator<K> decorator : decorators) {
+      decorator.invalidate(key);
+    }
+  }
+
+  private void invalidateAll() {
+    for (StatefulDecorator<K> decorator : decorators) {
+      decorator.invalidateAll();
+    }
+  }
+
+  @Override
+  public T get(K key) {
+    writeOut(key);
+    return delegate.get(key);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    writeOut(key);
+    return delegate.get(key, fields);
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    writeOut(key);
+    invalidate(key);
+    try {
+      delegate.put(key, obj);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    writeOut(key);
+    invalidate(key);
+    try {
+      return delegate.delete(key);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    writeOutAll();
+    invalidateAll();
+    try {
+      return delegate.deleteByQuery(query);
+    } finally {
+      invalidateAll();
+    }
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    writeOutAll();
+    return delegate.execute(query);
+  }
+
+  @Override
+  public void truncateSchema() {
+    binding.truncateSchema();
+  }
+
+  @Override
+  public void deleteSchema() {
+    binding.deleteSchema();
+  }
+
+  @Override
+  public void flush() {
+    delegate.flush();
+    binding.flush();
+  }
+
+  /**
+   * The store at the level, without the binding store.
+   * @return
+   */
+  public DataStore<K, T> getLevel() {
+    return delegate;
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+/**
+ * A decorator holding state of the keys written through it: writes held
+ * back, or records cached. The stores of the consistency levels of a
+ * binding are not below its decorators, and call these methods around
+ * their calls (see {@link LevelDataStore}).
+ *
+ * @param <K>
+ */
+public interface StatefulDecorator<K> {
+
+  /**
+   * Sends the writes of a key held back to the store below.
+   * @param key
+   */
+  void writeOut(K key);
+
+  /**
+   * Sends all the writes held back to the store below.
+   */
+  void writeOutAll();
+
+  /**
+   * Drops what is cached of a key.
+   * @param key
+   */
+  void invalidate(K key);
+
+  /**
+   * Drops what is cached of every key.
+   */
+  void invalidateAll();
+}
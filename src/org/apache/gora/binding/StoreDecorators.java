@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.Properties;
+
+import org.apache.gora.aggregate.AggregatingDataStore;
+import org.apache.gora.cdc.ChangeCaptureDataStore;
+import org.apache.gora.codec.CodecDataStore;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.tier.OffHeapCachingDataStore;
+import org.apache.gora.tier.TieredDataStore;
+import org.apache.gora.trace.Tracing;
+
+/**
+ * Stacks the decorators the bindings put around their stores, as configured
+ * in gora.properties. From the store outwards: tracing, metrics, field
+ * codecs, change capture, hedged reads, the off heap cache, the near tier,
+ * the write buffer, get coalescing, aggregates and throttling, so that
+ * spans and metrics record the calls actually sent to the store and the
+ * changes published are the writes it received, while the aggregates and
+ * limits apply to the calls of the sessions: a write over a limit is shed
+ * before the buffer acknowledges it or the aggregates count it, and
+ * flushes run unthrottled.
+ */
+public class StoreDecorators {
+
+  private StoreDecorators() {
+  }
+
+  /**
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> decorate(
+      DataStore<K, T> store, Properties properties) {
+    DataStore<K, T> decorated = CodecDataStore.encode(
+        Metrics.instrument(Tracing.trace(store)), properties);
+    decorated = ChangeCaptureDataStore.capture(decorated, properties);
+    decorated = HedgedDataStore.hedge(decorated, properties);
+    decorated = OffHeapCachingDataStore.cache(decorated, properties);
+    decorated = TieredDataStore.tier(decorated, properties);
+    decorated = WriteBufferDataStore.buffer(decorated, properties);
+    decorated = CoalescingDataStore.coalesce(decorated, properties);
+    decorated = AggregatingDataStore.aggregate(decorated, properties);
+    return ThrottledDataStore.throttle(decorated, properties);
+  }
+}
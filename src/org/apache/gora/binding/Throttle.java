@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side limits on the calls sent to a store: operations and bytes per
+ * second, each a {@link TokenBucket} allowing a one second burst, and calls
+ * in flight. A call over a limit waits, fails or is shed as the policy says.
+ */
+public class Throttle implements ThrottleMBean {
+
+  public enum Policy {
+    /** Wait for a slot and tokens */
+    BLOCK,
+    /** Fail with a RejectedExecutionException */
+    FAIL,
+    /** Drop writes, fail other calls */
+    SHED
+  }
+
+  private final TokenBucket ops;
+  private final TokenBucket bytes;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final Policy policy;
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong blocked = new AtomicLong();
+  private final AtomicLong blockedNanos = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong shed = new AtomicLong();
+
+  /**
+   * @param opsPerSecond 0 for no limit
+   * @param bytesPerSecond 0 for no limit
+   * @param maxInFlight 0 for no limit
+   * @param policy
+   */
+  public Throttle(double opsPerSecond, double bytesPerSecond, int maxInFlight,
+      Policy policy) {
+    this.ops = opsPerSecond > 0 ? new TokenBucket(opsPerSecond, opsPerSecond) : null;
+    this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+    this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+    this.maxInFlight = maxInFlight;
+    this.policy = policy;
+  }
+
+  /**
+   * Takes an in flight slot, an operation and the bytes of a call. An
+   * admitted call must be followed by {@link #exit()}.
+   * @param size bytes sent by the call
+   * @param write whether the call may be shed
+   * @return false if the call is shed
+   * @throws RejectedExecutionException if the call is refused
+   */
+  public boolean enter(long size, boolean write) {
+    if (inFlight != null && !inFlight.tryAcquire()) {
+      if (!overLimit("calls in flight", write)) {
+        return false;
+      }
+      long start = System.nanoTime();
+      try {
+        inFlight.acquire();
+      } catch (InterruptedException e) {
+        throw interrupted();
+      }
+      blocked(System.nanoTime() - start);
+    }
+    boolean entered = false;
+    try {
+      entered = take(ops, 1, "operations per second", write)
+          && take(bytes, size, "bytes per second", write);
+    } finally {
+      if (!entered && inFlight != null) {
+        inFlight.release();
+      }
+    }
+    if (entered) {
+      admitted.incrementAndGet();
+    }
+    return entered;
+  }
+
+  /**
+   * Releases the in flight slot of an admitted call.
+   */
+  public void exit() {
+    if (inFlight != null) {
+      inFlight.release();
+    }
+  }
+
+  /**
+   * Takes the bytes a call reads while it runs, e.g. the records of a scan.
+   * Waits whatever the policy, since a half read scan cannot be undone.
+   * @param size
+   */
+  public void charge(long size) {
+    if (bytes == null || size <= 0) {
+      return;
+    }
+    try {
+      long waited = bytes.acquire(size);
+      if (waited > 0) {
+        blocked(waited);
+      }
+    } catch (InterruptedException e) {
+      throw interrupted();
+    }
+  }
+
+  private boolean take(TokenBucket bucket, long permits, String limit,
+      boolean write) {
+    if (bucket == null || permits <= 0 || bucket.tryAcquire(permits)) {
+      return true;
+    }
+    if (!overLimit(limit, write)) {
+      return false;
+    }
+    try {
+      blocked(bucket.acquire(permits));
+      return true;
+    } catch (InterruptedException e) {
+      throw interrupted();
+    }
+  }
+
+  /**
+   * @return true to wait, false to shed
+   */
+  private boolean overLimit(String limit, boolean write) {
+    if (policy == Policy.BLOCK) {
+      return true;
+    }
+    if (policy == Policy.SHED && write) {
+      shed.incrementAndGet();
+      return false;
+    }
+    rejected.incrementAndGet();
+    throw new RejectedExecutionException("Over the limit of " + limit);
+  }
+
+  private void blocked(long nanos) {
+    blocked.incrementAndGet();
+    blockedNanos.addAndGet(nanos);
+  }
+
+  private static RejectedExecutionException interrupted() {
+    Thread.currentThread().interrupt();
+    return new RejectedExecutionException("Interrupted while throttled");
+  }
+
+  @Override
+  public double getOpsPerSecond() {
+    return ops == null ? 0 : ops.getRatePerSecond();
+  }
+
+  @Override
+  public double getBytesPerSecond() {
+    return bytes == null ? 0 : bytes.getRatePerSecond();
+  }
+
+  @Override
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight == null ? 0 : maxInFlight - inFlight.availablePermits();
+  }
+
+  @Override
+  public String getPolicy() {
+    return policy.name();
+  }
+
+  @Override
+  public long getAdmitted() {
+    return admitted.get();
+  }
+
+  @Override
+  public long getBlocked() {
+    return blocked.get();
+  }
+
+  @Override
+  public double getBlockedMs() {
+    return blockedNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @Override
+  public long getShed() {
+    return shed.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d admitted, %d blocked (%.1f ms), %d rejected,"
+        + " %d shed, %d in flight", policy, admitted.get(), blocked.get(),
+        getBlockedMs(), rejected.get(), shed.get(), getInFlight());
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+/**
+ * JMX view of the limits of a {@link Throttle} and of the calls it let
+ * through, held back, rejected and shed.
+ */
+public interface ThrottleMBean {
+
+  /** 0 when unlimited */
+  double getOpsPerSecond();
+
+  /** 0 when unlimited */
+  double getBytesPerSecond();
+
+  /** 0 when unlimited */
+  int getMaxInFlight();
+
+  int getInFlight();
+
+  String getPolicy();
+
+  long getAdmitted();
+
+  /** Calls that waited for a slot or tokens */
+  long getBlocked();
+
+  double getBlockedMs();
+
+  /** Calls failed by the fail policy */
+  long getRejected();
+
+  /** Writes dropped by the shed policy */
+  long getShed();
+}
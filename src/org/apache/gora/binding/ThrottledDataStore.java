@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.PersistentSizes;
+
+/**
+ * Applies {@link Throttle} limits to the writes and scans sent to a store,
+ * so bursty jobs slow down on the client instead of overloading the store.
+ * Gets are not limited.
+ *
+ * Every call goes through the throttle of the calling thread (its session:
+ * a Jython script, or a Py4j client connection, which has a thread of its
+ * own) and then the throttle of the store, shared by all sessions. Puts
+ * count their estimated size against the bytes per second; a scan holds an
+ * in flight slot until its result is closed and counts the size of each
+ * record it reads. Under the shed policy puts and deletes over a limit are
+ * dropped and return as if done, other calls fail; {@link #wasShed()} tells
+ * the caller. The bindings throttle their store above its write buffer and
+ * near tier, so limits apply to the calls of each session as they are made
+ * and a write is shed before it is acknowledged, never while buffered
+ * writes are flushed.
+ *
+ * Read from gora.properties, 0 (the default) meaning unlimited:
+ * <ul>
+ * <li>gora.throttle.ops.per.second</li>
+ * <li>gora.throttle.bytes.per.second</li>
+ * <li>gora.throttle.max.in.flight</li>
+ * <li>gora.throttle.session.ops.per.second</li>
+ * <li>gora.throttle.session.bytes.per.second</li>
+ * <li>gora.throttle.session.max.in.flight</li>
+ * <li>gora.throttle.policy: block (default), fail or shed</li>
+ * </ul>
+ * The store throttle is registered as the MBean
+ * org.apache.gora:type=Throttles,group=&lt;group&gt;,scope=store.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class ThrottledDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  public static final String PREFIX = "gora.throttle.";
+  public static final String SESSION_PREFIX = "gora.throttle.session.";
+  public static final String OPS_KEY = "ops.per.second";
+  public static final String BYTES_KEY = "bytes.per.second";
+  public static final String IN_FLIGHT_KEY = "max.in.flight";
+  public static final String POLICY_KEY = "gora.throttle.policy";
+
+  private final Throttle throttle;
+  private final ThreadLocal<Throttle> sessions;
+  private final ThreadLocal<Boolean> shed = new ThreadLocal<Boolean>();
+
+  /**
+   * @param delegate
+   * @param throttle shared by all threads, or null
+   * @param policy of the session throttles
+   * @param sessionOpsPerSecond 0 for no limit
+   * @param sessionBytesPerSecond 0 for no limit
+   * @param sessionMaxInFlight 0 for no limit
+   */
+  public ThrottledDataStore(DataStore<K, T> delegate, Throttle throttle,
+      final Throttle.Policy policy, final double sessionOpsPerSecond, final double sessionBytesPerSecond,
+      final int sessionMaxInFlight) {
+    super(delegate);
+    this.throttle = throttle;
+    sessions = new ThreadLocal<Throttle>() {
+      @Override
+      protected Throttle initialValue() {
+        if (sessionOpsPerSecond <= 0 && sessionBytesPerSecond <= 0
+            && sessionMaxInFlight <= 0) {
+          return null;
+        }
+        return new Throttle(sessionOpsPerSecond, sessionBytesPerSecond,
+            sessionMaxInFlight, policy);
+      }
+    };
+  }
+
+  /**
+   * Throttles a store as configured in the properties, unless no limit is
+   * set or the store is throttled already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> throttle(
+      DataStore<K, T> store, Properties properties) {
+    double ops = parse(properties, PREFIX + OPS_KEY);
+    double bytes = parse(properties, PREFIX + BYTES_KEY);
+    int inFlight = (int) parse(properties, PREFIX + IN_FLIGHT_KEY);
+    double sessionOps = parse(properties, SESSION_PREFIX + OPS_KEY);
+    double sessionBytes = parse(properties, SESSION_PREFIX + BYTES_KEY);
+    int sessionInFlight = (int) parse(properties, SESSION_PREFIX + IN_FLIGHT_KEY);
+    if ((ops <= 0 && bytes <= 0 && inFlight <= 0 && sessionOps <= 0
+        && sessionBytes <= 0 && sessionInFlight <= 0)
+        || isWrappedBy(store, ThrottledDataStore.class)) {
+      return store;
+    }
+    Throttle.Policy policy;
+    try {
+      policy = Throttle.Policy.valueOf(properties.getProperty(POLICY_KEY,
+          "block").trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown " + POLICY_KEY + " "
+          + properties.getProperty(POLICY_KEY) + ", expected block, fail or shed");
+    }
+    Throttle throttle = new Throttle(ops, bytes, inFlight, policy);
+    if (Metrics.isEnabled()) {
+      Metrics.register(throttle, "Throttles", Metrics.group(store), "scope",
+          "store");
+    }
+    return new ThrottledDataStore<K, T>(store, throttle, policy, sessionOps,
+        sessionBytes, sessionInFlight);
+  }
+
+  private static double parse(Properties properties, String key) {
+    return Double.parseDouble(properties.getProperty(key, "0").trim());
+  }
+
+  /**
+   * @return the throttle shared by all threads
+   */
+  public Throttle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * @return the throttle of the calling thread, or null without session
+   *         limits
+   */
+  public Throttle getSessionThrottle() {
+    return sessions.get();
+  }
+
+  /**
+   * @return whether the last put or delete of the calling thread was shed
+   */
+  public boolean wasShed() {
+    return Boolean.TRUE.equals(shed.get());
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    boolean entered = enter(PersistentSizes.sizeOf(obj.getSchema(), obj), true);
+    shed.set(!entered);
+    if (entered) {
+      try {
+        delegate.put(key, obj);
+      } finally {
+        exit();
+      }
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    boolean entered = enter(0, true);
+    shed.set(!entered);
+    if (!entered) {
+      return false;
+    }
+    try {
+      return delegate.delete(key);
+    } finally {
+      exit();
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    enter(0, false);
+    try {
+      return delegate.deleteByQuery(query);
+    } finally {
+      exit();
+    }
+  }
+
+  /**
+   * The result holds an in flight slot until closed.
+   */
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    enter(0, false);
+    boolean executed = false;
+    try {
+      Result<K, T> result = new ThrottledResult(delegate.execute(query),
+          sessions.get());
+      executed = true;
+      return result;
+    } finally {
+      if (!executed) {
+        exit();
+      }
+    }
+  }
+
+  /**
+   * Enters the session throttle, then the store throttle.
+   * @return false if the call is shed
+   */
+  private boolean enter(long size, boolean write) {
+    Throttle session = sessions.get();
+    if (session != null && !session.enter(size, write)) {
+      return false;
+    }
+    boolean entered = false;
+    try {
+      entered = throttle == null || throttle.enter(size, write);
+      return entered;
+    } finally {
+      if (!entered && session != null) {
+        session.exit();
+      }
+    }
+  }
+
+  private void exit() {
+    exit(sessions.get());
+  }
+
+  private void exit(Throttle session) {
+    try {
+      if (throttle != null) {
+        throttle.exit();
+      }
+    } finally {
+      if (session != null) {
+        session.exit();
+      }
+    }
+  }
+
+  /**
+   * Counts the records read against the bytes per second, and releases the
+   * slots of the scan when closed. Results may be closed from another
+   * thread than the one that ran the scan.
+   */
+  private final class ThrottledResult implements Result<K, T> {
+
+    private final Result<K, T> result;
+    private final Throttle session;
+    private boolean closed;
+
+    ThrottledResult(Result<K, T> result, Throttle session) {
+      this.result = result;
+      this.session = session;
+    }
+
+    @Override
+    public boolean next() throws Exception, IOException {
+      boolean hasNext = result.next();
+      if (hasNext && result.get() != null) {
+        long size = PersistentSizes.sizeOf(result.get().getSchema(), result.get());
+        if (session != null) {
+          session.charge(size);
+        }
+        if (throttle != null) {
+          throttle.charge(size);
+        }
+      }
+      return hasNext;
+    }
+
+    @Override
+    public DataStore<K, T> getDataStore() {
+      return result.getDataStore();
+    }
+
+    @Override
+    public Query<K, T> getQuery() {
+      return result.getQuery();
+    }
+
+    @Override
+    public K getKey() {
+      return result.getKey();
+    }
+
+    @Override
+    public T get() {
+      return result.get();
+    }
+
+    @Override
+    public Class<K> getKeyClass() {
+      return result.getKeyClass();
+    }
+
+    @Override
+    public Class<T> getPersistentClass() {
+      return result.getPersistentClass();
+    }
+
+    @Override
+    public long getOffset() {
+      return result.getOffset();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      return result.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        result.close();
+      } finally {
+        synchronized (this) {
+          if (!closed) {
+            closed = true;
+            exit(session);
+          }
+        }
+      }
+    }
+  }
+}
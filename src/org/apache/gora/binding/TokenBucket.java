@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled at a steady rate up to a burst capacity. A request
+ * for more tokens than the capacity is let through once the bucket is full,
+ * leaving it in debt, so large records are slowed down rather than stuck.
+ */
+public class TokenBucket {
+
+  private final double ratePerNano;
+  private final double capacity;
+  private double tokens;
+  private long refilledNanos;
+
+  /**
+   * @param ratePerSecond
+   * @param capacity burst size, in tokens
+   */
+  public TokenBucket(double ratePerSecond, double capacity) {
+    if (ratePerSecond <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Rate and capacity must be positive");
+    }
+    this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = capacity;
+    this.tokens = capacity;
+    this.refilledNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes the tokens if they are available now.
+   * @param permits
+   * @return whether they were taken
+   */
+  public synchronized boolean tryAcquire(long permits) {
+    return nanosToWait(permits) == 0;
+  }
+
+  /**
+   * Takes the tokens, waiting for the bucket to refill if needed.
+   * @param permits
+   * @return the nanoseconds waited
+   * @throws InterruptedException
+   */
+  public long acquire(long permits) throws InterruptedException {
+    long start = System.nanoTime();
+    while (true) {
+      long wait;
+      synchronized (this) {
+        wait = nanosToWait(permits);
+      }
+      if (wait == 0) {
+        return System.nanoTime() - start;
+      }
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+
+  /**
+   * Takes the tokens and returns 0 if they are available, or returns how
+   * long until they will be.
+   */
+  private long nanosToWait(long permits) {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - refilledNanos) * ratePerNano);
+    refilledNanos = now;
+    double needed = Math.min(permits, capacity);
+    if (tokens >= needed) {
+      tokens -= permits;
+      return 0;
+    }
+    return Math.max(1, (long) Math.ceil((needed - tokens) / ratePerNano));
+  }
+
+  public double getRatePerSecond() {
+    return ratePerNano * TimeUnit.SECONDS.toNanos(1);
+  }
+}
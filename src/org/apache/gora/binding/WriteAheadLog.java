@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Local append only log of the puts and deletes of a
+ * {@link WriteBufferDataStore}, so that writes acknowledged but still
+ * buffered survive the JVM dying before a flush.
+ *
+ * Each entry holds its length, a CRC32, the key (as text, so keys must be
+ * String, Long or Integer), and for a put the dirty fields and the Avro
+ * encoded record. Appends are serialized; {@link #sync(long)} forces the
+ * file to disk with group commit, one fsync covering every entry appended
+ * before it started, so concurrent writers share fsyncs. Replay stops at
+ * the first torn or corrupt entry, which a crash during an append leaves at
+ * the end of the file. Once the buffered writes reach the store and it is
+ * flushed, the log is truncated. The file is locked while open, so two
+ * stores, in one JVM or not, cannot share a log.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class WriteAheadLog<K, T extends Persistent> implements Closeable {
+
+  private static final int MAGIC = 0x47574C01;
+  private static final int HEADER = 4;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+
+  /**
+   * Receives the entries of the log in the order they were appended.
+   */
+  public interface Visitor<K, T> {
+
+    void put(K key, T record);
+
+    void delete(K key);
+  }
+
+  private final File file;
+  private final Class<K> keyClass;
+  private final Schema schema;
+  private final boolean fsync;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final Object syncLock = new Object();
+  /** Bytes truncated so far, so positions keep growing across truncations */
+  private long truncated;
+  private long appended;
+  /** Guarded by syncLock */
+  private long synced;
+  private long appends;
+  private long syncs;
+
+  /**
+   * Opens or creates the log; call {@link #replay(Visitor)} before
+   * appending to it.
+   * @param file
+   * @param keyClass String, Long or Integer
+   * @param schema of the records
+   * @param fsync whether {@link #sync(long)} forces the file to disk, or
+   *          only leaves it to the operating system, which survives the JVM
+   *          but not the machine dying
+   * @throws IOException also if another log has the file open
+   */
+  public WriteAheadLog(File file, Class<K> keyClass, Schema schema,
+      boolean fsync) throws IOException {
+    if (keyClass != String.class && keyClass != Long.class
+        && keyClass != Integer.class) {
+      throw new IllegalArgumentException("Cannot log "
+          + keyClass.getName() + " keys");
+    }
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    this.file = file;
+    this.keyClass = keyClass;
+    this.schema = schema;
+    this.fsync = fsync;
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      close();
+      throw new IOException(file + " is the log of another store, give each"
+          + " binding a log of its own");
+    }
+    if (channel.size() < HEADER) {
+      channel.truncate(0);
+      writeFully(ByteBuffer.allocate(HEADER).putInt(0, MAGIC), 0);
+      channel.force(true);
+    } else {
+      ByteBuffer magic = ByteBuffer.allocate(HEADER);
+      channel.read(magic, 0);
+      if (magic.getInt(0) != MAGIC) {
+        close();
+        throw new IOException(file + " is not a write ahead log");
+      }
+    }
+    appended = channel.size();
+    synced = appended;
+  }
+
+  /**
+   * Passes the entries of the log to a visitor, and cuts off a torn or
+   * corrupt tail.
+   * @param visitor
+   * @return entries replayed
+   * @throws IOException
+   */
+  public int replay(Visitor<K, T> visitor) throws IOException {
+    synchronized (syncLock) {
+      synchronized (this) {
+        return replayEntries(visitor);
+      }
+    }
+  }
+
+  private int replayEntries(Visitor<K, T> visitor) throws IOException {
+    long position = HEADER;
+    long size = channel.size();
+    int entries = 0;
+    ByteBuffer prefix = ByteBuffer.allocate(8);
+    while (position + 8 <= size) {
+      prefix.clear();
+      readFully(prefix, position);
+      int length = prefix.getInt(0);
+      if (length <= 0 || position + 8 + length > size) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(payload, position + 8);
+      payload.flip();
+      CRC32 crc = new CRC32();
+      crc.update(payload.array(), 0, length);
+      if ((int) crc.getValue() != prefix.getInt(4)) {
+        break;
+      }
+      apply(payload, visitor);
+      position += 8 + length;
+      entries++;
+    }
+    if (position < size) {
+      channel.truncate(position);
+      channel.force(true);
+    }
+    appended = truncated + position;
+    synced = appended;
+    return entries;
+  }
+
+  /**
+   * Appends a put.
+   * @param key
+   * @param record
+   * @return the position to pass to {@link #sync(long)}
+   * @throws IOException
+   */
+  public long appendPut(K key, T record) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(PUT);
+    writeKey(out, key);
+    int fields = schema.getFields().size();
+    out.writeShort(fields);
+    for (int pos = 0; pos < fields; pos++) {
+      out.writeBoolean(record.isDirty(pos));
+    }
+    out.flush();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+    new SpecificDatumWriter<T>(schema).write(record, encoder);
+    encoder.flush();
+    return append(bytes.toByteArray());
+  }
+
+  /**
+   * Appends a delete.
+   * @param key
+   * @return the position to pass to {@link #sync(long)}
+   * @throws IOException
+   */
+  public long appendDelete(K key) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(DELETE);
+    writeKey(out, key);
+    out.flush();
+    return append(bytes.toByteArray());
+  }
+
+  private synchronized long append(byte[] payload) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer entry = ByteBuffer.allocate(8 + payload.length);
+    entry.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+    entry.flip();
+    writeFully(entry, appended - truncated);
+    appended += entry.limit();
+    appends++;
+    return appended;
+  }
+
+  /**
+   * Returns once the log is on disk up to a position. Callers arriving
+   * while the file is forced wait for it, then return at once if it covered
+   * their entries, so one fsync commits a whole group of appends.
+   * @param position returned by an append
+   * @throws IOException
+   */
+  public void sync(long position) throws IOException {
+    if (!fsync) {
+      return;
+    }
+    synchronized (syncLock) {
+      if (synced >= position) {
+        return;
+      }
+      long target;
+      synchronized (this) {
+        target = appended;
+      }
+      // appends go on while the file is forced
+      channel.force(false);
+      synced = target;
+      syncs++;
+    }
+  }
+
+  /**
+   * Drops every entry, once the writes they hold are flushed to the store.
+   * @throws IOException
+   */
+  public void truncate() throws IOException {
+    synchronized (syncLock) {
+      synchronized (this) {
+        truncated += channel.size() - HEADER;
+        channel.truncate(HEADER);
+        if (fsync) {
+          channel.force(true);
+        }
+        appended = truncated + HEADER;
+        synced = appended;
+      }
+    }
+  }
+
+  /** Bytes of entries in the log */
+  public synchronized long getSize() {
+    return appended - truncated - HEADER;
+  }
+
+  public synchronized long getAppends() {
+    return appends;
+  }
+
+  /** Forces to disk, each covering one or more appends */
+  public long getSyncs() {
+    synchronized (syncLock) {
+      return syncs;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public void close() throws IOException {
+    raf.close();
+  }
+
+  private void apply(ByteBuffer payload, Visitor<K, T> visitor)
+      throws IOException {
+    byte type = payload.get();
+    K key = readKey(payload);
+    if (type == DELETE) {
+      visitor.delete(key);
+      return;
+    }
+    int fields = payload.getShort();
+    boolean[] dirty = new boolean[fields];
+    for (int pos = 0; pos < fields; pos++) {
+      dirty[pos] = payload.get() != 0;
+    }
+    T record = new SpecificDatumReader<T>(schema).read(null,
+        DecoderFactory.get().binaryDecoder(payload.array(),
+            payload.position(), payload.remaining(), null));
+    for (int pos = 0; pos < fields; pos++) {
+      if (dirty[pos]) {
+        record.setDirty(pos);
+      } else {
+        record.clearDirty(pos);
+      }
+    }
+    visitor.put(key, record);
+  }
+
+  private static void writeKey(DataOutputStream out, Object key)
+      throws IOException {
+    byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private K readKey(ByteBuffer payload) {
+    byte[] bytes = new byte[payload.getInt()];
+    payload.get(bytes);
+    String key = new String(bytes, StandardCharsets.UTF_8);
+    if (keyClass == Long.class) {
+      return keyClass.cast(Long.valueOf(key));
+    }
+    if (keyClass == Integer.class) {
+      return keyClass.cast(Integer.valueOf(key));
+    }
+    return keyClass.cast(key);
+  }
+
+  private void writeFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of " + file);
+      }
+      position += read;
+    }
+  }
+}
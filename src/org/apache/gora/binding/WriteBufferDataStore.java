@@ -0,0 +1,698 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.PersistentSizes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers puts until flush, keeping one version per key, so the writes sent
+ * at flush scale with the distinct keys rather than the updates.
+ *
+ * With {@link Mode#LAST_WRITE_WINS} a put replaces the buffered record of
+ * its key. With {@link Mode#MERGE_DIRTY} only the dirty fields of a put are
+ * laid over the buffered record, so that two partial updates of different
+ * fields both reach the store. Records are copied when buffered, the caller
+ * may keep modifying them.
+ *
+ * The buffer is drained to the store on flush, before queries and whenever
+ * it holds more than the maximum keys or estimated bytes; a drain puts the
+ * records in the order their keys were first buffered, or in key order.
+ * Gets see the buffered writes.
+ *
+ * With an {@link AdaptiveFlushController} the buffer is instead flushed
+ * (drained, then the store flushed) whenever it holds the batch size of the
+ * controller or its oldest write has waited the flush interval, and each of
+ * these flushes is timed and reported back to the controller.
+ *
+ * With a {@link WriteAheadLog} puts and deletes are logged and synced
+ * before they return, the log is replayed when it is set, and truncated
+ * after each successful flush of the store, so buffered writes survive the
+ * JVM dying. The buffer then flushes the store whenever it drains on its
+ * own, to keep the log short.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.writebuffer.mode: none (default), last or merge</li>
+ * <li>gora.writebuffer.max.keys: 10000 by default</li>
+ * <li>gora.writebuffer.max.bytes: 64 MB by default</li>
+ * <li>gora.writebuffer.drain: insertion (default) or key</li>
+ * <li>gora.writebuffer.adaptive: true to adapt the batch size, between
+ * gora.writebuffer.adaptive.min.keys (100) and gora.writebuffer.max.keys,
+ * and the flush interval, between gora.writebuffer.adaptive.min.interval.ms
+ * (100) and gora.writebuffer.adaptive.max.interval.ms (5000), to flushes
+ * taking gora.writebuffer.adaptive.target.ms (250) at most</li>
+ * <li>gora.writebuffer.wal.dir: directory of the write ahead logs, none by
+ * default; the log of a store is &lt;name&gt;.wal, locked while open</li>
+ * <li>gora.writebuffer.wal.name: the name of the log, to tell apart the
+ * bindings of one store class and persistent class sharing the directory,
+ * e.g. over two keyspaces; &lt;store&gt;.&lt;persistent&gt; by default</li>
+ * <li>gora.writebuffer.wal.fsync: false to leave the log to the operating
+ * system, which survives the JVM but not the machine dying; true by
+ * default</li>
+ * </ul>
+ * The decisions of the controller are registered as the MBean
+ * org.apache.gora:type=WriteBuffer,group=&lt;group&gt;,controller=adaptive.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class WriteBufferDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> implements StatefulDecorator<K> {
+
+  public static final String MODE_KEY = "gora.writebuffer.mode";
+  public static final String MAX_KEYS_KEY = "gora.writebuffer.max.keys";
+  public static final String MAX_BYTES_KEY = "gora.writebuffer.max.bytes";
+  public static final String DRAIN_KEY = "gora.writebuffer.drain";
+  public static final String ADAPTIVE_KEY = "gora.writebuffer.adaptive";
+  public static final String ADAPTIVE_MIN_KEYS_KEY = "gora.writebuffer.adaptive.min.keys";
+  public static final String ADAPTIVE_MIN_INTERVAL_KEY = "gora.writebuffer.adaptive.min.interval.ms";
+  public static final String ADAPTIVE_MAX_INTERVAL_KEY = "gora.writebuffer.adaptive.max.interval.ms";
+  public static final String ADAPTIVE_TARGET_KEY = "gora.writebuffer.adaptive.target.ms";
+  public static final String WAL_DIR_KEY = "gora.writebuffer.wal.dir";
+  public static final String WAL_FSYNC_KEY = "gora.writebuffer.wal.fsync";
+  public static final String WAL_NAME_KEY = "gora.writebuffer.wal.name";
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteBufferDataStore.class);
+
+  public enum Mode {
+    /** A put replaces the buffered version */
+    LAST_WRITE_WINS,
+    /** The dirty fields of a put are merged into the buffered version */
+    MERGE_DIRTY
+  }
+
+  private final Mode mode;
+  private final LinkedHashMap<K, Buffered> buffer = new LinkedHashMap<K, Buffered>();
+  private int maxKeys = 10000;
+  private long maxBytes = 64L * 1024 * 1024;
+  private boolean drainInKeyOrder;
+  private long bytes;
+  private long puts;
+  private long coalesced;
+  private long written;
+  private long drains;
+  private AdaptiveFlushController controller;
+  private ScheduledExecutorService timer;
+  private long oldestWriteNanos;
+  private WriteAheadLog<K, T> wal;
+
+  public WriteBufferDataStore(DataStore<K, T> delegate, Mode mode) {
+    super(delegate);
+    this.mode = mode;
+  }
+
+  /**
+   * Wraps a store as configured in the properties, unless the mode is none
+   * or the store is buffered already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> buffer(
+      DataStore<K, T> store, Properties properties) {
+    String mode = properties.getProperty(MODE_KEY, "none").trim();
+    String walDir = properties.getProperty(WAL_DIR_KEY);
+    if ("none".equalsIgnoreCase(mode)) {
+      if (walDir != null && !walDir.trim().isEmpty()) {
+        LOG.warn(WAL_DIR_KEY + " is ignored without a write buffer, set "
+            + MODE_KEY + " to last or merge to log the writes");
+      }
+      return store;
+    }
+    if (isWrappedBy(store, WriteBufferDataStore.class)) {
+      return store;
+    }
+    WriteBufferDataStore<K, T> buffered;
+    if ("last".equalsIgnoreCase(mode)) {
+      buffered = new WriteBufferDataStore<K, T>(store, Mode.LAST_WRITE_WINS);
+    } else if ("merge".equalsIgnoreCase(mode)) {
+      buffered = new WriteBufferDataStore<K, T>(store, Mode.MERGE_DIRTY);
+    } else {
+      throw new IllegalArgumentException("Unknown " + MODE_KEY + " " + mode
+          + ", expected none, last or merge");
+    }
+    buffered.setMaxKeys(Integer.parseInt(properties.getProperty(MAX_KEYS_KEY,
+        String.valueOf(buffered.maxKeys))));
+    buffered.setMaxBytes(Long.parseLong(properties.getProperty(MAX_BYTES_KEY,
+        String.valueOf(buffered.maxBytes))));
+    buffered.setDrainInKeyOrder("key".equalsIgnoreCase(
+        properties.getProperty(DRAIN_KEY, "insertion").trim()));
+    if (walDir != null && !walDir.trim().isEmpty()) {
+      File file = new File(walDir.trim(), properties.getProperty(WAL_NAME_KEY,
+          Metrics.group(store)).trim() + ".wal");
+      WriteAheadLog<K, T> wal = null;
+      boolean replayed = false;
+      try {
+        wal = new WriteAheadLog<K, T>(file, store.getKeyClass(),
+            store.newPersistent().getSchema(), Boolean.parseBoolean(
+                properties.getProperty(WAL_FSYNC_KEY, "true").trim()));
+        buffered.setWriteAheadLog(wal);
+        replayed = true;
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot open or replay " + file, e);
+      } finally {
+        if (!replayed) {
+          // release the lock of the log
+          closeQuietly(wal);
+        }
+      }
+    }
+    if (Boolean.parseBoolean(properties.getProperty(ADAPTIVE_KEY, "false").trim())) {
+      AdaptiveFlushController controller = new AdaptiveFlushController(
+          Integer.parseInt(properties.getProperty(ADAPTIVE_MIN_KEYS_KEY, "100")),
+          buffered.maxKeys,
+          Long.parseLong(properties.getProperty(ADAPTIVE_MIN_INTERVAL_KEY, "100")),
+          Long.parseLong(properties.getProperty(ADAPTIVE_MAX_INTERVAL_KEY, "5000")),
+          Long.parseLong(properties.getProperty(ADAPTIVE_TARGET_KEY, "250")));
+      buffered.setController(controller);
+      if (Metrics.isEnabled()) {
+        Metrics.register(controller, "WriteBuffer", Metrics.group(store),
+            "controller", "adaptive");
+      }
+    }
+    return buffered;
+  }
+
+  /**
+   * Distinct keys buffered before a drain.
+   * @param maxKeys
+   */
+  public synchronized void setMaxKeys(int maxKeys) {
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Estimated size of the buffered records before a drain.
+   * @param maxBytes
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Drains in key order, which suits stores sorted by key, instead of the
+   * order keys were first buffered. Keys must be Comparable.
+   * @param drainInKeyOrder
+   */
+  public synchronized void setDrainInKeyOrder(boolean drainInKeyOrder) {
+    this.drainInKeyOrder = drainInKeyOrder;
+  }
+
+  /**
+   * Hands the batch size and flush interval over to a controller, and
+   * starts the thread flushing writes older than the interval.
+   * @param controller
+   */
+  public synchronized void setController(AdaptiveFlushController controller) {
+    this.controller = controller;
+    maxKeys = controller.getBatchSize();
+    if (timer == null) {
+      timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "gora-writebuffer-flush");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      scheduleTick(controller.getFlushIntervalMs());
+    }
+  }
+
+  public synchronized AdaptiveFlushController getController() {
+    return controller;
+  }
+
+  /**
+   * Replays a log into the buffer and flushes it to the store, then logs
+   * the following writes to it.
+   * @param wal
+   * @return entries replayed
+   * @throws IOException
+   */
+  public synchronized int setWriteAheadLog(WriteAheadLog<K, T> wal)
+      throws IOException {
+    int replayed = wal.replay(new WriteAheadLog.Visitor<K, T>() {
+      @Override
+      public void put(K key, T record) {
+        bufferPut(key, record);
+      }
+
+      @Override
+      public void delete(K key) {
+        unbuffer(key);
+        delegate.delete(key);
+      }
+    });
+    if (replayed > 0) {
+      LOG.info("Replayed " + replayed + " writes from " + wal.getFile());
+    }
+    drain();
+    delegate.flush();
+    wal.truncate();
+    this.wal = wal;
+    return replayed;
+  }
+
+  public synchronized WriteAheadLog<K, T> getWriteAheadLog() {
+    return wal;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Buffers a put, after logging it if there is a log; the log is synced
+   * outside the lock, so that concurrent puts share an fsync.
+   */
+  @Override
+  public void put(K key, T obj) {
+    WriteAheadLog<K, T> log;
+    long logged = 0;
+    synchronized (this) {
+      log = wal;
+      if (log != null) {
+        try {
+          logged = log.appendPut(key, obj);
+        } catch (IOException e) {
+          throw new IllegalStateException("Cannot log the put of " + key, e);
+        }
+      }
+      bufferPut(key, obj);
+    }
+    if (log != null) {
+      try {
+        log.sync(logged);
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot sync the put of " + key, e);
+      }
+    }
+  }
+
+  private synchronized void bufferPut(K key, T obj) {
+    puts++;
+    Buffered buffered = buffer.get(key);
+    if (buffered == null) {
+      if (buffer.isEmpty()) {
+        oldestWriteNanos = System.nanoTime();
+      }
+      buffered = new Buffered(copy(obj));
+      buffer.put(key, buffered);
+    } else {
+      coalesced++;
+      bytes -= buffered.size;
+      if (mode == Mode.MERGE_DIRTY) {
+        merge(obj, buffered.record);
+      } else {
+        buffered.record = copy(obj);
+      }
+      buffered.size = sizeOf(buffered.record);
+    }
+    bytes += buffered.size;
+    if (controller != null) {
+      if (buffer.size() >= maxKeys || bytes > maxBytes) {
+        flushBatch();
+      }
+    } else if (buffer.size() > maxKeys || bytes > maxBytes) {
+      drain();
+      if (wal != null) {
+        delegate.flush();
+        truncateLog();
+      }
+    }
+  }
+
+  /**
+   * The buffered version of a record, merged over the stored one in
+   * {@link Mode#MERGE_DIRTY} mode.
+   */
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    T buffered;
+    synchronized (this) {
+      Buffered entry = buffer.get(key);
+      buffered = entry == null ? null : copy(entry.record);
+    }
+    if (buffered != null && mode == Mode.LAST_WRITE_WINS) {
+      return buffered;
+    }
+    T stored = fields == null ? delegate.get(key) : delegate.get(key, fields);
+    if (buffered == null || stored == null) {
+      return stored == null ? buffered : stored;
+    }
+    merge(buffered, stored);
+    return stored;
+  }
+
+  /**
+   * Logged and synced before the store sees it, so a replay cannot bring
+   * back an older put of the key.
+   */
+  @Override
+  public synchronized boolean delete(K key) {
+    if (wal != null) {
+      try {
+        wal.sync(wal.appendDelete(key));
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot log the delete of " + key, e);
+      }
+    }
+    unbuffer(key);
+    return delegate.delete(key);
+  }
+
+  private synchronized void unbuffer(K key) {
+    Buffered buffered = buffer.remove(key);
+    if (buffered != null) {
+      bytes -= buffered.size;
+    }
+  }
+
+  /**
+   * Puts the buffered record of a key to the store. With a write-ahead log
+   * the whole buffer is flushed instead, so that a replay cannot bring back
+   * the record over a later write made around this store.
+   */
+  @Override
+  public synchronized void writeOut(K key) {
+    Buffered buffered = buffer.get(key);
+    if (buffered == null) {
+      return;
+    }
+    if (wal != null) {
+      flush();
+      return;
+    }
+    delegate.put(key, buffered.record);
+    unbuffer(key);
+    written++;
+  }
+
+  @Override
+  public synchronized void writeOutAll() {
+    if (wal != null) {
+      flush();
+    } else {
+      drain();
+    }
+  }
+
+  /** Nothing is cached */
+  @Override
+  public void invalidate(K key) {
+  }
+
+  @Override
+  public void invalidateAll() {
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    drain();
+    return delegate.deleteByQuery(query);
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    drain();
+    return delegate.execute(query);
+  }
+
+  @Override
+  public void truncateSchema() {
+    clear();
+    delegate.truncateSchema();
+  }
+
+  @Override
+  public void deleteSchema() {
+    clear();
+    delegate.deleteSchema();
+  }
+
+  @Override
+  public synchronized void flush() {
+    if (controller != null && !buffer.isEmpty()) {
+      flushBatch();
+      return;
+    }
+    drain();
+    delegate.flush();
+    truncateLog();
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (timer != null) {
+        timer.shutdownNow();
+      }
+    }
+    try {
+      flush();
+    } finally {
+      try {
+        closeLog();
+      } finally {
+        delegate.close();
+      }
+    }
+  }
+
+  private static void closeQuietly(WriteAheadLog<?, ?> wal) {
+    if (wal != null) {
+      try {
+        wal.close();
+      } catch (IOException e) {
+        LOG.warn("Cannot close " + wal.getFile(), e);
+      }
+    }
+  }
+
+  private synchronized void closeLog() {
+    closeQuietly(wal);
+  }
+
+  /**
+   * Drops the logged writes once the store has them.
+   */
+  private synchronized void truncateLog() {
+    if (wal != null) {
+      try {
+        wal.truncate();
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot truncate " + wal.getFile(), e);
+      }
+    }
+  }
+
+  /**
+   * Drains and flushes the store, reporting the time taken and the outcome
+   * to the controller and taking its new batch size.
+   */
+  private synchronized void flushBatch() {
+    int records = buffer.size();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      drain();
+      delegate.flush();
+      failed = false;
+      truncateLog();
+    } finally {
+      controller.onFlush(records, System.nanoTime() - start, failed);
+      maxKeys = controller.getBatchSize();
+    }
+  }
+
+  private void scheduleTick(long delayMs) {
+    timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        tick();
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Flushes the buffer once its oldest write has waited the interval, then
+   * schedules itself for when the oldest write left will have.
+   */
+  private synchronized void tick() {
+    if (timer.isShutdown()) {
+      return;
+    }
+    long intervalMs = controller.getFlushIntervalMs();
+    long waitedMs = TimeUnit.NANOSECONDS.toMillis(
+        System.nanoTime() - oldestWriteNanos);
+    if (!buffer.isEmpty() && waitedMs >= intervalMs) {
+      try {
+        flushBatch();
+      } catch (RuntimeException e) {
+        // the records not written stay buffered for the next flush
+        LOG.warn("Timed flush of " + buffer.size() + " buffered records failed", e);
+      }
+      intervalMs = controller.getFlushIntervalMs();
+      waitedMs = 0;
+      oldestWriteNanos = System.nanoTime();
+    }
+    scheduleTick(buffer.isEmpty() ? intervalMs : Math.max(1, intervalMs - waitedMs));
+  }
+
+  /**
+   * Puts the buffered records to the store, without flushing it.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void drain() {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<K, Buffered>> entries =
+        new ArrayList<Map.Entry<K, Buffered>>(buffer.entrySet());
+    if (drainInKeyOrder) {
+      Collections.sort(entries, new Comparator<Map.Entry<K, Buffered>>() {
+        @Override
+        public int compare(Map.Entry<K, Buffered> a, Map.Entry<K, Buffered> b) {
+          return ((Comparable<K>) a.getKey()).compareTo(b.getKey());
+        }
+      });
+    }
+    drains++;
+    for (Map.Entry<K, Buffered> entry : entries) {
+      delegate.put(entry.getKey(), entry.getValue().record);
+      // drop each record once written, so that a failed put leaves the
+      // rest buffered for the next drain
+      buffer.remove(entry.getKey());
+      bytes -= entry.getValue().size;
+      written++;
+    }
+  }
+
+  private synchronized void clear() {
+    buffer.clear();
+    bytes = 0;
+    truncateLog();
+  }
+
+  /** Distinct keys buffered */
+  public synchronized int getBufferedKeys() {
+    return buffer.size();
+  }
+
+  /** Estimated size of the buffered records */
+  public synchronized long getBufferedBytes() {
+    return bytes;
+  }
+
+  /** Puts received */
+  public synchronized long getPuts() {
+    return puts;
+  }
+
+  /** Puts folded into a version already buffered */
+  public synchronized long getCoalesced() {
+    return coalesced;
+  }
+
+  /** Puts sent to the store */
+  public synchronized long getWritten() {
+    return written;
+  }
+
+  public synchronized long getDrains() {
+    return drains;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s: %d puts, %d coalesced, %d written in %d drains,"
+        + " %d keys (%d bytes) buffered", mode, puts, coalesced, written,
+        drains, buffer.size(), bytes);
+  }
+
+  /**
+   * Lays the dirty fields of a record over another, marking them dirty.
+   */
+  private static <T extends Persistent> void merge(T from, T to) {
+    for (Schema.Field field : from.getSchema().getFields()) {
+      int pos = field.pos();
+      if (from.isDirty(pos)) {
+        to.put(pos, SpecificData.get().deepCopy(field.schema(), from.get(pos)));
+        to.setDirty(pos);
+      }
+    }
+  }
+
+  /**
+   * Deep copy with the same dirty fields.
+   */
+  private static <T extends Persistent> T copy(T record) {
+    T copy = SpecificData.get().deepCopy(record.getSchema(), record);
+    for (Schema.Field field : record.getSchema().getFields()) {
+      if (record.isDirty(field.pos())) {
+        copy.setDirty(field.pos());
+      } else {
+        copy.clearDirty(field.pos());
+      }
+    }
+    return copy;
+  }
+
+  private static long sizeOf(Persistent record) {
+    return PersistentSizes.sizeOf(record.getSchema(), record);
+  }
+
+  private final class Buffered {
+    T record;
+    long size;
+
+    Buffered(T record) {
+      this.record = record;
+      this.size = sizeOf(record);
+    }
+  }
+}
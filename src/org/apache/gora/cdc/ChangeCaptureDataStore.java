@@ -0,0 +1,429 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the puts and deletes made through it to {@link ChangeSink}s,
+ * so that consumers can follow the changes of a store instead of rescanning
+ * it. A put is published with the fields it changed, read from its dirty
+ * flags; a put with no dirty field changes nothing and is not published,
+ * nor is a delete of a key the store did not have.
+ * deleteByQuery is published as a range; truncating or deleting the schema
+ * is not published.
+ *
+ * Changes are held until the store is flushed and published once the flush
+ * succeeds, in batches, in the order they were made. Delivery happens on
+ * the flushing thread, or spread over lanes: each lane a thread delivering
+ * the changes of the keys hashed to it, in order, so the changes of a key
+ * keep their order while different keys are delivered concurrently. Range
+ * deletes wait for the lanes and hold them back until delivered. A failing
+ * sink is logged and does not fail the flush.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.cdc.enabled: false by default</li>
+ * <li>gora.cdc.log.file: a {@link ChangeLogSink} file, none by default</li>
+ * <li>gora.cdc.queue.capacity: the capacity of a {@link ChangeQueue}, none
+ * by default</li>
+ * <li>gora.cdc.batch.size: changes per batch, 1000 by default</li>
+ * <li>gora.cdc.lanes: delivery threads, 0 (the flushing thread) by
+ * default</li>
+ * </ul>
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class ChangeCaptureDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  public static final String ENABLED_KEY = "gora.cdc.enabled";
+  public static final String LOG_FILE_KEY = "gora.cdc.log.file";
+  public static final String QUEUE_CAPACITY_KEY = "gora.cdc.queue.capacity";
+  public static final String BATCH_SIZE_KEY = "gora.cdc.batch.size";
+  public static final String LANES_KEY = "gora.cdc.lanes";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChangeCaptureDataStore.class);
+
+  private final List<ChangeSink<K>> sinks = new CopyOnWriteArrayList<ChangeSink<K>>();
+  private final List<ExecutorService> lanes = new ArrayList<ExecutorService>();
+  private final int batchSize;
+  private final Object publishLock = new Object();
+  private List<ChangeEvent<K>> pending = new ArrayList<ChangeEvent<K>>();
+  private long sequence;
+  /** The last delivery of each lane, and of the last range delete */
+  private final List<Future<?>> delivered = new ArrayList<Future<?>>();
+  private Future<?> barrier;
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong failedBatches = new AtomicLong();
+
+  /**
+   * @param delegate
+   * @param batchSize changes per batch
+   * @param lanes delivery threads, 0 to deliver on the flushing thread
+   */
+  public ChangeCaptureDataStore(DataStore<K, T> delegate, int batchSize,
+      int lanes) {
+    super(delegate);
+    this.batchSize = batchSize;
+    for (int i = 0; i < lanes; i++) {
+      final String name = "gora-cdc-lane-" + i;
+      this.lanes.add(Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, name);
+          thread.setDaemon(true);
+          return thread;
+        }
+      }));
+      delivered.add(null);
+    }
+  }
+
+  /**
+   * Captures the changes of a store as configured in the properties, unless
+   * disabled or captured already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> capture(
+      DataStore<K, T> store, Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, "false").trim())
+        || isWrappedBy(store, ChangeCaptureDataStore.class)) {
+      return store;
+    }
+    ChangeCaptureDataStore<K, T> captured = new ChangeCaptureDataStore<K, T>(
+        store, Integer.parseInt(properties.getProperty(BATCH_SIZE_KEY, "1000")),
+        Integer.parseInt(properties.getProperty(LANES_KEY, "0")));
+    String file = properties.getProperty(LOG_FILE_KEY);
+    if (file != null && !file.trim().isEmpty()) {
+      try {
+        captured.addSink(new ChangeLogSink<K>(new File(file.trim())));
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot open " + file, e);
+      }
+    }
+    int capacity = Integer.parseInt(properties.getProperty(QUEUE_CAPACITY_KEY, "0"));
+    if (capacity > 0) {
+      captured.addSink(new ChangeQueue<K>(capacity));
+    }
+    return captured;
+  }
+
+  public void addSink(ChangeSink<K> sink) {
+    sinks.add(sink);
+  }
+
+  public void removeSink(ChangeSink<K> sink) {
+    sinks.remove(sink);
+  }
+
+  public List<ChangeSink<K>> getSinks() {
+    return Collections.unmodifiableList(sinks);
+  }
+
+  /**
+   * @return the first queue sink, or null
+   */
+  @SuppressWarnings("unchecked")
+  public ChangeQueue<K> getQueue() {
+    for (ChangeSink<K> sink : sinks) {
+      if (sink instanceof ChangeQueue) {
+        return (ChangeQueue<K>) sink;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    put(delegate, key, obj);
+  }
+
+  @Override
+  public boolean delete(K key) {
+    return delete(delegate, key);
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    return deleteByQuery(delegate, query);
+  }
+
+  /**
+   * Records the changes made through another store next to this one, such
+   * as a store of another consistency level, to publish them with the
+   * changes of this store at its next flush.
+   * @param store
+   * @return the store, recording its puts and deletes
+   */
+  public DataStore<K, T> recording(DataStore<K, T> store) {
+    return new ForwardingDataStore<K, T>(store) {
+      @Override
+      public void put(K key, T obj) {
+        ChangeCaptureDataStore.this.put(delegate, key, obj);
+      }
+
+      @Override
+      public boolean delete(K key) {
+        return ChangeCaptureDataStore.this.delete(delegate, key);
+      }
+
+      @Override
+      public long deleteByQuery(Query<K, T> query) {
+        return ChangeCaptureDataStore.this.deleteByQuery(delegate, query);
+      }
+    };
+  }
+
+  private void put(DataStore<K, T> store, K key, T obj) {
+    List<String> fields = new ArrayList<String>();
+    for (Schema.Field field : obj.getSchema().getFields()) {
+      if (obj.isDirty(field.pos())) {
+        fields.add(field.name());
+      }
+    }
+    store.put(key, obj);
+    if (!fields.isEmpty()) {
+      record(ChangeEvent.Type.PUT, key, null, fields);
+    }
+  }
+
+  private boolean delete(DataStore<K, T> store, K key) {
+    boolean deleted = store.delete(key);
+    if (deleted) {
+      record(ChangeEvent.Type.DELETE, key, null, Collections.<String> emptyList());
+    }
+    return deleted;
+  }
+
+  private long deleteByQuery(DataStore<K, T> store, Query<K, T> query) {
+    long deleted = store.deleteByQuery(query);
+    record(ChangeEvent.Type.DELETE_RANGE, query.getStartKey(),
+        query.getEndKey(), Collections.<String> emptyList());
+    return deleted;
+  }
+
+  private synchronized void record(ChangeEvent.Type type, K key, K endKey,
+      List<String> fields) {
+    pending.add(new ChangeEvent<K>(++sequence, type, key, endKey, fields,
+        System.currentTimeMillis()));
+  }
+
+  /**
+   * Flushes the store, then publishes the changes made before the flush.
+   * If the flush fails they are kept for the next one.
+   */
+  @Override
+  public void flush() {
+    synchronized (publishLock) {
+      List<ChangeEvent<K>> flushed;
+      synchronized (this) {
+        flushed = pending;
+        pending = new ArrayList<ChangeEvent<K>>();
+      }
+      boolean succeeded = false;
+      try {
+        delegate.flush();
+        succeeded = true;
+      } finally {
+        if (!succeeded) {
+          synchronized (this) {
+            flushed.addAll(pending);
+            pending = flushed;
+          }
+        }
+      }
+      deliver(flushed);
+    }
+  }
+
+  private void deliver(List<ChangeEvent<K>> events) {
+    if (events.isEmpty() || sinks.isEmpty()) {
+      return;
+    }
+    if (lanes.isEmpty()) {
+      publish(events);
+      return;
+    }
+    List<List<ChangeEvent<K>>> byLane = newLanes();
+    for (ChangeEvent<K> event : events) {
+      if (event.getType() == ChangeEvent.Type.DELETE_RANGE) {
+        submitLanes(byLane);
+        submitRange(event);
+        byLane = newLanes();
+      } else {
+        int lane = (event.getKey().hashCode() & Integer.MAX_VALUE) % lanes.size();
+        byLane.get(lane).add(event);
+      }
+    }
+    submitLanes(byLane);
+  }
+
+  private List<List<ChangeEvent<K>>> newLanes() {
+    List<List<ChangeEvent<K>>> byLane = new ArrayList<List<ChangeEvent<K>>>();
+    for (int i = 0; i < lanes.size(); i++) {
+      byLane.add(new ArrayList<ChangeEvent<K>>());
+    }
+    return byLane;
+  }
+
+  private void submitLanes(List<List<ChangeEvent<K>>> byLane) {
+    for (int i = 0; i < lanes.size(); i++) {
+      final List<ChangeEvent<K>> events = byLane.get(i);
+      if (events.isEmpty()) {
+        continue;
+      }
+      final Future<?> after = barrier;
+      delivered.set(i, lanes.get(i).submit(new Runnable() {
+        @Override
+        public void run() {
+          await(after);
+          publish(events);
+        }
+      }));
+    }
+  }
+
+  /**
+   * A range delete is delivered by the first lane once every lane has
+   * delivered what came before it; later deliveries wait for it.
+   */
+  private void submitRange(ChangeEvent<K> event) {
+    final List<Future<?>> before = new ArrayList<Future<?>>(delivered);
+    before.add(barrier);
+    final List<ChangeEvent<K>> events = Collections.singletonList(event);
+    barrier = lanes.get(0).submit(new Runnable() {
+      @Override
+      public void run() {
+        for (Future<?> future : before) {
+          await(future);
+        }
+        publish(events);
+      }
+    });
+    Collections.fill(delivered, null);
+  }
+
+  private static void await(Future<?> future) {
+    if (future == null) {
+      return;
+    }
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // publish logs its own failures
+    }
+  }
+
+  /**
+   * Publishes events to every sink, a batch at a time.
+   */
+  private void publish(List<ChangeEvent<K>> events) {
+    for (int from = 0; from < events.size(); from += batchSize) {
+      List<ChangeEvent<K>> batch = events.subList(from,
+          Math.min(events.size(), from + batchSize));
+      boolean taken = true;
+      for (ChangeSink<K> sink : sinks) {
+        try {
+          sink.publish(batch);
+        } catch (Exception e) {
+          taken = false;
+          failedBatches.incrementAndGet();
+          LOG.warn("Cannot publish " + batch.size() + " changes to " + sink, e);
+        }
+      }
+      if (taken) {
+        published.addAndGet(batch.size());
+      }
+    }
+  }
+
+  /**
+   * Changes every sink took, each counted once whatever the number of
+   * sinks
+   */
+  public long getPublished() {
+    return published.get();
+  }
+
+  /** Batches a sink failed to take */
+  public long getFailedBatches() {
+    return failedBatches.get();
+  }
+
+  /** Changes waiting for a flush */
+  public synchronized int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * Flushes, waits for the lanes to deliver and closes the sinks and the
+   * store.
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      for (ExecutorService lane : lanes) {
+        lane.shutdown();
+      }
+      for (ExecutorService lane : lanes) {
+        try {
+          lane.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      for (ChangeSink<K> sink : sinks) {
+        try {
+          sink.close();
+        } catch (IOException e) {
+          LOG.warn("Cannot close " + sink, e);
+        }
+      }
+      delegate.close();
+    }
+  }
+}
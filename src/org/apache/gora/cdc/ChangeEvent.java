@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.util.List;
+
+/**
+ * A put or delete that reached a store, as published by a
+ * {@link ChangeCaptureDataStore}.
+ *
+ * @param <K>
+ */
+public class ChangeEvent<K> {
+
+  public enum Type {
+    PUT,
+    DELETE,
+    /** deleteByQuery between the key and the end key, both inclusive */
+    DELETE_RANGE
+  }
+
+  private final long sequence;
+  private final Type type;
+  private final K key;
+  private final K endKey;
+  private final List<String> fields;
+  private final long timestamp;
+
+  public ChangeEvent(long sequence, Type type, K key, K endKey,
+      List<String> fields, long timestamp) {
+    this.sequence = sequence;
+    this.type = type;
+    this.key = key;
+    this.endKey = endKey;
+    this.fields = fields;
+    this.timestamp = timestamp;
+  }
+
+  /** Increasing in the order the writes were made */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** The key written, or the start key of a range, null if unbounded */
+  public K getKey() {
+    return key;
+  }
+
+  /** The end key of a range, null otherwise or if unbounded */
+  public K getEndKey() {
+    return endKey;
+  }
+
+  /** The fields a put changed, from its dirty flags; empty for deletes */
+  public List<String> getFields() {
+    return fields;
+  }
+
+  /** When the write was made, in milliseconds since the epoch */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return sequence + " " + type + " " + key
+        + (type == Type.DELETE_RANGE ? ".." + endKey : "")
+        + (fields.isEmpty() ? "" : " " + fields);
+  }
+}
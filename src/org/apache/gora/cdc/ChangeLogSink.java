@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Appends changes to a local file, one JSON object per line:
+ * <pre>
+ * {"sequence":12,"type":"PUT","key":"123","fields":["salary"],"timestamp":1404294000000}
+ * </pre>
+ * Keys are written as text. Each batch is flushed to the file before
+ * publish returns.
+ *
+ * @param <K>
+ */
+public class ChangeLogSink<K> implements ChangeSink<K> {
+
+  private final File file;
+  private final OutputStream out;
+  private final JsonGenerator json;
+
+  /**
+   * @param file appended to if it exists
+   * @throws IOException
+   */
+  public ChangeLogSink(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    this.file = file;
+    out = new BufferedOutputStream(new FileOutputStream(file, true));
+    json = new JsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+  }
+
+  @Override
+  public synchronized void publish(List<ChangeEvent<K>> events)
+      throws IOException {
+    for (ChangeEvent<K> event : events) {
+      json.writeStartObject();
+      json.writeNumberField("sequence", event.getSequence());
+      json.writeStringField("type", event.getType().name());
+      writeKey("key", event.getKey());
+      if (event.getType() == ChangeEvent.Type.DELETE_RANGE) {
+        writeKey("endKey", event.getEndKey());
+      }
+      json.writeArrayFieldStart("fields");
+      for (String field : event.getFields()) {
+        json.writeString(field);
+      }
+      json.writeEndArray();
+      json.writeNumberField("timestamp", event.getTimestamp());
+      json.writeEndObject();
+      json.writeRaw('\n');
+    }
+    json.flush();
+  }
+
+  private void writeKey(String name, K key) throws IOException {
+    if (key == null) {
+      json.writeNullField(name);
+    } else {
+      json.writeStringField(name, key.toString());
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    json.close();
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of changes for consumers polling in batches. Publishing
+ * blocks while the queue is full, so a slow consumer holds back the flushes
+ * of the store rather than losing changes.
+ *
+ * @param <K>
+ */
+public class ChangeQueue<K> implements ChangeSink<K> {
+
+  private final BlockingQueue<ChangeEvent<K>> queue;
+
+  public ChangeQueue(int capacity) {
+    queue = new ArrayBlockingQueue<ChangeEvent<K>>(capacity);
+  }
+
+  @Override
+  public void publish(List<ChangeEvent<K>> events) {
+    try {
+      for (ChangeEvent<K> event : events) {
+        queue.put(event);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted publishing changes", e);
+    }
+  }
+
+  /**
+   * Takes the changes queued, waiting for one if there is none.
+   * @param max changes to take
+   * @param timeoutMs
+   * @return empty if none came within the timeout
+   * @throws InterruptedException
+   */
+  public List<ChangeEvent<K>> poll(int max, long timeoutMs)
+      throws InterruptedException {
+    List<ChangeEvent<K>> events = new ArrayList<ChangeEvent<K>>();
+    ChangeEvent<K> first = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      events.add(first);
+      queue.drainTo(events, max - 1);
+    }
+    return events;
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the changes of a store once they are flushed to it, the events
+ * of a key in the order they were made. Batches come one at a time, or one
+ * at a time per lane when delivery is spread over lanes, so a sink shared
+ * by lanes must be thread safe. A listener in the same JVM only needs to
+ * implement this.
+ *
+ * @param <K>
+ */
+public interface ChangeSink<K> {
+
+  /**
+   * @param events in sequence order
+   * @throws IOException
+   */
+  void publish(List<ChangeEvent<K>> events) throws IOException;
+
+  void close() throws IOException;
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Applies the field codecs of gora.properties to the records of a store:
+ * puts send a copy with the configured fields encoded, and records read by
+ * get or by queries are decoded once, before anything above the store sees
+ * them. Reads with fields decode only those: a scan that does not ask for
+ * WebPage.content never inflates it, and the rows of a query are decoded
+ * only when {@link Result#get()} is called. Records written without a
+ * codec are read as they are.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class CodecDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private final RecordCodecs<T> codecs;
+
+  public CodecDataStore(DataStore<K, T> delegate, RecordCodecs<T> codecs) {
+    super(delegate);
+    this.codecs = codecs;
+  }
+
+  /**
+   * Encodes the fields of a store that have a codec in the properties,
+   * unless none has or the store is wrapped already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> encode(
+      DataStore<K, T> store, Properties properties) {
+    if (isWrappedBy(store, CodecDataStore.class)) {
+      return store;
+    }
+    RecordCodecs<T> codecs = new RecordCodecs<T>(store.getPersistentClass(),
+        properties);
+    return codecs.isEmpty() ? store : new CodecDataStore<K, T>(store, codecs);
+  }
+
+  @Override
+  public T get(K key) {
+    return codecs.decode(delegate.get(key));
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    return codecs.decode(delegate.get(key, fields), fields);
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    delegate.put(key, codecs.encode(obj));
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    Result<K, T> result = delegate.execute(query);
+    return result == null ? null : new DecodingResult(result, query.getFields());
+  }
+
+  /**
+   * Ratio and CPU cost of the fields with a codec.
+   * @return
+   */
+  public List<CodecStats> getStats() {
+    return codecs.getStats();
+  }
+
+  private final class DecodingResult implements Result<K, T> {
+
+    private final Result<K, T> result;
+    private final String[] fields;
+    private T current;
+
+    DecodingResult(Result<K, T> result, String[] fields) {
+      this.result = result;
+      this.fields = fields;
+    }
+
+    @Override
+    public boolean next() throws Exception, IOException {
+      current = null;
+      return result.next();
+    }
+
+    @Override
+    public T get() {
+      if (current == null) {
+        current = codecs.decode(result.get(), fields);
+      }
+      return current;
+    }
+
+    @Override
+    public DataStore<K, T> getDataStore() {
+      return result.getDataStore();
+    }
+
+    @Override
+    public Query<K, T> getQuery() {
+      return result.getQuery();
+    }
+
+    @Override
+    public K getKey() {
+      return result.getKey();
+    }
+
+    @Override
+    public Class<K> getKeyClass() {
+      return result.getKeyClass();
+    }
+
+    @Override
+    public Class<T> getPersistentClass() {
+      return result.getPersistentClass();
+    }
+
+    @Override
+    public long getOffset() {
+      return result.getOffset();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      return result.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      result.close();
+    }
+  }
+}
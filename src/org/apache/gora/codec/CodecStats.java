@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compression ratio and CPU cost of one codec field, e.g. WebPage.content.
+ */
+public class CodecStats {
+
+  private final String field;
+
+  private final AtomicLong encoded = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong rawBytes = new AtomicLong();
+  private final AtomicLong encodedBytes = new AtomicLong();
+  private final AtomicLong encodeNanos = new AtomicLong();
+  private final AtomicLong decoded = new AtomicLong();
+  private final AtomicLong decodeNanos = new AtomicLong();
+
+  public CodecStats(String field) {
+    this.field = field;
+  }
+
+  void recordEncode(int raw, int stored, long nanos) {
+    encoded.incrementAndGet();
+    rawBytes.addAndGet(raw);
+    encodedBytes.addAndGet(stored);
+    encodeNanos.addAndGet(nanos);
+  }
+
+  void recordSkip(int raw, long nanos) {
+    skipped.incrementAndGet();
+    rawBytes.addAndGet(raw);
+    encodedBytes.addAndGet(raw);
+    encodeNanos.addAndGet(nanos);
+  }
+
+  void recordDecode(long nanos) {
+    decoded.incrementAndGet();
+    decodeNanos.addAndGet(nanos);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /** Values stored compressed */
+  public long getEncodedCount() {
+    return encoded.get();
+  }
+
+  /** Values stored raw because they were too small or did not compress */
+  public long getSkippedCount() {
+    return skipped.get();
+  }
+
+  public long getRawBytes() {
+    return rawBytes.get();
+  }
+
+  /** Bytes actually stored, headers included */
+  public long getEncodedBytes() {
+    return encodedBytes.get();
+  }
+
+  /**
+   * Stored bytes over raw bytes, 1.0 when nothing was written yet.
+   * @return
+   */
+  public double getRatio() {
+    long raw = rawBytes.get();
+    return raw == 0 ? 1.0 : (double) encodedBytes.get() / raw;
+  }
+
+  public long getDecodedCount() {
+    return decoded.get();
+  }
+
+  public long getEncodeNanos() {
+    return encodeNanos.get();
+  }
+
+  public long getDecodeNanos() {
+    return decodeNanos.get();
+  }
+
+  /**
+   * Average encode cost in nanoseconds per raw megabyte.
+   * @return
+   */
+  public double getEncodeNanosPerMB() {
+    long raw = rawBytes.get();
+    return raw == 0 ? 0 : encodeNanos.get() * 1048576.0 / raw;
+  }
+
+  /**
+   * Average decode cost in microseconds per value.
+   * @return
+   */
+  public double getDecodeMicrosPerValue() {
+    long n = decoded.get();
+    return n == 0 ? 0 : decodeNanos.get() / 1000.0 / n;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: encoded=%d skipped=%d raw=%dB stored=%dB ratio=%.3f "
+            + "encode=%.1fms/MB decoded=%d decode=%.1fus/value",
+        field, getEncodedCount(), getSkippedCount(), getRawBytes(),
+        getEncodedBytes(), getRatio(), getEncodeNanosPerMB() / 1e6,
+        getDecodedCount(), getDecodeMicrosPerValue());
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Field codec based on java.util.zip deflate.
+ */
+public class DeflateFieldCodec implements FieldCodec {
+
+  public static final byte ID = 1;
+  public static final String NAME = "deflate";
+
+  private final int level;
+
+  public DeflateFieldCodec() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param level deflate compression level, 0-9 or -1 for the default
+   */
+  public DeflateFieldCodec(int level) {
+    this.level = level;
+  }
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] input, int off, int len) throws IOException {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(input, off, len);
+      deflater.finish();
+      byte[] out = new byte[len + len / 1000 + 64];
+      int size = 0;
+      while (!deflater.finished()) {
+        if (size == out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+        size += deflater.deflate(out, size, out.length - size);
+      }
+      return Arrays.copyOf(out, size);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public byte[] decompress(byte[] input, int off, int len, int originalLength)
+      throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      // nowrap inflaters need one extra byte of input to finish
+      byte[] padded = new byte[len + 1];
+      System.arraycopy(input, off, padded, 0, len);
+      inflater.setInput(padded);
+      byte[] out = new byte[originalLength];
+      int size = 0;
+      while (size < originalLength && !inflater.finished()) {
+        int n = inflater.inflate(out, size, originalLength - size);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        size += n;
+      }
+      if (size != originalLength) {
+        throw new IOException("Truncated deflate field, expected "
+            + originalLength + " bytes but got " + size);
+      }
+      return out;
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt deflate field", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+
+/**
+ * Compression codec applied to a single bytes field of a persistent record.
+ * Implementations must be thread safe.
+ */
+public interface FieldCodec {
+
+  /**
+   * Identifier stored in the field header. Must be unique among the codecs
+   * known to {@link FieldCodecs}.
+   * @return
+   */
+  byte getId();
+
+  /**
+   * Name used to select the codec in gora.properties.
+   * @return
+   */
+  String getName();
+
+  /**
+   * Compresses len bytes of input starting at off.
+   * @param input
+   * @param off
+   * @param len
+   * @return the compressed bytes
+   * @throws IOException
+   */
+  byte[] compress(byte[] input, int off, int len) throws IOException;
+
+  /**
+   * Decompresses len bytes of input starting at off.
+   * @param input
+   * @param off
+   * @param len
+   * @param originalLength length of the uncompressed data
+   * @return the uncompressed bytes
+   * @throws IOException
+   */
+  byte[] decompress(byte[] input, int off, int len, int originalLength)
+      throws IOException;
+}
@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.apache.avro.AvroRuntimeException;
+
+/**
+ * Encodes and decodes codec compressed bytes fields.
+ *
+ * An encoded value starts with a 12 byte header: the magic bytes 'G' 'F' 'C',
+ * the codec id (0 for a value stored as is), the uncompressed length and the
+ * CRC32 of the bytes after the header, both as big endian ints. Values
+ * without a valid header are returned untouched by {@link #decode}, so
+ * fields written before a codec was configured keep working; the checksum
+ * keeps such a value from being taken for an encoded one just because it
+ * starts with the magic bytes. Values that are too small or do not get
+ * smaller are stored raw, unless they look encoded, in which case they are
+ * wrapped in a header of id 0.
+ */
+public final class FieldCodecs {
+
+  public static final int HEADER_LENGTH = 12;
+
+  /** Codec id of values stored uncompressed behind a header */
+  public static final byte STORED = 0;
+
+  private static final byte[] MAGIC = { 'G', 'F', 'C' };
+
+  private static final FieldCodec[] CODECS_BY_ID = new FieldCodec[128];
+  private static final ConcurrentMap<String, FieldCodec> CODECS_BY_NAME =
+      new ConcurrentHashMap<String, FieldCodec>();
+  private static final ConcurrentMap<String, CodecStats> STATS =
+      new ConcurrentHashMap<String, CodecStats>();
+
+  static {
+    register(new DeflateFieldCodec());
+    register(new SnappyFieldCodec());
+  }
+
+  private FieldCodecs() {
+  }
+
+  /**
+   * Registers a codec so it can be named in gora.properties and recognized
+   * when decoding.
+   * @param codec
+   */
+  public static synchronized void register(FieldCodec codec) {
+    if (codec.getId() <= STORED) {
+      throw new IllegalArgumentException("Codec ids must be positive: "
+          + codec.getName());
+    }
+    FieldCodec existing = CODECS_BY_ID[codec.getId()];
+    if (existing != null && existing.getClass() != codec.getClass()) {
+      throw new IllegalArgumentException("Codec id " + codec.getId()
+          + " is already used by " + existing.getName());
+    }
+    CODECS_BY_ID[codec.getId()] = codec;
+    CODECS_BY_NAME.put(codec.getName().toLowerCase(), codec);
+  }
+
+  /**
+   * Returns the codec registered under the name.
+   * @param name
+   * @return
+   */
+  public static FieldCodec forName(String name) {
+    FieldCodec codec = CODECS_BY_NAME.get(name.trim().toLowerCase());
+    if (codec == null) {
+      throw new IllegalArgumentException("Unknown field codec: " + name);
+    }
+    return codec;
+  }
+
+  /**
+   * Checks whether the value carries a valid codec header: the magic bytes,
+   * a known codec id and the checksum of the rest of the value.
+   * @param value
+   * @return
+   */
+  public static boolean isEncoded(ByteBuffer value) {
+    if (value == null || value.remaining() < HEADER_LENGTH) {
+      return false;
+    }
+    int p = value.position();
+    if (value.get(p) != MAGIC[0] || value.get(p + 1) != MAGIC[1]
+        || value.get(p + 2) != MAGIC[2]) {
+      return false;
+    }
+    byte id = value.get(p + 3);
+    if (id < STORED || (id != STORED && CODECS_BY_ID[id] == null)) {
+      return false;
+    }
+    return value.getInt(p + 8) == checksum(value, p + HEADER_LENGTH);
+  }
+
+  /**
+   * Compresses the value with the codec and prepends the header. Values
+   * shorter than minSize or that do not shrink are returned as they are,
+   * or behind a header of id {@link #STORED} when they would otherwise
+   * pass for encoded values.
+   * @param value
+   * @param codec
+   * @param minSize
+   * @param field stats key, e.g. "WebPage.content"
+   * @return
+   * @throws IOException
+   */
+  public static ByteBuffer encode(ByteBuffer value, FieldCodec codec,
+      int minSize, String field) throws IOException {
+    if (value == null) {
+      return null;
+    }
+    CodecStats stats = getStats(field);
+    long start = System.nanoTime();
+    int raw = value.remaining();
+    byte[] bytes;
+    int off;
+    if (value.hasArray()) {
+      bytes = value.array();
+      off = value.arrayOffset() + value.position();
+    } else {
+      bytes = new byte[raw];
+      value.duplicate().get(bytes);
+      off = 0;
+    }
+    byte[] compressed = raw < minSize ? null : codec.compress(bytes, off, raw);
+    if (compressed == null || compressed.length + HEADER_LENGTH >= raw) {
+      ByteBuffer stored = isEncoded(value) ? envelope(STORED, raw, bytes, off, raw)
+          : value;
+      stats.recordSkip(raw, System.nanoTime() - start);
+      return stored;
+    }
+    ByteBuffer encoded = envelope(codec.getId(), raw, compressed, 0,
+        compressed.length);
+    stats.recordEncode(raw, encoded.remaining(), System.nanoTime() - start);
+    return encoded;
+  }
+
+  private static ByteBuffer envelope(byte id, int raw, byte[] body, int off,
+      int len) {
+    CRC32 crc = new CRC32();
+    crc.update(body, off, len);
+    ByteBuffer encoded = ByteBuffer.allocate(HEADER_LENGTH + len);
+    encoded.put(MAGIC).put(id).putInt(raw).putInt((int) crc.getValue())
+        .put(body, off, len);
+    encoded.flip();
+    return encoded;
+  }
+
+  private static int checksum(ByteBuffer value, int from) {
+    CRC32 crc = new CRC32();
+    if (value.hasArray()) {
+      crc.update(value.array(), value.arrayOffset() + from, value.limit() - from);
+    } else {
+      ByteBuffer body = value.duplicate();
+      body.position(from);
+      byte[] chunk = new byte[Math.min(body.remaining(), 8192)];
+      while (body.hasRemaining()) {
+        int len = Math.min(chunk.length, body.remaining());
+        body.get(chunk, 0, len);
+        crc.update(chunk, 0, len);
+      }
+    }
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Returns the uncompressed content of an encoded value, or the value itself
+   * when it has no valid codec header.
+   * @param value
+   * @param field stats key, e.g. "WebPage.content"
+   * @return
+   */
+  public static ByteBuffer decode(ByteBuffer value, String field) {
+    if (!isEncoded(value)) {
+      return value;
+    }
+    long start = System.nanoTime();
+    int p = value.position();
+    byte id = value.get(p + 3);
+    int originalLength = value.getInt(p + 4);
+    int len = value.remaining() - HEADER_LENGTH;
+    if (id == STORED) {
+      ByteBuffer body = value.duplicate();
+      body.position(p + HEADER_LENGTH);
+      return body.slice();
+    }
+    FieldCodec codec = CODECS_BY_ID[id];
+    byte[] input;
+    int off;
+    if (value.hasArray()) {
+      input = value.array();
+      off = value.arrayOffset() + p + HEADER_LENGTH;
+    } else {
+      input = new byte[len];
+      ByteBuffer body = value.duplicate();
+      body.position(p + HEADER_LENGTH);
+      body.get(input);
+      off = 0;
+    }
+    try {
+      ByteBuffer decoded = ByteBuffer.wrap(
+          codec.decompress(input, off, len, originalLength));
+      getStats(field).recordDecode(System.nanoTime() - start);
+      return decoded;
+    } catch (IOException e) {
+      throw new AvroRuntimeException("Could not decode field " + field
+          + " with codec " + codec.getName(), e);
+    }
+  }
+
+  /**
+   * Returns the stats of a field, creating them on first use.
+   * @param field
+   * @return
+   */
+  public static CodecStats getStats(String field) {
+    CodecStats stats = STATS.get(field);
+    if (stats == null) {
+      CodecStats created = new CodecStats(field);
+      stats = STATS.putIfAbsent(field, created);
+      if (stats == null) {
+        stats = created;
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the stats of every field encoded or decoded so far.
+   * @return
+   */
+  public static List<CodecStats> getAllStats() {
+    return new ArrayList<CodecStats>(STATS.values());
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.util.ReflectionUtils;
+
+/**
+ * Field codecs configured for one persistent class.
+ *
+ * Codecs are enabled per field in gora.properties, using the simple class
+ * name and the field name:
+ * <pre>
+ * gora.codec.WebPage.content=deflate
+ * gora.codec.min.size=256
+ * </pre>
+ * Only bytes fields (or unions with bytes) can be encoded. Records are
+ * encoded on their way to the store and decoded once when read back, by
+ * {@link CodecDataStore}, and only when the read asks for them.
+ *
+ * @param <T>
+ */
+public class RecordCodecs<T extends Persistent> {
+
+  public static final String PROPERTY_PREFIX = "gora.codec.";
+  public static final String MIN_SIZE_KEY = "gora.codec.min.size";
+  public static final int DEFAULT_MIN_SIZE = 256;
+
+  private final List<Integer> indexes = new ArrayList<Integer>();
+  private final List<FieldCodec> codecs = new ArrayList<FieldCodec>();
+  private final List<String> fields = new ArrayList<String>();
+  private final List<String> names = new ArrayList<String>();
+  private final int minSize;
+
+  /**
+   * Reads the codec configuration of the persistent class.
+   * @param persistentClass
+   * @param properties usually DataStoreFactory.createProps()
+   */
+  public RecordCodecs(Class<T> persistentClass, Properties properties) {
+    this.minSize = Integer.parseInt(properties.getProperty(MIN_SIZE_KEY,
+        String.valueOf(DEFAULT_MIN_SIZE)));
+    String prefix = PROPERTY_PREFIX + persistentClass.getSimpleName() + ".";
+    Schema schema = schemaOf(persistentClass);
+    for (String name : properties.stringPropertyNames()) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      String fieldName = name.substring(prefix.length());
+      Schema.Field field = schema.getField(fieldName);
+      if (field == null) {
+        throw new IllegalArgumentException("Unknown field " + fieldName
+            + " in " + name);
+      }
+      if (!isBytes(field.schema())) {
+        throw new IllegalArgumentException("Field " + fieldName
+            + " is not a bytes field and cannot use a codec");
+      }
+      indexes.add(field.pos());
+      codecs.add(FieldCodecs.forName(properties.getProperty(name)));
+      fields.add(persistentClass.getSimpleName() + "." + fieldName);
+      names.add(fieldName);
+    }
+  }
+
+  private static Schema schemaOf(Class<?> persistentClass) {
+    try {
+      return (Schema) ReflectionUtils.getStaticField(persistentClass, "SCHEMA$");
+    } catch (Exception e) {
+      throw new IllegalArgumentException("No schema found for "
+          + persistentClass.getName(), e);
+    }
+  }
+
+  private static boolean isBytes(Schema schema) {
+    if (schema.getType() == Schema.Type.BYTES) {
+      return true;
+    }
+    if (schema.getType() == Schema.Type.UNION) {
+      for (Schema branch : schema.getTypes()) {
+        if (branch.getType() == Schema.Type.BYTES) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether any field of the class has a codec.
+   * @return
+   */
+  public boolean isEmpty() {
+    return indexes.isEmpty();
+  }
+
+  /**
+   * Returns the record with the configured fields encoded. The record itself
+   * is left as it is: when a field changes, a shallow copy with the same
+   * dirty fields is returned instead.
+   * @param record
+   * @return
+   */
+  public T encode(T record) {
+    if (record == null) {
+      return null;
+    }
+    T encoded = record;
+    for (int i = 0; i < indexes.size(); i++) {
+      int index = indexes.get(i);
+      Object value = record.get(index);
+      if (!(value instanceof ByteBuffer)) {
+        continue;
+      }
+      ByteBuffer field;
+      try {
+        field = FieldCodecs.encode((ByteBuffer) value, codecs.get(i), minSize,
+            fields.get(i));
+      } catch (IOException e) {
+        throw new AvroRuntimeException("Could not encode field "
+            + fields.get(i), e);
+      }
+      if (field != value) {
+        if (encoded == record) {
+          encoded = shallowCopy(record);
+        }
+        encoded.put(index, field);
+      }
+    }
+    return encoded;
+  }
+
+  /**
+   * Decodes the configured fields of a record read from the store, in
+   * place, so they are decompressed once rather than on every access. The
+   * fields are swapped with put(int, Object), so dirty flags are kept.
+   * @param record
+   * @return the same record
+   */
+  public T decode(T record) {
+    return decode(record, null);
+  }
+
+  /**
+   * Decodes the configured fields of a record read with a projection. Only
+   * the fields of the projection are decompressed, so a scan that does not
+   * read a field pays nothing for it. A field outside of it that the store
+   * returned anyway is left encoded: some stores hand out the records they
+   * hold, which must not be changed.
+   * @param record
+   * @param projection the fields read, null for all
+   * @return the same record
+   */
+  public T decode(T record, String[] projection) {
+    if (record == null) {
+      return null;
+    }
+    for (int i = 0; i < indexes.size(); i++) {
+      int index = indexes.get(i);
+      Object value = record.get(index);
+      if (!(value instanceof ByteBuffer)) {
+        continue;
+      }
+      if (projection == null || contains(projection, names.get(i))) {
+        record.put(index, FieldCodecs.decode((ByteBuffer) value, fields.get(i)));
+      }
+    }
+    return record;
+  }
+
+  private static boolean contains(String[] projection, String name) {
+    for (String field : projection) {
+      if (name.equals(field)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Persistent> T shallowCopy(T record) {
+    T copy = (T) SpecificData.get().newRecord(null, record.getSchema());
+    for (Schema.Field field : record.getSchema().getFields()) {
+      copy.put(field.pos(), record.get(field.pos()));
+      if (record.isDirty(field.pos())) {
+        copy.setDirty(field.pos());
+      } else {
+        copy.clearDirty(field.pos());
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the stats of the configured fields.
+   * @return
+   */
+  public List<CodecStats> getStats() {
+    List<CodecStats> stats = new ArrayList<CodecStats>();
+    for (String field : fields) {
+      stats.add(FieldCodecs.getStats(field));
+    }
+    return stats;
+  }
+}
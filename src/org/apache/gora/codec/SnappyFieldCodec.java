@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.xerial.snappy.Snappy;
+
+/**
+ * Field codec based on snappy-java, which Avro already brings in. Faster
+ * than deflate at a lower compression ratio.
+ */
+public class SnappyFieldCodec implements FieldCodec {
+
+  public static final byte ID = 2;
+  public static final String NAME = "snappy";
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] input, int off, int len) throws IOException {
+    byte[] out = new byte[Snappy.maxCompressedLength(len)];
+    int size = Snappy.compress(input, off, len, out, 0);
+    return Arrays.copyOf(out, size);
+  }
+
+  @Override
+  public byte[] decompress(byte[] input, int off, int len, int originalLength)
+      throws IOException {
+    byte[] out = new byte[originalLength];
+    int size = Snappy.uncompress(input, off, len, out, 0);
+    if (size != originalLength) {
+      throw new IOException("Truncated snappy field, expected "
+          + originalLength + " bytes but got " + size);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Differences between a secondary index and a scan of its store.
+ */
+public class IndexCheck {
+
+  /** Keys kept per kind of difference */
+  public static final int MAX_SAMPLES = 10;
+
+  private final String field;
+  private final long records;
+  private long missing;
+  private long stale;
+  private long dangling;
+  private final List<Object> samples = new ArrayList<Object>();
+
+  IndexCheck(String field, long records) {
+    this.field = field;
+    this.records = records;
+  }
+
+  void missing(Object key) {
+    missing++;
+    sample(key);
+  }
+
+  void stale(Object key) {
+    stale++;
+    sample(key);
+  }
+
+  void dangling(Object key) {
+    dangling++;
+    sample(key);
+  }
+
+  private void sample(Object key) {
+    if (samples.size() < MAX_SAMPLES) {
+      samples.add(key);
+    }
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /** Records of the store with a value in the field */
+  public long getRecords() {
+    return records;
+  }
+
+  /** Records of the store that the index does not know */
+  public long getMissing() {
+    return missing;
+  }
+
+  /** Records indexed under another value than the stored one */
+  public long getStale() {
+    return stale;
+  }
+
+  /** Indexed keys without a record, or whose field is now null */
+  public long getDangling() {
+    return dangling;
+  }
+
+  /** Some of the keys that differ */
+  public List<Object> getSamples() {
+    return samples;
+  }
+
+  public boolean isConsistent() {
+    return missing == 0 && stale == 0 && dangling == 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("index %s: %d records, %d missing, %d stale, %d dangling%s",
+        field, records, missing, stale, dangling,
+        samples.isEmpty() ? "" : ", e.g. " + samples);
+  }
+}
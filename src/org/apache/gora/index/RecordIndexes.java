@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.avro.Schema;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.util.ReflectionUtils;
+
+/**
+ * Secondary indexes configured for one persistent class.
+ *
+ * Indexes are enabled in gora.properties with the simple class name and a
+ * list of fields, and saved under an index directory:
+ * <pre>
+ * gora.index.Employee=salary,dateOfBirth,name
+ * gora.index.dir=gora-index
+ * </pre>
+ * The file of a field is &lt;dir&gt;/&lt;group&gt;.&lt;field&gt;.idx, the
+ * group being the store type and the class as in {@link Metrics#group}, so
+ * the bindings of a class to different stores keep apart indexes. A
+ * missing file is rebuilt with a scan of the store when the indexes are
+ * opened. The files are local: only one process should write through an
+ * indexed binding.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class RecordIndexes<K, T extends Persistent> {
+
+  public static final String PROPERTY_PREFIX = "gora.index.";
+  public static final String DIR_KEY = "gora.index.dir";
+  public static final String DEFAULT_DIR = "gora-index";
+
+  private final DataStore<K, T> store;
+  private final List<SecondaryIndex<K>> indexes = new ArrayList<SecondaryIndex<K>>();
+
+  /**
+   * Opens the indexes configured for the persistent class of the store.
+   * @param store
+   * @param properties usually DataStoreFactory.createProps()
+   * @throws IOException if an index file cannot be read or rebuilt
+   */
+  public RecordIndexes(DataStore<K, T> store, Properties properties)
+      throws IOException {
+    this.store = store;
+    Class<T> persistentClass = store.getPersistentClass();
+    String fields = properties.getProperty(PROPERTY_PREFIX
+        + persistentClass.getSimpleName());
+    if (fields == null || fields.trim().isEmpty()) {
+      return;
+    }
+    Schema schema = schemaOf(persistentClass);
+    File dir = new File(properties.getProperty(DIR_KEY, DEFAULT_DIR));
+    for (String name : fields.split(",")) {
+      Schema.Field field = schema.getField(name.trim());
+      if (field == null) {
+        throw new IllegalArgumentException("Unknown field " + name.trim()
+            + " in " + PROPERTY_PREFIX + persistentClass.getSimpleName());
+      }
+      SecondaryIndex<K> index = new SecondaryIndex<K>(field,
+          store.getKeyClass(), new File(dir, Metrics.group(store) + "."
+              + field.name() + ".idx"));
+      if (!index.load()) {
+        rebuild(index);
+      }
+      indexes.add(index);
+    }
+  }
+
+  private static Schema schemaOf(Class<?> persistentClass) {
+    try {
+      return (Schema) ReflectionUtils.getStaticField(persistentClass, "SCHEMA$");
+    } catch (Exception e) {
+      throw new IllegalArgumentException("No schema found for "
+          + persistentClass.getName(), e);
+    }
+  }
+
+  public boolean isEmpty() {
+    return indexes.isEmpty();
+  }
+
+  public List<SecondaryIndex<K>> getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * @param field
+   * @return the index of the field
+   * @throws IllegalArgumentException if the field is not indexed
+   */
+  public SecondaryIndex<K> get(String field) {
+    for (SecondaryIndex<K> index : indexes) {
+      if (index.getField().equals(field)) {
+        return index;
+      }
+    }
+    throw new IllegalArgumentException("Field " + field + " is not indexed");
+  }
+
+  /**
+   * Updates the indexes whose field the written record changes.
+   * @param key
+   * @param record
+   */
+  public void update(K key, T record) {
+    for (SecondaryIndex<K> index : indexes) {
+      if (index.isAffectedBy(record)) {
+        index.update(key, record);
+      }
+    }
+  }
+
+  public void remove(K key) {
+    for (SecondaryIndex<K> index : indexes) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * Saves the changed indexes.
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    for (SecondaryIndex<K> index : indexes) {
+      index.save();
+    }
+  }
+
+  /**
+   * Rebuilds every index from a scan of the store and saves it.
+   * @throws IOException
+   */
+  public void rebuild() throws IOException {
+    for (SecondaryIndex<K> index : indexes) {
+      rebuild(index);
+    }
+  }
+
+  private void rebuild(SecondaryIndex<K> index) throws IOException {
+    try {
+      index.rebuild(store);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Cannot scan " + store.getSchemaName()
+          + " to rebuild the index of " + index.getField(), e);
+    }
+    index.save();
+  }
+
+  /**
+   * Checks every index against a scan of the store.
+   * @return
+   * @throws IOException
+   */
+  public List<IndexCheck> check() throws IOException {
+    List<IndexCheck> checks = new ArrayList<IndexCheck>();
+    for (SecondaryIndex<K> index : indexes) {
+      try {
+        checks.add(index.check(store));
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Cannot scan " + store.getSchemaName()
+            + " to check the index of " + index.getField(), e);
+      }
+    }
+    return checks;
+  }
+}
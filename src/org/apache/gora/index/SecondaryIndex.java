@@ -0,0 +1,507 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.avro.Schema;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Client side index from the values of one field to the keys of the records
+ * holding them, kept in memory and saved to a local file.
+ *
+ * int and long fields are indexed as Long, float and double as Double,
+ * strings and enums as String, so lookups accept any number or
+ * CharSequence. Null values are not indexed. Numeric and string fields
+ * both support equality and inclusive range lookups.
+ *
+ * The file is rewritten atomically by {@link #save()}, which the binding
+ * calls after flushing the store. An index is only as current as the
+ * writes that went through the binding; {@link #check} compares it with a
+ * scan of the store and {@link #rebuild} recreates it from one.
+ *
+ * @param <K>
+ */
+public class SecondaryIndex<K> {
+
+  private static final int MAGIC = 0x47495801;
+  private static final byte LONG = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte STRING = 3;
+
+  private final String field;
+  private final int position;
+  private final byte valueType;
+  private final Class<K> keyClass;
+  private final File file;
+  private final NavigableMap<Comparable<?>, Set<K>> keysByValue =
+      new TreeMap<Comparable<?>, Set<K>>();
+  private final Map<K, Comparable<?>> valueByKey = new HashMap<K, Comparable<?>>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private long version;
+  private long savedVersion;
+
+  /**
+   * @param field field of the persistent schema
+   * @param keyClass String, Long or Integer, so keys can be saved
+   * @param file index file, loaded by {@link #load()}
+   */
+  public SecondaryIndex(Schema.Field field, Class<K> keyClass, File file) {
+    this.field = field.name();
+    this.position = field.pos();
+    this.valueType = valueType(field.schema());
+    if (keyClass != String.class && keyClass != Long.class
+        && keyClass != Integer.class) {
+      throw new IllegalArgumentException("Cannot index records with "
+          + keyClass.getName() + " keys");
+    }
+    this.keyClass = keyClass;
+    this.file = file;
+  }
+
+  private static byte valueType(Schema schema) {
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+        return LONG;
+      case FLOAT:
+      case DOUBLE:
+        return DOUBLE;
+      case STRING:
+      case ENUM:
+        return STRING;
+      case UNION:
+        // nullable fields: a union of null and one indexable type
+        List<Schema> branches = new ArrayList<Schema>();
+        for (Schema branch : schema.getTypes()) {
+          if (branch.getType() != Schema.Type.NULL) {
+            branches.add(branch);
+          }
+        }
+        if (branches.size() == 1) {
+          return valueType(branches.get(0));
+        }
+        break;
+      default:
+        break;
+    }
+    throw new IllegalArgumentException("Cannot index fields of type " + schema);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /** Number of indexed keys */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return valueByKey.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes the field of a record written under key, replacing the entry
+   * of a previous version.
+   * @param key
+   * @param record
+   */
+  public void update(K key, Persistent record) {
+    Comparable<?> value = normalize(record.get(position));
+    lock.writeLock().lock();
+    try {
+      Comparable<?> old = valueByKey.get(key);
+      if (old != null && old.equals(value)) {
+        return;
+      }
+      removeEntry(key, old);
+      if (value != null) {
+        valueByKey.put(key, value);
+        Set<K> keys = keysByValue.get(value);
+        if (keys == null) {
+          keys = new LinkedHashSet<K>();
+          keysByValue.put(value, keys);
+        }
+        keys.add(key);
+      }
+      version++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Whether a write of the record can change the indexed value, i.e. the
+   * field is dirty.
+   * @param record
+   * @return
+   */
+  public boolean isAffectedBy(Persistent record) {
+    return record.isDirty(position);
+  }
+
+  public void remove(K key) {
+    lock.writeLock().lock();
+    try {
+      Comparable<?> old = valueByKey.get(key);
+      if (old != null) {
+        removeEntry(key, old);
+        version++;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void removeEntry(K key, Comparable<?> old) {
+    if (old == null) {
+      return;
+    }
+    valueByKey.remove(key);
+    Set<K> keys = keysByValue.get(old);
+    keys.remove(key);
+    if (keys.isEmpty()) {
+      keysByValue.remove(old);
+    }
+  }
+
+  /**
+   * Keys of the records whose field equals the value.
+   * @param value
+   * @return
+   */
+  public List<K> lookup(Object value) {
+    Comparable<?> normalized = normalize(value);
+    lock.readLock().lock();
+    try {
+      Set<K> keys = keysByValue.get(normalized);
+      return keys == null ? new ArrayList<K>() : new ArrayList<K>(keys);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Keys of the records whose field is between from and to, both
+   * inclusive, in value order.
+   * @param from null for no lower bound
+   * @param to null for no upper bound
+   * @return
+   */
+  public List<K> range(Object from, Object to) {
+    Comparable<?> low = normalize(from);
+    Comparable<?> high = normalize(to);
+    lock.readLock().lock();
+    try {
+      NavigableMap<Comparable<?>, Set<K>> range = keysByValue;
+      if (low != null) {
+        range = range.tailMap(low, true);
+      }
+      if (high != null) {
+        range = range.headMap(high, true);
+      }
+      List<K> keys = new ArrayList<K>();
+      for (Set<K> set : range.values()) {
+        keys.addAll(set);
+      }
+      return keys;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Indexed form of a field value or of a lookup bound.
+   * @param value
+   * @return
+   */
+  Comparable<?> normalize(Object value) {
+    if (value == null) {
+      return null;
+    }
+    switch (valueType) {
+      case LONG:
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("Field " + field
+              + " takes numbers, got " + value);
+        }
+        return ((Number) value).longValue();
+      case DOUBLE:
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("Field " + field
+              + " takes numbers, got " + value);
+        }
+        return ((Number) value).doubleValue();
+      default:
+        return value.toString();
+    }
+  }
+
+  /**
+   * Replaces the index with the values of a full scan of the store.
+   * @param store
+   * @throws Exception
+   */
+  public <T extends Persistent> void rebuild(DataStore<K, T> store)
+      throws Exception {
+    Map<K, Comparable<?>> scanned = scan(store);
+    lock.writeLock().lock();
+    try {
+      keysByValue.clear();
+      valueByKey.clear();
+      for (Map.Entry<K, Comparable<?>> entry : scanned.entrySet()) {
+        valueByKey.put(entry.getKey(), entry.getValue());
+        Set<K> keys = keysByValue.get(entry.getValue());
+        if (keys == null) {
+          keys = new LinkedHashSet<K>();
+          keysByValue.put(entry.getValue(), keys);
+        }
+        keys.add(entry.getKey());
+      }
+      version++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Compares the index with a full scan of the store.
+   * @param store
+   * @return
+   * @throws Exception
+   */
+  public <T extends Persistent> IndexCheck check(DataStore<K, T> store)
+      throws Exception {
+    Map<K, Comparable<?>> scanned = scan(store);
+    IndexCheck check = new IndexCheck(field, scanned.size());
+    lock.readLock().lock();
+    try {
+      for (Map.Entry<K, Comparable<?>> entry : scanned.entrySet()) {
+        Comparable<?> indexed = valueByKey.get(entry.getKey());
+        if (indexed == null) {
+          check.missing(entry.getKey());
+        } else if (!indexed.equals(entry.getValue())) {
+          check.stale(entry.getKey());
+        }
+      }
+      for (K key : valueByKey.keySet()) {
+        if (!scanned.containsKey(key)) {
+          check.dangling(key);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return check;
+  }
+
+  private <T extends Persistent> Map<K, Comparable<?>> scan(
+      DataStore<K, T> store) throws Exception {
+    Map<K, Comparable<?>> values = new HashMap<K, Comparable<?>>();
+    Query<K, T> query = store.newQuery();
+    query.setFields(field);
+    Result<K, T> result;
+    try {
+      result = store.execute(query);
+    } catch (NoSuchElementException e) {
+      // MemStore cannot run an unbounded query over an empty map
+      return values;
+    }
+    if (result == null) {
+      return values;
+    }
+    try {
+      while (result.next()) {
+        Comparable<?> value = normalize(result.get().get(position));
+        if (value != null) {
+          values.put(result.getKey(), value);
+        }
+      }
+    } finally {
+      result.close();
+    }
+    return values;
+  }
+
+  /**
+   * Loads the index file.
+   * @return false if there is no file yet
+   * @throws IOException
+   */
+  public boolean load() throws IOException {
+    if (!file.exists()) {
+      return false;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    lock.writeLock().lock();
+    try {
+      if (in.readInt() != MAGIC || !field.equals(readString(in))
+          || in.readByte() != valueType) {
+        throw new IOException(file + " is not an index of " + field);
+      }
+      keysByValue.clear();
+      valueByKey.clear();
+      for (int values = in.readInt(); values > 0; values--) {
+        Comparable<?> value = readValue(in);
+        Set<K> keys = new LinkedHashSet<K>();
+        for (int n = in.readInt(); n > 0; n--) {
+          K key = parseKey(readString(in));
+          keys.add(key);
+          valueByKey.put(key, value);
+        }
+        keysByValue.put(value, keys);
+      }
+      savedVersion = version;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the index file if the index changed since it was loaded or
+   * saved; the new file replaces the old one atomically.
+   * @throws IOException
+   */
+  public synchronized void save() throws IOException {
+    long saving;
+    lock.readLock().lock();
+    try {
+      saving = version;
+      if (saving == savedVersion) {
+        return;
+      }
+      File dir = file.getAbsoluteFile().getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Cannot create " + dir);
+      }
+      File tmp = new File(dir, file.getName() + ".tmp");
+      FileOutputStream stream = new FileOutputStream(tmp);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      try {
+        out.writeInt(MAGIC);
+        writeString(out, field);
+        out.writeByte(valueType);
+        out.writeInt(keysByValue.size());
+        for (Map.Entry<Comparable<?>, Set<K>> entry : keysByValue.entrySet()) {
+          writeValue(out, entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (K key : entry.getValue()) {
+            writeString(out, key.toString());
+          }
+        }
+        out.flush();
+        stream.getFD().sync();
+      } finally {
+        out.close();
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      lock.readLock().unlock();
+    }
+    // updates made since the file was written keep the index modified
+    lock.writeLock().lock();
+    try {
+      savedVersion = saving;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Comparable<?> readValue(DataInputStream in) throws IOException {
+    switch (valueType) {
+      case LONG:
+        return in.readLong();
+      case DOUBLE:
+        return in.readDouble();
+      default:
+        return readString(in);
+    }
+  }
+
+  private void writeValue(DataOutputStream out, Comparable<?> value)
+      throws IOException {
+    switch (valueType) {
+      case LONG:
+        out.writeLong((Long) value);
+        break;
+      case DOUBLE:
+        out.writeDouble((Double) value);
+        break;
+      default:
+        writeString(out, (String) value);
+    }
+  }
+
+  private K parseKey(String key) {
+    if (keyClass == Long.class) {
+      return keyClass.cast(Long.valueOf(key));
+    }
+    if (keyClass == Integer.class) {
+      return keyClass.cast(Integer.valueOf(key));
+    }
+    return keyClass.cast(key);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
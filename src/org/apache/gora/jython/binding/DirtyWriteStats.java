@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.jython.binding;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what dirty-only writes sent and skipped. Sizes are Avro binary
+ * estimates from {@link org.apache.gora.utils.PersistentSizes}.
+ */
+public class DirtyWriteStats {
+
+  private final AtomicLong puts = new AtomicLong();
+  private final AtomicLong cleanPuts = new AtomicLong();
+  private final AtomicLong fieldsWritten = new AtomicLong();
+  private final AtomicLong fieldsSkipped = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong bytesSkipped = new AtomicLong();
+
+  void recordPut(int written, int skipped, long writtenBytes, long skippedBytes) {
+    puts.incrementAndGet();
+    fieldsWritten.addAndGet(written);
+    fieldsSkipped.addAndGet(skipped);
+    bytesWritten.addAndGet(writtenBytes);
+    bytesSkipped.addAndGet(skippedBytes);
+  }
+
+  void recordCleanPut(int skipped, long skippedBytes) {
+    cleanPuts.incrementAndGet();
+    fieldsSkipped.addAndGet(skipped);
+    bytesSkipped.addAndGet(skippedBytes);
+  }
+
+  /** Records sent to the store */
+  public long getPuts() {
+    return puts.get();
+  }
+
+  /** Records not sent at all because nothing was dirty */
+  public long getCleanPuts() {
+    return cleanPuts.get();
+  }
+
+  public long getFieldsWritten() {
+    return fieldsWritten.get();
+  }
+
+  public long getFieldsSkipped() {
+    return fieldsSkipped.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  public long getBytesSkipped() {
+    return bytesSkipped.get();
+  }
+
+  @Override
+  public String toString() {
+    return "puts=" + getPuts() + " cleanPuts=" + getCleanPuts()
+        + " fieldsWritten=" + getFieldsWritten() + " fieldsSkipped="
+        + getFieldsSkipped() + " bytesWritten=" + getBytesWritten()
+        + " bytesSkipped=" + getBytesSkipped();
+  }
+}
@@ -18,12 +18,31 @@
 
 package org.apache.gora.jython.binding;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.avro.Schema;
+import org.apache.gora.aggregate.AggregatingDataStore;
+import org.apache.gora.aggregate.RecordAggregates;
+import org.apache.gora.binding.ConsistencyLevels;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.binding.StoreDecorators;
+import org.apache.gora.binding.ThrottledDataStore;
+import org.apache.gora.cdc.ChangeCaptureDataStore;
+import org.apache.gora.codec.CodecDataStore;
+import org.apache.gora.codec.CodecStats;
 import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.index.RecordIndexes;
 import org.apache.gora.persistency.Persistent;
 import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
 import org.apache.gora.util.GoraException;
 import org.apache.gora.utils.GeneratedUtils;
 import org.apache.gora.utils.GoraUtils;
+import org.apache.gora.utils.PersistentSizes;
 
 /**
  * Main entry point for data stores.
@@ -38,6 +57,32 @@ public class SimpleBinding<K, T extends Persistent> {
    */
   private final DataStore<K, T> datastore;
 
+  /**
+   * What putDirty sent and skipped
+   */
+  private final DirtyWriteStats dirtyWriteStats = new DirtyWriteStats();
+
+  /**
+   * Secondary indexes configured in gora.properties
+   */
+  private final RecordIndexes<K, T> indexes;
+
+  /**
+   * Aggregates configured in gora.properties
+   */
+  private final RecordAggregates<K, T> aggregates;
+
+  /**
+   * Stores of the consistency levels asked for
+   */
+  private final ConsistencyLevels<K, T> levels;
+
+  /**
+   * Consistency level of the calls of each thread, null for the level of
+   * gora.properties
+   */
+  private final ThreadLocal<String> sessionLevel = new ThreadLocal<String>();
+
   /**
    * Entry point for data stores usage.
    * @param type
@@ -51,7 +96,53 @@ public class SimpleBinding<K, T extends Persistent> {
       throws ClassNotFoundException, GoraException {
     Class<K> kClass = (Class<K>) Class.forName(keyClass);
     Class<T> vClass = (Class<T>) Class.forName(valClass);
-    datastore = GoraUtils.createSpecificDataStore(type, kClass, vClass);
+    Properties properties = DataStoreFactory.createProps();
+    datastore = StoreDecorators.decorate(
+        GoraUtils.createSpecificDataStore(type, kClass, vClass), properties);
+    indexes = openIndexes(datastore);
+    aggregates = openAggregates(datastore);
+    levels = new ConsistencyLevels<K, T>(datastore, properties);
+  }
+
+  /**
+   * Binding over an already created data store.
+   * @param datastore
+   */
+  public SimpleBinding(DataStore<K, T> datastore) {
+    Properties properties = DataStoreFactory.createProps();
+    this.datastore = StoreDecorators.decorate(datastore, properties);
+    indexes = openIndexes(this.datastore);
+    aggregates = openAggregates(this.datastore);
+    levels = new ConsistencyLevels<K, T>(this.datastore, properties);
+  }
+
+  private static <K, T extends Persistent> RecordIndexes<K, T> openIndexes(
+      DataStore<K, T> datastore) {
+    try {
+      return new RecordIndexes<K, T>(datastore, DataStoreFactory.createProps());
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot open the indexes of "
+          + datastore.getPersistentClass().getSimpleName(), e);
+    }
+  }
+
+  /**
+   * The aggregates the store maintains, or none.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K, T extends Persistent> RecordAggregates<K, T> openAggregates(
+      DataStore<K, T> datastore) {
+    AggregatingDataStore<K, T> aggregating = ForwardingDataStore.find(datastore,
+        AggregatingDataStore.class);
+    if (aggregating != null) {
+      return aggregating.getAggregates();
+    }
+    try {
+      return new RecordAggregates<K, T>(datastore, new Properties());
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot open the aggregates of "
+          + datastore.getPersistentClass().getSimpleName(), e);
+    }
   }
 
   @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -74,23 +165,294 @@ public class SimpleBinding<K, T extends Persistent> {
     }
   }
 
+  /**
+   * Puts a record and indexes it, unless the throttle shed the put.
+   * @param key
+   * @param value
+   */
   public void put(K key, T value) {
-    datastore.put(key, value);
+    DataStore<K, T> store = store();
+    store.put(key, value);
+    if (!shed(store)) {
+      indexes.update(key, value);
+    }
+  }
+
+  /**
+   * Puts a record at a consistency level.
+   * @param key
+   * @param value
+   * @param level e.g. ONE or QUORUM
+   * @see #setConsistency(String)
+   */
+  public void put(K key, T value, String level) {
+    levels.get(level).put(key, value);
+    indexes.update(key, value);
+  }
+
+  /**
+   * Sets the consistency level of the following calls of the current
+   * thread (a Py4j client connection has a thread of its own). Calls at a
+   * level go to a store of that level, kept consistent with the caches,
+   * near tier, write buffer and change capture of the binding store (see
+   * {@link org.apache.gora.binding.LevelDataStore}).
+   * @param level e.g. ONE or QUORUM, null for the level of gora.properties
+   */
+  public void setConsistency(String level) {
+    if (level == null) {
+      sessionLevel.remove();
+    } else {
+      levels.get(level);
+      sessionLevel.set(level);
+    }
+  }
+
+  /**
+   * @return the level set by the current thread, or null
+   */
+  public String getConsistency() {
+    return sessionLevel.get();
+  }
+
+  private DataStore<K, T> store() {
+    String level = sessionLevel.get();
+    return level == null ? datastore : levels.get(level);
+  }
+
+  /**
+   * Whether the throttle of the binding store shed the last write of the
+   * calling thread to a store. Levels are not throttled.
+   */
+  private boolean shed(DataStore<K, T> store) {
+    if (store != datastore) {
+      return false;
+    }
+    ThrottledDataStore<?, ?> throttled =
+        ForwardingDataStore.find(datastore, ThrottledDataStore.class);
+    return throttled != null && throttled.wasShed();
+  }
+
+  /**
+   * Puts only the dirty fields of a record. Gora stores write the fields
+   * flagged dirty, so clean fields (e.g. an untouched WebPage.content) are
+   * not rewritten; a record with no dirty field is not sent at all. The
+   * written and skipped sizes are added to {@link #getDirtyWriteStats()}.
+   * @param key
+   * @param value
+   * @return false if the record was clean and nothing was sent, or the
+   *         throttle shed the put
+   */
+  public boolean putDirty(K key, T value) {
+    int written = 0;
+    int skipped = 0;
+    long writtenBytes = 0;
+    long skippedBytes = 0;
+    for (Schema.Field field : value.getSchema().getFields()) {
+      long size = PersistentSizes.fieldSize(value, field);
+      if (value.isDirty(field.pos())) {
+        written++;
+        writtenBytes += size;
+      } else {
+        skipped++;
+        skippedBytes += size;
+      }
+    }
+    if (written == 0) {
+      dirtyWriteStats.recordCleanPut(skipped, skippedBytes);
+      return false;
+    }
+    DataStore<K, T> store = store();
+    store.put(key, value);
+    if (shed(store)) {
+      return false;
+    }
+    indexes.update(key, value);
+    dirtyWriteStats.recordPut(written, skipped, writtenBytes, skippedBytes);
+    return true;
   }
 
+  /**
+   * Reads a record, applies the mutator and writes back the fields it
+   * changed. A missing record is created from scratch.
+   * @param key
+   * @param mutator
+   * @return the updated record
+   */
+  public T update(K key, RecordMutator<T> mutator) {
+    T value = store().get(key);
+    if (value == null) {
+      value = datastore.newPersistent();
+    } else {
+      value.clearDirty();
+    }
+    mutator.mutate(value);
+    putDirty(key, value);
+    return value;
+  }
+
+  /**
+   * Deletes a record and its index entries.
+   * @param key
+   * @return
+   */
+  public boolean delete(K key) {
+    DataStore<K, T> store = store();
+    boolean deleted = store.delete(key);
+    if (shed(store)) {
+      return false;
+    }
+    indexes.remove(key);
+    return deleted;
+  }
+
+  /**
+   * Deletes a record at a consistency level.
+   * @param key
+   * @param level
+   * @return
+   */
+  public boolean delete(K key, String level) {
+    boolean deleted = levels.get(level).delete(key);
+    indexes.remove(key);
+    return deleted;
+  }
+
+  /**
+   * Flushes the stores, then saves the indexes, so saved files never
+   * reference writes the store may have lost; the store saves the
+   * aggregates the same way. The levels are flushed first, as flushing the
+   * binding store publishes their changes.
+   */
   public void flush() {
+    levels.flush();
     datastore.flush();
+    saveIndexes();
   }
 
   public void close() {
-    datastore.close();
+    try {
+      saveIndexes();
+    } finally {
+      try {
+        levels.close();
+      } finally {
+        datastore.close();
+      }
+    }
+  }
+
+  private void saveIndexes() {
+    try {
+      indexes.save();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot save the indexes", e);
+    }
   }
 
   public T get(K key) {
-    return datastore.get(key);
+    return store().get(key);
   }
 
+  /**
+   * Gets a record at a consistency level, e.g. ONE on latency sensitive
+   * paths or QUORUM for audits.
+   * @param key
+   * @param level
+   * @return
+   */
+  public T get(K key, String level) {
+    return levels.get(level).get(key);
+  }
+
+  /**
+   * Keys of the records whose indexed field is between from and to, both
+   * inclusive; pass the same value twice for an equality lookup.
+   * @param field an indexed field
+   * @param from null for no lower bound
+   * @param to null for no upper bound
+   * @return
+   */
+  public List<K> findKeys(String field, Object from, Object to) {
+    return indexes.get(field).range(from, to);
+  }
+
+  /**
+   * Records whose indexed field is between from and to, in field order.
+   * Records deleted behind the back of the binding are skipped.
+   * @param field an indexed field
+   * @param from null for no lower bound
+   * @param to null for no upper bound
+   * @return
+   */
+  public List<T> find(String field, Object from, Object to) {
+    List<T> records = new ArrayList<T>();
+    for (K key : findKeys(field, from, to)) {
+      T record = store().get(key);
+      if (record != null) {
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * The secondary indexes, to rebuild or check them.
+   * @return
+   */
+  public RecordIndexes<K, T> getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * The aggregates, e.g. getAggregates().get("salary").getMean(), to read
+   * without scanning or to rebuild.
+   * @return
+   */
+  public RecordAggregates<K, T> getAggregates() {
+    return aggregates;
+  }
+
+  /**
+   * Compression ratio and CPU cost of the fields with a codec.
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public List<CodecStats> getCodecStats() {
+    CodecDataStore<K, T> codecs = ForwardingDataStore.find(datastore,
+        CodecDataStore.class);
+    return codecs == null ? Collections.<CodecStats>emptyList()
+        : codecs.getStats();
+  }
+
+  public DirtyWriteStats getDirtyWriteStats() {
+    return dirtyWriteStats;
+  }
+
+  /**
+   * The decorated store. Writes through it are aggregated, but not
+   * indexed.
+   * @return
+   */
   public DataStore<K, T> getDatastore() {
     return datastore;
   }
+
+  /**
+   * The change capture of the store, to add sinks to or poll its queue.
+   * @return null unless gora.cdc.enabled is set
+   */
+  @SuppressWarnings("unchecked")
+  public ChangeCaptureDataStore<K, T> getChangeCapture() {
+    return ForwardingDataStore.find(datastore, ChangeCaptureDataStore.class);
+  }
+
+  /**
+   * The store reading and writing at a consistency level. Writes through it
+   * are aggregated, but not indexed.
+   * @param level
+   * @return
+   */
+  public DataStore<K, T> getDatastore(String level) {
+    return levels.get(level);
+  }
 }
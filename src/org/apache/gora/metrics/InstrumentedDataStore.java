@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.metrics;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Times get, put, delete, flush and query execution of a store, and the
+ * iteration of the results it returns, in the {@link Metrics} group of the
+ * store.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class InstrumentedDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private final OperationMetrics get;
+  private final OperationMetrics put;
+  private final OperationMetrics delete;
+  private final OperationMetrics flush;
+  private final OperationMetrics execute;
+  private final OperationMetrics next;
+
+  public InstrumentedDataStore(DataStore<K, T> delegate) {
+    super(delegate);
+    String group = Metrics.group(delegate);
+    get = Metrics.get(group, "get");
+    put = Metrics.get(group, "put");
+    delete = Metrics.get(group, "delete");
+    flush = Metrics.get(group, "flush");
+    execute = Metrics.get(group, "execute");
+    next = Metrics.get(group, "next");
+  }
+
+  @Override
+  public T get(K key) {
+    long start = get.start();
+    boolean failed = true;
+    try {
+      T value = delegate.get(key);
+      failed = false;
+      return value;
+    } finally {
+      get.stop(start, failed);
+    }
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    long start = get.start();
+    boolean failed = true;
+    try {
+      T value = delegate.get(key, fields);
+      failed = false;
+      return value;
+    } finally {
+      get.stop(start, failed);
+    }
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    long start = put.start();
+    boolean failed = true;
+    try {
+      delegate.put(key, obj);
+      failed = false;
+    } finally {
+      put.stop(start, failed);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    long start = delete.start();
+    boolean failed = true;
+    try {
+      boolean deleted = delegate.delete(key);
+      failed = false;
+      return deleted;
+    } finally {
+      delete.stop(start, failed);
+    }
+  }
+
+  @Override
+  public void flush() {
+    long start = flush.start();
+    boolean failed = true;
+    try {
+      delegate.flush();
+      failed = false;
+    } finally {
+      flush.stop(start, failed);
+    }
+  }
+
+  /**
+   * Times the execution; the result times each of its next calls.
+   */
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    long start = execute.start();
+    boolean failed = true;
+    try {
+      Result<K, T> result = delegate.execute(query);
+      failed = false;
+      // file stores return no result before their file exists
+      return result == null ? null : new InstrumentedResult<K, T>(result, next);
+    } finally {
+      execute.stop(start, failed);
+    }
+  }
+}
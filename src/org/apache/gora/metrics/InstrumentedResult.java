@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.metrics;
+
+import java.io.IOException;
+
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Result timing each call to next, which is where stores fetch the rows.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class InstrumentedResult<K, T extends Persistent> implements Result<K, T> {
+
+  private final Result<K, T> result;
+  private final OperationMetrics next;
+
+  public InstrumentedResult(Result<K, T> result, OperationMetrics next) {
+    this.result = result;
+    this.next = next;
+  }
+
+  @Override
+  public boolean next() throws Exception, IOException {
+    long start = next.start();
+    boolean failed = true;
+    try {
+      boolean hasNext = result.next();
+      failed = false;
+      return hasNext;
+    } finally {
+      next.stop(start, failed);
+    }
+  }
+
+  @Override
+  public DataStore<K, T> getDataStore() {
+    return result.getDataStore();
+  }
+
+  @Override
+  public Query<K, T> getQuery() {
+    return result.getQuery();
+  }
+
+  @Override
+  public K getKey() {
+    return result.getKey();
+  }
+
+  @Override
+  public T get() {
+    return result.get();
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return result.getKeyClass();
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return result.getPersistentClass();
+  }
+
+  @Override
+  public long getOffset() {
+    return result.getOffset();
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    return result.getProgress();
+  }
+
+  @Override
+  public void close() throws IOException {
+    result.close();
+  }
+}
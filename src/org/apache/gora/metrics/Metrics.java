@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide registry of {@link OperationMetrics}, grouped per store type
+ * and persistent class (e.g. CassandraStore.Employee) or per component.
+ * Each operation is registered as the MBean
+ * org.apache.gora:type=Metrics,group=&lt;group&gt;,operation=&lt;operation&gt;.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.metrics.enabled: instrument the stores of the bindings, true by
+ * default</li>
+ * <li>gora.metrics.log.interval: seconds between dumps of the interval
+ * latencies to the org.apache.gora.metrics log, 0 (default) for none</li>
+ * </ul>
+ */
+public class Metrics {
+
+  public static final String ENABLED_KEY = "gora.metrics.enabled";
+  public static final String LOG_INTERVAL_KEY = "gora.metrics.log.interval";
+  public static final String DOMAIN = "org.apache.gora";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+  private static final ConcurrentMap<String, OperationMetrics> METRICS =
+      new ConcurrentHashMap<String, OperationMetrics>();
+  private static final boolean ENABLED;
+  private static ScheduledExecutorService logger;
+
+  static {
+    Properties properties = DataStoreFactory.createProps();
+    ENABLED = Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, "true"));
+    long interval = Long.parseLong(properties.getProperty(LOG_INTERVAL_KEY, "0"));
+    if (ENABLED && interval > 0) {
+      startLogging(interval);
+    }
+  }
+
+  private Metrics() {
+  }
+
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Gets or creates and registers the metrics of an operation.
+   * @param group
+   * @param operation
+   * @return
+   */
+  public static OperationMetrics get(String group, String operation) {
+    String name = group + "." + operation;
+    OperationMetrics metrics = METRICS.get(name);
+    if (metrics == null) {
+      OperationMetrics created = new OperationMetrics(group, operation);
+      metrics = METRICS.putIfAbsent(name, created);
+      if (metrics == null) {
+        metrics = created;
+        register(metrics);
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Group of a store: its type and persistent class.
+   * @param store
+   * @return
+   */
+  public static String group(DataStore<?, ?> store) {
+    return ForwardingDataStore.unwrap(store).getClass().getSimpleName() + "."
+        + store.getPersistentClass().getSimpleName();
+  }
+
+  /**
+   * Wraps a store so its calls and query results are timed, unless metrics
+   * are disabled or the store is instrumented already.
+   * @param store
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> instrument(
+      DataStore<K, T> store) {
+    if (!ENABLED
+        || ForwardingDataStore.isWrappedBy(store, InstrumentedDataStore.class)) {
+      return store;
+    }
+    return new InstrumentedDataStore<K, T>(store);
+  }
+
+  /**
+   * Metrics of all operations called at least once.
+   * @return
+   */
+  public static List<OperationMetrics> getAll() {
+    List<OperationMetrics> all = new ArrayList<OperationMetrics>();
+    for (OperationMetrics metrics : METRICS.values()) {
+      if (metrics.getCount() > 0 || metrics.getInFlight() > 0) {
+        all.add(metrics);
+      }
+    }
+    return all;
+  }
+
+  /**
+   * One line per operation with the latencies since the process started.
+   * @return
+   */
+  public static String dump() {
+    StringBuilder sb = new StringBuilder();
+    for (OperationMetrics metrics : getAll()) {
+      sb.append(String.format("%s %s: %s, %d errors, %d in flight%n",
+          metrics.getGroup(), metrics.getOperation(), metrics.getLatency(),
+          metrics.getErrors(), metrics.getInFlight()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Logs the latencies of every interval, at INFO level.
+   * @param intervalSeconds
+   */
+  public static synchronized void startLogging(final long intervalSeconds) {
+    if (logger != null) {
+      logger.shutdownNow();
+    }
+    logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "gora-metrics-log");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    logger.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        for (OperationMetrics metrics : getAll()) {
+          LatencyHistogram interval = metrics.swapInterval();
+          LOG.info(String.format("%s %s: %.1f ops/s %s, %d errors, %d in flight",
+              metrics.getGroup(), metrics.getOperation(),
+              interval.getCount() / (double) intervalSeconds, interval,
+              metrics.getErrors(), metrics.getInFlight()));
+        }
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void stopLogging() {
+    if (logger != null) {
+      logger.shutdownNow();
+      logger = null;
+    }
+  }
+
+  private static void register(OperationMetrics metrics) {
+    register(metrics, "Metrics", metrics.getGroup(), "operation",
+        metrics.getOperation());
+  }
+
+  /**
+   * Registers an MBean as org.apache.gora:type=&lt;type&gt;,group=&lt;group&gt;
+   * followed by the given name and value, replacing any bean of that name.
+   * Failures are logged, metrics are not worth failing a store for.
+   * @param bean
+   * @param type
+   * @param group
+   * @param name
+   * @param value
+   */
+  public static void register(Object bean, String type, String group,
+      String name, String value) {
+    try {
+      ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+          + ",group=" + ObjectName.quote(group) + "," + name + "="
+          + ObjectName.quote(value));
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(bean, objectName);
+    } catch (JMException e) {
+      LOG.warn("Cannot register " + type + " " + group + " " + value, e);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latencies, errors and calls in flight of one operation. A call is timed
+ * with
+ *
+ * <pre>
+ * long start = metrics.start();
+ * boolean failed = true;
+ * try {
+ *   ...
+ *   failed = false;
+ * } finally {
+ *   metrics.stop(start, failed);
+ * }
+ * </pre>
+ *
+ * Latencies go to a histogram since start and to an interval histogram the
+ * periodic log swaps out.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+  private final String group;
+  private final String operation;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicReference<LatencyHistogram> interval =
+      new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public OperationMetrics(String group, String operation) {
+    this.group = group;
+    this.operation = operation;
+  }
+
+  public String getGroup() {
+    return group;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * Marks a call in flight.
+   * @return the start time to pass to stop
+   */
+  public long start() {
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Ends a call started with {@link #start()}.
+   * @param start
+   * @param failed
+   */
+  public void stop(long start, boolean failed) {
+    long nanos = System.nanoTime() - start;
+    inFlight.decrementAndGet();
+    latency.record(nanos);
+    interval.get().record(nanos);
+    if (failed) {
+      errors.incrementAndGet();
+    }
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * Replaces the interval histogram with an empty one.
+   * @return the latencies recorded since the previous call
+   */
+  public LatencyHistogram swapInterval() {
+    return interval.getAndSet(new LatencyHistogram());
+  }
+
+  @Override
+  public long getCount() {
+    return latency.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return latency.getMean() / 1000.0;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return latency.getPercentile(50) / 1000.0;
+  }
+
+  @Override
+  public double getP95Micros() {
+    return latency.getPercentile(95) / 1000.0;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return latency.getPercentile(99) / 1000.0;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return latency.getPercentile(99.9) / 1000.0;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return latency.getMax() / 1000.0;
+  }
+}
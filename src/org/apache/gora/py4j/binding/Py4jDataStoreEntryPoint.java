@@ -17,14 +17,28 @@
  */
 package org.apache.gora.py4j.binding;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.gora.aggregate.AggregatingDataStore;
+import org.apache.gora.aggregate.RecordAggregates;
+import org.apache.gora.binding.ConsistencyLevels;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.binding.StoreDecorators;
+import org.apache.gora.cdc.ChangeCaptureDataStore;
 import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.metrics.Metrics;
 import org.apache.gora.persistency.Persistent;
 import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
+import org.apache.gora.trace.Tracing;
 import org.apache.gora.util.GoraException;
 import org.apache.gora.utils.GeneratedUtils;
 import org.apache.gora.utils.GoraUtils;
 
 import py4j.GatewayServer;
+import py4j.commands.Command;
 
 /**
  * Main entry point for data stores.
@@ -39,6 +53,11 @@ public class Py4jDataStoreEntryPoint<K, T extends Persistent> {
    */
   private DataStore<K, T> datastore;
 
+  /**
+   * Stores of the consistency levels asked for
+   */
+  private ConsistencyLevels<K, T> levels;
+
   /**
    * Entry point for data stores usage.
    * 
@@ -53,6 +72,17 @@ public class Py4jDataStoreEntryPoint<K, T extends Persistent> {
     initialize(type, keyClass, valClass);
   }
 
+  /**
+   * Entry point over an already created data store.
+   * 
+   * @param datastore
+   */
+  public Py4jDataStoreEntryPoint(DataStore<K, T> datastore) {
+    Properties properties = DataStoreFactory.createProps();
+    this.datastore = StoreDecorators.decorate(datastore, properties);
+    levels = new ConsistencyLevels<K, T>(this.datastore, properties);
+  }
+
   public Py4jDataStoreEntryPoint() throws GoraException, ClassNotFoundException {
     initialize("cassandra", "java.lang.String",
         "org.apache.gora.examples.generated.Employee");
@@ -63,13 +93,35 @@ public class Py4jDataStoreEntryPoint<K, T extends Persistent> {
       throws ClassNotFoundException, GoraException{
     Class<K> kClass = (Class<K>) Class.forName(keyClass);
     Class<T> vClass = (Class<T>) Class.forName(valClass);
-    datastore = GoraUtils.createSpecificDataStore(type, kClass, vClass);
+    Properties properties = DataStoreFactory.createProps();
+    datastore = StoreDecorators.decorate(
+        GoraUtils.createSpecificDataStore(type, kClass, vClass), properties);
+    levels = new ConsistencyLevels<K, T>(datastore, properties);
+  }
+
+  /**
+   * Gateway server for an entry point, timing and tracing the calls it
+   * handles unless both metrics and tracing are disabled.
+   * 
+   * @param entryPoint
+   * @param port
+   * @return
+   */
+  public static GatewayServer newGatewayServer(Object entryPoint, int port) {
+    List<Class<? extends Command>> commands = new ArrayList<Class<? extends Command>>();
+    if (Metrics.isEnabled() || Tracing.getTracer() != null) {
+      commands.add(TimedCallCommand.class);
+    }
+    return new GatewayServer(entryPoint, port,
+        GatewayServer.DEFAULT_PYTHON_PORT, GatewayServer.DEFAULT_CONNECT_TIMEOUT,
+        GatewayServer.DEFAULT_READ_TIMEOUT, commands);
   }
 
   @SuppressWarnings({ "rawtypes"})
   public static void main(String[] args) {
     try {
-      GatewayServer gatewayServer = new GatewayServer(new Py4jDataStoreEntryPoint());
+      GatewayServer gatewayServer = newGatewayServer(
+          new Py4jDataStoreEntryPoint(), GatewayServer.DEFAULT_PORT);
       gatewayServer.start();
       System.out.println("Gateway Server Started");
     } catch (GoraException e) {
@@ -92,4 +144,44 @@ public class Py4jDataStoreEntryPoint<K, T extends Persistent> {
   public DataStore<K, T> getDatastore() {
     return datastore;
   }
+
+  /**
+   * The change capture of the store, to add sinks to or poll its queue.
+   * @return null unless gora.cdc.enabled is set
+   */
+  @SuppressWarnings("unchecked")
+  public ChangeCaptureDataStore<K, T> getChangeCapture() {
+    return ForwardingDataStore.find(datastore, ChangeCaptureDataStore.class);
+  }
+
+  /**
+   * The aggregates the store maintains, e.g.
+   * getAggregates().get("salary").getMean().
+   * @return null unless gora.aggregate.&lt;class&gt; is set
+   */
+  @SuppressWarnings("unchecked")
+  public RecordAggregates<K, T> getAggregates() {
+    AggregatingDataStore<K, T> aggregating = ForwardingDataStore.find(datastore,
+        AggregatingDataStore.class);
+    return aggregating == null ? null : aggregating.getAggregates();
+  }
+
+  /**
+   * The store reading and writing at a consistency level, e.g.
+   * getDatastore("ONE") on latency sensitive paths. A Python client keeps
+   * the returned store as its session.
+   * 
+   * @param level
+   * @return
+   */
+  public DataStore<K, T> getDatastore(String level) {
+    return levels.get(level);
+  }
+
+  /**
+   * @return the consistency levels the store accepts
+   */
+  public List<String> getConsistencyLevels() {
+    return levels.getSupportedLevels();
+  }
 }
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.py4j.binding;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.metrics.OperationMetrics;
+import org.apache.gora.trace.GatewaySpan;
+import org.apache.gora.trace.Tracing;
+
+import py4j.Py4JException;
+import py4j.commands.CallCommand;
+
+/**
+ * Py4j call command timing each method call made through the gateway, from
+ * reading the command to writing the answer, in the Py4jGateway.call
+ * metrics, and tracing it with its target and method.
+ */
+public class TimedCallCommand extends CallCommand {
+
+  private static final OperationMetrics CALLS = Metrics.get("Py4jGateway", "call");
+
+  /** Enough for the target and method lines read ahead of the call */
+  private static final int READ_AHEAD = 64 * 1024;
+
+  @Override
+  public void execute(String commandName, BufferedReader reader,
+      BufferedWriter writer) throws Py4JException, IOException {
+    GatewaySpan span = Tracing.startGatewayCall();
+    String target = null;
+    String method = null;
+    if (span != null) {
+      reader.mark(READ_AHEAD);
+      target = reader.readLine();
+      method = reader.readLine();
+      reader.reset();
+    }
+    long start = CALLS.start();
+    boolean failed = true;
+    try {
+      super.execute(commandName, reader, writer);
+      failed = false;
+    } finally {
+      CALLS.stop(start, failed);
+      if (span != null) {
+        span.end(target, method, failed);
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.relation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Multi-get over a data store, which only offers single gets. The keys of a
+ * call are deduplicated, those already fetched are answered from a memo and
+ * the rest are split between the threads of an executor. Each thread still
+ * gets its slice one key after another, so a batch of n keys over t threads
+ * takes about n / t sequential round trips rather than n: see
+ * {@link #getSequentialGets()} and {@link #getGetNanos()} for what the
+ * store calls really cost. Missing records are memoized too.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class BatchGetter<K, T extends Persistent> {
+
+  private static final Object MISSING = new Object();
+
+  private final DataStore<K, T> store;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final Map<K, Object> memo = new ConcurrentHashMap<K, Object>();
+  private final AtomicLong requested = new AtomicLong();
+  private final AtomicLong memoHits = new AtomicLong();
+  private final AtomicLong gets = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong sequentialGets = new AtomicLong();
+  private final AtomicLong getNanos = new AtomicLong();
+
+  /**
+   * @param store
+   * @param executor runs the gets, or null to get on the calling thread
+   * @param parallelism concurrent gets per batch
+   */
+  public BatchGetter(DataStore<K, T> store, ExecutorService executor,
+      int parallelism) {
+    this.store = store;
+    this.executor = executor;
+    this.parallelism = executor == null ? 1 : Math.max(1, parallelism);
+  }
+
+  /**
+   * Gets the records of the given keys.
+   * @param keys may hold duplicates
+   * @return the records found, by key
+   * @throws IOException if a get failed
+   */
+  @SuppressWarnings("unchecked")
+  public Map<K, T> getAll(Collection<? extends K> keys) throws IOException {
+    Map<K, T> records = new HashMap<K, T>();
+    List<K> pending = new ArrayList<K>();
+    for (K key : new LinkedHashSet<K>(keys)) {
+      Object record = memo.get(key);
+      if (record == null) {
+        pending.add(key);
+      } else {
+        memoHits.incrementAndGet();
+        if (record != MISSING) {
+          records.put(key, (T) record);
+        }
+      }
+    }
+    requested.addAndGet(keys.size());
+    if (!pending.isEmpty()) {
+      batches.incrementAndGet();
+      fetch(pending);
+      for (K key : pending) {
+        Object record = memo.get(key);
+        if (record != MISSING) {
+          records.put(key, (T) record);
+        }
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Gets one record, through the memo.
+   * @param key
+   * @return null if there is no such record
+   * @throws IOException
+   */
+  public T get(K key) throws IOException {
+    List<K> keys = new ArrayList<K>(1);
+    keys.add(key);
+    return getAll(keys).get(key);
+  }
+
+  private void fetch(List<K> keys) throws IOException {
+    int slices = Math.min(parallelism, keys.size());
+    // the largest slice bounds the latency of the batch
+    sequentialGets.addAndGet((keys.size() + slices - 1) / slices);
+    if (slices == 1) {
+      fetchSlice(keys);
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(slices);
+    int from = 0;
+    for (int i = 0; i < slices; i++) {
+      // spread the remainder over the first slices
+      int to = from + keys.size() / slices + (i < keys.size() % slices ? 1 : 0);
+      final List<K> slice = keys.subList(from, to);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          fetchSlice(slice);
+          return null;
+        }
+      }));
+      from = to;
+    }
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while getting " + keys.size() + " records", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Cannot get " + keys.size() + " records", e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private void fetchSlice(List<K> keys) {
+    for (K key : keys) {
+      long start = System.nanoTime();
+      T record = store.get(key);
+      getNanos.addAndGet(System.nanoTime() - start);
+      gets.incrementAndGet();
+      memo.put(key, record == null ? MISSING : record);
+    }
+  }
+
+  /**
+   * Forgets the memoized records, e.g. between two unrelated batches.
+   */
+  public void clear() {
+    memo.clear();
+  }
+
+  public boolean isMemoized(K key) {
+    return memo.containsKey(key);
+  }
+
+  public DataStore<K, T> getStore() {
+    return store;
+  }
+
+  /** Keys asked for, duplicates included */
+  public long getRequested() {
+    return requested.get();
+  }
+
+  /** Distinct keys of a call answered by the memo */
+  public long getMemoHits() {
+    return memoHits.get();
+  }
+
+  /** Gets sent to the store */
+  public long getGets() {
+    return gets.get();
+  }
+
+  /** Calls that sent gets to the store, each one or more gets per thread */
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * Gets sent one after another on the busiest thread of each batch: the
+   * round trips a caller waits for.
+   */
+  public long getSequentialGets() {
+    return sequentialGets.get();
+  }
+
+  /** Time spent in store gets, summed over the threads */
+  public long getGetNanos() {
+    return getNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d keys requested, %d memo hits, %d gets in %d batches,"
+        + " %d sequential, %.1fus per get", getRequested(), getMemoHits(),
+        getGets(), getBatches(), getSequentialGets(),
+        getGets() == 0 ? 0.0 : getGetNanos() / 1000.0 / getGets());
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.relation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Resolves the boss and webpage references of a batch of employees with
+ * batched gets instead of one get per reference.
+ *
+ * Boss chains are walked a level at a time: the boss keys of the current
+ * level are collected, deduplicated and fetched concurrently, and the
+ * bosses found make up the next level. Embedded bosses need no get and are
+ * followed directly. A boss shared by several employees, or reached again
+ * through another chain, is fetched once. A chain of depth d over any batch
+ * thus costs at most d batches of gets, plus one for the pages; a level of
+ * n keys takes about n / threads sequential round trips, as each thread
+ * gets its share of the keys one after another.
+ *
+ * Pages are resolved only when a pages store is given and the employee
+ * holds a stub naming a page by url (see {@link EmployeeRelations#isStub}).
+ */
+public class EmployeeRelationLoader {
+
+  private final ExecutorService executor;
+  private final BatchGetter<String, Employee> employees;
+  private final BatchGetter<String, WebPage> pages;
+
+  /**
+   * @param employees store of the bosses, keyed by ssn
+   * @param pages store of the pages keyed by url, or null
+   * @param threads concurrent gets per batch
+   */
+  public EmployeeRelationLoader(DataStore<String, Employee> employees,
+      DataStore<String, WebPage> pages, int threads) {
+    executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    this.employees = new BatchGetter<String, Employee>(employees, executor, threads);
+    this.pages = pages == null ? null
+        : new BatchGetter<String, WebPage>(pages, executor, threads);
+  }
+
+  /**
+   * Loads the boss chains up to the given depth and the pages of a batch.
+   * Records fetched for an earlier batch are fetched again.
+   * @param batch
+   * @param depth levels of bosses; 1 loads the direct bosses only
+   * @return
+   * @throws IOException
+   */
+  public EmployeeRelations load(Collection<Employee> batch, int depth)
+      throws IOException {
+    employees.clear();
+    long gets = employees.getGets();
+    long batches = employees.getBatches();
+    long sequentialGets = employees.getSequentialGets();
+    long getNanos = employees.getGetNanos();
+    if (pages != null) {
+      pages.clear();
+      gets += pages.getGets();
+      batches += pages.getBatches();
+      sequentialGets += pages.getSequentialGets();
+      getNanos += pages.getGetNanos();
+    }
+    EmployeeRelations relations = new EmployeeRelations(depth);
+    loadBosses(batch, depth, relations);
+    if (pages != null) {
+      loadPages(batch, relations);
+    }
+    relations.setCost(getGets() - gets, getBatches() - batches,
+        getSequentialGets() - sequentialGets, getGetNanos() - getNanos);
+    return relations;
+  }
+
+  private void loadBosses(Collection<Employee> batch, int depth,
+      EmployeeRelations relations) throws IOException {
+    Set<String> seen = new HashSet<String>();
+    List<Employee> level = new ArrayList<Employee>(batch);
+    for (int i = 0; i < depth && !level.isEmpty(); i++) {
+      List<Employee> next = new ArrayList<Employee>();
+      List<String> keys = new ArrayList<String>();
+      for (Employee employee : level) {
+        Object boss = employee.getBoss();
+        if (boss instanceof Employee) {
+          next.add((Employee) boss);
+        } else if (boss != null && seen.add(boss.toString())) {
+          keys.add(boss.toString());
+        }
+      }
+      long gets = employees.getGets();
+      Map<String, Employee> loaded = employees.getAll(keys);
+      relations.addBosses(loaded);
+      relations.addLevel((int) (employees.getGets() - gets));
+      next.addAll(loaded.values());
+      level = next;
+    }
+  }
+
+  private void loadPages(Collection<Employee> batch,
+      EmployeeRelations relations) throws IOException {
+    List<String> urls = new ArrayList<String>();
+    for (Employee employee : batch) {
+      WebPage page = employee.getWebpage();
+      if (page != null && EmployeeRelations.isStub(page)) {
+        urls.add(page.getUrl().toString());
+      }
+    }
+    relations.addPages(pages.getAll(urls));
+  }
+
+  /** Gets sent since the loader was created */
+  public long getGets() {
+    return employees.getGets() + (pages == null ? 0 : pages.getGets());
+  }
+
+  /** Batches of gets sent since the loader was created */
+  public long getBatches() {
+    return employees.getBatches() + (pages == null ? 0 : pages.getBatches());
+  }
+
+  /** Gets sent one after another on the busiest thread of each batch */
+  public long getSequentialGets() {
+    return employees.getSequentialGets()
+        + (pages == null ? 0 : pages.getSequentialGets());
+  }
+
+  /** Time spent in store gets, summed over the threads */
+  public long getGetNanos() {
+    return employees.getGetNanos() + (pages == null ? 0 : pages.getGetNanos());
+  }
+
+  /**
+   * Stops the threads; the stores are left open.
+   */
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
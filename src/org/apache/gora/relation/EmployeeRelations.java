@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.relation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.WebPage;
+
+/**
+ * Boss chains and home pages of a batch of employees, as loaded by an
+ * {@link EmployeeRelationLoader}. Embedded bosses and pages are returned as
+ * they are; boss keys and page stubs are looked up in what was loaded.
+ */
+public class EmployeeRelations {
+
+  private final int depth;
+  private final Map<String, Employee> bosses = new HashMap<String, Employee>();
+  private final Map<String, WebPage> pages = new HashMap<String, WebPage>();
+  private final List<Integer> getsPerLevel = new ArrayList<Integer>();
+  private long gets;
+  private long batches;
+  private long sequentialGets;
+  private long getNanos;
+
+  EmployeeRelations(int depth) {
+    this.depth = depth;
+  }
+
+  void addBosses(Map<String, Employee> loaded) {
+    bosses.putAll(loaded);
+  }
+
+  void addPages(Map<String, WebPage> loaded) {
+    pages.putAll(loaded);
+  }
+
+  void addLevel(int levelGets) {
+    getsPerLevel.add(levelGets);
+  }
+
+  void setCost(long gets, long batches, long sequentialGets, long getNanos) {
+    this.gets = gets;
+    this.batches = batches;
+    this.sequentialGets = sequentialGets;
+    this.getNanos = getNanos;
+  }
+
+  /**
+   * Key of the boss when the boss field holds a key rather than a record.
+   * @param employee
+   * @return
+   */
+  public static String bossKey(Employee employee) {
+    Object boss = employee.getBoss();
+    return boss instanceof CharSequence ? boss.toString() : null;
+  }
+
+  /**
+   * Whether a page only names the page stored under its url: it has a url
+   * but no content, parsed content or outlinks.
+   * @param page
+   * @return
+   */
+  public static boolean isStub(WebPage page) {
+    return page.getUrl() != null && page.getContent() == null
+        && (page.getParsedContent() == null || page.getParsedContent().isEmpty())
+        && (page.getOutlinks() == null || page.getOutlinks().isEmpty());
+  }
+
+  /**
+   * The boss of an employee, embedded or loaded.
+   * @param employee
+   * @return null if there is no boss or it was not loaded
+   */
+  public Employee getBoss(Employee employee) {
+    Object boss = employee.getBoss();
+    if (boss instanceof Employee) {
+      return (Employee) boss;
+    }
+    return boss == null ? null : bosses.get(boss.toString());
+  }
+
+  /**
+   * The bosses of an employee, nearest first, up to the loaded depth.
+   * @param employee
+   * @return
+   */
+  public List<Employee> getBossChain(Employee employee) {
+    List<Employee> chain = new ArrayList<Employee>();
+    Set<Employee> seen = new HashSet<Employee>();
+    Employee boss = getBoss(employee);
+    while (boss != null && chain.size() < depth && seen.add(boss)) {
+      chain.add(boss);
+      boss = getBoss(boss);
+    }
+    return chain;
+  }
+
+  /**
+   * The home page of an employee, or the stored page a stub names.
+   * @param employee
+   * @return the stub itself if its page was not found
+   */
+  public WebPage getWebpage(Employee employee) {
+    WebPage page = employee.getWebpage();
+    if (page == null || !isStub(page)) {
+      return page;
+    }
+    WebPage loaded = pages.get(page.getUrl().toString());
+    return loaded == null ? page : loaded;
+  }
+
+  /** Bosses loaded by key */
+  public Map<String, Employee> getBosses() {
+    return bosses;
+  }
+
+  /** Pages loaded by url */
+  public Map<String, WebPage> getPages() {
+    return pages;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /** Employee gets sent at each level of the boss chains */
+  public List<Integer> getGetsPerLevel() {
+    return getsPerLevel;
+  }
+
+  /** Gets sent to the stores, bosses and pages */
+  public long getGets() {
+    return gets;
+  }
+
+  /** Batches of concurrent gets, at most one per level plus one for pages */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * Gets sent one after another on the busiest thread of each batch: the
+   * round trips the load waited for.
+   */
+  public long getSequentialGets() {
+    return sequentialGets;
+  }
+
+  /** Time spent in store gets, summed over the threads */
+  public long getGetNanos() {
+    return getNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d bosses, %d pages, %d gets in %d batches, %d sequential,"
+        + " %.1fus per get, per level %s", bosses.size(), pages.size(), gets,
+        batches, sequentialGets, gets == 0 ? 0.0 : getNanos / 1000.0 / gets,
+        getsPerLevel);
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.shard;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring over named shards. Each shard is placed at a number
+ * of virtual nodes, points of a 64 bit ring derived from its name, and a key
+ * belongs to the first virtual node at or after the hash of its string form.
+ * Adding a shard thus moves about 1/(n+1) of the keys, all to the new shard.
+ *
+ * Rings are immutable; {@link #withShard} returns a new one.
+ */
+public class ConsistentHashRing {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final List<String> shards;
+  private final int virtualNodes;
+  private final TreeMap<Long, Integer> nodes = new TreeMap<Long, Integer>();
+
+  /**
+   * @param shards names of the shards, unique
+   * @param virtualNodes points per shard; more spread the keys more evenly
+   */
+  public ConsistentHashRing(List<String> shards, int virtualNodes) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("A ring needs at least one shard");
+    }
+    this.shards = Collections.unmodifiableList(new ArrayList<String>(shards));
+    this.virtualNodes = virtualNodes;
+    for (int i = 0; i < shards.size(); i++) {
+      for (int node = 0; node < virtualNodes; node++) {
+        Integer previous = nodes.put(hash(shards.get(i) + "#" + node), i);
+        if (previous != null && previous != i) {
+          // a 64 bit collision; keep the placement independent of the order
+          // the shards were listed in
+          nodes.put(hash(shards.get(i) + "#" + node),
+              shards.get(previous).compareTo(shards.get(i)) < 0 ? previous : i);
+        }
+      }
+    }
+  }
+
+  /**
+   * The same ring with one more shard.
+   * @param shard
+   * @return
+   */
+  public ConsistentHashRing withShard(String shard) {
+    if (shards.contains(shard)) {
+      throw new IllegalArgumentException("Shard " + shard + " exists already");
+    }
+    List<String> more = new ArrayList<String>(shards);
+    more.add(shard);
+    return new ConsistentHashRing(more, virtualNodes);
+  }
+
+  /**
+   * Index in {@link #getShards()} of the shard owning a key.
+   * @param key
+   * @return
+   */
+  public int shardOf(Object key) {
+    Map.Entry<Long, Integer> node = nodes.ceilingEntry(hash(key.toString()));
+    return node == null ? nodes.firstEntry().getValue() : node.getValue();
+  }
+
+  public List<String> getShards() {
+    return shards;
+  }
+
+  public int getVirtualNodes() {
+    return virtualNodes;
+  }
+
+  /**
+   * 64 bit FNV-1a of the UTF-8 bytes, finished with the MurmurHash3 mixer
+   * so that close strings land far apart.
+   * @param s
+   * @return
+   */
+  static long hash(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : s.getBytes(UTF8)) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
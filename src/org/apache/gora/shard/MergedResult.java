@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.shard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Gathers the results of a query scattered over the shards. Each shard
+ * result is read ahead by its own thread into a bounded queue, and the
+ * queues are merged in key order when keys are Comparable (in shard order
+ * otherwise).
+ *
+ * While records are being moved a key can be read from its previous shard
+ * and from its owner. The owner's copy is preferred, and a record read from
+ * a shard that no longer owns it is replaced by a get of the sharded store,
+ * which returns the latest version (or nothing if it was deleted), so a key
+ * written to its new owner is never returned with an older value. A key
+ * read from two shards is returned once only when the shards return keys in
+ * order; stores returning them in hash order, such as Cassandra, may return
+ * a moving key twice, both times with its latest value.
+ *
+ * @param <K>
+ * @param <T>
+ */
+class MergedResult<K, T extends Persistent> implements Result<K, T> {
+
+  private static final Object END = new Object();
+
+  private final ShardedDataStore<K, T> store;
+  private final Query<K, T> query;
+  private final List<Source> sources = new ArrayList<Source>();
+  private final boolean ordered;
+  private K key;
+  private T value;
+  private long offset;
+  private boolean started;
+  private boolean closed;
+
+  /**
+   * @param store the sharded store
+   * @param query the query asked for
+   * @param shardQueries the query for each shard, bound to the shard store
+   * @param executor runs the shard queries
+   * @param readAhead records read ahead per shard
+   */
+  MergedResult(ShardedDataStore<K, T> store, Query<K, T> query,
+      List<Query<K, T>> shardQueries, ExecutorService executor, int readAhead) {
+    this.store = store;
+    this.query = query;
+    this.ordered = Comparable.class.isAssignableFrom(store.getKeyClass());
+    for (int i = 0; i < shardQueries.size(); i++) {
+      Source source = new Source(i, shardQueries.get(i), readAhead);
+      source.future = executor.submit(source);
+      sources.add(source);
+    }
+  }
+
+  @Override
+  public boolean next() throws Exception {
+    if (closed || (query.getLimit() > 0 && offset >= query.getLimit())) {
+      return false;
+    }
+    if (!started) {
+      for (Source source : sources) {
+        source.advance();
+      }
+      started = true;
+    }
+    while (true) {
+      Source next = null;
+      for (Source source : sources) {
+        if (source.head != END && (next == null || (ordered
+            && compare(source.key(), next.key()) < 0))) {
+          next = source;
+        }
+      }
+      if (next == null) {
+        return false;
+      }
+      K nextKey = next.key();
+      // stores not keeping keys, such as the Avro file stores, return none
+      int owner = nextKey == null ? next.shard : store.shardOf(nextKey);
+      if (ordered && next.shard != owner) {
+        for (Source source : sources) {
+          if (source.shard == owner && source.head != END
+              && compare(source.key(), nextKey) == 0) {
+            next = source;
+          }
+        }
+      }
+      T nextValue = next.value();
+      int shard = next.shard;
+      next.advance();
+      if (ordered && key != null && compare(nextKey, key) == 0) {
+        continue;
+      }
+      if (shard != owner) {
+        // being moved: the owner may have a newer version, or none
+        nextValue = store.get(nextKey, query.getFields());
+        if (nextValue == null) {
+          continue;
+        }
+      }
+      key = nextKey;
+      value = nextValue;
+      offset++;
+      return true;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compare(K a, K b) {
+    return ((Comparable<K>) a).compareTo(b);
+  }
+
+  @Override
+  public DataStore<K, T> getDataStore() {
+    return store;
+  }
+
+  @Override
+  public Query<K, T> getQuery() {
+    return query;
+  }
+
+  @Override
+  public K getKey() {
+    return key;
+  }
+
+  @Override
+  public T get() {
+    return value;
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return store.getKeyClass();
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return store.getPersistentClass();
+  }
+
+  @Override
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Mean progress of the shard results.
+   */
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    if (sources.isEmpty()) {
+      return 1;
+    }
+    float progress = 0;
+    for (Source source : sources) {
+      Result<K, T> result = source.result;
+      progress += source.head == END || result == null ? 1 : result.getProgress();
+    }
+    return progress / sources.size();
+  }
+
+  /**
+   * Stops the read ahead threads, which close the shard results.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    for (Source source : sources) {
+      source.future.cancel(true);
+    }
+  }
+
+  private static final class Failure {
+    final Exception cause;
+
+    Failure(Exception cause) {
+      this.cause = cause;
+    }
+  }
+
+  private final class Source implements Runnable {
+    final int shard;
+    final Query<K, T> query;
+    final BlockingQueue<Object> queue;
+    volatile Result<K, T> result;
+    Future<?> future;
+    Object head;
+    K headKey;
+
+    Source(int shard, Query<K, T> query, int readAhead) {
+      this.shard = shard;
+      this.query = query;
+      this.queue = new ArrayBlockingQueue<Object>(2 * readAhead);
+    }
+
+    @Override
+    public void run() {
+      try {
+        result = ShardedDataStore.execute(query.getDataStore(), query);
+        while (result != null && result.next()) {
+          // results may reuse their records, so the queue holds copies
+          T record = result.get();
+          T copy = SpecificData.get().deepCopy(record.getSchema(), record);
+          queue.put(result.getKey());
+          queue.put(copy);
+        }
+        queue.put(END);
+      } catch (InterruptedException e) {
+        // closed before the end
+      } catch (Exception e) {
+        try {
+          queue.put(new Failure(e));
+        } catch (InterruptedException closed) {
+          // nobody is reading any more
+        }
+      } finally {
+        try {
+          if (result != null) {
+            result.close();
+          }
+        } catch (IOException e) {
+          // the records read are all there is to return
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    void advance() throws Exception {
+      Object taken = queue.take();
+      if (taken instanceof Failure) {
+        throw ((Failure) taken).cause;
+      }
+      if (taken == END) {
+        head = END;
+        return;
+      }
+      headKey = (K) taken;
+      head = queue.take();
+    }
+
+    K key() {
+      return headKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    T value() {
+      return (T) head;
+    }
+  }
+}
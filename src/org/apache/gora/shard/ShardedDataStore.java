@@ -0,0 +1,661 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.shard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.persistency.BeanFactory;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.PartitionQuery;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.util.GoraException;
+import org.apache.gora.utils.GoraUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the keys of one persistent class over several stores, of any
+ * {@link GoraUtils.Type}, with a {@link ConsistentHashRing}. Gets, puts and
+ * deletes go to the shard owning the key; queries run on all shards in
+ * parallel and their results are merged in key order, see
+ * {@link MergedResult}.
+ *
+ * A shard can be added while the store is in use. The ring is switched at
+ * once and the records the new shard now owns are moved to it in the
+ * background: until they are, gets fall back to the previous owner, deletes
+ * go to both and puts win over the copy being moved. The move scans the
+ * previous shards while they are written to, which MemStore does not
+ * support; if it fails, {@link #resumeRebalance()} starts it again.
+ *
+ * Configured in gora.properties for {@link GoraUtils.Type#SHARDED}:
+ * <pre>
+ * gora.shards=east,west
+ * gora.shard.east.type=cassandra
+ * gora.shard.east.gora.cassandrastore.servers=east-1:9160
+ * gora.shard.west.type=cassandra
+ * gora.shard.west.gora.cassandrastore.servers=west-1:9160
+ * gora.shard.virtual.nodes=128
+ * </pre>
+ * gora.shard.&lt;name&gt;.&lt;property&gt; overrides &lt;property&gt; for the
+ * store of that shard.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class ShardedDataStore<K, T extends Persistent> implements DataStore<K, T> {
+
+  public static final String SHARDS_KEY = "gora.shards";
+  public static final String SHARD_PREFIX = "gora.shard.";
+  public static final String VIRTUAL_NODES_KEY = "gora.shard.virtual.nodes";
+  public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedDataStore.class);
+  private static final int STRIPES = 64;
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  private final List<DataStore<K, T>> stores = new CopyOnWriteArrayList<DataStore<K, T>>();
+  private final ReadWriteLock ringLock = new ReentrantReadWriteLock();
+  private volatile ConsistentHashRing ring;
+  /** The ring before the last shard was added, until its records moved */
+  private volatile ConsistentHashRing previous;
+  /** Keys put or deleted while moving records, newer than any copy */
+  private final Set<K> touched = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+  private final Object[] stripes = new Object[STRIPES];
+  private final ExecutorService executor;
+  private final AtomicLong moved = new AtomicLong();
+  private volatile Future<?> rebalance;
+  private volatile Exception rebalanceFailure;
+  private int readAhead = 256;
+
+  /**
+   * @param shards the stores by shard name, initialized and in ring order
+   * @param virtualNodes
+   */
+  public ShardedDataStore(Map<String, DataStore<K, T>> shards, int virtualNodes) {
+    stores.addAll(shards.values());
+    ring = new ConsistentHashRing(new ArrayList<String>(shards.keySet()), virtualNodes);
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Object();
+    }
+    final String pool = "gora-shard-" + POOLS.incrementAndGet() + "-";
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threads = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, pool + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Creates the shards listed in gora.shards.
+   * @param keyClass
+   * @param persistentClass
+   * @param properties
+   * @return
+   * @throws GoraException
+   */
+  public static <K, T extends Persistent> ShardedDataStore<K, T> create(
+      Class<K> keyClass, Class<T> persistentClass, Properties properties)
+      throws GoraException {
+    String names = properties.getProperty(SHARDS_KEY, "").trim();
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException(SHARDS_KEY + " lists no shard");
+    }
+    Map<String, DataStore<K, T>> shards = new LinkedHashMap<String, DataStore<K, T>>();
+    try {
+      for (String name : names.split("\\s*,\\s*")) {
+        shards.put(name, createShard(name, keyClass, persistentClass, properties));
+      }
+    } catch (GoraException e) {
+      for (DataStore<K, T> shard : shards.values()) {
+        shard.close();
+      }
+      throw e;
+    }
+    return new ShardedDataStore<K, T>(shards, Integer.parseInt(
+        properties.getProperty(VIRTUAL_NODES_KEY, String.valueOf(DEFAULT_VIRTUAL_NODES))));
+  }
+
+  /**
+   * Creates the store of a shard from gora.shard.&lt;name&gt;.type and the
+   * properties overridden for the shard.
+   * @param name
+   * @param keyClass
+   * @param persistentClass
+   * @param properties
+   * @return
+   * @throws GoraException
+   */
+  public static <K, T extends Persistent> DataStore<K, T> createShard(String name,
+      Class<K> keyClass, Class<T> persistentClass, Properties properties)
+      throws GoraException {
+    String prefix = SHARD_PREFIX + name + ".";
+    String type = properties.getProperty(prefix + "type");
+    if (type != null && GoraUtils.Type.fromString(type) == GoraUtils.Type.SHARDED) {
+      throw new IllegalArgumentException("Shard " + name + " cannot be sharded");
+    }
+    return GoraUtils.createPrefixedDataStore(prefix, keyClass, persistentClass,
+        properties);
+  }
+
+  /**
+   * Records read ahead per shard by a query.
+   * @param readAhead
+   */
+  public void setReadAhead(int readAhead) {
+    this.readAhead = readAhead;
+  }
+
+  /**
+   * Adds a shard and starts moving to it the records it now owns.
+   * @param name
+   * @param store initialized
+   * @throws IllegalStateException if records are still being moved
+   */
+  public void addShard(String name, DataStore<K, T> store) {
+    ringLock.writeLock().lock();
+    try {
+      if (previous != null) {
+        throw new IllegalStateException("Cannot add shard " + name
+            + " before the records of the last shard are moved");
+      }
+      ConsistentHashRing next = ring.withShard(name);
+      stores.add(store);
+      touched.clear();
+      moved.set(0);
+      rebalanceFailure = null;
+      previous = ring;
+      ring = next;
+    } finally {
+      ringLock.writeLock().unlock();
+    }
+    startRebalance();
+  }
+
+  /**
+   * Restarts moving records after a failure.
+   */
+  public synchronized void resumeRebalance() {
+    if (previous != null && (rebalance == null || rebalance.isDone())) {
+      startRebalance();
+    }
+  }
+
+  private synchronized void startRebalance() {
+    rebalanceFailure = null;
+    rebalance = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        rebalance();
+      }
+    });
+  }
+
+  /**
+   * Moves the records whose owner changed, a shard at a time: they are
+   * copied to their new owner, unless put or deleted meanwhile, and deleted
+   * from the old one once the scan of the shard is over.
+   */
+  private void rebalance() {
+    ConsistentHashRing from = previous;
+    ConsistentHashRing to = ring;
+    try {
+      for (int i = 0; i < from.getShards().size(); i++) {
+        // puts sent before the switch must be visible to the scan
+        stores.get(i).flush();
+      }
+      for (int i = 0; i < from.getShards().size(); i++) {
+        DataStore<K, T> shard = stores.get(i);
+        List<K> keys = new ArrayList<K>();
+        Set<Integer> owners = new HashSet<Integer>();
+        Result<K, T> result = execute(shard, shard.newQuery());
+        try {
+          while (result != null && result.next()) {
+            K key = result.getKey();
+            int owner = to.shardOf(key);
+            if (owner == i) {
+              continue;
+            }
+            T record = result.get();
+            T copy = SpecificData.get().deepCopy(record.getSchema(), record);
+            copy.setDirty();
+            synchronized (stripe(key)) {
+              if (!touched.contains(key)) {
+                stores.get(owner).put(key, copy);
+              }
+            }
+            keys.add(key);
+            owners.add(owner);
+          }
+        } finally {
+          if (result != null) {
+            result.close();
+          }
+        }
+        for (int owner : owners) {
+          stores.get(owner).flush();
+        }
+        for (K key : keys) {
+          synchronized (stripe(key)) {
+            shard.delete(key);
+          }
+        }
+        shard.flush();
+        moved.addAndGet(keys.size());
+        LOG.info("Moved " + keys.size() + " records off shard " + from.getShards().get(i));
+      }
+      ringLock.writeLock().lock();
+      try {
+        previous = null;
+        touched.clear();
+      } finally {
+        ringLock.writeLock().unlock();
+      }
+    } catch (Exception e) {
+      rebalanceFailure = e;
+      LOG.error("Moving records to shard " + to.getShards().get(to.getShards().size() - 1)
+          + " failed, gets keep falling back to the previous shards", e);
+    }
+  }
+
+  /**
+   * Whether records are still being moved to the last shard added.
+   * @return
+   */
+  public boolean isRebalancing() {
+    return previous != null;
+  }
+
+  /**
+   * Waits for the records to be moved.
+   * @param timeout
+   * @param unit
+   * @return false on timeout
+   * @throws InterruptedException
+   */
+  public boolean awaitRebalance(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    Future<?> running = rebalance;
+    if (running == null) {
+      return true;
+    }
+    try {
+      running.get(timeout, unit);
+    } catch (ExecutionException e) {
+      // recorded by rebalance()
+    } catch (TimeoutException e) {
+      return false;
+    }
+    return previous == null;
+  }
+
+  /** Records moved by the last rebalance */
+  public long getMovedRecords() {
+    return moved.get();
+  }
+
+  /** Why the last rebalance stopped, or null */
+  public Exception getRebalanceFailure() {
+    return rebalanceFailure;
+  }
+
+  public List<String> getShardNames() {
+    return ring.getShards();
+  }
+
+  public List<DataStore<K, T>> getShards() {
+    return Collections.unmodifiableList(stores);
+  }
+
+  /**
+   * The shard owning a key.
+   * @param key
+   * @return
+   */
+  public DataStore<K, T> getShard(K key) {
+    return stores.get(ring.shardOf(key));
+  }
+
+  /** Index of the shard owning a key */
+  int shardOf(K key) {
+    return ring.shardOf(key);
+  }
+
+  private Object stripe(K key) {
+    return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+  }
+
+  /**
+   * Runs a query on a store; null if the store has nothing to scan (file
+   * stores before their file exists, MemStore when empty).
+   */
+  static <K, T extends Persistent> Result<K, T> execute(DataStore<K, T> store,
+      Query<K, T> query) {
+    try {
+      return store.execute(query);
+    } catch (NoSuchElementException e) {
+      // MemStore cannot run an unbounded query over an empty map
+      return null;
+    }
+  }
+
+  /**
+   * The same query on another store.
+   */
+  private Query<K, T> shardQuery(DataStore<K, T> shard, Query<K, T> query) {
+    Query<K, T> shardQuery = shard.newQuery();
+    shardQuery.setFields(query.getFields());
+    shardQuery.setStartKey(query.getStartKey());
+    shardQuery.setEndKey(query.getEndKey());
+    shardQuery.setFilter(query.getFilter());
+    shardQuery.setLocalFilterEnabled(query.isLocalFilterEnabled());
+    shardQuery.setLimit(query.getLimit());
+    return shardQuery;
+  }
+
+  /**
+   * Shards are initialized by their creator.
+   */
+  @Override
+  public void initialize(Class<K> keyClass, Class<T> persistentClass,
+      Properties properties) {
+  }
+
+  @Override
+  public void setKeyClass(Class<K> keyClass) {
+    for (DataStore<K, T> store : stores) {
+      store.setKeyClass(keyClass);
+    }
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return stores.get(0).getKeyClass();
+  }
+
+  @Override
+  public void setPersistentClass(Class<T> persistentClass) {
+    for (DataStore<K, T> store : stores) {
+      store.setPersistentClass(persistentClass);
+    }
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return stores.get(0).getPersistentClass();
+  }
+
+  @Override
+  public String getSchemaName() {
+    return stores.get(0).getSchemaName();
+  }
+
+  @Override
+  public void createSchema() {
+    for (DataStore<K, T> store : stores) {
+      store.createSchema();
+    }
+  }
+
+  @Override
+  public void deleteSchema() {
+    for (DataStore<K, T> store : stores) {
+      store.deleteSchema();
+    }
+  }
+
+  @Override
+  public void truncateSchema() {
+    for (DataStore<K, T> store : stores) {
+      store.truncateSchema();
+    }
+  }
+
+  @Override
+  public boolean schemaExists() {
+    for (DataStore<K, T> store : stores) {
+      if (!store.schemaExists()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public K newKey() {
+    return stores.get(0).newKey();
+  }
+
+  @Override
+  public T newPersistent() {
+    return stores.get(0).newPersistent();
+  }
+
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    ringLock.readLock().lock();
+    try {
+      DataStore<K, T> owner = stores.get(ring.shardOf(key));
+      ConsistentHashRing before = previous;
+      DataStore<K, T> old = before == null ? owner : stores.get(before.shardOf(key));
+      if (old == owner) {
+        return get(owner, key, fields);
+      }
+      synchronized (stripe(key)) {
+        T value = get(owner, key, fields);
+        if (value != null || touched.contains(key)) {
+          return value;
+        }
+        return get(old, key, fields);
+      }
+    } finally {
+      ringLock.readLock().unlock();
+    }
+  }
+
+  private T get(DataStore<K, T> store, K key, String[] fields) {
+    return fields == null ? store.get(key) : store.get(key, fields);
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    ringLock.readLock().lock();
+    try {
+      DataStore<K, T> owner = stores.get(ring.shardOf(key));
+      if (previous == null) {
+        owner.put(key, obj);
+        return;
+      }
+      synchronized (stripe(key)) {
+        touched.add(key);
+        owner.put(key, obj);
+      }
+    } finally {
+      ringLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    ringLock.readLock().lock();
+    try {
+      DataStore<K, T> owner = stores.get(ring.shardOf(key));
+      ConsistentHashRing before = previous;
+      DataStore<K, T> old = before == null ? owner : stores.get(before.shardOf(key));
+      if (old == owner) {
+        return owner.delete(key);
+      }
+      synchronized (stripe(key)) {
+        touched.add(key);
+        boolean deleted = owner.delete(key);
+        return old.delete(key) || deleted;
+      }
+    } finally {
+      ringLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    long deleted = 0;
+    for (DataStore<K, T> store : stores) {
+      deleted += store.deleteByQuery(shardQuery(store, query));
+    }
+    return deleted;
+  }
+
+  /**
+   * Runs the query on all shards in parallel, or on its shard only for the
+   * partition queries returned by {@link #getPartitions}.
+   */
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    if (query instanceof PartitionQuery) {
+      for (DataStore<K, T> store : stores) {
+        if (query.getDataStore() == store) {
+          return store.execute(query);
+        }
+      }
+    }
+    List<Query<K, T>> shardQueries = new ArrayList<Query<K, T>>();
+    for (DataStore<K, T> store : stores) {
+      shardQueries.add(shardQuery(store, query));
+    }
+    return new MergedResult<K, T>(this, query, shardQueries, executor, readAhead);
+  }
+
+  /**
+   * A query of the first shard, as Gora queries only bind to the stores
+   * deriving from DataStoreBase. Pass it to {@link #execute} to run it on
+   * all shards; Query.execute() would only run it on the first one.
+   */
+  @Override
+  public Query<K, T> newQuery() {
+    return stores.get(0).newQuery();
+  }
+
+  /**
+   * The partitions of every shard, each executed on its shard alone.
+   */
+  @Override
+  public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
+      throws IOException {
+    List<PartitionQuery<K, T>> partitions = new ArrayList<PartitionQuery<K, T>>();
+    for (DataStore<K, T> store : stores) {
+      partitions.addAll(store.getPartitions(shardQuery(store, query)));
+    }
+    return partitions;
+  }
+
+  /**
+   * Flushes the shards in parallel.
+   */
+  @Override
+  public void flush() {
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (final DataStore<K, T> store : stores) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          store.flush();
+        }
+      }));
+    }
+    RuntimeException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while flushing the shards", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException
+              ? (RuntimeException) e.getCause()
+              : new IllegalStateException("Cannot flush a shard", e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void setBeanFactory(BeanFactory<K, T> beanFactory) {
+    for (DataStore<K, T> store : stores) {
+      store.setBeanFactory(beanFactory);
+    }
+  }
+
+  @Override
+  public BeanFactory<K, T> getBeanFactory() {
+    return stores.get(0).getBeanFactory();
+  }
+
+  /**
+   * Stops moving records and closes the shards.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (DataStore<K, T> store : stores) {
+      store.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedDataStore" + ring.getShards()
+        + (previous == null ? "" : ", moving records, " + moved.get() + " moved");
+  }
+}
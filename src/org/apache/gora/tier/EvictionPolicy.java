@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+/**
+ * Decides which records the near tier of a {@link TieredDataStore} keeps.
+ * Calls are made under the lock of the store, implementations need no
+ * synchronization of their own.
+ *
+ * @param <K>
+ */
+public interface EvictionPolicy<K> {
+
+  /**
+   * A get found the key in the near tier.
+   * @param key
+   */
+  void onHit(K key);
+
+  /**
+   * A get did not find the key in the near tier.
+   * @param key
+   */
+  void onMiss(K key);
+
+  /**
+   * Whether a record may enter the near tier.
+   * @param key
+   * @param victim the key it would evict, null if there is room
+   * @return
+   */
+  boolean admit(K key, K victim);
+
+  /**
+   * A key entered the near tier.
+   * @param key
+   */
+  void onInsert(K key);
+
+  /**
+   * A key left the near tier.
+   * @param key
+   */
+  void onRemove(K key);
+
+  /**
+   * The key to evict next.
+   * @return null if the tier is empty
+   */
+  K victim();
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+/**
+ * Approximate access counts of recent keys, in a count-min sketch of four
+ * rows of counters capped at 15. Once the sample size is reached all
+ * counters are halved, so old popularity fades.
+ */
+class FrequencySketch {
+
+  private static final int ROWS = 4;
+  private static final int MAX = 15;
+  private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+      0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+  private final byte[][] counters;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * @param capacity keys of the near tier
+   */
+  FrequencySketch(int capacity) {
+    int width = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+    counters = new byte[ROWS][width];
+    mask = width - 1;
+    sampleSize = 10 * Math.max(16, capacity);
+  }
+
+  void increment(Object key) {
+    int hash = key.hashCode();
+    boolean added = false;
+    for (int row = 0; row < ROWS; row++) {
+      int i = index(hash, row);
+      if (counters[row][i] < MAX) {
+        counters[row][i]++;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  int frequency(Object key) {
+    int hash = key.hashCode();
+    int frequency = MAX;
+    for (int row = 0; row < ROWS; row++) {
+      frequency = Math.min(frequency, counters[row][index(hash, row)]);
+    }
+    return frequency;
+  }
+
+  private int index(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h ^= h >>> 32;
+    return (int) h & mask;
+  }
+
+  private void reset() {
+    for (byte[] row : counters) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>= 1;
+      }
+    }
+    additions /= 2;
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * A cached record, still serialized; it is decoded on the first call to
+ * {@link #get()}, so callers that only need to know whether a key is
+ * cached, or the size of its record, pay no decoding.
+ *
+ * @param <T>
+ */
+public class LazyRecord<T extends Persistent> {
+
+  private final Schema schema;
+  private final byte[] bytes;
+  private T record;
+
+  LazyRecord(Schema schema, byte[] bytes) {
+    this.schema = schema;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Decodes the record, once.
+   * @return a clean record
+   * @throws IOException if the bytes are not a record of the schema
+   */
+  public T get() throws IOException {
+    if (record == null) {
+      record = new SpecificDatumReader<T>(schema).read(null,
+          DecoderFactory.get().binaryDecoder(bytes, null));
+      record.clearDirty();
+    }
+    return record;
+  }
+
+  /** Size of the serialized record */
+  public int getSize() {
+    return bytes.length;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Evicts the key with the fewest hits since it entered the near tier, the
+ * least recently used of them on ties, and admits every record.
+ *
+ * @param <K>
+ */
+public class LfuPolicy<K> implements EvictionPolicy<K> {
+
+  private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+  private final TreeSet<Node<K>> order = new TreeSet<Node<K>>(new Comparator<Node<K>>() {
+    @Override
+    public int compare(Node<K> a, Node<K> b) {
+      if (a.hits != b.hits) {
+        return a.hits < b.hits ? -1 : 1;
+      }
+      return a.tick < b.tick ? -1 : a.tick == b.tick ? 0 : 1;
+    }
+  });
+  private long clock;
+
+  @Override
+  public void onHit(K key) {
+    Node<K> node = nodes.get(key);
+    if (node != null) {
+      order.remove(node);
+      node.hits++;
+      node.tick = ++clock;
+      order.add(node);
+    }
+  }
+
+  @Override
+  public void onMiss(K key) {
+  }
+
+  @Override
+  public boolean admit(K key, K victim) {
+    return true;
+  }
+
+  @Override
+  public void onInsert(K key) {
+    Node<K> node = new Node<K>(key, ++clock);
+    nodes.put(key, node);
+    order.add(node);
+  }
+
+  @Override
+  public void onRemove(K key) {
+    Node<K> node = nodes.remove(key);
+    if (node != null) {
+      order.remove(node);
+    }
+  }
+
+  @Override
+  public K victim() {
+    return order.isEmpty() ? null : order.first().key;
+  }
+
+  private static final class Node<K> {
+    final K key;
+    long hits;
+    long tick;
+
+    Node(K key, long tick) {
+      this.key = key;
+      this.tick = tick;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used key and admits every record.
+ *
+ * @param <K>
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+  private final LinkedHashMap<K, Boolean> order =
+      new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+  @Override
+  public void onHit(K key) {
+    order.get(key);
+  }
+
+  @Override
+  public void onMiss(K key) {
+  }
+
+  @Override
+  public boolean admit(K key, K victim) {
+    return true;
+  }
+
+  @Override
+  public void onInsert(K key) {
+    order.put(key, Boolean.TRUE);
+  }
+
+  @Override
+  public void onRemove(K key) {
+    order.remove(key);
+  }
+
+  @Override
+  public K victim() {
+    Iterator<K> keys = order.keySet().iterator();
+    return keys.hasNext() ? keys.next() : null;
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.binding.StatefulDecorator;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-through cache of whole records in an {@link OffHeapRecordCache}, in
+ * front of the store it wraps. Gets of a cached key are decoded from the
+ * cache without a call to the store; misses are cached once read. Puts and
+ * deletes go to the store and drop the cached version, as a put may only
+ * carry the dirty fields of a record.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.offheap.capacity: bytes of the arena, 0 (default) for no
+ * cache</li>
+ * <li>gora.offheap.segment.size: bytes per segment, 64 MB by default</li>
+ * <li>gora.offheap.file: file to memory map the arena from, direct buffers
+ * if unset</li>
+ * </ul>
+ * The cache is registered as the MBean
+ * org.apache.gora:type=OffHeapCache,group=&lt;group&gt;,cache=records.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class OffHeapCachingDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> implements StatefulDecorator<K> {
+
+  public static final String CAPACITY_KEY = "gora.offheap.capacity";
+  public static final String SEGMENT_SIZE_KEY = "gora.offheap.segment.size";
+  public static final String FILE_KEY = "gora.offheap.file";
+
+  private static final Logger LOG = LoggerFactory.getLogger(OffHeapCachingDataStore.class);
+
+  private final OffHeapRecordCache<K, T> cache;
+  /** Bumped by every write, so a get does not cache what a write replaced */
+  private final AtomicLong writes = new AtomicLong();
+
+  public OffHeapCachingDataStore(DataStore<K, T> delegate,
+      OffHeapRecordCache<K, T> cache) {
+    super(delegate);
+    this.cache = cache;
+    if (Metrics.isEnabled()) {
+      Metrics.register(cache, "OffHeapCache", Metrics.group(delegate), "cache",
+          "records");
+    }
+  }
+
+  /**
+   * Caches a store off heap as configured in the properties, unless the
+   * capacity is 0 or the store is cached already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> cache(
+      DataStore<K, T> store, Properties properties) {
+    long capacity = Long.parseLong(properties.getProperty(CAPACITY_KEY, "0"));
+    if (capacity <= 0 || isWrappedBy(store, OffHeapCachingDataStore.class)) {
+      return store;
+    }
+    int segmentSize = Integer.parseInt(properties.getProperty(SEGMENT_SIZE_KEY,
+        String.valueOf(64 * 1024 * 1024)));
+    String file = properties.getProperty(FILE_KEY);
+    Schema schema = store.newPersistent().getSchema();
+    try {
+      return new OffHeapCachingDataStore<K, T>(store, new OffHeapRecordCache<K, T>(
+          schema, capacity, segmentSize, file == null ? null : new File(file)));
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot map " + file, e);
+    }
+  }
+
+  @Override
+  public T get(K key) {
+    long epoch = writes.get();
+    T cached = decode(key);
+    if (cached != null) {
+      return cached;
+    }
+    T value = delegate.get(key);
+    if (value != null && writes.get() == epoch) {
+      synchronized (this) {
+        // a write after the check would have bumped writes again
+        if (writes.get() == epoch) {
+          cache.put(key, value);
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Served by the cache when the key is cached, with all fields.
+   */
+  @Override
+  public T get(K key, String[] fields) {
+    T cached = decode(key);
+    return cached != null ? cached : delegate.get(key, fields);
+  }
+
+  private T decode(K key) {
+    try {
+      return cache.get(key);
+    } catch (IOException e) {
+      LOG.warn("Dropping undecodable cached record " + key, e);
+      cache.remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * Drops the key before and after the write, so that a get racing with it
+   * cannot cache the version it replaced.
+   */
+  @Override
+  public void put(K key, T obj) {
+    invalidate(key);
+    try {
+      delegate.put(key, obj);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    invalidate(key);
+    try {
+      return delegate.delete(key);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  /** Nothing is held back */
+  @Override
+  public void writeOut(K key) {
+  }
+
+  @Override
+  public void writeOutAll() {
+  }
+
+  @Override
+  public synchronized void invalidate(K key) {
+    writes.incrementAndGet();
+    cache.remove(key);
+  }
+
+  /**
+   * Clears the cache before and after the delete, like the writes of a
+   * key, as the keys it matches are not known.
+   */
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    clear();
+    try {
+      return delegate.deleteByQuery(query);
+    } finally {
+      clear();
+    }
+  }
+
+  @Override
+  public void truncateSchema() {
+    clear();
+    try {
+      delegate.truncateSchema();
+    } finally {
+      clear();
+    }
+  }
+
+  @Override
+  public void deleteSchema() {
+    clear();
+    try {
+      delegate.deleteSchema();
+    } finally {
+      clear();
+    }
+  }
+
+  private synchronized void clear() {
+    writes.incrementAndGet();
+    cache.clear();
+  }
+
+  @Override
+  public void invalidateAll() {
+    clear();
+  }
+
+  @Override
+  public void close() {
+    try {
+      cache.close();
+    } catch (IOException e) {
+      LOG.warn("Cannot close the off heap cache", e);
+    } finally {
+      delegate.close();
+    }
+  }
+
+  public OffHeapRecordCache<K, T> getCache() {
+    return cache;
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Cache of serialized records outside the Java heap, so that gigabytes of
+ * cached pages add nothing for the collector to trace: the heap only holds
+ * an index from key to location.
+ *
+ * The arena is a ring of segments, direct buffers or regions of a memory
+ * mapped file. Records are Avro encoded and appended to the head segment;
+ * when it is full the next segment becomes the head and the records it
+ * held are evicted all at once. A hit on a record of the segment next in
+ * line for eviction copies it to the head, so hot records survive the
+ * sweep. A put of a cached key appends a new version and the old one is
+ * dead space until its segment is reused.
+ *
+ * Records are decoded on hit, out of the lock, or lazily with
+ * {@link #getLazy}.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class OffHeapRecordCache<K, T extends Persistent> implements
+    OffHeapRecordCacheMBean {
+
+  private static final int HEADER = 4;
+
+  private final Schema schema;
+  private final ByteBuffer[] segments;
+  private final List<List<K>> segmentKeys;
+  private final Map<K, Long> index = new HashMap<K, Long>();
+  private final int segmentSize;
+  private final RandomAccessFile file;
+  private int head;
+  /** Whether the ring went round once, so the segment after head is full */
+  private boolean wrapped;
+  private long usedBytes;
+  private long hits;
+  private long misses;
+  private long puts;
+  private long evictedSegments;
+  private long evictedRecords;
+  private long promotions;
+
+  /**
+   * @param schema of the records
+   * @param capacity bytes of the arena, rounded up to whole segments
+   * @param segmentSize bytes of a segment, at most 1 GB
+   * @param mappedFile file backing the arena, or null for direct buffers
+   * @throws IOException if the file cannot be mapped
+   */
+  public OffHeapRecordCache(Schema schema, long capacity, int segmentSize,
+      File mappedFile) throws IOException {
+    if (segmentSize <= HEADER || segmentSize > 1 << 30) {
+      throw new IllegalArgumentException("Segment size " + segmentSize
+          + " out of range");
+    }
+    this.schema = schema;
+    this.segmentSize = segmentSize;
+    int count = (int) Math.max(2, (capacity + segmentSize - 1) / segmentSize);
+    segments = new ByteBuffer[count];
+    segmentKeys = new ArrayList<List<K>>(count);
+    if (mappedFile == null) {
+      file = null;
+      for (int i = 0; i < count; i++) {
+        segments[i] = ByteBuffer.allocateDirect(segmentSize);
+      }
+    } else {
+      file = new RandomAccessFile(mappedFile, "rw");
+      file.setLength((long) count * segmentSize);
+      FileChannel channel = file.getChannel();
+      for (int i = 0; i < count; i++) {
+        segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+            (long) i * segmentSize, segmentSize);
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      segmentKeys.add(new ArrayList<K>());
+    }
+  }
+
+  /**
+   * Caches a record, replacing the cached version.
+   * @param key
+   * @param record
+   * @return false if the record is larger than a segment and was not cached
+   */
+  public boolean put(K key, T record) {
+    byte[] bytes = encode(record);
+    synchronized (this) {
+      puts++;
+      if (HEADER + bytes.length > segmentSize) {
+        remove(key);
+        return false;
+      }
+      append(key, bytes);
+      return true;
+    }
+  }
+
+  /**
+   * Decodes the cached record of a key.
+   * @param key
+   * @return null if the key is not cached
+   * @throws IOException if the record cannot be decoded
+   */
+  public T get(K key) throws IOException {
+    LazyRecord<T> record = getLazy(key);
+    return record == null ? null : record.get();
+  }
+
+  /**
+   * The cached record of a key, copied to the heap but not decoded yet.
+   * @param key
+   * @return null if the key is not cached
+   */
+  public synchronized LazyRecord<T> getLazy(K key) {
+    Long location = index.get(key);
+    if (location == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    int segment = (int) (location >>> 32);
+    ByteBuffer buffer = segments[segment].duplicate();
+    buffer.position((int) (long) location);
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    if (wrapped && segment == (head + 1) % segments.length) {
+      promotions++;
+      append(key, bytes);
+    }
+    return new LazyRecord<T>(schema, bytes);
+  }
+
+  public synchronized boolean contains(K key) {
+    return index.containsKey(key);
+  }
+
+  /**
+   * Forgets a key; its bytes are reclaimed with their segment.
+   * @param key
+   * @return whether the key was cached
+   */
+  public synchronized boolean remove(K key) {
+    return index.remove(key) != null;
+  }
+
+  /**
+   * Forgets all keys.
+   */
+  public synchronized void clear() {
+    index.clear();
+    for (int i = 0; i < segments.length; i++) {
+      segments[i].clear();
+      segmentKeys.get(i).clear();
+    }
+    head = 0;
+    wrapped = false;
+    usedBytes = 0;
+  }
+
+  /**
+   * Drops the index and unmaps nothing: direct and mapped buffers are
+   * released when collected. Closes the mapped file.
+   * @throws IOException
+   */
+  public synchronized void close() throws IOException {
+    clear();
+    if (file != null) {
+      file.close();
+    }
+  }
+
+  private void append(K key, byte[] bytes) {
+    ByteBuffer buffer = segments[head];
+    if (buffer.remaining() < HEADER + bytes.length) {
+      advance();
+      buffer = segments[head];
+    }
+    long location = ((long) head << 32) | buffer.position();
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+    usedBytes += HEADER + bytes.length;
+    segmentKeys.get(head).add(key);
+    index.put(key, location);
+  }
+
+  /**
+   * Moves the head to the next segment, evicting what it holds.
+   */
+  private void advance() {
+    head = (head + 1) % segments.length;
+    if (head == segments.length - 1) {
+      wrapped = true;
+    }
+    ByteBuffer buffer = segments[head];
+    List<K> keys = segmentKeys.get(head);
+    if (!keys.isEmpty()) {
+      evictedSegments++;
+      for (K key : keys) {
+        Long location = index.get(key);
+        // only the versions still current in this segment go
+        if (location != null && (int) (location >>> 32) == head) {
+          index.remove(key);
+          evictedRecords++;
+        }
+      }
+      keys.clear();
+    }
+    usedBytes -= buffer.position();
+    buffer.clear();
+  }
+
+  private byte[] encode(T record) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+      new SpecificDatumWriter<T>(schema).write(record, encoder);
+      encoder.flush();
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot encode a " + schema.getName(), e);
+    }
+  }
+
+  @Override
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  @Override
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public synchronized double getHitRate() {
+    return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+  }
+
+  @Override
+  public synchronized long getPuts() {
+    return puts;
+  }
+
+  @Override
+  public synchronized long getEvictedSegments() {
+    return evictedSegments;
+  }
+
+  @Override
+  public synchronized long getEvictedRecords() {
+    return evictedRecords;
+  }
+
+  @Override
+  public synchronized long getPromotions() {
+    return promotions;
+  }
+
+  @Override
+  public synchronized int getEntries() {
+    return index.size();
+  }
+
+  @Override
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  @Override
+  public long getCapacityBytes() {
+    return (long) segments.length * segmentSize;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d records in %d of %d bytes, %d hits, %d misses,"
+        + " %d segments evicted (%d records), %d promotions", index.size(),
+        usedBytes, getCapacityBytes(), hits, misses, evictedSegments,
+        evictedRecords, promotions);
+  }
+}
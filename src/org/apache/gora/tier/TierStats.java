@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link TieredDataStore}.
+ */
+public class TierStats implements TierStatsMBean {
+
+  private final TieredDataStore<?, ?> store;
+  private final AtomicLong nearHits = new AtomicLong();
+  private final AtomicLong nearMisses = new AtomicLong();
+  private final AtomicLong farHits = new AtomicLong();
+  private final AtomicLong farMisses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+  private final AtomicLong writeBacks = new AtomicLong();
+
+  TierStats(TieredDataStore<?, ?> store) {
+    this.store = store;
+  }
+
+  void nearHit() {
+    nearHits.incrementAndGet();
+  }
+
+  void nearMiss() {
+    nearMisses.incrementAndGet();
+  }
+
+  void farHit() {
+    farHits.incrementAndGet();
+  }
+
+  void farMiss() {
+    farMisses.incrementAndGet();
+  }
+
+  void eviction() {
+    evictions.incrementAndGet();
+  }
+
+  void rejection() {
+    rejections.incrementAndGet();
+  }
+
+  void writeBack() {
+    writeBacks.incrementAndGet();
+  }
+
+  @Override
+  public long getNearHits() {
+    return nearHits.get();
+  }
+
+  @Override
+  public long getNearMisses() {
+    return nearMisses.get();
+  }
+
+  @Override
+  public double getNearHitRate() {
+    return rate(nearHits.get(), nearMisses.get());
+  }
+
+  @Override
+  public long getFarHits() {
+    return farHits.get();
+  }
+
+  @Override
+  public long getFarMisses() {
+    return farMisses.get();
+  }
+
+  @Override
+  public double getFarHitRate() {
+    return rate(farHits.get(), farMisses.get());
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  @Override
+  public long getWriteBacks() {
+    return writeBacks.get();
+  }
+
+  @Override
+  public int getNearSize() {
+    return store.getNearSize();
+  }
+
+  @Override
+  public int getDirty() {
+    return store.getDirty();
+  }
+
+  private static double rate(long hits, long misses) {
+    return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("near %d/%d hits (%.1f%%), far %d/%d hits (%.1f%%),"
+        + " %d evictions, %d rejections, %d write backs",
+        getNearHits(), getNearHits() + getNearMisses(), 100 * getNearHitRate(),
+        getFarHits(), getFarHits() + getFarMisses(), 100 * getFarHitRate(),
+        getEvictions(), getRejections(), getWriteBacks());
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+/**
+ * JMX view of the gets and writes of a {@link TieredDataStore}, since it was
+ * created.
+ */
+public interface TierStatsMBean {
+
+  long getNearHits();
+
+  long getNearMisses();
+
+  /** Near hits over gets */
+  double getNearHitRate();
+
+  long getFarHits();
+
+  long getFarMisses();
+
+  /** Far hits over the gets the near tier missed */
+  double getFarHitRate();
+
+  long getEvictions();
+
+  /** Records the admission policy kept out of the near tier */
+  long getRejections();
+
+  /** Dirty records written to the far tier in write-back mode */
+  long getWriteBacks();
+
+  int getNearSize();
+
+  int getDirty();
+}
@@ -0,0 +1,455 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.binding.StatefulDecorator;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.util.GoraException;
+import org.apache.gora.utils.GoraUtils;
+
+/**
+ * A near tier, by default a MemStore bounded to a number of records, in
+ * front of the store it wraps (the far tier). Point gets are served from
+ * the near tier when it holds the key and fill it otherwise, as far as the
+ * {@link EvictionPolicy} admits; queries always run on the far tier.
+ *
+ * In {@link WriteMode#WRITE_THROUGH} mode puts go to the far tier and update
+ * the near copy, both under a lock of the key, so that concurrent writes of
+ * a key reach both tiers in the same order. In {@link WriteMode#WRITE_BACK} mode puts of resident
+ * records only update the near copy, which is written to the far tier when
+ * evicted, on flush and before queries.
+ *
+ * A put of a record whose fields are not all dirty is merged into the near
+ * copy; such a partial record is not admitted on its own. Records are
+ * copied in and out of the near tier, and returned clean.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.tier.near.capacity: records of the near tier, 0 (default) for no
+ * near tier</li>
+ * <li>gora.tier.near.type: store type of the near tier, memory by
+ * default</li>
+ * <li>gora.tier.policy: lru, lfu or tinylfu (default)</li>
+ * <li>gora.tier.write: through (default) or back</li>
+ * </ul>
+ * The hit rates are registered as the MBean
+ * org.apache.gora:type=Tiers,group=&lt;group&gt;,near=&lt;near store&gt;.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class TieredDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> implements StatefulDecorator<K> {
+
+  public static final String CAPACITY_KEY = "gora.tier.near.capacity";
+  public static final String NEAR_TYPE_KEY = "gora.tier.near.type";
+  public static final String POLICY_KEY = "gora.tier.policy";
+  public static final String WRITE_KEY = "gora.tier.write";
+
+  private static final int STRIPES = 64;
+
+  public enum WriteMode {
+    WRITE_THROUGH, WRITE_BACK
+  }
+
+  private final DataStore<K, T> near;
+  private final int capacity;
+  private final EvictionPolicy<K> policy;
+  private final WriteMode mode;
+  private final Set<K> resident = new HashSet<K>();
+  private final Set<K> dirty = new LinkedHashSet<K>();
+  /** Bumped by every write, so a get does not cache what a write replaced */
+  private final AtomicLong writes = new AtomicLong();
+  /** Locks of the keys, held while a write goes to both tiers */
+  private final Object[] stripes = new Object[STRIPES];
+  private final TierStats stats = new TierStats(this);
+
+  /**
+   * @param far the store wrapped
+   * @param near an empty store, owned by this one from now on
+   * @param capacity records kept in the near tier
+   * @param policy
+   * @param mode
+   */
+  public TieredDataStore(DataStore<K, T> far, DataStore<K, T> near,
+      int capacity, EvictionPolicy<K> policy, WriteMode mode) {
+    super(far);
+    this.near = near;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.mode = mode;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Object();
+    }
+    if (Metrics.isEnabled()) {
+      Metrics.register(stats, "Tiers", Metrics.group(far), "near",
+          near.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Puts a near tier in front of a store as configured in the properties,
+   * unless its capacity is 0 or the store has one already.
+   * @param store
+   * @param properties
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> tier(
+      DataStore<K, T> store, Properties properties) {
+    int capacity = Integer.parseInt(properties.getProperty(CAPACITY_KEY, "0"));
+    if (capacity <= 0 || isWrappedBy(store, TieredDataStore.class)) {
+      return store;
+    }
+    String policyName = properties.getProperty(POLICY_KEY, "tinylfu").trim();
+    EvictionPolicy<K> policy;
+    if ("lru".equalsIgnoreCase(policyName)) {
+      policy = new LruPolicy<K>();
+    } else if ("lfu".equalsIgnoreCase(policyName)) {
+      policy = new LfuPolicy<K>();
+    } else if ("tinylfu".equalsIgnoreCase(policyName)) {
+      policy = new TinyLfuPolicy<K>(capacity);
+    } else {
+      throw new IllegalArgumentException("Unknown " + POLICY_KEY + " "
+          + policyName + ", expected lru, lfu or tinylfu");
+    }
+    String write = properties.getProperty(WRITE_KEY, "through").trim();
+    if (!"through".equalsIgnoreCase(write) && !"back".equalsIgnoreCase(write)) {
+      throw new IllegalArgumentException("Unknown " + WRITE_KEY + " " + write
+          + ", expected through or back");
+    }
+    DataStore<K, T> near;
+    try {
+      near = GoraUtils.createSpecificDataStore(
+          properties.getProperty(NEAR_TYPE_KEY, "memory"),
+          store.getKeyClass(), store.getPersistentClass());
+    } catch (GoraException e) {
+      throw new IllegalStateException("Cannot create the near tier of "
+          + Metrics.group(store), e);
+    }
+    return new TieredDataStore<K, T>(store, near, capacity, policy,
+        "back".equalsIgnoreCase(write) ? WriteMode.WRITE_BACK
+            : WriteMode.WRITE_THROUGH);
+  }
+
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  /**
+   * Gets of some fields are served by the near tier, but only gets of whole
+   * records fill it.
+   */
+  @Override
+  public T get(K key, String[] fields) {
+    long epoch = writes.get();
+    synchronized (this) {
+      if (resident.contains(key)) {
+        policy.onHit(key);
+        stats.nearHit();
+        return copy(near.get(key));
+      }
+      policy.onMiss(key);
+      stats.nearMiss();
+    }
+    T value = fields == null ? delegate.get(key) : delegate.get(key, fields);
+    if (value == null) {
+      stats.farMiss();
+      return null;
+    }
+    stats.farHit();
+    if (fields == null) {
+      synchronized (this) {
+        if (writes.get() == epoch && !resident.contains(key)) {
+          admit(key, value);
+        }
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    if (mode == WriteMode.WRITE_THROUGH) {
+      synchronized (stripe(key)) {
+        writes.incrementAndGet();
+        delegate.put(key, obj);
+        putNear(key, obj);
+      }
+    } else {
+      putNear(key, obj);
+    }
+  }
+
+  /**
+   * Updates the near copy of a record, or admits it.
+   */
+  private synchronized void putNear(K key, T obj) {
+    writes.incrementAndGet();
+    if (resident.contains(key)) {
+      T record = near.get(key);
+      merge(obj, record);
+      record.clearDirty();
+      near.put(key, record);
+      if (mode == WriteMode.WRITE_BACK) {
+        dirty.add(key);
+      }
+      return;
+    }
+    boolean admitted = isComplete(obj) && admit(key, obj);
+    if (mode == WriteMode.WRITE_BACK) {
+      if (admitted) {
+        dirty.add(key);
+      } else {
+        delegate.put(key, obj);
+      }
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    synchronized (stripe(key)) {
+      writes.incrementAndGet();
+      synchronized (this) {
+        writes.incrementAndGet();
+        if (resident.remove(key)) {
+          near.delete(key);
+          policy.onRemove(key);
+          dirty.remove(key);
+        }
+      }
+      return delegate.delete(key);
+    }
+  }
+
+  private Object stripe(K key) {
+    return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+  }
+
+  /**
+   * Empties the near tier before and after the delete, as which resident
+   * keys the query matches is not known and a get running meanwhile may
+   * admit a row being deleted.
+   */
+  @Override
+  public long deleteByQuery(Query<K, T> query) {
+    clear();
+    try {
+      return delegate.deleteByQuery(query);
+    } finally {
+      clear();
+    }
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    writeBack();
+    return delegate.execute(query);
+  }
+
+  @Override
+  public void truncateSchema() {
+    clear();
+    delegate.truncateSchema();
+  }
+
+  @Override
+  public void deleteSchema() {
+    clear();
+    delegate.deleteSchema();
+  }
+
+  @Override
+  public void flush() {
+    writeBack();
+    delegate.flush();
+  }
+
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      near.close();
+      delegate.close();
+    }
+  }
+
+  /**
+   * Writes the dirty near records to the far tier, without flushing it.
+   */
+  public synchronized void writeBack() {
+    for (K key : dirty) {
+      writeBack(key);
+    }
+    dirty.clear();
+  }
+
+  private void writeBack(K key) {
+    T record = copy(near.get(key));
+    record.setDirty();
+    delegate.put(key, record);
+    stats.writeBack();
+  }
+
+  @Override
+  public synchronized void writeOut(K key) {
+    if (dirty.remove(key)) {
+      writeBack(key);
+    }
+  }
+
+  @Override
+  public void writeOutAll() {
+    writeBack();
+  }
+
+  /**
+   * Drops the near copy of a record, writing it back first if dirty.
+   */
+  @Override
+  public synchronized void invalidate(K key) {
+    writes.incrementAndGet();
+    writeOut(key);
+    if (resident.remove(key)) {
+      near.delete(key);
+      policy.onRemove(key);
+    }
+  }
+
+  @Override
+  public void invalidateAll() {
+    clear();
+  }
+
+  /**
+   * Empties the near tier, writing back the dirty records first.
+   */
+  public synchronized void clear() {
+    writes.incrementAndGet();
+    writeBack();
+    for (K key : resident) {
+      near.delete(key);
+      policy.onRemove(key);
+    }
+    resident.clear();
+  }
+
+  /**
+   * Puts a record in the near tier if the policy admits it, evicting the
+   * victim the policy chose when full.
+   */
+  private boolean admit(K key, T value) {
+    K victim = resident.size() >= capacity ? policy.victim() : null;
+    if (!policy.admit(key, victim)) {
+      stats.rejection();
+      return false;
+    }
+    if (victim != null) {
+      if (dirty.remove(victim)) {
+        writeBack(victim);
+      }
+      near.delete(victim);
+      resident.remove(victim);
+      policy.onRemove(victim);
+      stats.eviction();
+    }
+    // near records are kept clean, the dirty set tracks what to write back
+    T record = copy(value);
+    record.clearDirty();
+    near.put(key, record);
+    resident.add(key);
+    policy.onInsert(key);
+    return true;
+  }
+
+  private static boolean isComplete(Persistent record) {
+    for (Schema.Field field : record.getSchema().getFields()) {
+      if (!record.isDirty(field.pos())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Lays the dirty fields of a record over another.
+   */
+  private static <T extends Persistent> void merge(T from, T to) {
+    for (Schema.Field field : from.getSchema().getFields()) {
+      int pos = field.pos();
+      if (from.isDirty(pos)) {
+        to.put(pos, SpecificData.get().deepCopy(field.schema(), from.get(pos)));
+        to.setDirty(pos);
+      }
+    }
+  }
+
+  /**
+   * Deep copy with the same dirty fields.
+   */
+  private static <T extends Persistent> T copy(T record) {
+    T copy = SpecificData.get().deepCopy(record.getSchema(), record);
+    for (Schema.Field field : record.getSchema().getFields()) {
+      if (record.isDirty(field.pos())) {
+        copy.setDirty(field.pos());
+      } else {
+        copy.clearDirty(field.pos());
+      }
+    }
+    return copy;
+  }
+
+  public synchronized int getNearSize() {
+    return resident.size();
+  }
+
+  public synchronized int getDirty() {
+    return dirty.size();
+  }
+
+  public DataStore<K, T> getNear() {
+    return near;
+  }
+
+  public WriteMode getMode() {
+    return mode;
+  }
+
+  public TierStats getStats() {
+    return stats;
+  }
+
+  @Override
+  public String toString() {
+    return mode + " tier of " + capacity + " records: " + stats;
+  }
+}
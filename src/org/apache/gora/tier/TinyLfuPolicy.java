@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+/**
+ * TinyLFU admission in front of LRU eviction: a record only replaces the
+ * least recently used one if its key was accessed more often recently, as
+ * estimated by a {@link FrequencySketch} of hits and misses. One-off reads,
+ * such as a scan-like sweep over cold keys, thus do not flush the hot set.
+ *
+ * @param <K>
+ */
+public class TinyLfuPolicy<K> extends LruPolicy<K> {
+
+  private final FrequencySketch sketch;
+
+  /**
+   * @param capacity keys of the near tier
+   */
+  public TinyLfuPolicy(int capacity) {
+    sketch = new FrequencySketch(capacity);
+  }
+
+  @Override
+  public void onHit(K key) {
+    super.onHit(key);
+    sketch.increment(key);
+  }
+
+  @Override
+  public void onMiss(K key) {
+    sketch.increment(key);
+  }
+
+  @Override
+  public boolean admit(K key, K victim) {
+    return victim == null || sketch.frequency(key) > sketch.frequency(victim);
+  }
+}
@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.PartitionQuery;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Exports a key range of a data store to Avro container files, one per
+ * partition, scanned concurrently.
+ *
+ * The range is cut at the given split keys or, without split keys, into the
+ * partitions reported by {@link DataStore#getPartitions}. Records are
+ * streamed from the query result into a block compressed data file, so
+ * memory stays bounded by the Avro block size whatever the partition size.
+ * A manifest.json next to the part files lists, per partition, the file,
+ * the record count, the requested key range and the first and last key
+ * actually written. The part files hold plain records and can be loaded back
+ * in parallel by {@link BulkLoader} given the field that holds the key.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class BulkExporter<K, T extends Persistent> {
+
+  public static final String MANIFEST_FILE = "manifest.json";
+
+  private final DataStore<K, T> store;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private String codec = "deflate";
+  private int syncInterval = 64 * 1024;
+
+  /**
+   * The store is shared by the scanning threads.
+   * @param store
+   */
+  public BulkExporter(DataStore<K, T> store) {
+    this.store = store;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Avro block codec, as understood by CodecFactory.fromString: null,
+   * deflate, snappy, bzip2 or xz.
+   * @param codec
+   */
+  public void setCodec(String codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * Approximate uncompressed size of an Avro block, which is all a writer
+   * buffers.
+   * @param syncInterval
+   */
+  public void setSyncInterval(int syncInterval) {
+    this.syncInterval = syncInterval;
+  }
+
+  /**
+   * Exports the records between startKey and endKey (both inclusive, null
+   * for unbounded).
+   * @param startKey
+   * @param endKey
+   * @param splitKeys ascending keys starting each partition but the first,
+   *          or null to use the partitions of the store
+   * @param outputDir created if missing
+   * @return
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public ExportReport export(K startKey, K endKey, List<K> splitKeys,
+      File outputDir) throws IOException, InterruptedException {
+    long start = System.currentTimeMillis();
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("Cannot create " + outputDir);
+    }
+    List<Partition> partitions = plan(startKey, endKey, splitKeys);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Partition>> futures = new ArrayList<Future<Partition>>();
+      for (int i = 0; i < partitions.size(); i++) {
+        final Partition partition = partitions.get(i);
+        partition.file = new File(outputDir, String.format("part-%05d.avro", i));
+        futures.add(pool.submit(new Callable<Partition>() {
+          @Override
+          public Partition call() throws Exception {
+            return write(partition);
+          }
+        }));
+      }
+      long records = 0;
+      for (Future<Partition> future : futures) {
+        records += future.get().records;
+      }
+      writeManifest(new File(outputDir, MANIFEST_FILE), partitions);
+      return new ExportReport(partitions.size(), records,
+          System.currentTimeMillis() - start);
+    } catch (ExecutionException e) {
+      throw new IOException("Export failed", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private List<Partition> plan(K startKey, K endKey, List<K> splitKeys)
+      throws IOException {
+    List<Partition> partitions = new ArrayList<Partition>();
+    if (splitKeys == null || splitKeys.isEmpty()) {
+      Query<K, T> query = GoraUtils.newRangeQuery(store, startKey, endKey);
+      for (PartitionQuery<K, T> partitionQuery : store.getPartitions(query)) {
+        // some stores (MemStore) return partitions without the requested
+        // bounds; clamp them so the export honors the range
+        if (partitionQuery.getStartKey() == null) {
+          partitionQuery.setStartKey(startKey);
+        }
+        if (partitionQuery.getEndKey() == null) {
+          partitionQuery.setEndKey(endKey);
+        }
+        partitions.add(new Partition(partitionQuery,
+            partitionQuery.getStartKey(), partitionQuery.getEndKey(), false));
+      }
+      return partitions;
+    }
+    K from = startKey;
+    for (K split : splitKeys) {
+      // Gora end keys are inclusive, so the split key is scanned here too
+      // and dropped while writing; it belongs to the next partition
+      partitions.add(new Partition(GoraUtils.newRangeQuery(store, from, split),
+          from, split, true));
+      from = split;
+    }
+    partitions.add(new Partition(GoraUtils.newRangeQuery(store, from, endKey),
+        from, endKey, false));
+    return partitions;
+  }
+
+  private Partition write(Partition partition) throws Exception {
+    DataFileWriter<T> writer = new DataFileWriter<T>(
+        new SpecificDatumWriter<T>(store.getPersistentClass()));
+    writer.setCodec(CodecFactory.fromString(codec));
+    writer.setSyncInterval(syncInterval);
+    Result<K, T> result = store.execute(partition.query);
+    try {
+      writer.create(store.newPersistent().getSchema(), partition.file);
+      while (result.next()) {
+        K key = result.getKey();
+        if (partition.endExclusive && key.equals(partition.endKey)) {
+          continue;
+        }
+        writer.append(result.get());
+        if (partition.firstKey == null) {
+          partition.firstKey = key;
+        }
+        partition.lastKey = key;
+        partition.records++;
+      }
+    } finally {
+      result.close();
+      writer.close();
+    }
+    return partition;
+  }
+
+  private void writeManifest(File file, List<Partition> partitions)
+      throws IOException {
+    JsonGenerator json = new JsonFactory().createJsonGenerator(file,
+        JsonEncoding.UTF8);
+    try {
+      json.useDefaultPrettyPrinter();
+      json.writeStartObject();
+      json.writeStringField("keyClass", store.getKeyClass().getName());
+      json.writeStringField("persistentClass", store.getPersistentClass().getName());
+      json.writeStringField("codec", codec);
+      json.writeArrayFieldStart("partitions");
+      for (Partition partition : partitions) {
+        json.writeStartObject();
+        json.writeStringField("file", partition.file.getName());
+        json.writeNumberField("records", partition.records);
+        json.writeNumberField("bytes", partition.file.length());
+        writeKey(json, "startKey", partition.startKey);
+        writeKey(json, "endKey", partition.endKey);
+        json.writeBooleanField("endExclusive", partition.endExclusive);
+        writeKey(json, "firstKey", partition.firstKey);
+        writeKey(json, "lastKey", partition.lastKey);
+        json.writeEndObject();
+      }
+      json.writeEndArray();
+      json.writeEndObject();
+    } finally {
+      json.close();
+    }
+  }
+
+  private static void writeKey(JsonGenerator json, String name, Object key)
+      throws IOException {
+    if (key == null) {
+      json.writeNullField(name);
+    } else {
+      json.writeStringField(name, key.toString());
+    }
+  }
+
+  private final class Partition {
+    final Query<K, T> query;
+    final K startKey;
+    final K endKey;
+    final boolean endExclusive;
+    File file;
+    long records;
+    K firstKey;
+    K lastKey;
+
+    Partition(Query<K, T> query, K startKey, K endKey, boolean endExclusive) {
+      this.query = query;
+      this.startKey = startKey;
+      this.endKey = endKey;
+      this.endExclusive = endExclusive;
+    }
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static void main(String[] args) throws Exception {
+    if (args.length < 4) {
+      System.err.println("Usage: BulkExporter <storeType> <keyClass> <persistentClass> <outputDir>"
+          + " [-start key] [-end key] [-split key]... [-threads n] [-codec name]");
+      System.exit(1);
+    }
+    DataStore store = GoraUtils.createSpecificDataStore(args[0],
+        Class.forName(args[1]),
+        Class.forName(args[2]).asSubclass(Persistent.class));
+    BulkExporter exporter = new BulkExporter(store);
+    String startKey = null;
+    String endKey = null;
+    List<String> splitKeys = new ArrayList<String>();
+    for (int i = 4; i < args.length; i++) {
+      if ("-start".equals(args[i])) {
+        startKey = args[++i];
+      } else if ("-end".equals(args[i])) {
+        endKey = args[++i];
+      } else if ("-split".equals(args[i])) {
+        splitKeys.add(args[++i]);
+      } else if ("-threads".equals(args[i])) {
+        exporter.setThreads(Integer.parseInt(args[++i]));
+      } else if ("-codec".equals(args[i])) {
+        exporter.setCodec(args[++i]);
+      }
+    }
+    try {
+      System.out.println(exporter.export(startKey, endKey, splitKeys,
+          new File(args[3])));
+    } finally {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,527 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+/**
+ * Loads Avro container files (.avro) or CSV files into any data store type
+ * known to {@link GoraUtils}.
+ *
+ * Input is decoded on a pool of decoder threads: Avro files are split into
+ * byte ranges aligned on sync markers, CSV files are cut into line batches.
+ * Decoded batches go through a bounded queue to writer threads, each with
+ * its own data store instance, which flush every flushRecords records or
+ * flushIntervalMillis. With a checkpoint file, the ids of flushed batches
+ * are logged and skipped when the load is run again. Batch ids are made of
+ * the canonical path of the file and the first line of a CSV batch, or the
+ * Avro block and the batch within it, so they do not depend on the number
+ * of decoders; the batch size is recorded in the checkpoint and must not
+ * change between runs.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class BulkLoader<K, T extends Persistent> {
+
+  /** Smallest Avro byte range given to a decoder thread */
+  private static final long MIN_SPLIT_BYTES = 4 * 1024 * 1024;
+
+  private final String storeType;
+  private final Class<K> keyClass;
+  private final Class<T> persistentClass;
+  private final int keyFieldPos;
+
+  private int decoderThreads = Runtime.getRuntime().availableProcessors();
+  private int writerThreads = 4;
+  private int batchSize = 1000;
+  private int queueBatches = 64;
+  private long flushRecords = 50000;
+  private long flushIntervalMillis = 5000;
+  private long reportIntervalMillis = 10000;
+  private char separator = ',';
+  private File checkpointFile;
+
+  /**
+   * @param storeType one of the GoraUtils.Type names
+   * @param keyClass
+   * @param persistentClass
+   * @param keyField field of the record holding its key, e.g. "ssn"
+   */
+  public BulkLoader(String storeType, Class<K> keyClass,
+      Class<T> persistentClass, String keyField) {
+    this.storeType = storeType;
+    this.keyClass = keyClass;
+    this.persistentClass = persistentClass;
+    Schema.Field field;
+    try {
+      field = persistentClass.getDeclaredConstructor().newInstance().getSchema()
+          .getField(keyField);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Cannot instantiate "
+          + persistentClass.getName(), e);
+    }
+    if (field == null) {
+      throw new IllegalArgumentException("Unknown key field " + keyField);
+    }
+    this.keyFieldPos = field.pos();
+  }
+
+  public void setDecoderThreads(int decoderThreads) {
+    this.decoderThreads = decoderThreads;
+  }
+
+  public void setWriterThreads(int writerThreads) {
+    this.writerThreads = writerThreads;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Decoded batches allowed to wait for a writer; bounds memory use.
+   * @param queueBatches
+   */
+  public void setQueueBatches(int queueBatches) {
+    this.queueBatches = queueBatches;
+  }
+
+  public void setFlushRecords(long flushRecords) {
+    this.flushRecords = flushRecords;
+  }
+
+  public void setFlushIntervalMillis(long flushIntervalMillis) {
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  public void setReportIntervalMillis(long reportIntervalMillis) {
+    this.reportIntervalMillis = reportIntervalMillis;
+  }
+
+  public void setSeparator(char separator) {
+    this.separator = separator;
+  }
+
+  /**
+   * Enables resumable loads.
+   * @param checkpointFile
+   */
+  public void setCheckpointFile(File checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /**
+   * Loads the files and waits until every record is flushed.
+   * @param inputs .avro or CSV files
+   * @return
+   * @throws IOException if reading, decoding or writing failed
+   * @throws InterruptedException
+   */
+  public LoadReport load(List<File> inputs) throws IOException,
+      InterruptedException {
+    LoadCheckpoint checkpoint = checkpointFile == null ? null
+        : new LoadCheckpoint(checkpointFile, "batch=" + batchSize);
+    try {
+      return new Run(checkpoint).execute(inputs);
+    } finally {
+      if (checkpoint != null) {
+        checkpoint.close();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private K toKey(Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Record without key");
+    }
+    String key = value.toString();
+    if (keyClass == String.class || keyClass == CharSequence.class) {
+      return (K) key;
+    }
+    if (keyClass == Long.class) {
+      return (K) Long.valueOf(key);
+    }
+    if (keyClass == Integer.class) {
+      return (K) Integer.valueOf(key);
+    }
+    throw new IllegalArgumentException("Unsupported key class "
+        + keyClass.getName());
+  }
+
+  private static final class Batch<K, T> {
+    final String id;
+    final List<K> keys;
+    final List<T> values;
+
+    Batch(String id, int capacity) {
+      this.id = id;
+      this.keys = new ArrayList<K>(capacity);
+      this.values = new ArrayList<T>(capacity);
+    }
+  }
+
+  /**
+   * State of one load.
+   */
+  private final class Run {
+
+    private final LoadCheckpoint checkpoint;
+    private final BlockingQueue<Batch<K, T>> queue;
+    private final Batch<K, T> end = new Batch<K, T>("", 0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong skippedBatches = new AtomicLong();
+    private final ExecutorService decoders;
+    private final Semaphore decodePermits;
+
+    Run(LoadCheckpoint checkpoint) {
+      this.checkpoint = checkpoint;
+      this.queue = new ArrayBlockingQueue<Batch<K, T>>(queueBatches);
+      this.decoders = Executors.newFixedThreadPool(decoderThreads);
+      this.decodePermits = new Semaphore(decoderThreads * 2);
+    }
+
+    LoadReport execute(List<File> inputs) throws IOException,
+        InterruptedException {
+      final long start = System.currentTimeMillis();
+      ExecutorService writers = Executors.newFixedThreadPool(writerThreads);
+      ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+      reporter.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          long elapsed = System.currentTimeMillis() - start;
+          System.out.println(new LoadReport(written.get(), skippedBatches.get(), elapsed));
+        }
+      }, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+      List<Future<?>> writerFutures = new ArrayList<Future<?>>();
+      try {
+        for (int i = 0; i < writerThreads; i++) {
+          writerFutures.add(writers.submit(new Writer()));
+        }
+        for (File input : inputs) {
+          if (failure.get() != null) {
+            break;
+          }
+          if (input.getName().endsWith(".avro")) {
+            readAvro(input);
+          } else {
+            readCsv(input);
+          }
+        }
+        decoders.shutdown();
+        decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < writerThreads; i++) {
+          queue.put(end);
+        }
+        for (Future<?> future : writerFutures) {
+          future.get();
+        }
+      } catch (ExecutionException e) {
+        failure.compareAndSet(null, e.getCause());
+      } finally {
+        decoders.shutdownNow();
+        writers.shutdownNow();
+        reporter.shutdownNow();
+      }
+      Throwable t = failure.get();
+      if (t != null) {
+        throw new IOException("Bulk load failed after " + written.get()
+            + " records", t);
+      }
+      return new LoadReport(written.get(), skippedBatches.get(),
+          System.currentTimeMillis() - start);
+    }
+
+    private void fail(Throwable t) {
+      failure.compareAndSet(null, t);
+    }
+
+    private boolean isDone(String batchId) {
+      if (checkpoint != null && checkpoint.isDone(batchId)) {
+        skippedBatches.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    private void readCsv(final File file) throws IOException,
+        InterruptedException {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(file), StandardCharsets.UTF_8));
+      try {
+        String header = reader.readLine();
+        if (header == null) {
+          return;
+        }
+        CsvRecordDecoder<T> decoder = new CsvRecordDecoder<T>(persistentClass,
+            header, separator);
+        String path = file.getCanonicalPath();
+        List<String> lines = new ArrayList<String>(batchSize);
+        long lineNumber = 1;
+        long firstLine = 0;
+        String line;
+        while ((line = reader.readLine()) != null && failure.get() == null) {
+          lineNumber++;
+          if (line.isEmpty()) {
+            continue;
+          }
+          if (lines.isEmpty()) {
+            firstLine = lineNumber;
+          }
+          lines.add(line);
+          if (lines.size() == batchSize) {
+            submitCsv(path + "@" + firstLine, lines, decoder);
+            lines = new ArrayList<String>(batchSize);
+          }
+        }
+        if (!lines.isEmpty()) {
+          submitCsv(path + "@" + firstLine, lines, decoder);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+
+    private void submitCsv(final String batchId, final List<String> lines,
+        final CsvRecordDecoder<T> decoder) throws InterruptedException {
+      if (isDone(batchId)) {
+        return;
+      }
+      decodePermits.acquire();
+      decoders.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Batch<K, T> batch = new Batch<K, T>(batchId, lines.size());
+            for (String line : lines) {
+              T record = decoder.decode(line);
+              batch.keys.add(toKey(record.get(keyFieldPos)));
+              batch.values.add(record);
+            }
+            queue.put(batch);
+          } catch (Throwable t) {
+            fail(t);
+          } finally {
+            decodePermits.release();
+          }
+        }
+      });
+    }
+
+    private void readAvro(File file) {
+      long length = file.length();
+      int splits = (int) Math.max(1,
+          Math.min(decoderThreads, length / MIN_SPLIT_BYTES));
+      for (int i = 0; i < splits; i++) {
+        long splitStart = length * i / splits;
+        long splitEnd = length * (i + 1) / splits;
+        decoders.execute(new AvroSplitReader(file, splitStart, splitEnd));
+      }
+    }
+
+    /**
+     * Decodes the records of the blocks starting between two offsets. A
+     * batch never spans two blocks, so batches are the same whatever the
+     * splits are.
+     */
+    private final class AvroSplitReader implements Runnable {
+
+      private final File file;
+      private final long start;
+      private final long end;
+
+      AvroSplitReader(File file, long start, long end) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      public void run() {
+        try {
+          DataFileReader<T> reader = new DataFileReader<T>(file,
+              new SpecificDatumReader<T>(persistentClass));
+          try {
+            reader.sync(start);
+            String path = file.getCanonicalPath();
+            long block = -1;
+            int sequence = 0;
+            Batch<K, T> batch = null;
+            while (reader.hasNext() && !reader.pastSync(end)
+                && failure.get() == null) {
+              T record = reader.next();
+              if (reader.previousSync() != block) {
+                submit(batch);
+                batch = null;
+                block = reader.previousSync();
+                sequence = 0;
+              }
+              if (batch == null) {
+                batch = new Batch<K, T>(path + "@" + block + "#" + sequence++,
+                    batchSize);
+              }
+              // records read through put(int, Object) are clean; the store
+              // must see every field as changed
+              record.setDirty();
+              batch.keys.add(toKey(record.get(keyFieldPos)));
+              batch.values.add(record);
+              if (batch.values.size() == batchSize) {
+                submit(batch);
+                batch = null;
+              }
+            }
+            submit(batch);
+          } finally {
+            reader.close();
+          }
+        } catch (Throwable t) {
+          fail(t);
+        }
+      }
+
+      private void submit(Batch<K, T> batch) throws InterruptedException {
+        if (batch != null && !isDone(batch.id)) {
+          queue.put(batch);
+        }
+      }
+    }
+
+    /**
+     * Writes batches into its own data store and flushes periodically.
+     */
+    private final class Writer implements Callable<Void> {
+
+      private final List<String> pending = new ArrayList<String>();
+      private long pendingRecords;
+      private long lastFlush = System.currentTimeMillis();
+
+      @Override
+      public Void call() throws Exception {
+        DataStore<K, T> store = null;
+        try {
+          store = GoraUtils.createSpecificDataStore(storeType, keyClass,
+              persistentClass);
+        } catch (Throwable t) {
+          fail(t);
+        }
+        try {
+          Batch<K, T> batch;
+          while ((batch = queue.take()) != end) {
+            if (store == null || failure.get() != null) {
+              // keep draining so decoders never block on a full queue
+              continue;
+            }
+            try {
+              for (int i = 0; i < batch.keys.size(); i++) {
+                store.put(batch.keys.get(i), batch.values.get(i));
+              }
+              pending.add(batch.id);
+              pendingRecords += batch.keys.size();
+              if (pendingRecords >= flushRecords
+                  || System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+                flush(store);
+              }
+            } catch (Throwable t) {
+              fail(t);
+            }
+          }
+          if (store != null && failure.get() == null) {
+            flush(store);
+          }
+        } catch (Throwable t) {
+          fail(t);
+        } finally {
+          if (store != null) {
+            store.close();
+          }
+        }
+        return null;
+      }
+
+      private void flush(DataStore<K, T> store) throws IOException {
+        store.flush();
+        if (checkpoint != null) {
+          checkpoint.markDone(pending);
+        }
+        written.addAndGet(pendingRecords);
+        pending.clear();
+        pendingRecords = 0;
+        lastFlush = System.currentTimeMillis();
+      }
+    }
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static void main(String[] args) throws Exception {
+    if (args.length < 5) {
+      System.err.println("Usage: BulkLoader <storeType> <keyClass> <persistentClass> <keyField>"
+          + " [-decoders n] [-writers n] [-batch n] [-flush n] [-separator c]"
+          + " [-checkpoint file] <file.avro|file.csv>...");
+      System.exit(1);
+    }
+    BulkLoader loader = new BulkLoader(args[0], Class.forName(args[1]),
+        Class.forName(args[2]), args[3]);
+    List<File> inputs = new ArrayList<File>();
+    for (int i = 4; i < args.length; i++) {
+      if ("-decoders".equals(args[i])) {
+        loader.setDecoderThreads(Integer.parseInt(args[++i]));
+      } else if ("-writers".equals(args[i])) {
+        loader.setWriterThreads(Integer.parseInt(args[++i]));
+      } else if ("-batch".equals(args[i])) {
+        loader.setBatchSize(Integer.parseInt(args[++i]));
+      } else if ("-flush".equals(args[i])) {
+        loader.setFlushRecords(Long.parseLong(args[++i]));
+      } else if ("-separator".equals(args[i])) {
+        loader.setSeparator(args[++i].charAt(0));
+      } else if ("-checkpoint".equals(args[i])) {
+        loader.setCheckpointFile(new File(args[++i]));
+      } else {
+        inputs.add(new File(args[i]));
+      }
+    }
+    System.out.println(loader.load(inputs));
+  }
+}
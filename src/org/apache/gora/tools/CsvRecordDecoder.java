@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.util.Utf8;
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Decodes CSV lines into persistent records. The header row names the
+ * fields; columns not matching a field are ignored. Only fields of primitive
+ * type (or unions of null and a primitive) can be loaded: strings, numbers,
+ * booleans and bytes, where bytes take the UTF-8 bytes of the cell. An empty
+ * cell is null when the field allows it, empty for a string or bytes field,
+ * and the schema default otherwise; a line with an empty cell for a field
+ * that has no default is rejected.
+ * Quoted cells may contain separators and doubled quotes but not line breaks.
+ *
+ * @param <T>
+ */
+public class CsvRecordDecoder<T extends Persistent> {
+
+  private final Class<T> persistentClass;
+  private final char separator;
+  private final Schema.Field[] columns;
+
+  /**
+   * @param persistentClass
+   * @param headerLine the first line of the file
+   * @param separator
+   */
+  public CsvRecordDecoder(Class<T> persistentClass, String headerLine,
+      char separator) {
+    this.persistentClass = persistentClass;
+    this.separator = separator;
+    Schema schema = newRecord().getSchema();
+    List<String> names = split(headerLine);
+    columns = new Schema.Field[names.size()];
+    for (int i = 0; i < columns.length; i++) {
+      Schema.Field field = schema.getField(names.get(i).trim());
+      if (field != null) {
+        checkLoadable(field);
+      }
+      columns[i] = field;
+    }
+  }
+
+  /**
+   * Decodes one line. All fields of the returned record are dirty.
+   * @param line
+   * @return
+   */
+  public T decode(String line) {
+    T record = newRecord();
+    List<String> cells = split(line);
+    for (int i = 0; i < columns.length && i < cells.size(); i++) {
+      Schema.Field field = columns[i];
+      if (field != null) {
+        record.put(field.pos(), convert(field, cells.get(i)));
+      }
+    }
+    record.setDirty();
+    return record;
+  }
+
+  private T newRecord() {
+    try {
+      return persistentClass.getDeclaredConstructor().newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Cannot instantiate "
+          + persistentClass.getName(), e);
+    }
+  }
+
+  private static void checkLoadable(Schema.Field field) {
+    if (primitiveOf(field.schema()) == null) {
+      throw new IllegalArgumentException("Field " + field.name()
+          + " is not a primitive field and cannot be loaded from CSV");
+    }
+  }
+
+  /**
+   * Returns the primitive schema of a field, looking through nullable
+   * unions, or null when the field is not primitive.
+   */
+  private static Schema primitiveOf(Schema schema) {
+    if (schema.getType() == Schema.Type.UNION) {
+      Schema primitive = null;
+      for (Schema branch : schema.getTypes()) {
+        if (branch.getType() == Schema.Type.NULL) {
+          continue;
+        }
+        if (primitive != null) {
+          return null;
+        }
+        primitive = branch;
+      }
+      return primitive == null ? null : primitiveOf(primitive);
+    }
+    switch (schema.getType()) {
+      case STRING:
+      case BYTES:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case BOOLEAN:
+        return schema;
+      default:
+        return null;
+    }
+  }
+
+  private static Object convert(Schema.Field field, String cell) {
+    boolean nullable = field.schema().getType() == Schema.Type.UNION;
+    Schema primitive = primitiveOf(field.schema());
+    if (cell.isEmpty() && (nullable || (primitive.getType() != Schema.Type.STRING
+        && primitive.getType() != Schema.Type.BYTES))) {
+      if (nullable) {
+        return null;
+      }
+      if (field.defaultValue() == null) {
+        throw new IllegalArgumentException("Empty cell for field "
+            + field.name() + ", which has no default");
+      }
+      return SpecificData.get().getDefaultValue(field);
+    }
+    switch (primitive.getType()) {
+      case STRING:
+        return new Utf8(cell);
+      case BYTES:
+        return ByteBuffer.wrap(cell.getBytes(StandardCharsets.UTF_8));
+      case INT:
+        return Integer.valueOf(cell.trim());
+      case LONG:
+        return Long.valueOf(cell.trim());
+      case FLOAT:
+        return Float.valueOf(cell.trim());
+      case DOUBLE:
+        return Double.valueOf(cell.trim());
+      case BOOLEAN:
+        return Boolean.valueOf(cell.trim());
+      default:
+        throw new IllegalStateException("Unexpected type " + primitive);
+    }
+  }
+
+  /**
+   * Splits a line into cells, honoring double quoted cells.
+   * @param line
+   * @return
+   */
+  List<String> split(String line) {
+    List<String> cells = new ArrayList<String>();
+    StringBuilder cell = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+            cell.append('"');
+            i++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          cell.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == separator) {
+        cells.add(cell.toString());
+        cell.setLength(0);
+      } else {
+        cell.append(c);
+      }
+    }
+    cells.add(cell.toString());
+    return cells;
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+/**
+ * Outcome of a bulk export.
+ */
+public class ExportReport {
+
+  private final int partitions;
+  private final long records;
+  private final long elapsedMillis;
+
+  public ExportReport(int partitions, long records, long elapsedMillis) {
+    this.partitions = partitions;
+    this.records = records;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public int getPartitions() {
+    return partitions;
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public double getRecordsPerSecond() {
+    return elapsedMillis == 0 ? 0 : records * 1000.0 / elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d records in %d partitions in %.1fs (%.0f records/s)",
+        records, partitions, elapsedMillis / 1000.0, getRecordsPerSecond());
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append only log of the batch ids a bulk load has durably written. A batch
+ * is logged only after the store flush that covered it succeeded, so a
+ * resumed load skips exactly the batches that reached the store. Puts are
+ * idempotent, so replaying a batch that was written but not yet logged is
+ * harmless.
+ *
+ * The first line records the settings that decide the batch boundaries; a
+ * load with other settings cannot resume from the checkpoint, as its batch
+ * ids would not match.
+ */
+public class LoadCheckpoint {
+
+  private static final String SETTINGS_PREFIX = "#";
+
+  private final File file;
+  private final Set<String> done = new HashSet<String>();
+  private Writer writer;
+  private FileOutputStream out;
+
+  /**
+   * Opens the checkpoint, reading the batches completed by earlier runs.
+   * @param file
+   * @param settings e.g. "batch=1000"
+   * @throws IOException if the checkpoint was written with other settings
+   */
+  public LoadCheckpoint(File file, String settings) throws IOException {
+    this.file = file;
+    boolean empty = true;
+    if (file.exists()) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(file), StandardCharsets.UTF_8));
+      try {
+        String line = reader.readLine();
+        if (line != null) {
+          empty = false;
+          if (!line.equals(SETTINGS_PREFIX + settings)) {
+            throw new IOException("Checkpoint " + file + " was written with "
+                + (line.startsWith(SETTINGS_PREFIX) ? line.substring(1)
+                    : "unknown settings")
+                + ", not " + settings + "; rerun with the same settings or"
+                + " remove it");
+          }
+        }
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            done.add(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    out = new FileOutputStream(file, true);
+    writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    if (empty) {
+      writer.write(SETTINGS_PREFIX + settings + "\n");
+      writer.flush();
+      out.getFD().sync();
+    }
+  }
+
+  /**
+   * Number of batches completed by earlier runs and this one.
+   * @return
+   */
+  public synchronized int size() {
+    return done.size();
+  }
+
+  public synchronized boolean isDone(String batchId) {
+    return done.contains(batchId);
+  }
+
+  /**
+   * Durably records completed batches.
+   * @param batchIds
+   * @throws IOException
+   */
+  public synchronized void markDone(Collection<String> batchIds)
+      throws IOException {
+    if (batchIds.isEmpty()) {
+      return;
+    }
+    for (String id : batchIds) {
+      writer.write(id);
+      writer.write('\n');
+      done.add(id);
+    }
+    writer.flush();
+    out.getFD().sync();
+  }
+
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  public File getFile() {
+    return file;
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+/**
+ * Outcome of a bulk load.
+ */
+public class LoadReport {
+
+  private final long records;
+  private final long skippedBatches;
+  private final long elapsedMillis;
+
+  public LoadReport(long records, long skippedBatches, long elapsedMillis) {
+    this.records = records;
+    this.skippedBatches = skippedBatches;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  /** Records written and flushed by this run */
+  public long getRecords() {
+    return records;
+  }
+
+  /** Batches skipped because a checkpoint showed them as done */
+  public long getSkippedBatches() {
+    return skippedBatches;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public double getRecordsPerSecond() {
+    return elapsedMillis == 0 ? 0 : records * 1000.0 / elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d records in %.1fs (%.0f records/s), %d batches skipped",
+        records, elapsedMillis / 1000.0, getRecordsPerSecond(), skippedBatches);
+  }
+}
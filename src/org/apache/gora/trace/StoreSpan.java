@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+/**
+ * A store call being traced.
+ */
+public interface StoreSpan {
+
+  /**
+   * @param startKey the key of a single key call, or the start of a range
+   * @param endKey null for a single key
+   */
+  void setKeys(Object startKey, Object endKey);
+
+  /**
+   * @param fields the projection, null for all fields
+   */
+  void setFields(String[] fields);
+
+  /**
+   * Counts a record read or written.
+   * @param bytes estimated serialized size
+   */
+  void addRecord(long bytes);
+
+  /**
+   * Ends the call; it is recorded if it took at least the threshold.
+   * @param failed
+   */
+  void end(boolean failed);
+}
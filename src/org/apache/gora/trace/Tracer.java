@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+/**
+ * Receiver of trace spans, such as the Java Flight Recorder events of
+ * org.apache.gora.trace.jfr.JfrTracer. Implementations have a public no
+ * argument constructor and are loaded by {@link Tracing}.
+ */
+public interface Tracer {
+
+  /**
+   * Starts a store call.
+   * @param group store type and persistent class, e.g. CassandraStore.Employee
+   * @param operation
+   * @return the span, or null when nothing is recorded right now
+   */
+  StoreSpan startStoreOperation(String group, String operation);
+
+  /**
+   * Starts a call handled by the Py4j gateway.
+   * @return the span, or null when nothing is recorded right now
+   */
+  GatewaySpan startGatewayCall();
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the {@link Tracer} and wraps stores so their calls are traced.
+ *
+ * Read from gora.properties:
+ * <ul>
+ * <li>gora.trace.tracer: tracer class, by default the Java Flight Recorder
+ * one, built with the jfr profile; none to disable tracing. Without the
+ * class or without JFR in the JVM, stores are not wrapped at all.</li>
+ * <li>gora.trace.threshold.ms: calls faster than this are not recorded,
+ * 10 by default</li>
+ * </ul>
+ * With the JFR tracer, a call costs a check of whether the event is enabled
+ * when no recording is running.
+ */
+public class Tracing {
+
+  public static final String TRACER_KEY = "gora.trace.tracer";
+  public static final String THRESHOLD_KEY = "gora.trace.threshold.ms";
+  public static final String DEFAULT_TRACER = "org.apache.gora.trace.jfr.JfrTracer";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Tracing.class);
+  private static final Tracer TRACER;
+  private static final long THRESHOLD_NANOS;
+
+  static {
+    Properties properties = DataStoreFactory.createProps();
+    THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
+        properties.getProperty(THRESHOLD_KEY, "10")));
+    TRACER = load(properties.getProperty(TRACER_KEY, DEFAULT_TRACER));
+  }
+
+  private Tracing() {
+  }
+
+  private static Tracer load(String className) {
+    if ("none".equals(className)) {
+      return null;
+    }
+    try {
+      return Class.forName(className).asSubclass(Tracer.class)
+          .getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      if (!DEFAULT_TRACER.equals(className)) {
+        LOG.warn("Tracer " + className + " not found, tracing disabled");
+      }
+      return null;
+    } catch (LinkageError e) {
+      // the JFR tracer on a JVM without jdk.jfr
+      LOG.info("Tracer " + className + " not supported by this JVM: " + e);
+      return null;
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Cannot create tracer " + className, e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the tracer, or null when tracing is disabled
+   */
+  public static Tracer getTracer() {
+    return TRACER;
+  }
+
+  public static long getThresholdNanos() {
+    return THRESHOLD_NANOS;
+  }
+
+  /**
+   * Wraps a store so its calls are traced, unless tracing is disabled or
+   * the store is traced already.
+   * @param store
+   * @return
+   */
+  public static <K, T extends Persistent> DataStore<K, T> trace(
+      DataStore<K, T> store) {
+    if (TRACER == null
+        || ForwardingDataStore.isWrappedBy(store, TracingDataStore.class)) {
+      return store;
+    }
+    return new TracingDataStore<K, T>(store, TRACER);
+  }
+
+  /**
+   * @return the span of a gateway call, or null when nothing is recorded
+   */
+  public static GatewaySpan startGatewayCall() {
+    return TRACER == null ? null : TRACER.startGatewayCall();
+  }
+}
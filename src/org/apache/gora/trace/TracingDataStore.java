@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.metrics.Metrics;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.PersistentSizes;
+
+/**
+ * Traces get, put, delete, flush and queries of a store. A query span runs
+ * from execute until its result is exhausted or closed and counts the
+ * records read.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class TracingDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private final Tracer tracer;
+  private final String group;
+
+  public TracingDataStore(DataStore<K, T> delegate, Tracer tracer) {
+    super(delegate);
+    this.tracer = tracer;
+    this.group = Metrics.group(delegate);
+  }
+
+  @Override
+  public T get(K key) {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) {
+    StoreSpan span = tracer.startStoreOperation(group, "get");
+    if (span == null) {
+      return fields == null ? delegate.get(key) : delegate.get(key, fields);
+    }
+    boolean failed = true;
+    try {
+      T value = fields == null ? delegate.get(key) : delegate.get(key, fields);
+      span.setKeys(key, null);
+      span.setFields(fields);
+      if (value != null) {
+        span.addRecord(sizeOf(value));
+      }
+      failed = false;
+      return value;
+    } finally {
+      span.end(failed);
+    }
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    StoreSpan span = tracer.startStoreOperation(group, "put");
+    if (span == null) {
+      delegate.put(key, obj);
+      return;
+    }
+    boolean failed = true;
+    try {
+      delegate.put(key, obj);
+      span.setKeys(key, null);
+      span.addRecord(sizeOf(obj));
+      failed = false;
+    } finally {
+      span.end(failed);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    StoreSpan span = tracer.startStoreOperation(group, "delete");
+    if (span == null) {
+      return delegate.delete(key);
+    }
+    boolean failed = true;
+    try {
+      boolean deleted = delegate.delete(key);
+      span.setKeys(key, null);
+      failed = false;
+      return deleted;
+    } finally {
+      span.end(failed);
+    }
+  }
+
+  @Override
+  public void flush() {
+    StoreSpan span = tracer.startStoreOperation(group, "flush");
+    if (span == null) {
+      delegate.flush();
+      return;
+    }
+    boolean failed = true;
+    try {
+      delegate.flush();
+      failed = false;
+    } finally {
+      span.end(failed);
+    }
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) {
+    StoreSpan span = tracer.startStoreOperation(group, "query");
+    if (span == null) {
+      return delegate.execute(query);
+    }
+    boolean failed = true;
+    try {
+      span.setKeys(query.getStartKey(), query.getEndKey());
+      span.setFields(query.getFields());
+      Result<K, T> result = delegate.execute(query);
+      failed = false;
+      if (result == null) {
+        span.end(false);
+        return null;
+      }
+      return new TracingResult<K, T>(result, span);
+    } finally {
+      if (failed) {
+        span.end(true);
+      }
+    }
+  }
+
+  static long sizeOf(Object value) {
+    if (value instanceof IndexedRecord) {
+      return PersistentSizes.sizeOf(((IndexedRecord) value).getSchema(), value);
+    }
+    return 0;
+  }
+}
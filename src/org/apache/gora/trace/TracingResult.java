@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+import java.io.IOException;
+
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+
+/**
+ * Result counting the records of a query span and ending it when the
+ * result is exhausted, fails or is closed.
+ *
+ * @param <K>
+ * @param <T>
+ */
+class TracingResult<K, T extends Persistent> implements Result<K, T> {
+
+  private final Result<K, T> result;
+  private StoreSpan span;
+
+  TracingResult(Result<K, T> result, StoreSpan span) {
+    this.result = result;
+    this.span = span;
+  }
+
+  @Override
+  public boolean next() throws Exception, IOException {
+    boolean hasNext;
+    try {
+      hasNext = result.next();
+    } catch (Exception e) {
+      end(true);
+      throw e;
+    }
+    if (!hasNext) {
+      end(false);
+    } else if (span != null) {
+      span.addRecord(TracingDataStore.sizeOf(result.get()));
+    }
+    return hasNext;
+  }
+
+  private void end(boolean failed) {
+    if (span != null) {
+      span.end(failed);
+      span = null;
+    }
+  }
+
+  @Override
+  public DataStore<K, T> getDataStore() {
+    return result.getDataStore();
+  }
+
+  @Override
+  public Query<K, T> getQuery() {
+    return result.getQuery();
+  }
+
+  @Override
+  public K getKey() {
+    return result.getKey();
+  }
+
+  @Override
+  public T get() {
+    return result.get();
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return result.getKeyClass();
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return result.getPersistentClass();
+  }
+
+  @Override
+  public long getOffset() {
+    return result.getOffset();
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    return result.getProgress();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      result.close();
+    } finally {
+      end(false);
+    }
+  }
+}
@@ -0,0 +1,634 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * Compact map of CharSequence to CharSequence used for the string maps of the
+ * generated classes (WebPage outlinks and headers, Metadata data).
+ *
+ * Keys and values are stored as UTF-8 in a single shared byte arena and the
+ * table uses open addressing over int arrays, so an entry costs a few ints
+ * plus its encoded bytes instead of a HashMap node and two string objects.
+ * Returned keys and values are {@link Utf8View}s over the arena and are only
+ * decoded when a char level method is called. The arena is append only;
+ * growing or compacting it allocates a new array, so views handed out earlier
+ * stay valid. Null values are allowed (WebPage headers), null keys are not.
+ *
+ * The map is not thread safe. It can be passed to the generated setters,
+ * which wrap it with the usual dirty tracking wrapper.
+ */
+public class CompactUtf8Map extends AbstractMap<CharSequence, CharSequence> {
+
+  private static final int FREE = 0;
+  private static final int DELETED = -1;
+  private static final int NULL_VALUE = -1;
+  private static final int MIN_CAPACITY = 8;
+
+  /** Shared UTF-8 storage for keys and values */
+  private byte[] arena;
+  private int arenaSize;
+  /** Bytes of the arena that belong to removed or replaced entries */
+  private int garbage;
+
+  /** Open addressing table holding entry index + 1, FREE or DELETED */
+  private int[] slots;
+  private int deletedSlots;
+
+  /** Entry columns, indexed by entry number */
+  private int[] hashes;
+  private int[] keyOffsets;
+  private int[] keyLengths;
+  private int[] valueOffsets;
+  private int[] valueLengths;
+  /** Number of entry rows in use, including removed ones */
+  private int entries;
+
+  private int size;
+  private int modCount;
+
+  public CompactUtf8Map() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Creates an empty map sized for the expected number of entries.
+   * @param expectedSize
+   */
+  public CompactUtf8Map(int expectedSize) {
+    int capacity = tableSizeFor(Math.max(expectedSize, MIN_CAPACITY / 2) * 2);
+    slots = new int[capacity];
+    int rows = Math.max(expectedSize, MIN_CAPACITY / 2);
+    hashes = new int[rows];
+    keyOffsets = new int[rows];
+    keyLengths = new int[rows];
+    valueOffsets = new int[rows];
+    valueLengths = new int[rows];
+    arena = new byte[rows * 16];
+  }
+
+  /**
+   * Creates a compact copy of the given map.
+   * @param other
+   */
+  public CompactUtf8Map(Map<? extends CharSequence, ? extends CharSequence> other) {
+    this(other == null ? 0 : other.size());
+    if (other != null) {
+      putAll(other);
+    }
+  }
+
+  /**
+   * Returns a compact copy of the map, or the map itself when it already is
+   * a compact map or is null.
+   * @param map
+   * @return
+   */
+  public static Map<CharSequence, CharSequence> compact(
+      Map<CharSequence, CharSequence> map) {
+    if (map == null || map instanceof CompactUtf8Map) {
+      return map;
+    }
+    return new CompactUtf8Map(map);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return findEntry(key) >= 0;
+  }
+
+  @Override
+  public CharSequence get(Object key) {
+    int entry = findEntry(key);
+    return entry < 0 ? null : valueView(entry);
+  }
+
+  @Override
+  public CharSequence put(CharSequence key, CharSequence value) {
+    if (key == null) {
+      throw new NullPointerException("Null keys are not supported");
+    }
+    byte[] keyBytes = bytesOf(key);
+    int keyLength = lengthOf(key, keyBytes);
+    int hash = hash(keyBytes, 0, keyLength);
+    int slot = findSlot(keyBytes, keyLength, hash);
+    if (slot >= 0 && slots[slot] > 0) {
+      if (compactIfWasteful(value == null ? 0 : value.length())) {
+        slot = findSlot(keyBytes, keyLength, hash);
+      }
+      return replaceValue(slots[slot] - 1, value);
+    }
+    // compaction renumbers entries, so it only runs here, before a new row
+    // is taken, and never while a value is replaced under an iterator
+    compactIfWasteful(keyLength);
+    if (entries == hashes.length) {
+      growEntries();
+    }
+    if ((size + deletedSlots + 1) * 4 > slots.length * 3) {
+      rehash(size + 1 > slots.length / 2 ? slots.length * 2 : slots.length);
+    }
+    int entry = entries++;
+    hashes[entry] = hash;
+    keyOffsets[entry] = append(keyBytes, keyLength);
+    keyLengths[entry] = keyLength;
+    storeValue(entry, value);
+    insertSlot(entry, hash);
+    size++;
+    modCount++;
+    return null;
+  }
+
+  @Override
+  public CharSequence remove(Object key) {
+    byte[] keyBytes = bytesOf(key);
+    if (keyBytes == null) {
+      return null;
+    }
+    int keyLength = lengthOf((CharSequence) key, keyBytes);
+    int slot = findSlot(keyBytes, keyLength, hash(keyBytes, 0, keyLength));
+    if (slot < 0 || slots[slot] <= 0) {
+      return null;
+    }
+    int entry = slots[slot] - 1;
+    CharSequence previous = valueView(entry);
+    removeAt(slot);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(slots, FREE);
+    deletedSlots = 0;
+    entries = 0;
+    size = 0;
+    // a fresh arena, as views of the old one may still be held
+    arena = new byte[Math.min(arena.length, MIN_CAPACITY * 16)];
+    arenaSize = 0;
+    garbage = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns the number of bytes held by the arena, including garbage.
+   * @return
+   */
+  public int arenaBytes() {
+    return arenaSize;
+  }
+
+  @Override
+  public Set<Map.Entry<CharSequence, CharSequence>> entrySet() {
+    return new EntrySet();
+  }
+
+  private void removeAt(int slot) {
+    int entry = slots[slot] - 1;
+    garbage += keyLengths[entry];
+    if (valueLengths[entry] != NULL_VALUE) {
+      garbage += valueLengths[entry];
+    }
+    keyLengths[entry] = DELETED;
+    slots[slot] = DELETED;
+    deletedSlots++;
+    size--;
+    modCount++;
+    if (size == 0) {
+      clear();
+    }
+  }
+
+  /**
+   * Compacts the arena when the next append would grow it while more than
+   * half of it is garbage. Returns true if entries were renumbered.
+   */
+  private boolean compactIfWasteful(int incoming) {
+    if (garbage > arenaSize / 2 && arenaSize + incoming > arena.length) {
+      compactEntries();
+      return true;
+    }
+    return false;
+  }
+
+  private CharSequence replaceValue(int entry, CharSequence value) {
+    CharSequence previous = valueView(entry);
+    if (valueLengths[entry] != NULL_VALUE) {
+      garbage += valueLengths[entry];
+    }
+    storeValue(entry, value);
+    return previous;
+  }
+
+  private void storeValue(int entry, CharSequence value) {
+    if (value == null) {
+      valueOffsets[entry] = 0;
+      valueLengths[entry] = NULL_VALUE;
+      return;
+    }
+    byte[] valueBytes = bytesOf(value);
+    int valueLength = lengthOf(value, valueBytes);
+    valueOffsets[entry] = append(valueBytes, valueLength);
+    valueLengths[entry] = valueLength;
+  }
+
+  private CharSequence valueView(int entry) {
+    if (valueLengths[entry] == NULL_VALUE) {
+      return null;
+    }
+    return new Utf8View(arena, valueOffsets[entry], valueLengths[entry]);
+  }
+
+  private CharSequence keyView(int entry) {
+    return new Utf8View(arena, keyOffsets[entry], keyLengths[entry]);
+  }
+
+  private int findEntry(Object key) {
+    byte[] keyBytes = bytesOf(key);
+    if (keyBytes == null) {
+      return -1;
+    }
+    int keyLength = lengthOf((CharSequence) key, keyBytes);
+    int slot = findSlot(keyBytes, keyLength, hash(keyBytes, 0, keyLength));
+    return slot >= 0 && slots[slot] > 0 ? slots[slot] - 1 : -1;
+  }
+
+  /**
+   * Returns the slot holding the key, or the first free slot of its probe
+   * sequence when the key is absent.
+   */
+  private int findSlot(byte[] keyBytes, int keyLength, int hash) {
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    for (int probe = 0; probe < slots.length; probe++) {
+      int value = slots[slot];
+      if (value == FREE) {
+        return slot;
+      }
+      if (value > 0) {
+        int entry = value - 1;
+        if (hashes[entry] == hash && keyLengths[entry] == keyLength
+            && regionEquals(arena, keyOffsets[entry], keyBytes, keyLength)) {
+          return slot;
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void insertSlot(int entry, int hash) {
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    while (slots[slot] > 0) {
+      slot = (slot + 1) & mask;
+    }
+    if (slots[slot] == DELETED) {
+      deletedSlots--;
+    }
+    slots[slot] = entry + 1;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    deletedSlots = 0;
+    for (int entry = 0; entry < entries; entry++) {
+      if (keyLengths[entry] != DELETED) {
+        insertSlot(entry, hashes[entry]);
+      }
+    }
+  }
+
+  private void growEntries() {
+    if (entries > size * 2) {
+      compactEntries();
+      if (entries < hashes.length) {
+        return;
+      }
+    }
+    int rows = hashes.length * 2;
+    hashes = Arrays.copyOf(hashes, rows);
+    keyOffsets = Arrays.copyOf(keyOffsets, rows);
+    keyLengths = Arrays.copyOf(keyLengths, rows);
+    valueOffsets = Arrays.copyOf(valueOffsets, rows);
+    valueLengths = Arrays.copyOf(valueLengths, rows);
+  }
+
+  /**
+   * Drops removed entry rows and the arena bytes they referenced.
+   */
+  private void compactEntries() {
+    byte[] newArena = new byte[Math.max(arenaSize - garbage, 16)];
+    int position = 0;
+    int live = 0;
+    for (int entry = 0; entry < entries; entry++) {
+      if (keyLengths[entry] == DELETED) {
+        continue;
+      }
+      System.arraycopy(arena, keyOffsets[entry], newArena, position, keyLengths[entry]);
+      keyOffsets[live] = position;
+      keyLengths[live] = keyLengths[entry];
+      position += keyLengths[entry];
+      if (valueLengths[entry] != NULL_VALUE) {
+        System.arraycopy(arena, valueOffsets[entry], newArena, position, valueLengths[entry]);
+        valueOffsets[live] = position;
+        position += valueLengths[entry];
+      } else {
+        valueOffsets[live] = 0;
+      }
+      valueLengths[live] = valueLengths[entry];
+      hashes[live] = hashes[entry];
+      live++;
+    }
+    arena = newArena;
+    arenaSize = position;
+    garbage = 0;
+    entries = live;
+    rehash(slots.length);
+    modCount++;
+  }
+
+  private int append(byte[] bytes, int length) {
+    if (arenaSize + length > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+    }
+    int offset = arenaSize;
+    System.arraycopy(bytes, 0, arena, offset, length);
+    arenaSize += length;
+    return offset;
+  }
+
+  private static byte[] bytesOf(Object sequence) {
+    if (sequence instanceof Utf8View) {
+      return ((Utf8View) sequence).copyBytes();
+    }
+    if (sequence instanceof Utf8) {
+      return ((Utf8) sequence).getBytes();
+    }
+    if (sequence instanceof CharSequence) {
+      return sequence.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    return null;
+  }
+
+  private static int lengthOf(CharSequence sequence, byte[] bytes) {
+    if (sequence instanceof Utf8) {
+      return ((Utf8) sequence).getByteLength();
+    }
+    return bytes.length;
+  }
+
+  private static boolean regionEquals(byte[] arena, int offset, byte[] bytes,
+      int length) {
+    for (int i = 0; i < length; i++) {
+      if (arena[offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 0x811c9dc5;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ bytes[i]) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static int tableSizeFor(int n) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < n) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<CharSequence, CharSequence>> {
+
+    @Override
+    public Iterator<Map.Entry<CharSequence, CharSequence>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      CompactUtf8Map.this.clear();
+    }
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<CharSequence, CharSequence>> {
+
+    private int slot = -1;
+    private int next = advance(0);
+    private int expectedModCount = modCount;
+
+    private int advance(int from) {
+      for (int i = from; i < slots.length; i++) {
+        if (slots[i] > 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next >= 0;
+    }
+
+    @Override
+    public Map.Entry<CharSequence, CharSequence> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next < 0) {
+        throw new NoSuchElementException();
+      }
+      slot = next;
+      next = advance(next + 1);
+      return new CompactEntry(slot);
+    }
+
+    @Override
+    public void remove() {
+      if (slot < 0) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(slot);
+      if (size == 0) {
+        next = -1;
+      }
+      slot = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  private final class CompactEntry extends AbstractMap.SimpleEntry<CharSequence, CharSequence> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int slot;
+
+    CompactEntry(int slot) {
+      super(keyView(slots[slot] - 1), valueView(slots[slot] - 1));
+      this.slot = slot;
+    }
+
+    /**
+     * Replaces the value in place; unlike put it never compacts the arena, so
+     * it is safe while iterating.
+     */
+    @Override
+    public CharSequence setValue(CharSequence value) {
+      super.setValue(value);
+      return replaceValue(slots[slot] - 1, value);
+    }
+  }
+
+  /**
+   * Read only CharSequence over a slice of UTF-8 bytes. The string is decoded
+   * on the first char level access. Equality and hash code follow Avro's Utf8
+   * so views compare by their encoded bytes.
+   *
+   * A view equals a Utf8 of the same bytes, but Utf8.equals(view) is false,
+   * so views and Utf8s should not be mixed as keys of a hash based
+   * collection; convert with {@link #toUtf8()} or toString() first.
+   */
+  public static final class Utf8View implements CharSequence, Comparable<Utf8View> {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private String decoded;
+
+    Utf8View(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Returns the number of encoded bytes.
+     * @return
+     */
+    public int getByteLength() {
+      return length;
+    }
+
+    /**
+     * Returns a copy of the encoded bytes.
+     * @return
+     */
+    public byte[] copyBytes() {
+      return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    /**
+     * Returns the value as an Avro Utf8 without decoding it.
+     * @return
+     */
+    public Utf8 toUtf8() {
+      return new Utf8(copyBytes());
+    }
+
+    @Override
+    public int length() {
+      return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      if (decoded == null) {
+        decoded = new String(bytes, offset, length, StandardCharsets.UTF_8);
+      }
+      return decoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (o instanceof Utf8View) {
+        Utf8View that = (Utf8View) o;
+        return length == that.length && compareTo(that) == 0;
+      }
+      if (o instanceof Utf8) {
+        Utf8 that = (Utf8) o;
+        return length == that.getByteLength()
+            && regionEquals(bytes, offset, that.getBytes(), length);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = 0;
+      for (int i = offset; i < offset + length; i++) {
+        hash = hash * 31 + bytes[i];
+      }
+      return hash;
+    }
+
+    @Override
+    public int compareTo(Utf8View that) {
+      int common = Math.min(length, that.length);
+      for (int i = 0; i < common; i++) {
+        int a = bytes[offset + i] & 0xff;
+        int b = that.bytes[that.offset + i] & 0xff;
+        if (a != b) {
+          return a - b;
+        }
+      }
+      return length - that.length;
+    }
+  }
+}
@@ -17,8 +17,13 @@
  */
 package org.apache.gora.utils;
 
+import java.util.Map;
+
 import org.apache.avro.util.Utf8;
 import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.Metadata;
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.persistency.impl.PersistentBase;
 import org.apache.gora.store.DataStore;
 import org.apache.gora.util.GoraException;
 
@@ -35,6 +40,40 @@ public class GeneratedUtils {
     return emp1;
   }
 
+  /**
+   * Replaces the outlinks, headers and metadata data maps of a page with
+   * {@link CompactUtf8Map} copies. The maps are swapped through the generated
+   * put(int, Object), and a field that was dirty before is marked dirty again,
+   * so the dirty state of the page is unchanged.
+   * @param page
+   * @return the same page
+   */
+  public static WebPage compactMaps(WebPage page) {
+    if (page == null) {
+      return null;
+    }
+    compactField(page, WebPage.Field.OUTLINKS.getIndex());
+    compactField(page, WebPage.Field.HEADERS.getIndex());
+    Metadata metadata = page.getMetadata();
+    if (metadata != null) {
+      compactField(metadata, Metadata.Field.DATA.getIndex());
+    }
+    return page;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void compactField(PersistentBase record, int index) {
+    Object map = record.get(index);
+    if (!(map instanceof Map)) {
+      return;
+    }
+    boolean dirty = record.isDirty(index);
+    record.put(index, CompactUtf8Map.compact((Map<CharSequence, CharSequence>) map));
+    if (dirty) {
+      record.setDirty(index);
+    }
+  }
+
   public static String pPrint(Employee emp) {
     StringBuilder sb = new StringBuilder();
     if (emp != null) {
@@ -17,14 +17,24 @@
  */
 package org.apache.gora.utils;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+
 import org.apache.gora.accumulo.store.AccumuloStore;
+import org.apache.gora.avro.store.AvroStore;
+import org.apache.gora.avro.store.DataFileAvroStore;
 import org.apache.gora.cassandra.store.CassandraStore;
+import org.apache.gora.memory.store.MemStore;
 import org.apache.gora.mongodb.store.MongoStore;
 import org.apache.gora.persistency.Persistent;
 import org.apache.gora.query.Query;
 import org.apache.gora.query.Result;
+import org.apache.gora.shard.ShardedDataStore;
 import org.apache.gora.store.DataStore;
 import org.apache.gora.store.DataStoreFactory;
+import org.apache.gora.trace.Tracing;
+import org.apache.gora.util.StringUtils;
 import org.apache.gora.util.GoraException;
 import org.apache.hadoop.conf.Configuration;
 
@@ -33,21 +43,56 @@ import org.apache.hadoop.conf.Configuration;
  */
 public class GoraUtils {
 
+  /**
+   * Supported data stores. MEMORY, AVRO_FILE and DATA_FILE run in process:
+   * a MemStore, whose records live and die with the store instance, and
+   * the Avro file stores, writing a binary Avro stream (AvroStore) or an
+   * Avro container file (DataFileAvroStore). A file store reads its input
+   * file and rewrites its output file, by default the same local file,
+   * see {@link LocalFileDataStore}.
+   * SHARDED spreads the keys over the stores listed in gora.shards, see
+   * {@link ShardedDataStore#create}.
+   */
   public static enum Type {
     CASSANDRA("cassandra"), HBASE("hbase"), DYNAMODB("dynamodb"), ACCUMULO(
-        "accumulo"), MONGO("mongo");
+        "accumulo"), MONGO("mongo"), MEMORY("memory"), AVRO_FILE("avro"),
+    DATA_FILE("datafile"), SHARDED("sharded");
     private String value;
 
     Type(String val) {
       this.value = val;
     }
 
+    /**
+     * Looks a type up by its name or its value, ignoring case, so both
+     * "avro_file" and "avro" give AVRO_FILE.
+     * @param name
+     * @return
+     */
+    public static Type fromString(String name) {
+      for (Type type : values()) {
+        if (type.name().equalsIgnoreCase(name) || type.value.equalsIgnoreCase(name)) {
+          return type;
+        }
+      }
+      throw new IllegalArgumentException("Datastore " + name
+          + " not supported, use one of " + Arrays.toString(values()));
+    }
+
     @Override
     public String toString() {
       return this.value;
     }
   }
 
+  /**
+   * Directory of the file stores whose input and output paths are not set in
+   * gora.properties; defaults to gora-data in the working directory.
+   */
+  public static final String LOCAL_DATA_DIR_KEY = "gora.local.data.dir";
+
+  private static final String DEFAULT_LOCAL_DATA_DIR = "gora-data";
+
   private static final Configuration conf = new Configuration();
 
   /**
@@ -72,16 +117,8 @@ public class GoraUtils {
    * @param datastoreType
    * @return
    */
-  private static Class<? extends DataStore> getSpecificDataStore(
-     String datastoreType) {
-	 Type nType = null;
-	 try{
-	   nType = Type.valueOf(datastoreType.toUpperCase());  
-	 } catch (IllegalArgumentException e) {
-       System.err.println("Datastore not supported.");
-       e.printStackTrace();
-	 }
-    return getSpecificDataStore(nType);
+  private static Class<?> getSpecificDataStore(String datastoreType) {
+    return getSpecificDataStore(Type.fromString(datastoreType));
   }
 
   /**
@@ -90,43 +127,220 @@ public class GoraUtils {
    * @param pDataStoreName
    * @return
    */
-  private static Class<? extends DataStore> getSpecificDataStore(
-      Type datastoreType) {
+  private static Class<?> getSpecificDataStore(Type datastoreType) {
     switch (datastoreType) {
-    // case DYNAMODB:
-    // return DynamoDBStore.class;
       case CASSANDRA:
         return CassandraStore.class;
       case HBASE:
+        return loadDataStore(datastoreType, "org.apache.gora.hbase.store.HBaseStore");
+      case DYNAMODB:
+        return loadDataStore(datastoreType, "org.apache.gora.dynamodb.store.DynamoDBStore");
       case ACCUMULO:
         return AccumuloStore.class;
       case MONGO:
         return MongoStore.class;
+      case MEMORY:
+        return MemStore.class;
+      case AVRO_FILE:
+        return AvroStore.class;
+      case DATA_FILE:
+        return DataFileAvroStore.class;
       default:
         throw new IllegalStateException("DataStore not supported yet.");
     }
   }
 
+  /**
+   * Loads a store class by name, for the modules not on the build path.
+   * @param datastoreType
+   * @param className
+   * @return
+   */
+  private static Class<?> loadDataStore(Type datastoreType, String className) {
+    try {
+      return Class.forName(className).asSubclass(DataStore.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("DataStore " + datastoreType + " needs "
+          + className + " on the classpath", e);
+    }
+  }
+
+  /**
+   * The store class of a type, typed for the key and persistent classes it
+   * is created with.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K, T extends Persistent> Class<DataStore<K, T>> getSpecificDataStore(
+      Type datastoreType, Class<K> keyClass, Class<T> persistentClass) {
+    return (Class<DataStore<K, T>>) getSpecificDataStore(datastoreType);
+  }
+
   public static <K, T extends Persistent> DataStore<K, T> createSpecificDataStore(
       String dsType, Class<K> pKeyClass, Class<T> pValueClass)
       throws GoraException {
-    Class<? extends DataStore> dataStoreClass = getSpecificDataStore(dsType);
-    return createDataStore(pKeyClass, pValueClass, dataStoreClass);
+    return createSpecificDataStore(Type.fromString(dsType), pKeyClass, pValueClass);
   }
 
   public static <K, T extends Persistent> DataStore<K, T> createSpecificDataStore(
       Type dsType, Class<K> pKeyClass, Class<T> pValueClass)
       throws GoraException {
+    if (dsType == Type.SHARDED) {
+      return ShardedDataStore.create(pKeyClass, pValueClass,
+          DataStoreFactory.createProps());
+    }
     // Getting the specific data store
-    Class<? extends DataStore> dataStoreClass = getSpecificDataStore(dsType);
+    Class<DataStore<K, T>> dataStoreClass = getSpecificDataStore(dsType,
+        pKeyClass, pValueClass);
+    if (dsType == Type.AVRO_FILE || dsType == Type.DATA_FILE) {
+      return createLocalFileDataStore(dataStoreClass, pKeyClass, pValueClass,
+          DataStoreFactory.createProps());
+    }
     return createDataStore(pKeyClass, pValueClass, dataStoreClass);
   }
 
-  public static <K, T extends Persistent> Result<K, T> queryRequests(
+  /**
+   * Gets a specific datastore configured with the given properties instead
+   * of gora.properties, e.g. one shard of a sharded store.
+   * @param dsType
+   * @param pKeyClass
+   * @param pValueClass
+   * @param properties
+   * @return
+   * @throws GoraException
+   */
+  public static <K, T extends Persistent> DataStore<K, T> createSpecificDataStore(
+      Type dsType, Class<K> pKeyClass, Class<T> pValueClass,
+      Properties properties) throws GoraException {
+    if (dsType == Type.SHARDED) {
+      return ShardedDataStore.create(pKeyClass, pValueClass, properties);
+    }
+    Class<DataStore<K, T>> dataStoreClass = getSpecificDataStore(dsType,
+        pKeyClass, pValueClass);
+    if (dsType == Type.AVRO_FILE || dsType == Type.DATA_FILE) {
+      return createLocalFileDataStore(dataStoreClass, pKeyClass, pValueClass,
+          properties);
+    }
+    return DataStoreFactory.createDataStore(dataStoreClass, pKeyClass,
+        pValueClass, new Configuration(), properties);
+  }
+
+  /**
+   * Creates a store described by the properties under a prefix: its type
+   * in &lt;prefix&gt;type, and &lt;prefix&gt;&lt;property&gt; overriding
+   * &lt;property&gt;, e.g. gora.shard.east.gora.cassandrastore.servers for
+   * the servers of the east shard.
+   * @param prefix ending with a dot
+   * @param pKeyClass
+   * @param pValueClass
+   * @param properties
+   * @return
+   * @throws GoraException
+   */
+  public static <K, T extends Persistent> DataStore<K, T> createPrefixedDataStore(
+      String prefix, Class<K> pKeyClass, Class<T> pValueClass,
+      Properties properties) throws GoraException {
+    Properties overridden = new Properties();
+    overridden.putAll(properties);
+    for (String key : properties.stringPropertyNames()) {
+      if (key.startsWith(prefix)) {
+        overridden.setProperty(key.substring(prefix.length()),
+            properties.getProperty(key));
+      }
+    }
+    String type = overridden.getProperty("type");
+    if (type == null) {
+      throw new IllegalArgumentException("No " + prefix + "type");
+    }
+    return createSpecificDataStore(Type.fromString(type), pKeyClass,
+        pValueClass, overridden);
+  }
+
+  /**
+   * Creates a file store. Unless its paths are set in the properties, it
+   * reads and writes one file per store class and persistent class under the
+   * local data directory and is wrapped in a {@link LocalFileDataStore},
+   * which keeps the records of that file when the first record is put, so
+   * the records written are read back by the next instance.
+   * @param dataStoreClass
+   * @param keyClass
+   * @param persistentClass
+   * @param defaults
+   * @return
+   * @throws GoraException
+   */
+  private static <K, T extends Persistent> DataStore<K, T> createLocalFileDataStore(
+      Class<DataStore<K, T>> dataStoreClass, Class<K> keyClass,
+      Class<T> persistentClass, Properties defaults) throws GoraException {
+    Properties properties = new Properties();
+    properties.putAll(defaults);
+    String storeName = StringUtils.getClassname(dataStoreClass).toLowerCase();
+    File file = new File(properties.getProperty(LOCAL_DATA_DIR_KEY,
+        DEFAULT_LOCAL_DATA_DIR), storeName + "-"
+        + persistentClass.getSimpleName() + ".avro");
+    boolean local = true;
+    for (String key : new String[] { DataStoreFactory.INPUT_PATH,
+        DataStoreFactory.OUTPUT_PATH }) {
+      if (isConfigured(properties, dataStoreClass, key)) {
+        local = false;
+      } else {
+        properties.setProperty("gora." + storeName + "." + key, file.getPath());
+      }
+    }
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IllegalStateException("Cannot create " + dir);
+    }
+    DataStore<K, T> store = DataStoreFactory.createDataStore(dataStoreClass,
+        keyClass, persistentClass, new Configuration(), properties);
+    if (!local) {
+      return store;
+    }
+    return new LocalFileDataStore<K, T>(store, file, dataStoreClass, properties);
+  }
+
+  /**
+   * Whether a store property is set, looking it up like
+   * DataStoreFactory.findProperty: for the store class and its superclasses,
+   * then for all data stores.
+   */
+  private static boolean isConfigured(Properties properties, Class<?> storeClass,
+      String key) {
+    for (Class<?> c = storeClass; c != null && DataStore.class.isAssignableFrom(c);
+        c = c.getSuperclass()) {
+      if (properties.getProperty("gora." + StringUtils.getClassname(c).toLowerCase()
+          + "." + key) != null) {
+        return true;
+      }
+    }
+    return properties.getProperty("gora.datastore." + key) != null;
+  }
+
+  /**
+   * Creates a query over the keys between pStartKey and pEndKey, both
+   * inclusive.
+   * @param pDataStore
+   * @param pStartKey
+   * @param pEndKey
+   * @return
+   */
+  public static <K, T extends Persistent> Query<K, T> newRangeQuery(
       DataStore<K, T> pDataStore, K pStartKey, K pEndKey) {
     Query<K, T> query = pDataStore.newQuery();
     query.setStartKey(pStartKey);
     query.setEndKey(pEndKey);
-    return pDataStore.execute(query);
+    return query;
+  }
+
+  /**
+   * Runs a range query, traced like the calls of the bindings.
+   * @param pDataStore
+   * @param pStartKey
+   * @param pEndKey
+   * @return
+   */
+  public static <K, T extends Persistent> Result<K, T> queryRequests(
+      DataStore<K, T> pDataStore, K pStartKey, K pEndKey) {
+    return Tracing.trace(pDataStore).execute(
+        newRangeQuery(pDataStore, pStartKey, pEndKey));
   }
 }
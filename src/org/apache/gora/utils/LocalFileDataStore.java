@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.store.DataStoreFactory;
+import org.apache.gora.util.GoraException;
+import org.apache.gora.util.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * File store reading and writing the same local file. A file store rewrites
+ * its output file from the first record put, so before that record the
+ * records of the file are copied from a snapshot of it and put first: a new
+ * instance adds to the records of the last one instead of replacing them.
+ * The snapshot, file.prev, is kept until a flush or close has written the
+ * new file; a store opened while it is still there, after a crash, restores
+ * the records from it rather than from the file being rewritten.
+ *
+ * @param <K>
+ * @param <T>
+ */
+public class LocalFileDataStore<K, T extends Persistent> extends
+    ForwardingDataStore<K, T> {
+
+  private final File file;
+  private final Class<DataStore<K, T>> storeClass;
+  private final Properties properties;
+  private final File snapshot;
+  private volatile boolean opened;
+  private volatile boolean snapshotted;
+
+  /**
+   * @param store the file store, reading and writing the file
+   * @param file
+   * @param storeClass the class of the store, to read the snapshot with
+   * @param properties the properties of the store
+   */
+  public LocalFileDataStore(DataStore<K, T> store, File file,
+      Class<DataStore<K, T>> storeClass, Properties properties) {
+    super(store);
+    this.file = file;
+    this.storeClass = storeClass;
+    this.properties = properties;
+    this.snapshot = new File(file.getPath() + ".prev");
+  }
+
+  @Override
+  public void put(K key, T obj) {
+    if (!opened) {
+      open();
+    }
+    delegate.put(key, obj);
+  }
+
+  /**
+   * Copies the records of the file, read from a snapshot as the output
+   * replaces the file.
+   */
+  private synchronized void open() {
+    if (opened) {
+      return;
+    }
+    try {
+      if (!snapshot.exists() && file.length() > 0) {
+        File copying = new File(snapshot.getPath() + ".tmp");
+        Files.copy(file.toPath(), copying.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        Files.move(copying.toPath(), snapshot.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+      }
+      if (snapshot.exists()) {
+        copy(snapshot);
+        snapshotted = true;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot read the records of " + file, e);
+    }
+    opened = true;
+  }
+
+  @Override
+  public void flush() {
+    delegate.flush();
+    release();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+    release();
+  }
+
+  /**
+   * Drops the snapshot once the records copied from it are in the file.
+   */
+  private synchronized void release() {
+    if (snapshotted) {
+      snapshot.delete();
+      snapshotted = false;
+    }
+  }
+
+  private void copy(File snapshot) throws GoraException {
+    Properties overridden = new Properties();
+    overridden.putAll(properties);
+    overridden.setProperty("gora." + StringUtils.getClassname(storeClass).toLowerCase()
+        + "." + DataStoreFactory.INPUT_PATH, snapshot.getPath());
+    DataStore<K, T> previous = DataStoreFactory.createDataStore(storeClass,
+        delegate.getKeyClass(), delegate.getPersistentClass(),
+        new Configuration(), overridden);
+    try {
+      Result<K, T> result = previous.execute(previous.newQuery());
+      try {
+        while (result.next()) {
+          delegate.put(result.getKey(), result.get());
+        }
+      } finally {
+        result.close();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot read the records of " + file, e);
+    } finally {
+      previous.close();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+
+/**
+ * Avro binary size of persistent fields, used to report how much data a
+ * write sends or skips and by the byte limits of the throttle and of the
+ * write buffer. Nothing is serialized, but the sizes follow the encoding:
+ * ints, longs and lengths count their zig-zag varint, strings their UTF-8
+ * bytes, and arrays and maps one block and its end marker.
+ */
+public class PersistentSizes {
+
+  /**
+   * Estimates the encoded size of one field of a record.
+   * @param record
+   * @param field
+   * @return
+   */
+  public static long fieldSize(IndexedRecord record, Schema.Field field) {
+    return sizeOf(field.schema(), record.get(field.pos()));
+  }
+
+  /**
+   * Estimates the encoded size of a value of the given schema.
+   * @param schema
+   * @param value
+   * @return
+   */
+  public static long sizeOf(Schema schema, Object value) {
+    switch (schema.getType()) {
+      case NULL:
+        return 0;
+      case BOOLEAN:
+        return 1;
+      case ENUM:
+        return value == null ? 1 : varintSize(schema.getEnumOrdinal(value.toString()));
+      case INT:
+      case LONG:
+        return value == null ? 1 : varintSize(((Number) value).longValue());
+      case FLOAT:
+        return 4;
+      case DOUBLE:
+        return 8;
+      case FIXED:
+        return schema.getFixedSize();
+      case BYTES:
+        return value == null ? 0 : lengthSize(((ByteBuffer) value).remaining());
+      case STRING:
+        return value == null ? 0 : lengthSize(stringLength(value));
+      case UNION:
+        if (value == null) {
+          return 1;
+        }
+        int branch = GenericData.get().resolveUnion(schema, value);
+        return varintSize(branch) + sizeOf(schema.getTypes().get(branch), value);
+      case ARRAY:
+        return value == null ? 0 : arraySize(schema.getElementType(),
+            (Collection<?>) value);
+      case MAP:
+        return value == null ? 0 : mapSize(schema.getValueType(),
+            (Map<?, ?>) value);
+      case RECORD:
+        if (value == null) {
+          return 0;
+        }
+        long size = 0;
+        for (Schema.Field field : schema.getFields()) {
+          size += fieldSize((IndexedRecord) value, field);
+        }
+        return size;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Size of a zig-zag varint, as Avro writes ints and longs.
+   * @param value
+   * @return 1 to 10
+   */
+  static int varintSize(long value) {
+    long zigzag = (value << 1) ^ (value >> 63);
+    int size = 1;
+    while ((zigzag & ~0x7FL) != 0) {
+      zigzag >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static long lengthSize(long length) {
+    return varintSize(length) + length;
+  }
+
+  private static long stringLength(Object value) {
+    if (value instanceof Utf8) {
+      return ((Utf8) value).getByteLength();
+    }
+    if (value instanceof CompactUtf8Map.Utf8View) {
+      return ((CompactUtf8Map.Utf8View) value).getByteLength();
+    }
+    return utf8Length((CharSequence) value);
+  }
+
+  private static long utf8Length(CharSequence chars) {
+    long length = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < chars.length()
+          && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static long arraySize(Schema elementType, Collection<?> values) {
+    long size = blockSize(values.size());
+    for (Object element : values) {
+      size += sizeOf(elementType, element);
+    }
+    return size;
+  }
+
+  private static long mapSize(Schema valueType, Map<?, ?> values) {
+    long size = blockSize(values.size());
+    for (Map.Entry<?, ?> entry : values.entrySet()) {
+      size += lengthSize(stringLength(entry.getKey()))
+          + sizeOf(valueType, entry.getValue());
+    }
+    return size;
+  }
+
+  /** A block count, unless empty, and the end marker */
+  private static long blockSize(int count) {
+    return count == 0 ? 1 : varintSize(count) + 1;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.Random;
+
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+
+/**
+ * Generates employees organised as a tree: employee 0 has no boss and the
+ * boss of employee i is employee (i - 1) / fanout. The boss field holds the
+ * boss key, or with embedded levels the boss record itself, whose own boss
+ * is embedded in turn until the levels run out and a key is used. A share
+ * of the employees link to a home page made by a {@link WebPageGenerator}.
+ */
+public class EmployeeGenerator extends RecordGenerator<Employee> {
+
+  private static final String[] FIRST_NAMES = { "Ana", "Bruno", "Carla",
+      "David", "Elena", "Farid", "Grace", "Hiro", "Ines", "Jonas", "Kemal",
+      "Lucia", "Mateo", "Nadia", "Omar", "Priya", "Renato", "Sofia", "Tomas",
+      "Yuki" };
+  private static final String[] LAST_NAMES = { "Almeida", "Becker", "Chen",
+      "Dubois", "Evans", "Fernandez", "Garcia", "Hansen", "Ivanov", "Jensen",
+      "Kim", "Lewis", "Marconi", "Nakamura", "Okafor", "Perez", "Rossi",
+      "Silva", "Tanaka", "Weber" };
+  private static final long DAY_MILLIS = 24L * 3600 * 1000;
+  private static final long BORN_FROM = -20 * 365 * DAY_MILLIS;
+
+  private final WebPageGenerator pages;
+  private int bossFanout = 10;
+  private int embeddedBossLevels = 0;
+  private double webpageRatio = 0.1;
+
+  public EmployeeGenerator() {
+    this(new WebPageGenerator());
+    pages.setContentMedian(4 * 1024);
+    pages.setOutlinksMean(5);
+  }
+
+  /**
+   * @param pages generator of the linked home pages
+   */
+  public EmployeeGenerator(WebPageGenerator pages) {
+    this.pages = pages;
+  }
+
+  /**
+   * Direct reports per boss; 0 for employees without boss.
+   * @param bossFanout
+   */
+  public void setBossFanout(int bossFanout) {
+    this.bossFanout = bossFanout;
+  }
+
+  /**
+   * Levels of the boss chain stored as nested records instead of keys.
+   * @param embeddedBossLevels
+   */
+  public void setEmbeddedBossLevels(int embeddedBossLevels) {
+    this.embeddedBossLevels = embeddedBossLevels;
+  }
+
+  /**
+   * Share of the employees with a home page, between 0 and 1.
+   * @param webpageRatio
+   */
+  public void setWebpageRatio(double webpageRatio) {
+    this.webpageRatio = webpageRatio;
+  }
+
+  @Override
+  public Class<Employee> getPersistentClass() {
+    return Employee.class;
+  }
+
+  @Override
+  public Employee generate(long id, Random random) {
+    Employee employee = generate(id, embeddedBossLevels, random);
+    if (random.nextDouble() < webpageRatio) {
+      employee.setWebpage(pages.generate(id, random));
+    }
+    return employee;
+  }
+
+  private Employee generate(long id, int bossLevels, Random random) {
+    Employee employee = Employee.newBuilder().build();
+    employee.setSsn(new Utf8(key(id)));
+    // names and birth dates are derived from the id so that an embedded
+    // boss matches the boss record stored under its own key
+    Random person = new Random(id);
+    employee.setName(new Utf8(FIRST_NAMES[person.nextInt(FIRST_NAMES.length)]
+        + " " + LAST_NAMES[person.nextInt(LAST_NAMES.length)]));
+    employee.setDateOfBirth(BORN_FROM - person.nextInt(45 * 365) * DAY_MILLIS);
+    employee.setSalary(20000 + (int) (Math.exp(person.nextGaussian() * 0.5) * 30000));
+    if (id > 0 && bossFanout > 0) {
+      long boss = (id - 1) / bossFanout;
+      if (bossLevels > 0) {
+        employee.setBoss(generate(boss, bossLevels - 1, random));
+      } else {
+        employee.setBoss(new Utf8(key(boss)));
+      }
+    }
+    return employee;
+  }
+
+  /**
+   * A raise of up to 10%.
+   */
+  @Override
+  public void update(Employee employee, Random random) {
+    int salary = employee.getSalary() == null ? 0 : employee.getSalary();
+    employee.setSalary(salary + (int) (salary * random.nextDouble() * 0.1));
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.Random;
+
+import org.apache.gora.persistency.Persistent;
+
+/**
+ * Builds synthetic records for the workload driver. Implementations keep no
+ * mutable state, so one generator can be shared by all driver threads, each
+ * passing its own Random.
+ *
+ * @param <T>
+ */
+public abstract class RecordGenerator<T extends Persistent> {
+
+  /**
+   * Key of the record with the given id. Keys are zero padded so that their
+   * order is the order of the ids and a range of ids is a key range scan.
+   * @param id
+   * @return
+   */
+  public static String key(long id) {
+    return String.format("%012d", id);
+  }
+
+  public abstract Class<T> getPersistentClass();
+
+  /**
+   * Creates the record stored under key(id), with all its fields dirty.
+   * @param id
+   * @param random
+   * @return
+   */
+  public abstract T generate(long id, Random random);
+
+  /**
+   * Changes a few fields of a record as an application update would.
+   * @param record
+   * @param random
+   */
+  public abstract void update(T record, Random random);
+}
@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Metadata;
+import org.apache.gora.examples.generated.WebPage;
+
+/**
+ * Generates crawled pages. Content sizes follow a log-normal distribution,
+ * as measured sizes of web pages do, and the content is HTML-like text cut
+ * from a fixed corpus so that it compresses like real markup. The number of
+ * outlinks is geometric around a mean, and every page carries the usual
+ * response headers.
+ */
+public class WebPageGenerator extends RecordGenerator<WebPage> {
+
+  private static final String[] WORDS = { "the", "of", "and", "to", "in",
+      "data", "store", "gora", "page", "query", "result", "key", "value",
+      "schema", "avro", "field", "record", "table", "column", "family", "row",
+      "index", "scan", "cluster", "node", "replica", "partition", "crawl",
+      "link", "anchor", "content", "server", "request", "response", "cache" };
+  private static final String[] TAGS = { "p", "div", "span", "li", "a", "td" };
+  private static final String[] SERVERS = { "Apache/2.4.7 (Ubuntu)",
+      "nginx/1.6.2", "Microsoft-IIS/8.5", "lighttpd/1.4.35" };
+  private static final int CORPUS_SIZE = 256 * 1024;
+  private static final long YEAR_MILLIS = 365L * 24 * 3600 * 1000;
+
+  private final byte[] corpus;
+  private final String[] dates;
+  private int contentMedian = 16 * 1024;
+  private double contentSigma = 1.0;
+  private int maxContent = 1024 * 1024;
+  private int outlinksMean = 20;
+  private int hosts = 1000;
+
+  public WebPageGenerator() {
+    Random random = new Random(0);
+    corpus = buildCorpus(random);
+    SimpleDateFormat format = new SimpleDateFormat(
+        "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    long now = System.currentTimeMillis();
+    dates = new String[64];
+    for (int i = 0; i < dates.length; i++) {
+      dates[i] = format.format(new Date(now - (long) (random.nextDouble() * YEAR_MILLIS)));
+    }
+  }
+
+  /**
+   * Median content size; half of the pages are larger.
+   * @param contentMedian bytes
+   */
+  public void setContentMedian(int contentMedian) {
+    this.contentMedian = contentMedian;
+  }
+
+  /**
+   * Spread of the log-normal content size distribution. With the default of
+   * 1.0 about 1 page in 40 is more than 7 times the median.
+   * @param contentSigma
+   */
+  public void setContentSigma(double contentSigma) {
+    this.contentSigma = contentSigma;
+  }
+
+  public void setMaxContent(int maxContent) {
+    this.maxContent = maxContent;
+  }
+
+  public void setOutlinksMean(int outlinksMean) {
+    this.outlinksMean = outlinksMean;
+  }
+
+  /**
+   * Number of distinct hosts urls and outlinks point to.
+   * @param hosts
+   */
+  public void setHosts(int hosts) {
+    this.hosts = hosts;
+  }
+
+  @Override
+  public Class<WebPage> getPersistentClass() {
+    return WebPage.class;
+  }
+
+  @Override
+  public WebPage generate(long id, Random random) {
+    WebPage page = WebPage.newBuilder().build();
+    page.setUrl(new Utf8(url(id % hosts, id)));
+    int size = contentSize(random);
+    page.setContent(content(size, random));
+    List<CharSequence> parsed = new ArrayList<CharSequence>();
+    for (int i = Math.min(20, size / 1024); i >= 0; i--) {
+      parsed.add(new Utf8(WORDS[random.nextInt(WORDS.length)]));
+    }
+    page.setParsedContent(parsed);
+    Map<CharSequence, CharSequence> outlinks = new HashMap<CharSequence, CharSequence>();
+    int links = outlinkCount(random);
+    for (int i = 0; i < links; i++) {
+      outlinks.put(new Utf8(url(random.nextInt(hosts), random.nextInt(Integer.MAX_VALUE))),
+          new Utf8(WORDS[random.nextInt(WORDS.length)] + " "
+              + WORDS[random.nextInt(WORDS.length)]));
+    }
+    page.setOutlinks(outlinks);
+    Map<CharSequence, CharSequence> headers = new HashMap<CharSequence, CharSequence>();
+    headers.put(new Utf8("Content-Type"), new Utf8("text/html; charset=utf-8"));
+    headers.put(new Utf8("Content-Length"), new Utf8(Integer.toString(size)));
+    headers.put(new Utf8("Server"), new Utf8(SERVERS[random.nextInt(SERVERS.length)]));
+    headers.put(new Utf8("Last-Modified"), new Utf8(dates[random.nextInt(dates.length)]));
+    headers.put(new Utf8("Cache-Control"), new Utf8("max-age=" + 60 * random.nextInt(1440)));
+    page.setHeaders(headers);
+    Metadata metadata = Metadata.newBuilder().build();
+    metadata.setVersion(1);
+    Map<CharSequence, CharSequence> data = new HashMap<CharSequence, CharSequence>();
+    data.put(new Utf8("lang"), new Utf8("en"));
+    data.put(new Utf8("fetchTime"), new Utf8(dates[random.nextInt(dates.length)]));
+    metadata.setData(data);
+    page.setMetadata(metadata);
+    return page;
+  }
+
+  /**
+   * A recrawl: new content and fetch time, one more metadata version.
+   */
+  @Override
+  public void update(WebPage page, Random random) {
+    int size = contentSize(random);
+    page.setContent(content(size, random));
+    Metadata metadata = page.getMetadata();
+    if (metadata == null) {
+      metadata = Metadata.newBuilder().build();
+    }
+    metadata.setVersion(metadata.getVersion() + 1);
+    metadata.getData().put(new Utf8("fetchTime"),
+        new Utf8(dates[random.nextInt(dates.length)]));
+    page.setMetadata(metadata);
+  }
+
+  private static String url(long host, long page) {
+    return "http://www" + host + ".example.com/page/" + page + ".html";
+  }
+
+  private int contentSize(Random random) {
+    double size = contentMedian * Math.exp(contentSigma * random.nextGaussian());
+    return (int) Math.max(1, Math.min(maxContent, size));
+  }
+
+  private int outlinkCount(Random random) {
+    if (outlinksMean <= 0) {
+      return 0;
+    }
+    double p = 1.0 / (outlinksMean + 1);
+    return (int) Math.min(20 * outlinksMean,
+        Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - p)));
+  }
+
+  private ByteBuffer content(int size, Random random) {
+    byte[] bytes = new byte[size];
+    int offset = 0;
+    while (offset < size) {
+      int length = Math.min(size - offset, 512 + random.nextInt(4096));
+      System.arraycopy(corpus, random.nextInt(corpus.length - length + 1),
+          bytes, offset, length);
+      offset += length;
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static byte[] buildCorpus(Random random) {
+    StringBuilder html = new StringBuilder(CORPUS_SIZE + 256);
+    while (html.length() < CORPUS_SIZE) {
+      String tag = TAGS[random.nextInt(TAGS.length)];
+      html.append('<').append(tag).append(" class=\"c")
+          .append(random.nextInt(50)).append("\">");
+      for (int i = 5 + random.nextInt(30); i > 0; i--) {
+        html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      html.append("</").append(tag).append(">\n");
+    }
+    byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] corpus = new byte[CORPUS_SIZE];
+    System.arraycopy(bytes, 0, corpus, 0, CORPUS_SIZE);
+    return corpus;
+  }
+}
@@ -0,0 +1,499 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.jython.binding.RecordMutator;
+import org.apache.gora.jython.binding.SimpleBinding;
+import org.apache.gora.memory.store.MemStore;
+import org.apache.gora.metrics.LatencyHistogram;
+import org.apache.gora.persistency.Persistent;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+/**
+ * YCSB style load driver. The load phase inserts the records 0 to
+ * recordCount - 1; the run phase issues a mix of reads, updates, range scans
+ * and inserts of new records from several threads, through the same
+ * SimpleBinding calls the scripting bindings make. Keys are picked with a
+ * scrambled Zipfian or a uniform distribution over the loaded records.
+ *
+ * With a target rate, each thread paces its operations on a fixed schedule
+ * and latencies are measured from the scheduled start, so a stalled store
+ * shows up in the percentiles instead of only lowering the throughput.
+ * Writes are flushed every flushInterval writes per thread; flushes are
+ * timed apart from the operations.
+ *
+ * @param <T>
+ */
+public class WorkloadDriver<T extends Persistent> {
+
+  public static enum Operation {
+    READ, UPDATE, SCAN, INSERT, FLUSH
+  }
+
+  private final SimpleBinding<String, T> binding;
+  private final RecordGenerator<T> generator;
+  private final AtomicLong nextInsertId = new AtomicLong();
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long recordCount = 100000;
+  private long operationCount = 100000;
+  private long maxMillis = 0;
+  private double readProportion = 0.95;
+  private double updateProportion = 0.05;
+  private double scanProportion = 0;
+  private double insertProportion = 0;
+  private int maxScanLength = 100;
+  private boolean zipfian = true;
+  private double targetOpsPerSecond = 0;
+  private int flushInterval = 100;
+  private long seed = System.currentTimeMillis();
+  private long reportIntervalMillis = 10000;
+  private boolean serialized;
+
+  /**
+   * Access is serialized when the store is a MemStore, which is backed by an
+   * unsynchronized TreeMap.
+   * @param binding
+   * @param generator
+   */
+  public WorkloadDriver(SimpleBinding<String, T> binding,
+      RecordGenerator<T> generator) {
+    this.binding = binding;
+    this.generator = generator;
+    this.serialized = ForwardingDataStore.unwrap(binding.getDatastore()) instanceof MemStore;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Records inserted by the load phase and picked from by the run phase.
+   * @param recordCount
+   */
+  public void setRecordCount(long recordCount) {
+    this.recordCount = recordCount;
+  }
+
+  /**
+   * Operations of the run phase, over all threads; 0 to run for maxMillis.
+   * @param operationCount
+   */
+  public void setOperationCount(long operationCount) {
+    this.operationCount = operationCount;
+  }
+
+  /**
+   * Time limit of the run phase; 0 for none.
+   * @param maxMillis
+   */
+  public void setMaxMillis(long maxMillis) {
+    this.maxMillis = maxMillis;
+  }
+
+  /**
+   * Relative weights of the operations in the run phase.
+   * @param read
+   * @param update
+   * @param scan
+   * @param insert
+   */
+  public void setProportions(double read, double update, double scan,
+      double insert) {
+    double sum = read + update + scan + insert;
+    if (sum <= 0) {
+      throw new IllegalArgumentException("No operation to run");
+    }
+    this.readProportion = read / sum;
+    this.updateProportion = update / sum;
+    this.scanProportion = scan / sum;
+    this.insertProportion = insert / sum;
+  }
+
+  /**
+   * Scans read between 1 and maxScanLength records, uniformly.
+   * @param maxScanLength
+   */
+  public void setMaxScanLength(int maxScanLength) {
+    this.maxScanLength = maxScanLength;
+  }
+
+  /**
+   * Key distribution: zipfian (scrambled, theta 0.99) or uniform.
+   * @param distribution
+   */
+  public void setDistribution(String distribution) {
+    if ("zipfian".equals(distribution)) {
+      zipfian = true;
+    } else if ("uniform".equals(distribution)) {
+      zipfian = false;
+    } else {
+      throw new IllegalArgumentException("Unknown distribution " + distribution);
+    }
+  }
+
+  /**
+   * Operations per second over all threads; 0 for as fast as possible.
+   * @param targetOpsPerSecond
+   */
+  public void setTargetOpsPerSecond(double targetOpsPerSecond) {
+    this.targetOpsPerSecond = targetOpsPerSecond;
+  }
+
+  /**
+   * Writes per thread between flushes; 0 to flush only at the end.
+   * @param flushInterval
+   */
+  public void setFlushInterval(int flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public void setReportIntervalMillis(long reportIntervalMillis) {
+    this.reportIntervalMillis = reportIntervalMillis;
+  }
+
+  /**
+   * Runs every store call under a single lock, for stores that are not
+   * thread safe.
+   * @param serialized
+   */
+  public void setSerialized(boolean serialized) {
+    this.serialized = serialized;
+  }
+
+  /**
+   * Inserts the records 0 to recordCount - 1.
+   * @return
+   * @throws InterruptedException
+   */
+  public WorkloadReport load() throws InterruptedException {
+    nextInsertId.set(recordCount);
+    return execute("load", recordCount, true);
+  }
+
+  /**
+   * Runs the operation mix against the records of a previous load phase,
+   * possibly made by another process.
+   * @return
+   * @throws InterruptedException
+   */
+  public WorkloadReport run() throws InterruptedException {
+    if (nextInsertId.get() < recordCount) {
+      nextInsertId.set(recordCount);
+    }
+    if (operationCount <= 0 && maxMillis <= 0) {
+      throw new IllegalStateException("Neither an operation count nor a time limit");
+    }
+    return execute("run", operationCount, false);
+  }
+
+  private WorkloadReport execute(final String phase, long operations,
+      boolean load) throws InterruptedException {
+    final Map<Operation, LatencyHistogram> latencies =
+        new EnumMap<Operation, LatencyHistogram>(Operation.class);
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new LatencyHistogram());
+    }
+    AtomicLongArray errors = new AtomicLongArray(Operation.values().length);
+    final long start = System.currentTimeMillis();
+    ZipfianGenerator keys = zipfian && !load ? new ZipfianGenerator(recordCount, true) : null;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        long done = 0;
+        for (LatencyHistogram latency : latencies.values()) {
+          done += latency.getCount();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println(String.format("%s: %d operations in %.0fs (%.0f ops/s)",
+            phase, done, elapsed / 1000.0, done * 1000.0 / Math.max(1, elapsed)));
+      }
+    }, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < threads; i++) {
+        long share = operations / threads + (i < operations % threads ? 1 : 0);
+        futures.add(pool.submit(new Worker(i, share, load, keys, latencies, errors)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Workload thread failed", e.getCause());
+    } finally {
+      reporter.shutdownNow();
+      pool.shutdownNow();
+    }
+    Map<Operation, Long> errorCounts = new EnumMap<Operation, Long>(Operation.class);
+    for (Operation operation : Operation.values()) {
+      errorCounts.put(operation, errors.get(operation.ordinal()));
+    }
+    return new WorkloadReport(phase, System.currentTimeMillis() - start,
+        latencies, errorCounts);
+  }
+
+  private final class Worker implements Runnable, RecordMutator<T> {
+    private final int index;
+    private final long operations;
+    private final boolean load;
+    private final ZipfianGenerator keys;
+    private final Map<Operation, LatencyHistogram> latencies;
+    private final AtomicLongArray errors;
+    private final Random random;
+    private long writes;
+
+    Worker(int index, long operations, boolean load, ZipfianGenerator keys,
+        Map<Operation, LatencyHistogram> latencies, AtomicLongArray errors) {
+      this.index = index;
+      this.operations = operations;
+      this.load = load;
+      this.keys = keys;
+      this.latencies = latencies;
+      this.errors = errors;
+      this.random = new Random(seed + index);
+    }
+
+    @Override
+    public void run() {
+      long intervalNanos = targetOpsPerSecond > 0 ? (long) (threads * 1e9 / targetOpsPerSecond) : 0;
+      long startNanos = System.nanoTime();
+      long deadline = maxMillis > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(maxMillis) : Long.MAX_VALUE;
+      for (long i = 0; (operationCount <= 0 && !load) || i < operations; i++) {
+        long begin = System.nanoTime();
+        if (!load && begin >= deadline) {
+          break;
+        }
+        if (intervalNanos > 0) {
+          long intended = startNanos + i * intervalNanos;
+          while (begin < intended) {
+            LockSupport.parkNanos(intended - begin);
+            begin = System.nanoTime();
+          }
+          begin = intended;
+        }
+        Operation operation = load ? Operation.INSERT : choose();
+        boolean failed = false;
+        try {
+          perform(operation, load ? index + i * threads : -1);
+        } catch (Exception e) {
+          failed = true;
+        }
+        latencies.get(operation).record(System.nanoTime() - begin);
+        if (failed) {
+          errors.incrementAndGet(operation.ordinal());
+        }
+        if ((operation == Operation.UPDATE || operation == Operation.INSERT)
+            && flushInterval > 0 && ++writes % flushInterval == 0) {
+          flush();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+      }
+      flush();
+    }
+
+    private Operation choose() {
+      double p = random.nextDouble();
+      if (p < readProportion) {
+        return Operation.READ;
+      }
+      p -= readProportion;
+      if (p < updateProportion) {
+        return Operation.UPDATE;
+      }
+      p -= updateProportion;
+      if (p < scanProportion) {
+        return Operation.SCAN;
+      }
+      return Operation.INSERT;
+    }
+
+    private long nextKey() {
+      return keys != null ? keys.next(random) : (long) (random.nextDouble() * recordCount);
+    }
+
+    private void perform(Operation operation, long id) throws Exception {
+      if (operation == Operation.INSERT) {
+        if (id < 0) {
+          id = nextInsertId.getAndIncrement();
+        }
+        // generated outside the lock, it is client work
+        T record = generator.generate(id, random);
+        if (serialized) {
+          synchronized (binding) {
+            binding.put(RecordGenerator.key(id), record);
+          }
+        } else {
+          binding.put(RecordGenerator.key(id), record);
+        }
+        return;
+      }
+      if (serialized) {
+        synchronized (binding) {
+          access(operation);
+        }
+      } else {
+        access(operation);
+      }
+    }
+
+    private void access(Operation operation) throws Exception {
+      long id = nextKey();
+      switch (operation) {
+        case READ:
+          binding.get(RecordGenerator.key(id));
+          break;
+        case UPDATE:
+          binding.update(RecordGenerator.key(id), this);
+          break;
+        case SCAN:
+          long end = Math.min(recordCount - 1, id + random.nextInt(maxScanLength));
+          DataStore<String, T> store = binding.getDatastore();
+          Result<String, T> result = GoraUtils.queryRequests(store,
+              RecordGenerator.key(id), RecordGenerator.key(end));
+          try {
+            while (result.next()) {
+              result.get();
+            }
+          } finally {
+            result.close();
+          }
+          break;
+        default:
+          throw new IllegalArgumentException(operation.toString());
+      }
+    }
+
+    @Override
+    public void mutate(T record) {
+      generator.update(record, random);
+    }
+
+    private void flush() {
+      long begin = System.nanoTime();
+      try {
+        if (serialized) {
+          synchronized (binding) {
+            binding.flush();
+          }
+        } else {
+          binding.flush();
+        }
+      } catch (Exception e) {
+        errors.incrementAndGet(Operation.FLUSH.ordinal());
+      }
+      latencies.get(Operation.FLUSH).record(System.nanoTime() - begin);
+    }
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: WorkloadDriver <storeType> <employee|webpage>"
+          + " [-load] [-run] [-records n] [-operations n] [-time seconds] [-threads n]"
+          + " [-read p] [-update p] [-scan p] [-insert p] [-maxscan n]"
+          + " [-distribution zipfian|uniform] [-target ops/s] [-flush n] [-seed n]");
+      System.exit(1);
+    }
+    RecordGenerator generator = "webpage".equals(args[1]) ? new WebPageGenerator()
+        : new EmployeeGenerator();
+    DataStore store = GoraUtils.createSpecificDataStore(args[0], String.class,
+        generator.getPersistentClass());
+    SimpleBinding binding = new SimpleBinding(store);
+    WorkloadDriver driver = new WorkloadDriver(binding, generator);
+    boolean load = false;
+    boolean run = false;
+    double read = 0.95;
+    double update = 0.05;
+    double scan = 0;
+    double insert = 0;
+    for (int i = 2; i < args.length; i++) {
+      if ("-load".equals(args[i])) {
+        load = true;
+      } else if ("-run".equals(args[i])) {
+        run = true;
+      } else if ("-records".equals(args[i])) {
+        driver.setRecordCount(Long.parseLong(args[++i]));
+      } else if ("-operations".equals(args[i])) {
+        driver.setOperationCount(Long.parseLong(args[++i]));
+      } else if ("-time".equals(args[i])) {
+        driver.setMaxMillis(Long.parseLong(args[++i]) * 1000);
+      } else if ("-threads".equals(args[i])) {
+        driver.setThreads(Integer.parseInt(args[++i]));
+      } else if ("-read".equals(args[i])) {
+        read = Double.parseDouble(args[++i]);
+      } else if ("-update".equals(args[i])) {
+        update = Double.parseDouble(args[++i]);
+      } else if ("-scan".equals(args[i])) {
+        scan = Double.parseDouble(args[++i]);
+      } else if ("-insert".equals(args[i])) {
+        insert = Double.parseDouble(args[++i]);
+      } else if ("-maxscan".equals(args[i])) {
+        driver.setMaxScanLength(Integer.parseInt(args[++i]));
+      } else if ("-distribution".equals(args[i])) {
+        driver.setDistribution(args[++i]);
+      } else if ("-target".equals(args[i])) {
+        driver.setTargetOpsPerSecond(Double.parseDouble(args[++i]));
+      } else if ("-flush".equals(args[i])) {
+        driver.setFlushInterval(Integer.parseInt(args[++i]));
+      } else if ("-seed".equals(args[i])) {
+        driver.setSeed(Long.parseLong(args[++i]));
+      }
+    }
+    driver.setProportions(read, update, scan, insert);
+    if (!load && !run) {
+      load = true;
+      run = true;
+    }
+    try {
+      if (load) {
+        System.out.println(driver.load());
+      }
+      if (run) {
+        System.out.println(driver.run());
+      }
+    } finally {
+      // flushes and closes the decorators written through, then the store
+      binding.close();
+    }
+  }
+}
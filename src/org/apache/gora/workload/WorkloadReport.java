@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.Map;
+
+import org.apache.gora.metrics.LatencyHistogram;
+import org.apache.gora.workload.WorkloadDriver.Operation;
+
+/**
+ * Outcome of a workload phase: throughput, and latency percentiles and
+ * errors per operation.
+ */
+public class WorkloadReport {
+
+  private final String phase;
+  private final long elapsedMillis;
+  private final Map<Operation, LatencyHistogram> latencies;
+  private final Map<Operation, Long> errors;
+
+  public WorkloadReport(String phase, long elapsedMillis,
+      Map<Operation, LatencyHistogram> latencies, Map<Operation, Long> errors) {
+    this.phase = phase;
+    this.elapsedMillis = elapsedMillis;
+    this.latencies = latencies;
+    this.errors = errors;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /** Operations completed, successfully or not, flushes excluded */
+  public long getOperations() {
+    long operations = 0;
+    for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+      if (entry.getKey() != Operation.FLUSH) {
+        operations += entry.getValue().getCount();
+      }
+    }
+    return operations;
+  }
+
+  public double getOperationsPerSecond() {
+    return elapsedMillis == 0 ? 0 : getOperations() * 1000.0 / elapsedMillis;
+  }
+
+  /**
+   * Latencies of an operation, failed calls included.
+   * @param operation
+   * @return
+   */
+  public LatencyHistogram getLatency(Operation operation) {
+    return latencies.get(operation);
+  }
+
+  public long getErrors(Operation operation) {
+    return errors.get(operation);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format(
+        "%s: %d operations in %.1fs (%.0f ops/s)", phase, getOperations(),
+        elapsedMillis / 1000.0, getOperationsPerSecond()));
+    for (Operation operation : Operation.values()) {
+      LatencyHistogram latency = latencies.get(operation);
+      if (latency.getCount() > 0) {
+        sb.append(String.format("%n  %-6s %s, %d errors", operation, latency,
+            errors.get(operation)));
+      }
+    }
+    return sb.toString();
+  }
+}
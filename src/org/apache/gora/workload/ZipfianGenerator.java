@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.Random;
+
+/**
+ * Zipfian distributed ranks over a fixed number of items, using the
+ * rejection free method of Gray et al. ("Quickly generating billion-record
+ * synthetic databases"), as YCSB does. Rank 0 is the most popular item.
+ * With scrambling, ranks are hashed over the item space so the popular
+ * items are not clustered at the start of the key range.
+ */
+public class ZipfianGenerator {
+
+  /** Skew used by YCSB */
+  public static final double DEFAULT_THETA = 0.99;
+
+  private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 1099511628211L;
+
+  private final long items;
+  private final double theta;
+  private final double zetan;
+  private final double alpha;
+  private final double eta;
+  private final boolean scrambled;
+
+  public ZipfianGenerator(long items, boolean scrambled) {
+    this(items, DEFAULT_THETA, scrambled);
+  }
+
+  /**
+   * Computing the normalization constant walks all the items once.
+   * @param items
+   * @param theta skew, between 0 (uniform) and 1 exclusive
+   * @param scrambled
+   */
+  public ZipfianGenerator(long items, double theta, boolean scrambled) {
+    if (items < 1) {
+      throw new IllegalArgumentException("No items to choose from");
+    }
+    this.items = items;
+    this.theta = theta;
+    this.scrambled = scrambled;
+    zetan = zeta(items, theta);
+    alpha = 1.0 / (1.0 - theta);
+    eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+  }
+
+  /**
+   * @param random
+   * @return an item between 0 and items - 1
+   */
+  public long next(Random random) {
+    double u = random.nextDouble();
+    double uz = u * zetan;
+    long rank;
+    if (uz < 1.0) {
+      rank = 0;
+    } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+      rank = 1;
+    } else {
+      rank = (long) (items * Math.pow(eta * u - eta + 1, alpha));
+    }
+    rank = Math.min(rank, items - 1);
+    return scrambled ? scramble(rank) : rank;
+  }
+
+  private long scramble(long rank) {
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < 8; i++) {
+      hash ^= (rank >>> (i * 8)) & 0xFF;
+      hash *= FNV_PRIME;
+    }
+    return (hash & Long.MAX_VALUE) % items;
+  }
+
+  private static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class AggregatingDataStoreTest extends TestCase {
+
+  /** Holds the scans it runs at their end, once armed */
+  static class HeldScans extends ForwardingDataStore<String, Employee> {
+    final CountDownLatch ended = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile boolean armed;
+
+    HeldScans(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public Result<String, Employee> execute(Query<String, Employee> query) {
+      final Result<String, Employee> result = delegate.execute(query);
+      if (!armed) {
+        return result;
+      }
+      return new Result<String, Employee>() {
+        @Override
+        public boolean next() throws Exception {
+          return result.next();
+        }
+
+        @Override
+        public Employee get() {
+          return result.get();
+        }
+
+        @Override
+        public String getKey() {
+          return result.getKey();
+        }
+
+        @Override
+        public DataStore<String, Employee> getDataStore() {
+          return result.getDataStore();
+        }
+
+        @Override
+        public Query<String, Employee> getQuery() {
+          return result.getQuery();
+        }
+
+        @Override
+        public Class<String> getKeyClass() {
+          return result.getKeyClass();
+        }
+
+        @Override
+        public Class<Employee> getPersistentClass() {
+          return result.getPersistentClass();
+        }
+
+        @Override
+        public long getOffset() {
+          return result.getOffset();
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+          return result.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+          ended.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          result.close();
+        }
+      };
+    }
+  }
+
+  private File dir;
+  private Properties properties;
+  private HeldScans memory;
+  private AggregatingDataStore<String, Employee> store;
+  private FieldAggregate salary;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("goraaggregate", "");
+    dir.delete();
+    properties = new Properties();
+    properties.setProperty(RecordAggregates.PROPERTY_PREFIX + "Employee", "salary");
+    properties.setProperty(RecordAggregates.DIR_KEY, dir.getPath());
+    properties.setProperty(RecordAggregates.SAVE_INTERVAL_KEY, "0");
+    memory = new HeldScans(GoraUtils.createSpecificDataStore("memory",
+        String.class, Employee.class));
+    store = (AggregatingDataStore<String, Employee>) AggregatingDataStore
+        .aggregate(memory, properties);
+    salary = store.getAggregates().get("salary");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    memory.release.countDown();
+    store.close();
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        child.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  public void testOverwritesAndDeletesTakeOutTheOldValue() {
+    store.put("a", Employees.named("Ann", 10));
+    store.put("b", Employees.named("Bob", 20));
+    store.put("c", Employees.named("Cyd", 30));
+    store.put("b", Employees.named("Bob", 40));
+    assertEquals(3, salary.getCount());
+    assertEquals(80.0, salary.getSum());
+    assertFalse(store.delete("missing"));
+    store.delete("a");
+    assertEquals(2, salary.getCount());
+    assertEquals(35.0, salary.getMean());
+
+    Employee renamed = Employee.newBuilder().build();
+    renamed.setName("Cy");
+    store.put("c", renamed);
+    assertEquals(2, salary.getCount());
+    assertEquals(70.0, salary.getSum());
+  }
+
+  public void testExtremesFallBackToTheSketchUntilRebuilt() throws Exception {
+    for (int i = 1; i <= 100; i++) {
+      store.put("k" + i, Employees.named("e" + i, i * 10));
+    }
+    assertEquals(10.0, salary.getMin());
+    assertEquals(1000.0, salary.getMax());
+    assertTrue(salary.isExactExtremes());
+
+    store.delete("k1");
+    store.put("k100", Employees.named("e100", 500));
+    assertFalse(salary.isExactExtremes());
+    assertEquals(20.0, salary.getMin(), 20 * QuantileSketch.DEFAULT_ERROR);
+    assertEquals(990.0, salary.getMax(), 990 * QuantileSketch.DEFAULT_ERROR);
+
+    store.getAggregates().rebuild();
+    assertTrue(salary.isExactExtremes());
+    assertEquals(20.0, salary.getMin());
+    assertEquals(990.0, salary.getMax());
+    assertEquals(99, salary.getCount());
+  }
+
+  public void testSavedFileDoesNotGrowWithTheRecords() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      store.put("k" + i, Employees.named("e" + i, 100));
+    }
+    store.flush();
+    long small = salary.getFile().length();
+    for (int i = 10; i < 10000; i++) {
+      store.put("k" + i, Employees.named("e" + i, 100 + i % 50));
+    }
+    store.flush();
+    assertTrue(salary.getFile().length() < small + 2000);
+
+    FieldAggregate loaded = new FieldAggregate(
+        Employee.SCHEMA$.getField("salary"), salary.getFile());
+    assertTrue(loaded.load());
+    assertEquals(salary.getCount(), loaded.getCount());
+    assertEquals(salary.getSum(), loaded.getSum());
+    assertEquals(salary.getMin(), loaded.getMin());
+    assertEquals(salary.getMax(), loaded.getMax());
+    assertEquals(salary.getP95(), loaded.getP95());
+    assertEquals(salary.getDistinct(), loaded.getDistinct());
+  }
+
+  public void testWritesAroundTheStoreAreAggregated() throws Exception {
+    DataStore<String, Employee> level = store.aggregating(memory);
+    store.put("a", Employees.named("Ann", 10));
+    level.put("a", Employees.named("Ann", 15));
+    level.put("b", Employees.named("Bob", 20));
+    assertEquals(2, salary.getCount());
+    assertEquals(35.0, salary.getSum());
+    level.delete("b");
+    assertEquals(15.0, salary.getSum());
+  }
+
+  public void testWritesWaitForARebuild() throws Exception {
+    store.put("a", Employees.named("Ann", 10));
+    store.put("b", Employees.named("Bob", 20));
+    memory.armed = true;
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<Long> rebuild = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          Query<String, Employee> query = store.newQuery();
+          query.setStartKey("a");
+          query.setEndKey("a");
+          return store.deleteByQuery(query);
+        }
+      });
+      assertTrue(memory.ended.await(5, TimeUnit.SECONDS));
+      // the scan is over but the aggregates are not reset yet
+      Future<?> put = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          store.put("c", Employees.named("Cyd", 30));
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(put.isDone());
+      memory.release.countDown();
+      rebuild.get(5, TimeUnit.SECONDS);
+      put.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(2, salary.getCount());
+    assertEquals(50.0, salary.getSum());
+  }
+}
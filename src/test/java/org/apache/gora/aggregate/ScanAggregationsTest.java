@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.aggregate;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class ScanAggregationsTest extends TestCase {
+
+  private static final int RECORDS = 1000;
+
+  private DataStore<String, Employee> store;
+
+  @Override
+  protected void setUp() throws Exception {
+    store = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.close();
+  }
+
+  private void fill() {
+    for (int i = 0; i < RECORDS; i++) {
+      Employee employee = Employee.newBuilder().build();
+      employee.setName("e" + i);
+      employee.setSsn("d" + (i % 4));
+      employee.setSalary(i);
+      store.put(String.format("k%04d", i), employee);
+    }
+  }
+
+  public void testTopK() throws Exception {
+    fill();
+    List<TopK.Entry<String>> top = ScanAggregations.topK(store, null, null,
+        "salary", 3);
+    assertEquals(3, top.size());
+    assertEquals("k0999", top.get(0).getKey());
+    assertEquals("k0998", top.get(1).getKey());
+    assertEquals("k0997", top.get(2).getKey());
+
+    top = ScanAggregations.topK(store, "k0100", "k0199", "salary", 1);
+    assertEquals(1, top.size());
+    assertEquals("k0199", top.get(0).getKey());
+  }
+
+  public void testGroupBy() throws Exception {
+    fill();
+    Map<Object, GroupBy.Group> groups = ScanAggregations.groupBy(store, null,
+        null, "ssn", "salary");
+    assertEquals(4, groups.size());
+    for (int d = 0; d < 4; d++) {
+      GroupBy.Group group = groups.get("d" + d);
+      assertEquals(RECORDS / 4, group.getCount());
+      // d + (d + 4) + ... + (d + 996)
+      double sum = RECORDS / 4 * d + 4.0 * (RECORDS / 4) * (RECORDS / 4 - 1) / 2;
+      assertEquals(sum, group.getSum());
+    }
+  }
+
+  public void testDistinctCount() throws Exception {
+    fill();
+    assertEquals(4, ScanAggregations.distinctCount(store, null, null, "ssn"));
+    long salaries = ScanAggregations.distinctCount(store, null, null, "salary");
+    assertEquals(RECORDS, salaries, RECORDS * 0.05);
+  }
+
+  public void testEmptyStore() throws Exception {
+    assertTrue(ScanAggregations.topK(store, null, null, "salary", 3).isEmpty());
+    assertTrue(ScanAggregations.groupBy(store, null, null, "ssn", null).isEmpty());
+    assertEquals(0, ScanAggregations.distinctCount(store, null, null, "ssn"));
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.WriteBufferDataStore.Mode;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class AdaptiveFlushControllerTest extends TestCase {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * A store taking a millisecond per record settles just under the batch
+   * size flushing within the target.
+   */
+  public void testConvergesUnderTheTargetLatency() {
+    AdaptiveFlushController controller =
+        new AdaptiveFlushController(10, 1010, 10, 1010, 100);
+    int highest = 0;
+    for (int i = 0; i < 1000; i++) {
+      int records = controller.getBatchSize();
+      controller.onFlush(records, records * MS, false);
+      if (i >= 500) {
+        highest = Math.max(highest, controller.getBatchSize());
+        assertTrue(controller.getBatchSize() >= 50);
+      }
+    }
+    assertTrue(highest <= 110);
+    assertTrue(controller.getDecreases() > 0);
+    assertTrue(controller.getIncreases() > controller.getDecreases());
+  }
+
+  public void testFailureHalvesTheBatchAndDoublesTheInterval() {
+    AdaptiveFlushController controller =
+        new AdaptiveFlushController(10, 1010, 10, 1010, 100);
+    for (int i = 0; i < 100; i++) {
+      controller.onFlush(controller.getBatchSize(), MS, false);
+    }
+    assertEquals(1010, controller.getBatchSize());
+    assertEquals(10, controller.getFlushIntervalMs());
+    controller.onFlush(1010, MS, true);
+    assertEquals(505, controller.getBatchSize());
+    assertEquals(20, controller.getFlushIntervalMs());
+    assertEquals(1, controller.getFailures());
+    assertTrue(controller.getErrorRate() > 0);
+  }
+
+  public void testQuietStoreDoesNotGrowTheBatch() {
+    AdaptiveFlushController controller =
+        new AdaptiveFlushController(10, 1010, 10, 1010, 100);
+    for (int i = 0; i < 100; i++) {
+      controller.onFlush(1, MS, false);
+    }
+    assertEquals(10, controller.getBatchSize());
+    assertEquals(1010, controller.getFlushIntervalMs());
+  }
+
+  /** Fails its flushes while {@link #failing} */
+  static class FailingStore extends ForwardingDataStore<String, Employee> {
+    volatile boolean failing;
+
+    FailingStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void flush() {
+      if (failing) {
+        throw new IllegalStateException("store down");
+      }
+      delegate.flush();
+    }
+  }
+
+  public void testBufferFlushesAtTheBatchSizeAndBacksOffOnFailure()
+      throws Exception {
+    DataStore<String, Employee> memory = GoraUtils.createSpecificDataStore(
+        "memory", String.class, Employee.class);
+    FailingStore store = new FailingStore(memory);
+    WriteBufferDataStore<String, Employee> buffer =
+        new WriteBufferDataStore<String, Employee>(store, Mode.LAST_WRITE_WINS);
+    AdaptiveFlushController controller =
+        new AdaptiveFlushController(4, 404, 1000, 100000, 10000);
+    buffer.setController(controller);
+    try {
+      for (int i = 0; i < 4; i++) {
+        Employee employee = Employee.newBuilder().build();
+        employee.setName("e" + i);
+        buffer.put("k" + i, employee);
+      }
+      assertEquals(1, controller.getFlushes());
+      assertEquals(0, buffer.getBufferedKeys());
+      assertEquals(8, controller.getBatchSize());
+
+      store.failing = true;
+      buffer.put("k", Employee.newBuilder().build());
+      try {
+        buffer.flush();
+        fail("the store is down");
+      } catch (IllegalStateException expected) {
+      }
+      assertEquals(1, controller.getFailures());
+      assertEquals(4, controller.getBatchSize());
+      assertEquals(100000, controller.getFlushIntervalMs());
+    } finally {
+      store.failing = false;
+      buffer.close();
+    }
+  }
+}
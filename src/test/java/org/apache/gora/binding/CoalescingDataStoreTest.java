@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class CoalescingDataStoreTest extends TestCase {
+
+  /** Holds the first get after reading until released */
+  static class GatedStore extends ForwardingDataStore<String, Employee> {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger gets = new AtomicInteger();
+
+    GatedStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public Employee get(String key) {
+      Employee value = delegate.get(key);
+      if (gets.incrementAndGet() == 1) {
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return value;
+    }
+  }
+
+  private GatedStore gated;
+  private CoalescingDataStore<String, Employee> store;
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    gated = new GatedStore(GoraUtils.createSpecificDataStore("memory",
+        String.class, Employee.class));
+    store = new CoalescingDataStore<String, Employee>(gated);
+    executor = Executors.newCachedThreadPool();
+    store.put("k", Employees.named("old"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    gated.release.countDown();
+    executor.shutdownNow();
+    store.close();
+  }
+
+  private Future<Employee> get(final String key) {
+    return executor.submit(new Callable<Employee>() {
+      @Override
+      public Employee call() {
+        return store.get(key);
+      }
+    });
+  }
+
+  public void testConcurrentGetsShareOneCall() throws Exception {
+    Future<Employee> first = get("k");
+    assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+    Future<Employee> second = get("k");
+    while (store.getCalls() < 2) {
+      Thread.sleep(1);
+    }
+    gated.release.countDown();
+    assertEquals("old", first.get(5, TimeUnit.SECONDS).getName().toString());
+    assertEquals("old", second.get(5, TimeUnit.SECONDS).getName().toString());
+    assertEquals(1, store.getStoreCalls());
+    assertEquals(1, store.getSavedCalls());
+  }
+
+  public void testGetAfterPutDoesNotJoinAnEarlierGet() throws Exception {
+    Future<Employee> before = get("k");
+    assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+    store.put("k", Employees.named("new"));
+    Future<Employee> after = get("k");
+    assertEquals("new", after.get(5, TimeUnit.SECONDS).getName().toString());
+    gated.release.countDown();
+    assertEquals("old", before.get(5, TimeUnit.SECONDS).getName().toString());
+    assertEquals(0, store.getInFlight());
+  }
+
+  public void testGetAfterDeleteDoesNotJoinAnEarlierGet() throws Exception {
+    Future<Employee> before = get("k");
+    assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+    store.delete("k");
+    assertNull(get("k").get(5, TimeUnit.SECONDS));
+    gated.release.countDown();
+    assertNotNull(before.get(5, TimeUnit.SECONDS));
+  }
+
+  public void testWaitersDoNotSeeTheFirstCallerChangeItsRecord() throws Exception {
+    Future<Employee> first = executor.submit(new Callable<Employee>() {
+      @Override
+      public Employee call() {
+        Employee employee = store.get("k");
+        employee.setName("changed");
+        return employee;
+      }
+    });
+    assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+    List<Future<Employee>> waiters = new ArrayList<Future<Employee>>();
+    for (int i = 0; i < 8; i++) {
+      waiters.add(get("k"));
+    }
+    while (store.getCalls() < 9) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(20);
+    gated.release.countDown();
+    assertEquals("changed", first.get(5, TimeUnit.SECONDS).getName().toString());
+    for (Future<Employee> waiter : waiters) {
+      assertEquals("old", waiter.get(5, TimeUnit.SECONDS).getName().toString());
+    }
+    assertEquals(1, store.getStoreCalls());
+  }
+
+  public void testPutDetachesOnlyItsKey() throws Exception {
+    store.put("other", Employees.named("other"));
+    Future<Employee> first = get("k");
+    assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+    store.put("other", Employees.named("changed"));
+    assertEquals(1, store.getInFlight());
+    gated.release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    assertEquals(0, store.getInFlight());
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.codec.CodecDataStore;
+import org.apache.gora.codec.RecordCodecs;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class HedgedDataStoreTest extends TestCase {
+
+  /** Answers once released, or fails */
+  static class SlowStore extends ForwardingDataStore<String, Employee> {
+    final CountDownLatch release = new CountDownLatch(1);
+    final boolean failing;
+
+    SlowStore(DataStore<String, Employee> delegate, boolean failing) {
+      super(delegate);
+      this.failing = failing;
+    }
+
+    @Override
+    public Employee get(String key) {
+      if (failing) {
+        throw new IllegalStateException("down");
+      }
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return delegate.get(key);
+    }
+  }
+
+  private DataStore<String, Employee> primary;
+  private DataStore<String, Employee> replica;
+  private HedgeStats stats;
+
+  @Override
+  protected void setUp() throws Exception {
+    primary = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    replica = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    primary.put("a", Employees.named("primary"));
+    replica.put("a", Employees.named("replica"));
+    stats = new HedgeStats(95, 1000, TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MILLISECONDS.toNanos(10));
+  }
+
+  private HedgedDataStore<String, Employee> hedged(DataStore<String, Employee> first,
+      DataStore<String, Employee> second) {
+    return new HedgedDataStore<String, Employee>(first,
+        Arrays.asList(second), stats);
+  }
+
+  public void testFastPrimaryIsNotHedged() {
+    HedgedDataStore<String, Employee> store = hedged(primary, replica);
+    assertEquals("primary", store.get("a").getName().toString());
+    assertEquals(1, stats.getCalls());
+    assertEquals(0, stats.getHedgeWins());
+    store.close();
+  }
+
+  public void testSlowPrimaryLosesToTheReplica() {
+    SlowStore slow = new SlowStore(primary, false);
+    HedgedDataStore<String, Employee> store = hedged(slow, replica);
+    try {
+      long start = System.nanoTime();
+      assertEquals("replica", store.get("a").getName().toString());
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      assertEquals(1, stats.getHedges());
+      assertEquals(1, stats.getHedgeWins());
+    } finally {
+      slow.release.countDown();
+      store.close();
+    }
+  }
+
+  public void testFailedPrimaryHedgesAtOnce() {
+    HedgedDataStore<String, Employee> store = hedged(
+        new SlowStore(primary, true), replica);
+    assertEquals("replica", store.get("a").getName().toString());
+    assertEquals(0, stats.getFailures());
+    store.close();
+  }
+
+  public void testFailsWhenAllStoresFail() {
+    HedgedDataStore<String, Employee> store = hedged(
+        new SlowStore(primary, true), new SlowStore(replica, true));
+    try {
+      store.get("a");
+      fail();
+    } catch (IllegalStateException expected) {
+      assertEquals("down", expected.getMessage());
+    }
+    assertEquals(1, stats.getFailures());
+    store.close();
+  }
+
+  public void testReplicasDecodeLikeTheWrappedStore() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(HedgedDataStore.REPLICAS_KEY, "near");
+    properties.setProperty(HedgedDataStore.PREFIX + "near.type", "memory");
+    properties.setProperty("gora.codec.WebPage.content", "deflate");
+    properties.setProperty(RecordCodecs.MIN_SIZE_KEY, "16");
+    DataStore<String, WebPage> down = new ForwardingDataStore<String, WebPage>(
+        GoraUtils.createSpecificDataStore("memory", String.class, WebPage.class)) {
+      @Override
+      public WebPage get(String key, String[] fields) {
+        throw new IllegalStateException("down");
+      }
+    };
+    DataStore<String, WebPage> store = HedgedDataStore.hedge(
+        CodecDataStore.encode(down, properties), properties);
+    try {
+      byte[] content = new byte[1024];
+      Arrays.fill(content, (byte) 'a');
+      WebPage page = WebPage.newBuilder().build();
+      page.setContent(ByteBuffer.wrap(content));
+      // written encoded straight into the replica, as another cluster would
+      @SuppressWarnings("unchecked")
+      DataStore<String, WebPage> replica = (DataStore<String, WebPage>)
+          ForwardingDataStore.unwrap(((HedgedDataStore<String, WebPage>) store)
+              .getReplicas().get(0));
+      replica.put("a", new RecordCodecs<WebPage>(WebPage.class, properties)
+          .encode(page));
+
+      ByteBuffer read = store.get("a", new String[] {"content"}).getContent();
+      assertEquals(ByteBuffer.wrap(content), read);
+    } finally {
+      store.close();
+    }
+  }
+}
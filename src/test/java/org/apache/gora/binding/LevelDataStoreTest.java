@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.WriteBufferDataStore.Mode;
+import org.apache.gora.cdc.ChangeCaptureDataStore;
+import org.apache.gora.cdc.ChangeEvent;
+import org.apache.gora.cdc.ChangeQueue;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.tier.LruPolicy;
+import org.apache.gora.tier.TieredDataStore;
+import org.apache.gora.tier.TieredDataStore.WriteMode;
+import org.apache.gora.utils.GoraUtils;
+
+public class LevelDataStoreTest extends TestCase {
+
+  /** The cluster both the binding store and the level store write to */
+  private DataStore<String, Employee> memory;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    memory.close();
+  }
+
+  private LevelDataStore<String, Employee> level(DataStore<String, Employee> binding) {
+    return new LevelDataStore<String, Employee>(
+        new ForwardingDataStore<String, Employee>(memory), binding);
+  }
+
+  public void testBufferedVersionDoesNotOverwriteLevelWrite() {
+    WriteBufferDataStore<String, Employee> binding =
+        new WriteBufferDataStore<String, Employee>(memory, Mode.LAST_WRITE_WINS);
+    LevelDataStore<String, Employee> level = level(binding);
+    binding.put("a", Employees.named("Ann"));
+    level.put("a", Employees.named("Bob"));
+    binding.flush();
+    assertEquals("Bob", memory.get("a").getName().toString());
+
+    binding.put("b", Employees.named("Cyd"));
+    assertEquals("Cyd", level.get("b").getName().toString());
+    binding.put("b", Employees.named("Dan"));
+    assertTrue(level.delete("b"));
+    binding.flush();
+    assertNull(memory.get("b"));
+    assertEquals(0, binding.getBufferedKeys());
+  }
+
+  public void testLevelWritesInvalidateTheNearTier() throws Exception {
+    TieredDataStore<String, Employee> binding = new TieredDataStore<String, Employee>(
+        memory, GoraUtils.createSpecificDataStore("memory", String.class, Employee.class),
+        10, new LruPolicy<String>(), WriteMode.WRITE_BACK);
+    LevelDataStore<String, Employee> level = level(binding);
+    memory.put("a", Employees.named("Ann"));
+    binding.get("a");
+    binding.put("a", Employees.named("Amy"));
+    assertEquals(1, binding.getDirty());
+    level.put("a", Employees.named("Bob"));
+    assertEquals(0, binding.getNearSize());
+    assertEquals("Bob", binding.get("a").getName().toString());
+    binding.flush();
+    assertEquals("Bob", memory.get("a").getName().toString());
+
+    binding.get("a");
+    assertEquals(1, binding.getNearSize());
+    assertTrue(level.delete("a"));
+    assertNull(binding.get("a"));
+    binding.flush();
+    assertNull(memory.get("a"));
+  }
+
+  public void testLevelChangesArePublishedWithTheBindingChanges() throws Exception {
+    ChangeCaptureDataStore<String, Employee> binding =
+        new ChangeCaptureDataStore<String, Employee>(memory, 100, 0);
+    ChangeQueue<String> queue = new ChangeQueue<String>(100);
+    binding.addSink(queue);
+    LevelDataStore<String, Employee> level = level(binding);
+    level.put("a", Employees.named("Ann"));
+    level.delete("a");
+    assertEquals(2, binding.getPending());
+    level.flush();
+
+    List<ChangeEvent<String>> events = queue.poll(10, 0);
+    assertEquals(2, events.size());
+    assertEquals(ChangeEvent.Type.PUT, events.get(0).getType());
+    assertEquals("a", events.get(0).getKey());
+    assertEquals(ChangeEvent.Type.DELETE, events.get(1).getType());
+  }
+}
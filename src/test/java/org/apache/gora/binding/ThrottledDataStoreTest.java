@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class ThrottledDataStoreTest extends TestCase {
+
+  private DataStore<String, Employee> memory;
+  private DataStore<String, Employee> store;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    Properties properties = new Properties();
+    properties.setProperty(WriteBufferDataStore.MODE_KEY, "last");
+    properties.setProperty(ThrottledDataStore.SESSION_PREFIX
+        + ThrottledDataStore.OPS_KEY, "1");
+    properties.setProperty(ThrottledDataStore.POLICY_KEY, "shed");
+    store = StoreDecorators.decorate(memory, properties);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.close();
+  }
+
+  public void testWritesAreShedBeforeTheBufferTakesThem() {
+    ThrottledDataStore<?, ?> throttled = (ThrottledDataStore<?, ?>) store;
+    WriteBufferDataStore<?, ?> buffer =
+        ForwardingDataStore.find(store, WriteBufferDataStore.class);
+    store.put("a", Employees.named("Ann"));
+    assertFalse(throttled.wasShed());
+    store.put("b", Employees.named("Bob"));
+    assertTrue(throttled.wasShed());
+    assertEquals(1, buffer.getBufferedKeys());
+
+    // flushing the buffer is not throttled, and keeps what it acknowledged
+    store.flush();
+    assertEquals("Ann", memory.get("a").getName().toString());
+    assertNull(memory.get("b"));
+    assertEquals(0, buffer.getBufferedKeys());
+  }
+
+  public void testSessionLimitsApplyToTheCallingThread() throws Exception {
+    store.put("a", Employees.named("Ann"));
+    ExecutorService other = Executors.newSingleThreadExecutor();
+    try {
+      boolean shed = other.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          store.put("b", Employees.named("Bob"));
+          return ((ThrottledDataStore<?, ?>) store).wasShed();
+        }
+      }).get();
+      assertFalse(shed);
+    } finally {
+      other.shutdown();
+    }
+    assertFalse(store.delete("a"));
+    assertTrue(((ThrottledDataStore<?, ?>) store).wasShed());
+    store.flush();
+    assertNotNull(memory.get("a"));
+    assertNotNull(memory.get("b"));
+  }
+}
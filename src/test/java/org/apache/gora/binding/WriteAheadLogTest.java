@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class WriteAheadLogTest extends TestCase {
+
+  private File dir;
+  private Properties properties;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("gorawal", "");
+    dir.delete();
+    properties = new Properties();
+    properties.setProperty(WriteBufferDataStore.MODE_KEY, "merge");
+    properties.setProperty(WriteBufferDataStore.WAL_DIR_KEY, dir.getPath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        child.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static DataStore<String, Employee> memory() throws Exception {
+    return GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+  }
+
+  /** Leaves the buffered writes in the log, as if the JVM died */
+  private static void crash(DataStore<String, Employee> store) throws Exception {
+    ((WriteBufferDataStore<String, Employee>) store).getWriteAheadLog().close();
+  }
+
+  public void testReplayRecoversAcknowledgedWrites() throws Exception {
+    DataStore<String, Employee> before = memory();
+    DataStore<String, Employee> store = WriteBufferDataStore.buffer(before, properties);
+    store.put("a", Employees.named("Ann", 10));
+    Employee raise = Employee.newBuilder().build();
+    raise.setSalary(20);
+    store.put("a", raise);
+    store.put("b", Employees.named("Bob", 10));
+    store.delete("b");
+    assertNull(before.get("a"));
+    crash(store);
+
+    DataStore<String, Employee> after = memory();
+    after.put("b", Employees.named("Bob", 10));
+    DataStore<String, Employee> reopened = WriteBufferDataStore.buffer(after, properties);
+    try {
+      Employee ann = after.get("a");
+      assertEquals("Ann", ann.getName().toString());
+      assertEquals(Integer.valueOf(20), ann.getSalary());
+      assertNull(after.get("b"));
+      assertEquals(0, ((WriteBufferDataStore<String, Employee>) reopened)
+          .getWriteAheadLog().getSize());
+    } finally {
+      reopened.close();
+    }
+  }
+
+  public void testReplayStopsAtATornTail() throws Exception {
+    DataStore<String, Employee> store = WriteBufferDataStore.buffer(memory(), properties);
+    store.put("a", Employees.named("Ann", 10));
+    crash(store);
+    File log = ((WriteBufferDataStore<String, Employee>) store)
+        .getWriteAheadLog().getFile();
+    FileOutputStream out = new FileOutputStream(log, true);
+    try {
+      out.write(new byte[] {0, 0, 0, 42, 1, 2});
+    } finally {
+      out.close();
+    }
+
+    DataStore<String, Employee> after = memory();
+    DataStore<String, Employee> reopened = WriteBufferDataStore.buffer(after, properties);
+    try {
+      assertEquals("Ann", after.get("a").getName().toString());
+      assertEquals(0, log.length() - 4);
+    } finally {
+      reopened.close();
+    }
+  }
+
+  public void testBindingsOfOneStoreCannotShareALog() throws Exception {
+    DataStore<String, Employee> first = WriteBufferDataStore.buffer(memory(), properties);
+    try {
+      try {
+        WriteBufferDataStore.buffer(memory(), properties);
+        fail("the log is taken");
+      } catch (IllegalStateException expected) {
+      }
+      Properties other = new Properties();
+      other.putAll(properties);
+      other.setProperty(WriteBufferDataStore.WAL_NAME_KEY, "keyspace2");
+      DataStore<String, Employee> second = WriteBufferDataStore.buffer(memory(), other);
+      second.put("a", Employees.named("Ann", 10));
+      second.close();
+      assertTrue(new File(dir, "keyspace2.wal").exists());
+    } finally {
+      first.close();
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.binding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.WriteBufferDataStore.Mode;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class WriteBufferDataStoreTest extends TestCase {
+
+  /** Keeps the keys put, in order */
+  static class RecordingStore extends ForwardingDataStore<String, Employee> {
+    final List<String> puts = new ArrayList<String>();
+
+    RecordingStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void put(String key, Employee obj) {
+      puts.add(key);
+      delegate.put(key, obj);
+    }
+  }
+
+  private DataStore<String, Employee> memory;
+  private RecordingStore recording;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    recording = new RecordingStore(memory);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    memory.close();
+  }
+
+  private static Employee salary(int salary) {
+    Employee employee = Employee.newBuilder().build();
+    employee.setSalary(salary);
+    return employee;
+  }
+
+  public void testMergeKeepsBothPartialUpdates() {
+    WriteBufferDataStore<String, Employee> store =
+        new WriteBufferDataStore<String, Employee>(recording, Mode.MERGE_DIRTY);
+    Employee update = Employees.named("Ann");
+    store.put("a", update);
+    update.setName("changed after the put");
+    store.put("a", salary(10));
+    assertNull(memory.get("a"));
+    Employee buffered = store.get("a");
+    assertEquals("Ann", buffered.getName().toString());
+    assertEquals(Integer.valueOf(10), buffered.getSalary());
+    assertEquals(1, store.getCoalesced());
+
+    store.flush();
+    assertEquals(Arrays.asList("a"), recording.puts);
+    Employee stored = memory.get("a");
+    assertEquals("Ann", stored.getName().toString());
+    assertEquals(Integer.valueOf(10), stored.getSalary());
+    assertEquals(0, store.getBufferedKeys());
+    assertEquals(0, store.getBufferedBytes());
+  }
+
+  public void testLastWriteWinsReplacesTheBufferedVersion() {
+    WriteBufferDataStore<String, Employee> store =
+        new WriteBufferDataStore<String, Employee>(recording, Mode.LAST_WRITE_WINS);
+    store.put("a", Employees.named("Ann"));
+    store.put("a", salary(10));
+    assertNull(store.get("a").getName());
+    store.flush();
+    assertNull(memory.get("a").getName());
+    assertEquals(Integer.valueOf(10), memory.get("a").getSalary());
+    assertEquals(2, store.getPuts());
+    assertEquals(1, store.getWritten());
+  }
+
+  public void testDrainsPastMaxKeysInKeyOrder() {
+    WriteBufferDataStore<String, Employee> store =
+        new WriteBufferDataStore<String, Employee>(recording, Mode.LAST_WRITE_WINS);
+    store.setMaxKeys(2);
+    store.setDrainInKeyOrder(true);
+    store.put("c", Employees.named("Cyd"));
+    store.put("a", Employees.named("Ann"));
+    assertTrue(recording.puts.isEmpty());
+    store.put("b", Employees.named("Bob"));
+    assertEquals(Arrays.asList("a", "b", "c"), recording.puts);
+    assertEquals(1, store.getDrains());
+  }
+
+  public void testDeleteDropsTheBufferedVersion() {
+    WriteBufferDataStore<String, Employee> store =
+        new WriteBufferDataStore<String, Employee>(recording, Mode.LAST_WRITE_WINS);
+    memory.put("a", Employees.named("Ann"));
+    store.put("a", Employees.named("Bob"));
+    store.delete("a");
+    store.flush();
+    assertNull(memory.get("a"));
+    assertTrue(recording.puts.isEmpty());
+  }
+
+  public void testQueriesSeeBufferedWrites() throws Exception {
+    WriteBufferDataStore<String, Employee> store =
+        new WriteBufferDataStore<String, Employee>(recording, Mode.LAST_WRITE_WINS);
+    store.put("a", Employees.named("Ann"));
+    store.put("b", Employees.named("Bob"));
+    int count = 0;
+    Result<String, Employee> result =
+        store.execute(store.newQuery());
+    while (result.next()) {
+      count++;
+    }
+    assertEquals(2, count);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.cdc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class ChangeCaptureDataStoreTest extends TestCase {
+
+  /** Fails its flushes while {@link #failing} */
+  static class FailingStore extends ForwardingDataStore<String, Employee> {
+    boolean failing;
+
+    FailingStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void flush() {
+      if (failing) {
+        throw new IllegalStateException("store down");
+      }
+      delegate.flush();
+    }
+  }
+
+  /** Keeps the changes, and fails while {@link #failing} */
+  static class ListSink implements ChangeSink<String> {
+    final List<ChangeEvent<String>> events = new ArrayList<ChangeEvent<String>>();
+    boolean failing;
+
+    @Override
+    public synchronized void publish(List<ChangeEvent<String>> batch)
+        throws IOException {
+      if (failing) {
+        throw new IOException("sink down");
+      }
+      events.addAll(batch);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private DataStore<String, Employee> memory;
+  private FailingStore store;
+  private ChangeCaptureDataStore<String, Employee> capture;
+  private ListSink sink;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    store = new FailingStore(memory);
+    capture = new ChangeCaptureDataStore<String, Employee>(store, 2, 0);
+    sink = new ListSink();
+    capture.addSink(sink);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.failing = false;
+    capture.close();
+  }
+
+  public void testPublishesTheChangesOnFlush() {
+    capture.put("a", Employees.named("Ann"));
+    capture.put("b", Employee.newBuilder().build());
+    assertFalse(capture.delete("missing"));
+    assertTrue(capture.delete("a"));
+    assertEquals(2, capture.getPending());
+    assertTrue(sink.events.isEmpty());
+
+    capture.flush();
+    assertEquals(2, sink.events.size());
+    ChangeEvent<String> put = sink.events.get(0);
+    assertEquals(ChangeEvent.Type.PUT, put.getType());
+    assertEquals("a", put.getKey());
+    assertEquals(1, put.getFields().size());
+    assertEquals("name", put.getFields().get(0));
+    assertEquals(ChangeEvent.Type.DELETE, sink.events.get(1).getType());
+    assertTrue(put.getSequence() < sink.events.get(1).getSequence());
+    assertEquals(2, capture.getPublished());
+  }
+
+  public void testFailedFlushKeepsTheChanges() {
+    capture.put("a", Employees.named("Ann"));
+    store.failing = true;
+    try {
+      capture.flush();
+      fail("the store is down");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(1, capture.getPending());
+    assertTrue(sink.events.isEmpty());
+    store.failing = false;
+    capture.put("b", Employees.named("Bob"));
+    capture.flush();
+    assertEquals(2, sink.events.size());
+    assertEquals("a", sink.events.get(0).getKey());
+  }
+
+  public void testFailedDeliveriesAreNotCountedAsPublished() {
+    ListSink other = new ListSink();
+    other.failing = true;
+    capture.addSink(other);
+    capture.put("a", Employees.named("Ann"));
+    capture.put("b", Employees.named("Bob"));
+    capture.put("c", Employees.named("Cyd"));
+    capture.flush();
+    assertEquals(3, sink.events.size());
+    assertEquals(0, capture.getPublished());
+    assertEquals(2, capture.getFailedBatches());
+
+    capture.removeSink(other);
+    capture.put("d", Employees.named("Dan"));
+    capture.flush();
+    assertEquals(1, capture.getPublished());
+  }
+
+  public void testLanesKeepTheOrderOfEachKey() throws Exception {
+    ChangeCaptureDataStore<String, Employee> lanes =
+        new ChangeCaptureDataStore<String, Employee>(memory, 1, 3);
+    ListSink ordered = new ListSink();
+    lanes.addSink(ordered);
+    for (int i = 0; i < 20; i++) {
+      lanes.put("k" + (i % 4), Employees.named("v" + i));
+    }
+    lanes.flush();
+    lanes.close();
+    assertEquals(20, ordered.events.size());
+    for (int key = 0; key < 4; key++) {
+      long last = 0;
+      for (ChangeEvent<String> event : ordered.events) {
+        if (event.getKey().equals("k" + key)) {
+          assertTrue(event.getSequence() > last);
+          last = event.getSequence();
+        }
+      }
+    }
+  }
+}
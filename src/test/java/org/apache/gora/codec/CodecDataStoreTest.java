@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.query.Query;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class CodecDataStoreTest extends TestCase {
+
+  private DataStore<String, WebPage> memory;
+  private DataStore<String, WebPage> store;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        WebPage.class);
+    Properties properties = new Properties();
+    properties.setProperty("gora.codec.WebPage.content", "deflate");
+    properties.setProperty(RecordCodecs.MIN_SIZE_KEY, "16");
+    store = CodecDataStore.encode(memory, properties);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.close();
+  }
+
+  private static byte[] compressible() {
+    byte[] content = new byte[4096];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) ('a' + i % 7);
+    }
+    return content;
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static WebPage page(byte[] content) {
+    WebPage page = WebPage.newBuilder().build();
+    page.setUrl("http://example.org/");
+    page.setContent(ByteBuffer.wrap(content));
+    return page;
+  }
+
+  public void testRoundTripCompressesInTheStore() throws Exception {
+    byte[] content = compressible();
+    WebPage page = page(content);
+    store.put("a", page);
+    assertTrue(Arrays.equals(content, bytes(page.getContent())));
+    assertTrue(page.isDirty("content"));
+
+    ByteBuffer stored = memory.get("a").getContent();
+    assertTrue(FieldCodecs.isEncoded(stored));
+    assertTrue(stored.remaining() < content.length);
+    assertTrue(Arrays.equals(content, bytes(store.get("a").getContent())));
+
+    Query<String, WebPage> query = store.newQuery();
+    query.setStartKey("a");
+    query.setEndKey("a");
+    Result<String, WebPage> result = store.execute(query);
+    assertTrue(result.next());
+    assertTrue(Arrays.equals(content, bytes(result.get().getContent())));
+    result.close();
+  }
+
+  public void testLegacyValueThatLooksEncodedIsReadAsIs() throws Exception {
+    // a raw value starting with the magic bytes and the deflate id
+    byte[] legacy = new byte[64];
+    legacy[0] = 'G';
+    legacy[1] = 'F';
+    legacy[2] = 'C';
+    legacy[3] = new DeflateFieldCodec().getId();
+    legacy[7] = 10;
+    memory.put("legacy", page(legacy));
+    assertFalse(FieldCodecs.isEncoded(ByteBuffer.wrap(legacy)));
+    assertTrue(Arrays.equals(legacy, bytes(store.get("legacy").getContent())));
+  }
+
+  public void testIncompressibleValueThatLooksEncodedIsWrapped()
+      throws Exception {
+    ByteBuffer encoded = FieldCodecs.encode(ByteBuffer.wrap(compressible()),
+        new DeflateFieldCodec(), 16, "test");
+    assertTrue(FieldCodecs.isEncoded(encoded));
+    // storing bytes that already are an envelope must give them back as is
+    byte[] value = bytes(encoded);
+    store.put("nested", page(value));
+    assertTrue(Arrays.equals(value, bytes(store.get("nested").getContent())));
+  }
+
+  public void testReadsWithoutTheFieldDoNotDecodeIt() throws Exception {
+    byte[] content = compressible();
+    store.put("a", page(content));
+    CodecStats stats = ((CodecDataStore<String, WebPage>) store).getStats().get(0);
+    long decoded = stats.getDecodedCount();
+
+    WebPage page = store.get("a", new String[] {"url"});
+    assertEquals("http://example.org/", page.getUrl().toString());
+    Query<String, WebPage> query = store.newQuery();
+    query.setFields("url");
+    Result<String, WebPage> result = store.execute(query);
+    assertTrue(result.next());
+    assertEquals("http://example.org/", result.get().getUrl().toString());
+    result.close();
+    assertEquals(decoded, stats.getDecodedCount());
+
+    page = store.get("a", new String[] {"url", "content"});
+    assertTrue(Arrays.equals(content, bytes(page.getContent())));
+    assertEquals(decoded + 1, stats.getDecodedCount());
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.examples;
+
+import org.apache.gora.examples.generated.Employee;
+
+/**
+ * Employees for tests, with only the fields a test sets dirty.
+ */
+public class Employees {
+
+  private Employees() {
+  }
+
+  public static Employee named(String name) {
+    Employee employee = Employee.newBuilder().build();
+    employee.setName(name);
+    return employee;
+  }
+
+  public static Employee named(String name, int salary) {
+    Employee employee = named(name);
+    employee.setSalary(salary);
+    return employee;
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.index;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class RecordIndexesTest extends TestCase {
+
+  private File dir;
+  private Properties properties;
+  private DataStore<String, Employee> memory;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("goraindex", "");
+    dir.delete();
+    properties = new Properties();
+    properties.setProperty(RecordIndexes.PROPERTY_PREFIX + "Employee", "salary,name");
+    properties.setProperty(RecordIndexes.DIR_KEY, dir.getPath());
+    properties.setProperty(GoraUtils.LOCAL_DATA_DIR_KEY, dir.getPath());
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    memory.put("a", Employees.named("Ann", 10));
+    memory.put("b", Employees.named("Bob", 20));
+    memory.put("c", Employees.named("Cyd", 20));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    memory.close();
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        child.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  public void testBuiltFromTheStoreAndUpdated() throws Exception {
+    RecordIndexes<String, Employee> indexes =
+        new RecordIndexes<String, Employee>(memory, properties);
+    SecondaryIndex<String> salary = indexes.get("salary");
+    assertEquals(Arrays.asList("a"), salary.lookup(10));
+    assertEquals(Arrays.asList("b", "c"), salary.range(15, null));
+
+    Employee raise = Employees.named("Ann", 30);
+    memory.put("a", raise);
+    indexes.update("a", raise);
+    indexes.remove("b");
+    memory.delete("b");
+    assertEquals(Arrays.asList("c", "a"), salary.range(null, null));
+    assertEquals(Arrays.asList("a"), indexes.get("name").lookup("Ann"));
+    for (IndexCheck check : indexes.check()) {
+      assertTrue(check.toString(), check.isConsistent());
+    }
+
+    indexes.save();
+    memory.put("d", Employees.named("Dan", 40));
+    // loaded from its file, not rescanned
+    SecondaryIndex<String> reloaded =
+        new RecordIndexes<String, Employee>(memory, properties).get("salary");
+    assertEquals(Arrays.asList("c", "a"), reloaded.range(null, null));
+  }
+
+  public void testFilesAreKeptPerStoreType() throws Exception {
+    RecordIndexes<String, Employee> indexes =
+        new RecordIndexes<String, Employee>(memory, properties);
+    DataStore<String, Employee> file = GoraUtils.createSpecificDataStore(
+        GoraUtils.Type.DATA_FILE, String.class, Employee.class, properties);
+    try {
+      RecordIndexes<String, Employee> fileIndexes =
+          new RecordIndexes<String, Employee>(file, properties);
+      assertEquals(new File(dir, "MemStore.Employee.salary.idx"),
+          indexes.get("salary").getFile());
+      assertEquals(new File(dir, "DataFileAvroStore.Employee.salary.idx"),
+          fileIndexes.get("salary").getFile());
+      assertEquals(0, fileIndexes.get("salary").size());
+      assertEquals(3, indexes.get("salary").size());
+    } finally {
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.jython.binding;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class SimpleBindingTest extends TestCase {
+
+  private DataStore<String, Employee> memory;
+  private SimpleBinding<String, Employee> binding;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    binding = new SimpleBinding<String, Employee>(memory);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    binding.close();
+  }
+
+  public void testCleanRecordIsNotSent() {
+    Employee employee = Employee.newBuilder().build();
+    employee.clearDirty();
+    assertFalse(binding.putDirty("1", employee));
+    binding.flush();
+    assertNull(binding.get("1"));
+    assertEquals(1, binding.getDirtyWriteStats().getCleanPuts());
+    assertEquals(0, binding.getDirtyWriteStats().getPuts());
+  }
+
+  public void testUpdateWritesTheChangedFields() {
+    Employee employee = Employee.newBuilder().build();
+    employee.setName(new Utf8("Ann"));
+    employee.setSalary(100);
+    binding.put("1", employee);
+    binding.flush();
+
+    Employee updated = binding.update("1", new RecordMutator<Employee>() {
+      @Override
+      public void mutate(Employee record) {
+        record.setSalary(record.getSalary() + 10);
+      }
+    });
+    binding.flush();
+    assertEquals(110, updated.getSalary().intValue());
+    assertTrue(updated.isDirty("salary"));
+    assertFalse(updated.isDirty("name"));
+    Employee stored = binding.get("1");
+    assertEquals(110, stored.getSalary().intValue());
+    assertEquals("Ann", stored.getName().toString());
+    assertEquals(1, binding.getDirtyWriteStats().getPuts());
+    assertTrue(binding.getDirtyWriteStats().getFieldsSkipped() > 0);
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class MetricsTest extends TestCase {
+
+  public void testHistogramPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMax());
+    assertEquals(500500.0, histogram.getMean(), 0.001);
+    // buckets are within 1/32 of their values
+    assertEquals(500000, histogram.getPercentile(50), 500000 / 32.0);
+    assertEquals(990000, histogram.getPercentile(99), 990000 / 32.0);
+    assertEquals(histogram.getMax(), histogram.getPercentile(100));
+  }
+
+  public void testHistogramAdd() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(10);
+    b.record(-5);
+    b.record(1000);
+    a.add(b);
+    assertEquals(3, a.getCount());
+    assertEquals(1000, a.getMax());
+    assertEquals(0, new LatencyHistogram().getPercentile(99));
+  }
+
+  public void testInstrumentedStoreCountsCallsAndErrors() throws Exception {
+    DataStore<String, Employee> memory = GoraUtils.createSpecificDataStore(
+        "memory", String.class, Employee.class);
+    DataStore<String, Employee> failing =
+        new ForwardingDataStore<String, Employee>(memory) {
+          @Override
+          public boolean delete(String key) {
+            throw new IllegalStateException("down");
+          }
+        };
+    DataStore<String, Employee> store = Metrics.instrument(failing);
+    assertSame(store, Metrics.instrument(store));
+    String group = Metrics.group(store);
+    OperationMetrics put = Metrics.get(group, "put");
+    OperationMetrics get = Metrics.get(group, "get");
+    OperationMetrics delete = Metrics.get(group, "delete");
+    long puts = put.getCount();
+    long gets = get.getCount();
+    long errors = delete.getErrors();
+
+    store.put("a", Employee.newBuilder().build());
+    store.put("b", Employee.newBuilder().build());
+    assertNotNull(store.get("a"));
+    try {
+      store.delete("a");
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(puts + 2, put.getCount());
+    assertEquals(gets + 1, get.getCount());
+    assertEquals(errors + 1, delete.getErrors());
+    assertEquals(0, delete.getInFlight());
+    assertTrue(Metrics.getAll().contains(put));
+    store.close();
+  }
+}
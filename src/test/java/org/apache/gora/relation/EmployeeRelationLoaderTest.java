@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.relation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.examples.generated.WebPage;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class EmployeeRelationLoaderTest extends TestCase {
+
+  private DataStore<String, Employee> employees;
+  private DataStore<String, WebPage> pages;
+  private EmployeeRelationLoader loader;
+
+  @Override
+  protected void setUp() throws Exception {
+    employees = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    pages = GoraUtils.createSpecificDataStore("memory", String.class,
+        WebPage.class);
+    loader = new EmployeeRelationLoader(employees, pages, 2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    loader.close();
+    employees.close();
+    pages.close();
+  }
+
+  private Employee employee(String ssn, Object boss) {
+    Employee employee = Employee.newBuilder().build();
+    employee.setSsn(ssn);
+    employee.setName(ssn);
+    employee.setBoss(boss);
+    employees.put(ssn, employee);
+    return employee;
+  }
+
+  private static List<String> names(List<Employee> chain) {
+    String[] names = new String[chain.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = chain.get(i).getName().toString();
+    }
+    return Arrays.asList(names);
+  }
+
+  public void testBossChainsCostOneRoundTripPerLevel() throws Exception {
+    employee("ceo", null);
+    employee("vp1", "ceo");
+    employee("vp2", "ceo");
+    Employee a = employee("a", "vp1");
+    Employee b = employee("b", "vp2");
+    Employee c = employee("c", "vp1");
+    Employee embedded = Employee.newBuilder().build();
+    embedded.setName("lead");
+    embedded.setBoss("ceo");
+    Employee d = employee("d", embedded);
+
+    EmployeeRelations relations = loader.load(Arrays.asList(a, b, c, d), 3);
+    assertEquals(Arrays.asList("vp1", "ceo"), names(relations.getBossChain(a)));
+    assertEquals(Arrays.asList("vp2", "ceo"), names(relations.getBossChain(b)));
+    assertEquals(Arrays.asList("lead", "ceo"), names(relations.getBossChain(d)));
+    // vp1 and vp2, then ceo once for three chains
+    assertEquals(3, relations.getGets());
+    assertEquals(2, relations.getBatches());
+    assertEquals(2, relations.getSequentialGets());
+    assertEquals(Arrays.asList(2, 1, 0), relations.getGetsPerLevel());
+
+    relations = loader.load(Arrays.asList(a), 1);
+    assertEquals(Arrays.asList("vp1"), names(relations.getBossChain(a)));
+    assertEquals(1, relations.getGets());
+  }
+
+  public void testEachThreadGetsItsShareOfALevelInSequence() throws Exception {
+    List<Employee> batch = new ArrayList<Employee>();
+    for (int i = 0; i < 5; i++) {
+      employee("boss" + i, null);
+      batch.add(employee("e" + i, "boss" + i));
+    }
+    EmployeeRelations relations = loader.load(batch, 1);
+    assertEquals(5, relations.getGets());
+    assertEquals(1, relations.getBatches());
+    // five keys over two threads: three gets in a row on the busiest one
+    assertEquals(3, relations.getSequentialGets());
+    assertTrue(relations.getGetNanos() > 0);
+  }
+
+  public void testStubPagesAreResolved() throws Exception {
+    WebPage page = WebPage.newBuilder().build();
+    page.setUrl("http://example.org/");
+    page.setContent(ByteBuffer.wrap(new byte[] { 1 }));
+    pages.put("http://example.org/", page);
+    WebPage stub = WebPage.newBuilder().build();
+    stub.setUrl("http://example.org/");
+    WebPage missing = WebPage.newBuilder().build();
+    missing.setUrl("http://example.org/missing");
+    Employee a = employee("a", null);
+    a.setWebpage(stub);
+    Employee b = employee("b", null);
+    b.setWebpage(missing);
+
+    EmployeeRelations relations = loader.load(Arrays.asList(a, b), 1);
+    assertNotNull(relations.getWebpage(a).getContent());
+    assertSame(missing, relations.getWebpage(b));
+    assertEquals(2, relations.getGets());
+  }
+}
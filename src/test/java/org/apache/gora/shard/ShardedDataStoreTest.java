@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.shard;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class ShardedDataStoreTest extends TestCase {
+
+  /** Holds its first flush, the one after the first shard was copied */
+  static class GatedStore extends ForwardingDataStore<String, Employee> {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    GatedStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void flush() {
+      if (entered.getCount() > 0) {
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      delegate.flush();
+    }
+  }
+
+  private ShardedDataStore<String, Employee> store;
+  private GatedStore added;
+
+  @Override
+  protected void setUp() throws Exception {
+    Map<String, DataStore<String, Employee>> shards =
+        new LinkedHashMap<String, DataStore<String, Employee>>();
+    shards.put("a", memory());
+    shards.put("b", memory());
+    store = new ShardedDataStore<String, Employee>(shards, 16);
+    added = new GatedStore(memory());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    added.release.countDown();
+    store.close();
+  }
+
+  private static DataStore<String, Employee> memory() throws Exception {
+    return GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+  }
+
+  private Map<String, String> scan() throws Exception {
+    Map<String, String> names = new HashMap<String, String>();
+    Result<String, Employee> result = store.execute(store.newQuery());
+    try {
+      while (result.next()) {
+        assertNull("returned twice: " + result.getKey(),
+            names.put(result.getKey(), result.get().getName().toString()));
+      }
+    } finally {
+      result.close();
+    }
+    return names;
+  }
+
+  public void testKeysSpreadAndQueriesMerge() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      store.put("k" + i, Employees.named("v" + i));
+    }
+    Map<String, String> names = scan();
+    assertEquals(100, names.size());
+    assertEquals("v42", names.get("k42"));
+    for (DataStore<String, Employee> shard : store.getShards()) {
+      assertTrue(shard.get("k1") == null || shard == store.getShard("k1"));
+    }
+  }
+
+  public void testWritesDuringRebalanceWinOverMovedCopies() throws Exception {
+    for (int i = 0; i < 200; i++) {
+      store.put("k" + i, Employees.named("old"));
+    }
+    DataStore<String, Employee> first = store.getShards().get(0);
+    DataStore<String, Employee> second = store.getShards().get(1);
+    store.addShard("c", added);
+    assertTrue(added.entered.await(5, TimeUnit.SECONDS));
+    // the records of the first shard are copied, none deleted yet, and
+    // those of the second one not copied yet
+    String copied = null;
+    String pending = null;
+    String deleted = null;
+    for (int i = 0; i < 200; i++) {
+      String key = "k" + i;
+      if (store.getShard(key) != added) {
+        continue;
+      }
+      if (first.get(key) != null && copied == null) {
+        copied = key;
+      } else if (second.get(key) != null && pending == null) {
+        pending = key;
+      } else if (deleted == null) {
+        deleted = key;
+      }
+    }
+    assertNotNull(copied);
+    assertNotNull(pending);
+    assertNotNull(deleted);
+    assertNotNull(added.get(copied));
+
+    store.put(copied, Employees.named("new"));
+    store.put(pending, Employees.named("new"));
+    store.delete(deleted);
+    Map<String, String> names = scan();
+    assertEquals("new", names.get(copied));
+    assertEquals("new", names.get(pending));
+    assertFalse(names.containsKey(deleted));
+    assertEquals(199, names.size());
+
+    added.release.countDown();
+    assertTrue(store.awaitRebalance(5, TimeUnit.SECONDS));
+    assertEquals("new", store.get(copied).getName().toString());
+    assertEquals("new", store.get(pending).getName().toString());
+    assertNull(store.get(deleted));
+    assertEquals(199, scan().size());
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class OffHeapCachingDataStoreTest extends TestCase {
+
+  /** Holds deleteByQuery until released */
+  static class GatedStore extends ForwardingDataStore<String, Employee> {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    GatedStore(DataStore<String, Employee> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public long deleteByQuery(Query<String, Employee> query) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return delegate.deleteByQuery(query);
+    }
+  }
+
+  private DataStore<String, Employee> memory;
+  private GatedStore gated;
+  private OffHeapCachingDataStore<String, Employee> store;
+
+  @Override
+  protected void setUp() throws Exception {
+    memory = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+    gated = new GatedStore(memory);
+    store = new OffHeapCachingDataStore<String, Employee>(gated,
+        new OffHeapRecordCache<String, Employee>(Employee.SCHEMA$, 1 << 20,
+            1 << 16, null));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    gated.release.countDown();
+    store.close();
+  }
+
+  public void testGetsAreCachedAndWritesInvalidate() {
+    memory.put("a", Employees.named("Ann"));
+    assertEquals("Ann", store.get("a").getName().toString());
+    assertTrue(store.getCache().contains("a"));
+    memory.put("a", Employees.named("changed behind the cache"));
+    assertEquals("Ann", store.get("a").getName().toString());
+
+    store.put("a", Employees.named("Amy"));
+    assertFalse(store.getCache().contains("a"));
+    assertEquals("Amy", store.get("a").getName().toString());
+    store.delete("a");
+    assertNull(store.get("a"));
+  }
+
+  public void testGetDuringDeleteByQueryDoesNotCacheDeletedRows()
+      throws Exception {
+    memory.put("a", Employees.named("Ann"));
+    final Query<String, Employee> query = store.newQuery();
+    query.setStartKey("a");
+    query.setEndKey("a");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Long> deleted = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          return store.deleteByQuery(query);
+        }
+      });
+      assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+      // read before the rows are gone
+      assertNotNull(store.get("a"));
+      gated.release.countDown();
+      deleted.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertNull(memory.get("a"));
+    assertNull(store.get("a"));
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tier;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.binding.ForwardingDataStore;
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Query;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.tier.TieredDataStore.WriteMode;
+import org.apache.gora.utils.GoraUtils;
+
+public class TieredDataStoreTest extends TestCase {
+
+  /** Holds the puts of a name after writing them, and deleteByQuery, until released */
+  static class SlowStore extends ForwardingDataStore<String, Employee> {
+    final String slowName;
+    final CountDownLatch held = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    SlowStore(DataStore<String, Employee> delegate, String slowName) {
+      super(delegate);
+      this.slowName = slowName;
+    }
+
+    @Override
+    public void put(String key, Employee obj) {
+      delegate.put(key, obj);
+      if (obj.getName() != null && slowName.equals(obj.getName().toString())) {
+        hold();
+      }
+    }
+
+    @Override
+    public long deleteByQuery(Query<String, Employee> query) {
+      hold();
+      return delegate.deleteByQuery(query);
+    }
+
+    private void hold() {
+      held.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private DataStore<String, Employee> far;
+
+  @Override
+  protected void setUp() throws Exception {
+    far = GoraUtils.createSpecificDataStore("memory", String.class,
+        Employee.class);
+  }
+
+  private TieredDataStore<String, Employee> tier(DataStore<String, Employee> store,
+      WriteMode mode) throws Exception {
+    return new TieredDataStore<String, Employee>(store,
+        GoraUtils.createSpecificDataStore("memory", String.class, Employee.class),
+        2, new LruPolicy<String>(), mode);
+  }
+
+  private static String name(Employee employee) {
+    return employee.getName().toString();
+  }
+
+  public void testGetsFillTheNearTierAndEvict() throws Exception {
+    TieredDataStore<String, Employee> store = tier(far, WriteMode.WRITE_THROUGH);
+    far.put("a", Employees.named("Ann"));
+    far.put("b", Employees.named("Bob"));
+    far.put("c", Employees.named("Cyd"));
+    assertEquals("Ann", name(store.get("a")));
+    assertEquals("Ann", name(store.get("a")));
+    assertEquals(1, store.getStats().getNearHits());
+    store.get("b");
+    store.get("c");
+    assertEquals(2, store.getNearSize());
+    assertEquals(1, store.getStats().getEvictions());
+
+    store.put("c", Employees.named("Cat"));
+    assertEquals("Cat", name(far.get("c")));
+    assertEquals("Cat", name(store.get("c")));
+    store.delete("c");
+    assertNull(store.get("c"));
+    assertEquals(1, store.getNearSize());
+  }
+
+  public void testWriteBackWritesOnFlush() throws Exception {
+    TieredDataStore<String, Employee> store = tier(far, WriteMode.WRITE_BACK);
+    far.put("a", Employees.named("Ann"));
+    store.get("a");
+    store.put("a", Employees.named("Amy"));
+    assertEquals("Ann", name(far.get("a")));
+    assertEquals(1, store.getDirty());
+    store.flush();
+    assertEquals("Amy", name(far.get("a")));
+    assertEquals(0, store.getDirty());
+  }
+
+  public void testConcurrentPutsReachBothTiersInOneOrder() throws Exception {
+    SlowStore slow = new SlowStore(far, "first");
+    final TieredDataStore<String, Employee> store = tier(slow, WriteMode.WRITE_THROUGH);
+    far.put("k", Employees.named("initial"));
+    store.get("k");
+    assertEquals(1, store.getNearSize());
+
+    Thread first = new Thread() {
+      @Override
+      public void run() {
+        store.put("k", Employees.named("first"));
+      }
+    };
+    Thread second = new Thread() {
+      @Override
+      public void run() {
+        store.put("k", Employees.named("second"));
+      }
+    };
+    first.start();
+    assertTrue(slow.held.await(5, TimeUnit.SECONDS));
+    second.start();
+    // the second put waits for the first one, or would overtake it
+    second.join(200);
+    slow.release.countDown();
+    first.join(5000);
+    second.join(5000);
+
+    assertEquals(name(far.get("k")), name(store.get("k")));
+    assertEquals("second", name(store.getNear().get("k")));
+  }
+
+  public void testGetDuringDeleteByQueryDoesNotAdmitDeletedRows()
+      throws Exception {
+    SlowStore slow = new SlowStore(far, "none");
+    final TieredDataStore<String, Employee> store = tier(slow, WriteMode.WRITE_THROUGH);
+    far.put("a", Employees.named("Ann"));
+    final Query<String, Employee> query = store.newQuery();
+    query.setStartKey("a");
+    query.setEndKey("a");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Long> deleted = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          return store.deleteByQuery(query);
+        }
+      });
+      assertTrue(slow.held.await(5, TimeUnit.SECONDS));
+      assertNotNull(store.get("a"));
+      slow.release.countDown();
+      deleted.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertNull(far.get("a"));
+    assertNull(store.get("a"));
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+public class BulkExporterTest extends TestCase {
+
+  public void testSplitsCoverTheRangeOnce() throws Exception {
+    DataStore<String, Employee> store = GoraUtils.createSpecificDataStore(
+        "memory", String.class, Employee.class);
+    for (int i = 0; i < 100; i++) {
+      Employee employee = Employee.newBuilder().build();
+      employee.setSsn(new Utf8(String.format("%03d", i)));
+      employee.setSalary(i);
+      store.put(String.format("%03d", i), employee);
+    }
+    File dir = File.createTempFile("export", "");
+    dir.delete();
+    try {
+      BulkExporter<String, Employee> exporter =
+          new BulkExporter<String, Employee>(store);
+      exporter.setThreads(3);
+      ExportReport report = exporter.export("010", "089",
+          Arrays.asList("030", "060"), dir);
+      assertEquals(3, report.getPartitions());
+      assertEquals(80, report.getRecords());
+
+      List<String> keys = new ArrayList<String>();
+      for (int i = 0; i < 3; i++) {
+        DataFileReader<Employee> reader = new DataFileReader<Employee>(
+            new File(dir, String.format("part-%05d.avro", i)),
+            new SpecificDatumReader<Employee>(Employee.class));
+        for (Employee employee : reader) {
+          keys.add(employee.getSsn().toString());
+        }
+        reader.close();
+      }
+      assertEquals(80, keys.size());
+      assertEquals("010", keys.get(0));
+      assertEquals("030", keys.get(20));
+      assertEquals("089", keys.get(79));
+
+      JsonNode manifest = new ObjectMapper().readTree(
+          new File(dir, BulkExporter.MANIFEST_FILE));
+      JsonNode first = manifest.get("partitions").get(0);
+      assertEquals(20, first.get("records").getIntValue());
+      assertEquals("029", first.get("lastKey").getTextValue());
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+
+public class BulkLoaderTest extends TestCase {
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("bulkloader", "");
+    dir.delete();
+    dir.mkdirs();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(dir);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static File csv(File dir, int from, int count) throws IOException {
+    dir.mkdirs();
+    File file = new File(dir, "employees.csv");
+    PrintWriter writer = new PrintWriter(file, "UTF-8");
+    writer.println("ssn,name,salary");
+    for (int i = from; i < from + count; i++) {
+      writer.println(i + ",name" + i + "," + i);
+    }
+    writer.close();
+    return file;
+  }
+
+  private BulkLoader<String, Employee> loader(int batch, int decoders) {
+    BulkLoader<String, Employee> loader = new BulkLoader<String, Employee>(
+        "memory", String.class, Employee.class, "ssn");
+    loader.setBatchSize(batch);
+    loader.setDecoderThreads(decoders);
+    loader.setWriterThreads(2);
+    loader.setCheckpointFile(new File(dir, "load.ckpt"));
+    return loader;
+  }
+
+  public void testFilesOfTheSameNameAreCheckpointedApart() throws Exception {
+    File first = csv(new File(dir, "a"), 0, 100);
+    File second = csv(new File(dir, "b"), 100, 50);
+    assertEquals(100, loader(10, 2).load(Arrays.asList(first)).getRecords());
+
+    LoadReport report = loader(10, 2).load(Arrays.asList(first, second));
+    assertEquals(50, report.getRecords());
+    assertEquals(10, report.getSkippedBatches());
+  }
+
+  public void testAvroBatchesDoNotDependOnTheDecoders() throws Exception {
+    File avro = new File(dir, "employees.avro");
+    DataFileWriter<Employee> writer = new DataFileWriter<Employee>(
+        new SpecificDatumWriter<Employee>(Employee.class));
+    writer.setSyncInterval(16 * 1024);
+    writer.create(Employee.SCHEMA$, avro);
+    // over two splits of 4 MB, so four decoders split it differently
+    char[] padding = new char[200];
+    Arrays.fill(padding, 'x');
+    for (int i = 0; i < 50000; i++) {
+      Employee employee = Employee.newBuilder().build();
+      employee.setSsn(new Utf8(String.valueOf(i)));
+      employee.setName(new Utf8(new String(padding) + i));
+      employee.setSalary(i);
+      writer.append(employee);
+    }
+    writer.close();
+
+    assertTrue(avro.length() > 8 * 1024 * 1024);
+    assertEquals(50000, loader(1000, 1).load(Arrays.asList(avro)).getRecords());
+    LoadReport report = loader(1000, 4).load(Arrays.asList(avro));
+    assertEquals(0, report.getRecords());
+    assertTrue(report.getSkippedBatches() > 0);
+  }
+
+  public void testOtherBatchSizeCannotResume() throws Exception {
+    File file = csv(new File(dir, "a"), 0, 20);
+    loader(10, 1).load(Arrays.asList(file));
+    try {
+      loader(5, 1).load(Arrays.asList(file));
+      fail("resumed with another batch size");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("batch=10"));
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.tools;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.Schema;
+import org.apache.gora.examples.generated.Employee;
+
+public class CsvRecordDecoderTest extends TestCase {
+
+  /** An employee whose salary defaults to 7 and date of birth has no default */
+  public static class Hired extends Employee {
+
+    static final Schema SCHEMA = new Schema.Parser().parse(Employee.SCHEMA$
+        .toString()
+        .replace("\"name\":\"salary\",\"type\":\"int\",\"default\":0",
+            "\"name\":\"salary\",\"type\":\"int\",\"default\":7")
+        .replace("\"name\":\"dateOfBirth\",\"type\":\"long\",\"default\":0",
+            "\"name\":\"dateOfBirth\",\"type\":\"long\""));
+
+    @Override
+    public Schema getSchema() {
+      return SCHEMA;
+    }
+  }
+
+  public void testEmptyCells() {
+    CsvRecordDecoder<Hired> decoder = new CsvRecordDecoder<Hired>(Hired.class,
+        "name,ssn,salary,dateOfBirth", ',');
+    Hired hired = decoder.decode("\"Doe, Jane\",,,12");
+    assertEquals("Doe, Jane", hired.getName().toString());
+    assertEquals("", hired.getSsn().toString());
+    assertEquals(7, hired.getSalary().intValue());
+    assertEquals(12L, hired.getDateOfBirth().longValue());
+
+    hired = decoder.decode(",123,1000,12");
+    assertNull(hired.getName());
+    assertEquals(1000, hired.getSalary().intValue());
+
+    try {
+      decoder.decode("Jane,123,1000,");
+      fail("dateOfBirth has no default");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("dateOfBirth"));
+    }
+  }
+}
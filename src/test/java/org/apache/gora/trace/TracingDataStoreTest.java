@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.Employees;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils;
+
+public class TracingDataStoreTest extends TestCase {
+
+  /** Keeps the spans it starts */
+  static class RecordingTracer implements Tracer {
+    final List<RecordedSpan> spans = new ArrayList<RecordedSpan>();
+
+    @Override
+    public StoreSpan startStoreOperation(String group, String operation) {
+      RecordedSpan span = new RecordedSpan(group, operation);
+      spans.add(span);
+      return span;
+    }
+
+    @Override
+    public GatewaySpan startGatewayCall() {
+      return null;
+    }
+  }
+
+  static class RecordedSpan implements StoreSpan {
+    final String group;
+    final String operation;
+    Object startKey;
+    int records;
+    long bytes;
+    int ends;
+    boolean failed;
+
+    RecordedSpan(String group, String operation) {
+      this.group = group;
+      this.operation = operation;
+    }
+
+    @Override
+    public void setKeys(Object startKey, Object endKey) {
+      this.startKey = startKey;
+    }
+
+    @Override
+    public void setFields(String[] fields) {
+    }
+
+    @Override
+    public void addRecord(long bytes) {
+      records++;
+      this.bytes += bytes;
+    }
+
+    @Override
+    public void end(boolean failed) {
+      ends++;
+      this.failed = failed;
+    }
+  }
+
+  private RecordingTracer tracer;
+  private DataStore<String, Employee> store;
+
+  @Override
+  protected void setUp() throws Exception {
+    tracer = new RecordingTracer();
+    store = new TracingDataStore<String, Employee>(
+        GoraUtils.createSpecificDataStore("memory", String.class, Employee.class),
+        tracer);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.close();
+  }
+
+  public void testCallsAreSpans() {
+    store.put("a", Employees.named("Ann"));
+    assertNotNull(store.get("a"));
+    assertNull(store.get("b"));
+    store.delete("a");
+
+    assertEquals(4, tracer.spans.size());
+    RecordedSpan put = tracer.spans.get(0);
+    assertEquals("MemStore.Employee", put.group);
+    assertEquals("put", put.operation);
+    assertEquals("a", put.startKey);
+    assertEquals(1, put.records);
+    assertTrue(put.bytes > 0);
+    assertEquals("get", tracer.spans.get(1).operation);
+    assertEquals(1, tracer.spans.get(1).records);
+    assertEquals(0, tracer.spans.get(2).records);
+    assertEquals("delete", tracer.spans.get(3).operation);
+    for (RecordedSpan span : tracer.spans) {
+      assertEquals(1, span.ends);
+      assertFalse(span.failed);
+    }
+  }
+
+  public void testQuerySpanEndsOnceWhenExhaustedAndClosed() throws Exception {
+    store.put("a", Employees.named("Ann"));
+    store.put("b", Employees.named("Bob"));
+    tracer.spans.clear();
+
+    Result<String, Employee> result = store.execute(store.newQuery());
+    RecordedSpan query = tracer.spans.get(0);
+    assertEquals("query", query.operation);
+    assertEquals(0, query.ends);
+    while (result.next()) {
+    }
+    assertEquals(2, query.records);
+    assertEquals(1, query.ends);
+    result.close();
+    assertEquals(1, query.ends);
+  }
+
+  public void testFailedCallEndsFailed() {
+    try {
+      store.put(null, Employees.named("Ann"));
+      fail();
+    } catch (RuntimeException expected) {
+    }
+    RecordedSpan put = tracer.spans.get(0);
+    assertEquals(1, put.ends);
+    assertTrue(put.failed);
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.util.Utf8;
+
+public class CompactUtf8MapTest extends TestCase {
+
+  public void testPutGetRemove() {
+    CompactUtf8Map map = new CompactUtf8Map();
+    Map<String, String> expected = new HashMap<String, String>();
+    for (int i = 0; i < 1000; i++) {
+      map.put("key" + i, i % 10 == 0 ? null : "value" + i);
+      expected.put("key" + i, i % 10 == 0 ? null : "value" + i);
+    }
+    for (int i = 0; i < 1000; i += 3) {
+      map.remove(new Utf8("key" + i));
+      expected.remove("key" + i);
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      assertTrue(map.containsKey(entry.getKey()));
+      CharSequence value = map.get(entry.getKey());
+      assertEquals(entry.getValue(), value == null ? null : value.toString());
+    }
+  }
+
+  public void testViewsSurviveRemovingTheLastEntry() {
+    CompactUtf8Map map = new CompactUtf8Map();
+    map.put("a", "first");
+    CharSequence key = map.keySet().iterator().next();
+    CharSequence removed = map.remove("a");
+    map.put("b", "other");
+    map.put("c", "values");
+    assertEquals("first", removed.toString());
+    assertEquals("a", key.toString());
+  }
+
+  public void testViewsSurviveClear() {
+    CompactUtf8Map map = new CompactUtf8Map();
+    map.put("a", "first");
+    CharSequence value = map.get("a");
+    map.clear();
+    map.put("b", "xxxxx");
+    assertEquals("first", value.toString());
+    assertEquals(0, new CompactUtf8Map().arenaBytes());
+  }
+
+  public void testViewsSurviveCompaction() {
+    CompactUtf8Map map = new CompactUtf8Map();
+    map.put("kept", "value");
+    CharSequence value = map.get("kept");
+    for (int i = 0; i < 1000; i++) {
+      map.put("key" + i, "value" + i);
+      map.remove("key" + i);
+    }
+    assertEquals("value", value.toString());
+    assertEquals("value", map.get("kept").toString());
+  }
+
+  public void testViewEquality() {
+    CompactUtf8Map map = new CompactUtf8Map();
+    map.put("a", "value");
+    CharSequence value = map.get("a");
+    assertEquals(value, new Utf8("value"));
+    assertEquals(new Utf8("value"), ((CompactUtf8Map.Utf8View) value).toUtf8());
+    assertEquals(value.hashCode(), new Utf8("value").hashCode());
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.query.Result;
+import org.apache.gora.store.DataStore;
+import org.apache.gora.utils.GoraUtils.Type;
+
+public class GoraUtilsTest extends TestCase {
+
+  private File dir;
+  private Properties properties;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("goradata", "");
+    dir.delete();
+    properties = new Properties();
+    properties.setProperty(GoraUtils.LOCAL_DATA_DIR_KEY, dir.getPath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        child.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private void session(Type type, String name) throws Exception {
+    DataStore<String, Employee> store = GoraUtils.createSpecificDataStore(
+        type, String.class, Employee.class, properties);
+    Employee employee = Employee.newBuilder().build();
+    employee.setName(new Utf8(name));
+    employee.setSsn(new Utf8(name));
+    store.put(name, employee);
+    store.flush();
+    store.close();
+  }
+
+  private Set<String> names(Type type) throws Exception {
+    DataStore<String, Employee> store = GoraUtils.createSpecificDataStore(
+        type, String.class, Employee.class, properties);
+    Set<String> names = new HashSet<String>();
+    try {
+      Result<String, Employee> result = store.execute(store.newQuery());
+      while (result.next()) {
+        names.add(result.get().getName().toString());
+      }
+      result.close();
+    } finally {
+      store.close();
+    }
+    return names;
+  }
+
+  private void assertReopenKeepsRecords(Type type) throws Exception {
+    session(type, "ann");
+    session(type, "bob");
+    session(type, "cyd");
+    Set<String> expected = new HashSet<String>();
+    expected.add("ann");
+    expected.add("bob");
+    expected.add("cyd");
+    assertEquals(expected, names(type));
+  }
+
+  public void testDataFileStoreKeepsRecordsOfEarlierSessions() throws Exception {
+    assertReopenKeepsRecords(Type.DATA_FILE);
+  }
+
+  public void testAvroStoreKeepsRecordsOfEarlierSessions() throws Exception {
+    assertReopenKeepsRecords(Type.AVRO_FILE);
+  }
+
+  public void testSessionLostBeforeFlushKeepsEarlierRecords() throws Exception {
+    session(Type.AVRO_FILE, "ann");
+    DataStore<String, Employee> crashed = GoraUtils.createSpecificDataStore(
+        Type.AVRO_FILE, String.class, Employee.class, properties);
+    Employee employee = Employee.newBuilder().build();
+    employee.setName(new Utf8("bob"));
+    crashed.put("bob", employee);
+    // neither flushed nor closed: only the snapshot holds ann
+    session(Type.AVRO_FILE, "cyd");
+    Set<String> expected = new HashSet<String>();
+    expected.add("ann");
+    expected.add("cyd");
+    assertEquals(expected, names(Type.AVRO_FILE));
+    File[] left = dir.listFiles();
+    for (File file : left) {
+      assertFalse(file.getName(), file.getName().endsWith(".prev"));
+    }
+  }
+
+  public void testTypeFromNameOrValue() {
+    assertEquals(Type.AVRO_FILE, Type.fromString("avro"));
+    assertEquals(Type.AVRO_FILE, Type.fromString("AVRO_FILE"));
+    assertEquals(Type.DATA_FILE, Type.fromString("datafile"));
+  }
+}
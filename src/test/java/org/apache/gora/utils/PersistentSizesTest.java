@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
+import org.apache.gora.examples.generated.Metadata;
+import org.apache.gora.examples.generated.WebPage;
+
+public class PersistentSizesTest extends TestCase {
+
+  private static long encodedSize(WebPage page) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<WebPage>(WebPage.SCHEMA$).write(page, encoder);
+    encoder.flush();
+    return out.size();
+  }
+
+  private static WebPage page() {
+    WebPage page = WebPage.newBuilder().build();
+    Metadata metadata = Metadata.newBuilder().build();
+    metadata.setVersion(-300000);
+    metadata.setData(new HashMap<CharSequence, CharSequence>());
+    page.setMetadata(metadata);
+    page.setParsedContent(Arrays.<CharSequence> asList());
+    page.setOutlinks(new HashMap<CharSequence, CharSequence>());
+    return page;
+  }
+
+  public void testSizeIsTheAvroBinarySize() throws Exception {
+    WebPage page = page();
+    assertEquals(encodedSize(page), PersistentSizes.sizeOf(WebPage.SCHEMA$, page));
+
+    page.setUrl("http://example.org/\u00e9t\u00e9/\u4e2d\ud83d\ude00");
+    page.setContent(ByteBuffer.wrap(new byte[300]));
+    page.setParsedContent(Arrays.<CharSequence> asList("a", new Utf8("\u00fc")));
+    Map<CharSequence, CharSequence> outlinks = new HashMap<CharSequence, CharSequence>();
+    for (int i = 0; i < 100; i++) {
+      outlinks.put("http://example.org/" + i, "link " + i);
+    }
+    page.setOutlinks(outlinks);
+    page.getMetadata().setVersion(Integer.MIN_VALUE);
+    assertEquals(encodedSize(page), PersistentSizes.sizeOf(WebPage.SCHEMA$, page));
+  }
+
+  public void testVarintSize() {
+    assertEquals(1, PersistentSizes.varintSize(0));
+    assertEquals(1, PersistentSizes.varintSize(-64));
+    assertEquals(2, PersistentSizes.varintSize(64));
+    assertEquals(5, PersistentSizes.varintSize(Integer.MIN_VALUE));
+    assertEquals(10, PersistentSizes.varintSize(Long.MAX_VALUE));
+  }
+}
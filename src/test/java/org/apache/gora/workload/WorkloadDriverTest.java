@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gora.workload;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.gora.examples.generated.Employee;
+import org.apache.gora.jython.binding.SimpleBinding;
+import org.apache.gora.utils.GoraUtils;
+import org.apache.gora.workload.WorkloadDriver.Operation;
+
+public class WorkloadDriverTest extends TestCase {
+
+  public void testZipfianFavorsTheFirstItems() {
+    ZipfianGenerator zipfian = new ZipfianGenerator(1000, false);
+    Random random = new Random(1);
+    int[] hits = new int[1000];
+    for (int i = 0; i < 100000; i++) {
+      long item = zipfian.next(random);
+      assertTrue(item >= 0 && item < 1000);
+      hits[(int) item]++;
+    }
+    assertTrue(hits[0] > hits[10]);
+    assertTrue(hits[0] > 100 * hits[999] || hits[999] == 0);
+  }
+
+  public void testLoadThenRunTheMix() throws Exception {
+    SimpleBinding<String, Employee> binding = new SimpleBinding<String, Employee>(
+        GoraUtils.createSpecificDataStore("memory", String.class, Employee.class));
+    try {
+      WorkloadDriver<Employee> driver = new WorkloadDriver<Employee>(binding,
+          new EmployeeGenerator());
+      driver.setThreads(2);
+      driver.setRecordCount(500);
+      driver.setOperationCount(2000);
+      driver.setProportions(0.5, 0.3, 0.1, 0.1);
+      driver.setMaxScanLength(10);
+      driver.setSeed(7);
+      driver.setReportIntervalMillis(60000);
+
+      WorkloadReport load = driver.load();
+      assertEquals(500, load.getOperations());
+      assertNotNull(binding.get(RecordGenerator.key(499)));
+
+      WorkloadReport run = driver.run();
+      long operations = 0;
+      for (Operation operation : new Operation[] { Operation.READ,
+          Operation.UPDATE, Operation.SCAN, Operation.INSERT }) {
+        assertEquals(operation + " failed", 0, run.getErrors(operation));
+        operations += run.getLatency(operation).getCount();
+      }
+      assertEquals(2000, operations);
+      assertTrue(run.getLatency(Operation.SCAN).getCount() > 0);
+    } finally {
+      binding.close();
+    }
+  }
+}